@@ -18,6 +18,7 @@
  */
 package org.apache.velocity.tools.spring;
 
+import java.util.Locale;
 import java.util.Map;
 
 import jakarta.servlet.http.HttpServletRequest;
@@ -25,6 +26,8 @@ import jakarta.servlet.http.HttpServletResponse;
 
 import org.apache.velocity.Template;
 import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.exception.ResourceNotFoundException;
+import org.apache.velocity.runtime.resource.loader.ResourceLoader;
 import org.apache.velocity.tools.view.ViewToolContext;
 import org.apache.velocity.tools.view.ViewToolManager;
 
@@ -42,10 +45,17 @@ import org.springframework.web.servlet.view.AbstractTemplateView;
  * <p>The render context is built by the {@link ViewToolManager} of the single
  * {@link VelocityConfig} bean (so all configured tools are available), then the Spring model is
  * layered on top, then the template named by this view's URL is merged to the response.</p>
+ *
+ * <p>The {@link VelocityConfig} is looked up once, when the view is bound to its application
+ * context, and the template is kept between renderings. It is only fetched again from the engine
+ * when the engine would check it for modifications, or if its resource loader does not cache
+ * templates. The Spring model is used as is as the local storage of the render context.</p>
  */
 public class VelocityToolboxView extends AbstractTemplateView
 {
     private String encoding;
+    private VelocityConfig velocityConfig;
+    private volatile Template template;
 
     /** Template input encoding; {@code null} uses the engine default. */
     public void setEncoding(String encoding)
@@ -58,24 +68,89 @@ public class VelocityToolboxView extends AbstractTemplateView
         return this.encoding;
     }
 
+    /** Use the given configuration instead of looking up the {@link VelocityConfig} bean. */
+    public void setVelocityConfig(VelocityConfig velocityConfig)
+    {
+        this.velocityConfig = velocityConfig;
+    }
+
+    public VelocityConfig getVelocityConfig()
+    {
+        return this.velocityConfig;
+    }
+
+    @Override
+    protected void initApplicationContext() throws BeansException
+    {
+        super.initApplicationContext();
+        if (this.velocityConfig == null)
+        {
+            this.velocityConfig = autodetectVelocityConfig();
+        }
+    }
+
+    /** Loads the template up front, so that a resolver can skip views without template. */
+    @Override
+    public boolean checkResource(@NonNull Locale locale) throws Exception
+    {
+        try
+        {
+            getTemplate();
+            return true;
+        }
+        catch (ResourceNotFoundException ex)
+        {
+            logger.debug("No Velocity template found for URL: " + getUrl());
+            return false;
+        }
+    }
+
     @Override
     protected void renderMergedTemplateModel(@NonNull Map<String, Object> model,
             @NonNull HttpServletRequest request, @NonNull HttpServletResponse response) throws Exception
     {
-        VelocityConfig config = autodetectVelocityConfig();
-        VelocityEngine engine = config.getVelocityEngine();
-        ViewToolManager toolManager = config.getToolManager();
+        ViewToolManager toolManager = getRequiredVelocityConfig().getToolManager();
 
+        // the merged model is built for this request only, the context can write to it
         ViewToolContext context = toolManager.createContext(request, response);
-        for (Map.Entry<String, Object> entry : model.entrySet())
+        context.setLocalContext(model);
+
+        getTemplate().merge(context, response.getWriter());
+    }
+
+    /**
+     * Returns the template of this view, fetching it from the engine on first use, whenever
+     * the engine would check it for modifications, or if its loader does not cache templates.
+     * @return template
+     */
+    protected Template getTemplate()
+    {
+        Template current = this.template;
+        if (current != null)
         {
-            context.put(entry.getKey(), entry.getValue());
+            ResourceLoader loader = current.getResourceLoader();
+            if (loader != null && loader.isCachingOn() && !current.requiresChecking())
+            {
+                return current;
+            }
         }
-
-        Template template = (this.encoding != null)
+        VelocityEngine engine = getRequiredVelocityConfig().getVelocityEngine();
+        current = (this.encoding != null)
                 ? engine.getTemplate(getUrl(), this.encoding)
                 : engine.getTemplate(getUrl());
-        template.merge(context, response.getWriter());
+        this.template = current;
+        return current;
+    }
+
+    private VelocityConfig getRequiredVelocityConfig()
+    {
+        VelocityConfig config = this.velocityConfig;
+        if (config == null)
+        {
+            config = autodetectVelocityConfig();
+            this.velocityConfig = config;
+        }
+        return config;
     }
 
     /** Locate the single {@link VelocityConfig} bean in the (ancestor-inclusive) context. */
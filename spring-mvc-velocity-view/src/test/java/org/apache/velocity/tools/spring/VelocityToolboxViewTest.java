@@ -19,6 +19,7 @@
 package org.apache.velocity.tools.spring;
 
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 
 import jakarta.servlet.http.HttpSession;
@@ -35,6 +36,7 @@ import org.springframework.mock.web.MockServletContext;
 import org.springframework.web.context.WebApplicationContext;
 import org.springframework.web.context.support.GenericWebApplicationContext;
 
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -111,4 +113,28 @@ public class VelocityToolboxViewTest
         assertNotNull("an HttpSession should be created for session-scoped tools when createSession=true",
                 session);
     }
+
+    @Test
+    public void resolvesConfigAndTemplateOnce() throws Exception
+    {
+        configure(false);
+        VelocityToolboxView view = new VelocityToolboxView();
+        view.setApplicationContext(wac);
+        view.setUrl("hello.vm");
+        view.setContentType("text/html;charset=UTF-8");
+        assertNotNull("VelocityConfig should be resolved at initialization", view.getVelocityConfig());
+        assertTrue(view.checkResource(Locale.ROOT));
+
+        Map<String, Object> model = new HashMap<>();
+        model.put("name", "World");
+        MockHttpServletRequest request = new MockHttpServletRequest(servletContext);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        view.renderMergedTemplateModel(model, request, response);
+        assertTrue(response.getContentAsString().contains("Hello World!"));
+
+        VelocityToolboxView missing = new VelocityToolboxView();
+        missing.setApplicationContext(wac);
+        missing.setUrl("missing.vm");
+        assertFalse("a view without template should be skipped", missing.checkResource(Locale.ROOT));
+    }
 }
@@ -0,0 +1,143 @@
+package org.apache.velocity.tools.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>Invocation handler of mock servlet API objects, answering every call
+ * with an empty value of the returned type: null, false, zero or an empty
+ * collection. Subclasses handle the calls they care about in
+ * {@link #handle(Object, Method, Object[])}.</p>
+ *
+ * @since VelocityTools 4.0
+ * @version $Id$
+ */
+public class Defaults implements InvocationHandler
+{
+    /** Marker returned by {@link #handle(Object, Method, Object[])} for unhandled calls. */
+    protected static final Object UNHANDLED = new Object();
+
+    /**
+     * Creates a proxy implementing the given interface with empty answers.
+     * @param iface servlet API interface
+     * @param <T> interface type
+     * @return proxy
+     */
+    public static <T> T of(Class<T> iface)
+    {
+        return new Defaults().proxy(iface);
+    }
+
+    /**
+     * Creates a proxy implementing the given interface with this handler.
+     * @param iface servlet API interface
+     * @param <T> interface type
+     * @return proxy
+     */
+    public <T> T proxy(Class<T> iface)
+    {
+        return iface.cast(Proxy.newProxyInstance(iface.getClassLoader(), new Class<?>[] { iface }, this));
+    }
+
+    /**
+     * Handles a call, or returns {@link #UNHANDLED} to get the default answer.
+     * @param proxy proxy instance
+     * @param method called method
+     * @param args call arguments
+     * @return call result
+     * @throws Exception if the call fails
+     */
+    protected Object handle(Object proxy, Method method, Object[] args) throws Exception
+    {
+        return UNHANDLED;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+    {
+        switch (method.getName())
+        {
+            case "equals":
+                if (method.getParameterCount() == 1)
+                {
+                    return proxy == args[0];
+                }
+                break;
+            case "hashCode":
+                if (method.getParameterCount() == 0)
+                {
+                    return System.identityHashCode(proxy);
+                }
+                break;
+            case "toString":
+                if (method.getParameterCount() == 0)
+                {
+                    return "mock " + proxy.getClass().getInterfaces()[0].getSimpleName();
+                }
+                break;
+            default:
+                break;
+        }
+        Object result = handle(proxy, method, args);
+        return result == UNHANDLED ? getDefault(method.getReturnType()) : result;
+    }
+
+    private static Object getDefault(Class<?> type)
+    {
+        if (type == boolean.class)
+        {
+            return false;
+        }
+        if (type == int.class)
+        {
+            return 0;
+        }
+        if (type == long.class)
+        {
+            return 0L;
+        }
+        if (type == Enumeration.class)
+        {
+            return Collections.emptyEnumeration();
+        }
+        if (type == Map.class)
+        {
+            return Collections.emptyMap();
+        }
+        if (type == Set.class)
+        {
+            return Collections.emptySet();
+        }
+        if (type == List.class || type == Collection.class)
+        {
+            return Collections.emptyList();
+        }
+        return null;
+    }
+}
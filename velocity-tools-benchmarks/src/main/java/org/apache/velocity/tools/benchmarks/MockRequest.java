@@ -0,0 +1,332 @@
+package org.apache.velocity.tools.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import jakarta.servlet.RequestDispatcher;
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpSession;
+
+/**
+ * <p>In-process GET {@link HttpServletRequest}. The methods used by the tools
+ * and servlets are implemented directly, so that they do not weigh on the
+ * measures; the other ones return empty values.</p>
+ *
+ * @since VelocityTools 4.0
+ * @version $Id$
+ */
+public class MockRequest extends HttpServletRequestWrapper
+{
+    private final ServletContext servletContext;
+    private final Map<String,Object> attributes = new HashMap<String,Object>();
+    private final Map<String,String[]> parameters = new LinkedHashMap<String,String[]>();
+    private final Map<String,String> headers = new HashMap<String,String>();
+    private String servletPath;
+    private String pathInfo;
+    private String queryString;
+    private MockSession session;
+    private Locale locale = Locale.US;
+    private String characterEncoding = "UTF-8";
+
+    /**
+     * @param servletContext servlet context
+     * @param servletPath requested path, like <code>/index.vm</code>
+     */
+    public MockRequest(ServletContext servletContext, String servletPath)
+    {
+        super(Defaults.of(HttpServletRequest.class));
+        this.servletContext = servletContext;
+        this.servletPath = servletPath;
+    }
+
+    /**
+     * Adds a query parameter.
+     * @param name parameter name
+     * @param value parameter value
+     * @return this request
+     */
+    public MockRequest param(String name, String value)
+    {
+        String[] values = parameters.get(name);
+        if (values == null)
+        {
+            values = new String[] { value };
+        }
+        else
+        {
+            String[] more = new String[values.length + 1];
+            System.arraycopy(values, 0, more, 0, values.length);
+            more[values.length] = value;
+            values = more;
+        }
+        parameters.put(name, values);
+        queryString = null;
+        return this;
+    }
+
+    /**
+     * Sets a header.
+     * @param name header name
+     * @param value header value
+     * @return this request
+     */
+    public MockRequest header(String name, String value)
+    {
+        headers.put(name.toLowerCase(Locale.ROOT), value);
+        return this;
+    }
+
+    /**
+     * Joins an existing session.
+     * @param session session
+     * @return this request
+     */
+    public MockRequest session(MockSession session)
+    {
+        this.session = session;
+        if (session != null)
+        {
+            session.access();
+        }
+        return this;
+    }
+
+    /**
+     * @param locale request locale
+     * @return this request
+     */
+    public MockRequest locale(Locale locale)
+    {
+        this.locale = locale;
+        return this;
+    }
+
+    @Override
+    public Object getAttribute(String name)
+    {
+        return attributes.get(name);
+    }
+
+    @Override
+    public Enumeration<String> getAttributeNames()
+    {
+        return Collections.enumeration(attributes.keySet());
+    }
+
+    @Override
+    public void setAttribute(String name, Object value)
+    {
+        if (value == null)
+        {
+            attributes.remove(name);
+        }
+        else
+        {
+            attributes.put(name, value);
+        }
+    }
+
+    @Override
+    public void removeAttribute(String name)
+    {
+        attributes.remove(name);
+    }
+
+    @Override
+    public String getParameter(String name)
+    {
+        String[] values = parameters.get(name);
+        return values == null ? null : values[0];
+    }
+
+    @Override
+    public Map<String,String[]> getParameterMap()
+    {
+        return Collections.unmodifiableMap(parameters);
+    }
+
+    @Override
+    public Enumeration<String> getParameterNames()
+    {
+        return Collections.enumeration(parameters.keySet());
+    }
+
+    @Override
+    public String[] getParameterValues(String name)
+    {
+        return parameters.get(name);
+    }
+
+    @Override
+    public String getQueryString()
+    {
+        if (queryString == null && !parameters.isEmpty())
+        {
+            StringBuilder builder = new StringBuilder();
+            for (Map.Entry<String,String[]> entry : parameters.entrySet())
+            {
+                for (String value : entry.getValue())
+                {
+                    if (builder.length() > 0)
+                    {
+                        builder.append('&');
+                    }
+                    builder.append(entry.getKey()).append('=').append(value);
+                }
+            }
+            queryString = builder.toString();
+        }
+        return queryString;
+    }
+
+    @Override
+    public String getHeader(String name)
+    {
+        return headers.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    @Override
+    public Enumeration<String> getHeaders(String name)
+    {
+        String value = getHeader(name);
+        return value == null
+            ? Collections.<String>emptyEnumeration()
+            : Collections.enumeration(Collections.singletonList(value));
+    }
+
+    @Override
+    public Enumeration<String> getHeaderNames()
+    {
+        return Collections.enumeration(headers.keySet());
+    }
+
+    @Override
+    public HttpSession getSession(boolean create)
+    {
+        if (session == null && create)
+        {
+            session = new MockSession(servletContext);
+        }
+        return session;
+    }
+
+    @Override
+    public HttpSession getSession()
+    {
+        return getSession(true);
+    }
+
+    @Override
+    public ServletContext getServletContext()
+    {
+        return servletContext;
+    }
+
+    @Override
+    public RequestDispatcher getRequestDispatcher(String path)
+    {
+        return servletContext.getRequestDispatcher(path);
+    }
+
+    @Override
+    public String getServletPath()
+    {
+        return servletPath;
+    }
+
+    @Override
+    public String getPathInfo()
+    {
+        return pathInfo;
+    }
+
+    @Override
+    public String getContextPath()
+    {
+        return "";
+    }
+
+    @Override
+    public String getRequestURI()
+    {
+        return pathInfo == null ? servletPath : servletPath + pathInfo;
+    }
+
+    @Override
+    public StringBuffer getRequestURL()
+    {
+        return new StringBuffer("http://localhost:8080").append(getRequestURI());
+    }
+
+    @Override
+    public String getMethod()
+    {
+        return "GET";
+    }
+
+    @Override
+    public String getScheme()
+    {
+        return "http";
+    }
+
+    @Override
+    public String getServerName()
+    {
+        return "localhost";
+    }
+
+    @Override
+    public int getServerPort()
+    {
+        return 8080;
+    }
+
+    @Override
+    public Locale getLocale()
+    {
+        return locale;
+    }
+
+    @Override
+    public Enumeration<Locale> getLocales()
+    {
+        return Collections.enumeration(Collections.singletonList(locale));
+    }
+
+    @Override
+    public String getCharacterEncoding()
+    {
+        return characterEncoding;
+    }
+
+    @Override
+    public void setCharacterEncoding(String encoding)
+    {
+        characterEncoding = encoding;
+    }
+}
@@ -0,0 +1,206 @@
+package org.apache.velocity.tools.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.RequestDispatcher;
+import jakarta.servlet.Servlet;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+
+/**
+ * <p>In-process {@link RequestDispatcher}, handing included or forwarded
+ * requests to a single servlet, like the <code>*.vm</code> mapping of a
+ * webapp does. Query parameters of the dispatched path are added to
+ * the request ones.</p>
+ *
+ * @since VelocityTools 4.0
+ * @version $Id$
+ */
+public class MockRequestDispatcher implements RequestDispatcher
+{
+    private final Servlet servlet;
+    private final String servletPath;
+    private final String queryString;
+    private final Map<String,String[]> parameters = new LinkedHashMap<String,String[]>();
+
+    /**
+     * @param servlet target servlet
+     * @param path dispatched path, with an optional query string
+     */
+    public MockRequestDispatcher(Servlet servlet, String path)
+    {
+        this.servlet = servlet;
+        int query = path.indexOf('?');
+        if (query == -1)
+        {
+            servletPath = path;
+            queryString = null;
+        }
+        else
+        {
+            servletPath = path.substring(0, query);
+            queryString = path.substring(query + 1);
+            for (String pair : queryString.split("&"))
+            {
+                int eq = pair.indexOf('=');
+                String name = eq == -1 ? pair : pair.substring(0, eq);
+                String value = eq == -1 ? "" : pair.substring(eq + 1);
+                String[] values = parameters.get(name);
+                if (values == null)
+                {
+                    values = new String[] { value };
+                }
+                else
+                {
+                    String[] more = new String[values.length + 1];
+                    System.arraycopy(values, 0, more, 0, values.length);
+                    more[values.length] = value;
+                    values = more;
+                }
+                parameters.put(name, values);
+            }
+        }
+    }
+
+    @Override
+    public void forward(ServletRequest request, ServletResponse response) throws ServletException, IOException
+    {
+        response.resetBuffer();
+        servlet.service(new DispatchedRequest((HttpServletRequest)request, DispatcherType.FORWARD), response);
+        response.flushBuffer();
+    }
+
+    @Override
+    public void include(ServletRequest request, ServletResponse response) throws ServletException, IOException
+    {
+        servlet.service(new DispatchedRequest((HttpServletRequest)request, DispatcherType.INCLUDE), response);
+    }
+
+    /**
+     * Request as seen by the target servlet: the path of a forwarded request
+     * changes, while an included one keeps it and gets the
+     * <code>jakarta.servlet.include.*</code> attributes.
+     */
+    private class DispatchedRequest extends HttpServletRequestWrapper
+    {
+        private final DispatcherType type;
+
+        DispatchedRequest(HttpServletRequest request, DispatcherType type)
+        {
+            super(request);
+            this.type = type;
+        }
+
+        @Override
+        public DispatcherType getDispatcherType()
+        {
+            return type;
+        }
+
+        @Override
+        public Object getAttribute(String name)
+        {
+            if (type == DispatcherType.INCLUDE)
+            {
+                switch (name)
+                {
+                    case INCLUDE_SERVLET_PATH:
+                        return servletPath;
+                    case INCLUDE_REQUEST_URI:
+                        return getContextPath() + servletPath;
+                    case INCLUDE_CONTEXT_PATH:
+                        return getContextPath();
+                    case INCLUDE_QUERY_STRING:
+                        return queryString;
+                    case INCLUDE_PATH_INFO:
+                        return null;
+                    default:
+                        break;
+                }
+            }
+            return super.getAttribute(name);
+        }
+
+        @Override
+        public String getServletPath()
+        {
+            return type == DispatcherType.FORWARD ? servletPath : super.getServletPath();
+        }
+
+        @Override
+        public String getPathInfo()
+        {
+            return type == DispatcherType.FORWARD ? null : super.getPathInfo();
+        }
+
+        @Override
+        public String getRequestURI()
+        {
+            return type == DispatcherType.FORWARD ? getContextPath() + servletPath : super.getRequestURI();
+        }
+
+        @Override
+        public String getQueryString()
+        {
+            return type == DispatcherType.FORWARD && queryString != null ? queryString : super.getQueryString();
+        }
+
+        @Override
+        public String getParameter(String name)
+        {
+            String[] values = getParameterValues(name);
+            return values == null ? null : values[0];
+        }
+
+        @Override
+        public String[] getParameterValues(String name)
+        {
+            String[] values = parameters.get(name);
+            return values == null ? super.getParameterValues(name) : values;
+        }
+
+        @Override
+        public Map<String,String[]> getParameterMap()
+        {
+            if (parameters.isEmpty())
+            {
+                return super.getParameterMap();
+            }
+            Map<String,String[]> map = new LinkedHashMap<String,String[]>(super.getParameterMap());
+            map.putAll(parameters);
+            return Collections.unmodifiableMap(map);
+        }
+
+        @Override
+        public Enumeration<String> getParameterNames()
+        {
+            return Collections.enumeration(getParameterMap().keySet());
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package org.apache.velocity.tools.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * <p>In-process {@link HttpServletResponse}. The body is counted, and only
+ * kept when asked for, so that it does not weigh on the measures.</p>
+ *
+ * @since VelocityTools 4.0
+ * @version $Id$
+ */
+public class MockResponse extends HttpServletResponseWrapper
+{
+    private final ByteArrayOutputStream content;
+    private final Map<String,String> headers = new HashMap<String,String>();
+    private final Body body = new Body();
+    private PrintWriter writer;
+    private int status = SC_OK;
+    private String contentType;
+    private String characterEncoding = "ISO-8859-1";
+    private Locale locale = Locale.US;
+    private boolean committed = false;
+
+    public MockResponse()
+    {
+        this(false);
+    }
+
+    /**
+     * @param keepContent whether to keep the body, see {@link #getContent()}
+     */
+    public MockResponse(boolean keepContent)
+    {
+        super(Defaults.of(HttpServletResponse.class));
+        content = keepContent ? new ByteArrayOutputStream() : null;
+    }
+
+    /**
+     * @return number of body bytes written so far
+     */
+    public long getContentLength()
+    {
+        return body.count;
+    }
+
+    /**
+     * @return body, or null if not kept
+     * @throws UnsupportedEncodingException if the response encoding is not supported
+     */
+    public String getContent() throws UnsupportedEncodingException
+    {
+        if (content == null)
+        {
+            return null;
+        }
+        if (writer != null)
+        {
+            writer.flush();
+        }
+        return content.toString(characterEncoding);
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream()
+    {
+        return body;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws UnsupportedEncodingException
+    {
+        if (writer == null)
+        {
+            writer = new PrintWriter(new OutputStreamWriter(body, characterEncoding));
+        }
+        return writer;
+    }
+
+    @Override
+    public void flushBuffer()
+    {
+        if (writer != null)
+        {
+            writer.flush();
+        }
+        committed = true;
+    }
+
+    @Override
+    public boolean isCommitted()
+    {
+        return committed;
+    }
+
+    @Override
+    public void reset()
+    {
+        if (committed)
+        {
+            throw new IllegalStateException("Response already committed");
+        }
+        headers.clear();
+        status = SC_OK;
+        resetBuffer();
+    }
+
+    @Override
+    public void resetBuffer()
+    {
+        if (committed)
+        {
+            throw new IllegalStateException("Response already committed");
+        }
+        body.count = 0;
+        if (content != null)
+        {
+            content.reset();
+        }
+    }
+
+    @Override
+    public int getStatus()
+    {
+        return status;
+    }
+
+    @Override
+    public void setStatus(int status)
+    {
+        this.status = status;
+    }
+
+    @Override
+    public void sendError(int status)
+    {
+        sendError(status, null);
+    }
+
+    @Override
+    public void sendError(int status, String message)
+    {
+        this.status = status;
+        committed = true;
+    }
+
+    @Override
+    public void sendRedirect(String location)
+    {
+        status = SC_FOUND;
+        headers.put("location", location);
+        committed = true;
+    }
+
+    @Override
+    public String getContentType()
+    {
+        return contentType;
+    }
+
+    @Override
+    public void setContentType(String type)
+    {
+        contentType = type;
+        int charset = type == null ? -1 : type.toLowerCase(Locale.ROOT).indexOf("charset=");
+        if (charset != -1)
+        {
+            setCharacterEncoding(type.substring(charset + 8).trim());
+        }
+    }
+
+    @Override
+    public String getCharacterEncoding()
+    {
+        return characterEncoding;
+    }
+
+    @Override
+    public void setCharacterEncoding(String encoding)
+    {
+        if (writer == null && encoding != null)
+        {
+            characterEncoding = encoding;
+        }
+    }
+
+    @Override
+    public Locale getLocale()
+    {
+        return locale;
+    }
+
+    @Override
+    public void setLocale(Locale locale)
+    {
+        this.locale = locale;
+    }
+
+    @Override
+    public void setContentLength(int length)
+    {
+        setContentLengthLong(length);
+    }
+
+    @Override
+    public void setContentLengthLong(long length)
+    {
+        headers.put("content-length", String.valueOf(length));
+    }
+
+    @Override
+    public boolean containsHeader(String name)
+    {
+        return headers.containsKey(name.toLowerCase(Locale.ROOT));
+    }
+
+    @Override
+    public String getHeader(String name)
+    {
+        return headers.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    @Override
+    public Collection<String> getHeaderNames()
+    {
+        return Collections.unmodifiableSet(headers.keySet());
+    }
+
+    @Override
+    public void setHeader(String name, String value)
+    {
+        headers.put(name.toLowerCase(Locale.ROOT), value);
+    }
+
+    @Override
+    public void addHeader(String name, String value)
+    {
+        String previous = headers.get(name.toLowerCase(Locale.ROOT));
+        setHeader(name, previous == null ? value : previous + ", " + value);
+    }
+
+    @Override
+    public void setDateHeader(String name, long date)
+    {
+        setHeader(name, String.valueOf(date));
+    }
+
+    @Override
+    public void setIntHeader(String name, int value)
+    {
+        setHeader(name, String.valueOf(value));
+    }
+
+    @Override
+    public String encodeURL(String url)
+    {
+        return url;
+    }
+
+    @Override
+    public String encodeRedirectURL(String url)
+    {
+        return url;
+    }
+
+    /**
+     * Output stream counting, and maybe keeping, the body bytes.
+     */
+    private class Body extends ServletOutputStream
+    {
+        private long count = 0;
+
+        @Override
+        public void write(int b)
+        {
+            ++count;
+            if (content != null)
+            {
+                content.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len)
+        {
+            count += len;
+            if (content != null)
+            {
+                content.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush()
+        {
+            committed = true;
+        }
+
+        @Override
+        public boolean isReady()
+        {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener listener)
+        {
+            throw new UnsupportedOperationException("blocking stream");
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package org.apache.velocity.tools.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import jakarta.servlet.Servlet;
+import jakarta.servlet.ServletContext;
+
+/**
+ * <p>In-process {@link ServletContext}, with thread-safe attributes, init
+ * parameters, and resources read from a webapp directory, if any.
+ * Once a servlet is set, request dispatchers hand requests to it.</p>
+ *
+ * @since VelocityTools 4.0
+ * @version $Id$
+ */
+public class MockServletContext extends Defaults
+{
+    private final Map<String,Object> attributes = new ConcurrentHashMap<String,Object>();
+    private final Map<String,String> initParameters = new ConcurrentHashMap<String,String>();
+    private final File root;
+    private final ServletContext context;
+    private volatile Servlet servlet;
+
+    /**
+     * @param root webapp directory, or null
+     */
+    public MockServletContext(File root)
+    {
+        this.root = root;
+        this.context = proxy(ServletContext.class);
+    }
+
+    /**
+     * @return servlet context
+     */
+    public ServletContext getServletContext()
+    {
+        return context;
+    }
+
+    /**
+     * @return mutable init parameters
+     */
+    public Map<String,String> getInitParameters()
+    {
+        return initParameters;
+    }
+
+    /**
+     * @param servlet servlet receiving dispatched requests
+     */
+    public void setServlet(Servlet servlet)
+    {
+        this.servlet = servlet;
+    }
+
+    private File getFile(String path)
+    {
+        if (root == null || path == null || !path.startsWith("/"))
+        {
+            return null;
+        }
+        File file = new File(root, path.substring(1));
+        return file.exists() ? file : null;
+    }
+
+    @Override
+    protected Object handle(Object proxy, Method method, Object[] args) throws Exception
+    {
+        switch (method.getName())
+        {
+            case "getAttribute":
+                return attributes.get((String)args[0]);
+            case "setAttribute":
+                if (args[1] == null)
+                {
+                    attributes.remove((String)args[0]);
+                }
+                else
+                {
+                    attributes.put((String)args[0], args[1]);
+                }
+                return null;
+            case "removeAttribute":
+                attributes.remove((String)args[0]);
+                return null;
+            case "getAttributeNames":
+                return Collections.enumeration(attributes.keySet());
+            case "getInitParameter":
+                return initParameters.get((String)args[0]);
+            case "getInitParameterNames":
+                return Collections.enumeration(initParameters.keySet());
+            case "getResource":
+            {
+                File file = getFile((String)args[0]);
+                return file == null ? null : file.toURI().toURL();
+            }
+            case "getResourceAsStream":
+            {
+                File file = getFile((String)args[0]);
+                return file == null || file.isDirectory() ? null : (InputStream)new FileInputStream(file);
+            }
+            case "getRealPath":
+            {
+                File file = getFile((String)args[0]);
+                return file == null ? null : file.getAbsolutePath();
+            }
+            case "getRequestDispatcher":
+            {
+                String path = (String)args[0];
+                return servlet == null || path == null || !path.startsWith("/")
+                    ? null : new MockRequestDispatcher(servlet, path);
+            }
+            case "getResourcePaths":
+                return getResourcePaths((String)args[0]);
+            case "getContextPath":
+                return "";
+            case "getServletContextName":
+                return "benchmark";
+            case "getMajorVersion":
+                return 6;
+            default:
+                return UNHANDLED;
+        }
+    }
+
+    private Set<String> getResourcePaths(String path)
+    {
+        File dir = getFile(path);
+        if (dir == null || !dir.isDirectory())
+        {
+            return null;
+        }
+        String prefix = path.endsWith("/") ? path : path + '/';
+        Set<String> paths = new HashSet<String>();
+        for (File child : dir.listFiles())
+        {
+            paths.add(prefix + child.getName() + (child.isDirectory() ? "/" : ""));
+        }
+        return paths;
+    }
+}
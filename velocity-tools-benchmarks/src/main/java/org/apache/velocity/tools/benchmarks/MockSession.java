@@ -0,0 +1,160 @@
+package org.apache.velocity.tools.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.http.HttpSession;
+import jakarta.servlet.http.HttpSessionBindingEvent;
+import jakarta.servlet.http.HttpSessionBindingListener;
+
+/**
+ * <p>In-process {@link HttpSession}, with thread-safe attributes.</p>
+ *
+ * @since VelocityTools 4.0
+ * @version $Id$
+ */
+public class MockSession implements HttpSession
+{
+    private static final AtomicLong ids = new AtomicLong();
+
+    private final String id = "session" + ids.incrementAndGet();
+    private final long creationTime = System.currentTimeMillis();
+    private final ServletContext servletContext;
+    private final Map<String,Object> attributes = new ConcurrentHashMap<String,Object>();
+    private int maxInactiveInterval = 1800;
+    private boolean isNew = true;
+
+    /**
+     * @param servletContext servlet context
+     */
+    public MockSession(ServletContext servletContext)
+    {
+        this.servletContext = servletContext;
+    }
+
+    /**
+     * Marks the session as joined by the client.
+     */
+    public void access()
+    {
+        isNew = false;
+    }
+
+    @Override
+    public long getCreationTime()
+    {
+        return creationTime;
+    }
+
+    @Override
+    public String getId()
+    {
+        return id;
+    }
+
+    @Override
+    public long getLastAccessedTime()
+    {
+        return creationTime;
+    }
+
+    @Override
+    public ServletContext getServletContext()
+    {
+        return servletContext;
+    }
+
+    @Override
+    public void setMaxInactiveInterval(int interval)
+    {
+        maxInactiveInterval = interval;
+    }
+
+    @Override
+    public int getMaxInactiveInterval()
+    {
+        return maxInactiveInterval;
+    }
+
+    @Override
+    public Object getAttribute(String name)
+    {
+        return attributes.get(name);
+    }
+
+    @Override
+    public Enumeration<String> getAttributeNames()
+    {
+        return Collections.enumeration(attributes.keySet());
+    }
+
+    @Override
+    public void setAttribute(String name, Object value)
+    {
+        if (value == null)
+        {
+            removeAttribute(name);
+            return;
+        }
+        Object previous = attributes.put(name, value);
+        if (previous != value)
+        {
+            if (value instanceof HttpSessionBindingListener)
+            {
+                ((HttpSessionBindingListener)value).valueBound(new HttpSessionBindingEvent(this, name, value));
+            }
+            unbound(name, previous);
+        }
+    }
+
+    @Override
+    public void removeAttribute(String name)
+    {
+        unbound(name, attributes.remove(name));
+    }
+
+    private void unbound(String name, Object value)
+    {
+        if (value instanceof HttpSessionBindingListener)
+        {
+            ((HttpSessionBindingListener)value).valueUnbound(new HttpSessionBindingEvent(this, name, value));
+        }
+    }
+
+    @Override
+    public void invalidate()
+    {
+        for (String name : attributes.keySet())
+        {
+            removeAttribute(name);
+        }
+    }
+
+    @Override
+    public boolean isNew()
+    {
+        return isNew;
+    }
+}
@@ -0,0 +1,538 @@
+package org.apache.velocity.tools.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import jakarta.servlet.Servlet;
+import jakarta.servlet.ServletConfig;
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import org.apache.velocity.tools.view.VelocityView;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * <p>End-to-end rendering harness: a webapp, the showcase one by default,
+ * is served in-process by a real servlet, going through its whole
+ * lifecycle, with no container nor network involved.</p>
+ * <p>The context parameters and listeners of <code>WEB-INF/web.xml</code>
+ * are honored. A given number of worker threads, platform or virtual ones,
+ * request the pages in turn, as a given number of clients, each one keeping
+ * its session. After a warm-up, the harness reports the throughput, latency
+ * percentiles, and bytes allocated and written per request.</p>
+ * <p>Run it with <code>mvn -P harness package -pl velocity-tools-benchmarks -am
+ * -Dharness.options="..."</code>, the options being:</p>
+ * <ul>
+ *   <li><code>-webapp &lt;dir&gt;</code>: webapp directory, defaults to the showcase one</li>
+ *   <li><code>-servlet &lt;class&gt;</code>: servlet class, defaults to the showcase layout servlet</li>
+ *   <li><code>-pages &lt;a.vm,b.vm?x=y,...&gt;</code>: requested pages</li>
+ *   <li><code>-threads &lt;n&gt;</code>: concurrency, defaults to the number of processors</li>
+ *   <li><code>-virtual</code>: use virtual threads (requires Java 21)</li>
+ *   <li><code>-requests &lt;n&gt;</code> and <code>-warmup &lt;n&gt;</code>: number of
+ *   measured and warm-up requests</li>
+ *   <li><code>-clients &lt;n&gt;</code>: number of distinct sessions</li>
+ *   <li><code>-cache</code>: cache parsed templates, on top of the webapp
+ *   Velocity configuration, which usually reloads them in development</li>
+ * </ul>
+ * <p>Allocations are read from the JVM thread counters, and include
+ * those of the harness itself, which are small and constant.</p>
+ *
+ * @since VelocityTools 4.0
+ * @version $Id$
+ */
+public class ServletHarness
+{
+    /** Showcase webapp, relative to this module. */
+    public static final String SHOWCASE_WEBAPP = "../velocity-tools-examples/velocity-tools-examples-showcase/src/main/webapp";
+
+    /** Showcase servlet, mapped to <code>*.vm</code>. */
+    public static final String SHOWCASE_SERVLET = "org.apache.velocity.tools.examples.showcase.ShowcaseLayoutServlet";
+
+    /** Showcase pages rendering without external resources, nor demo.vm, which logs expected errors. */
+    public static final List<String> SHOWCASE_PAGES = Collections.unmodifiableList(Arrays.asList(
+        "/index.vm", "/browser.vm", "/collection.vm", "/date.vm", "/esc.vm", "/link.vm", "/loop.vm",
+        "/math.vm", "/number.vm", "/params.vm?foo=bar&page=2", "/sorter.vm"));
+
+    /** Velocity properties enabling the template cache. */
+    public static final String CACHE_PROPERTIES = "/org/apache/velocity/tools/benchmarks/cache.properties";
+
+    private final MockServletContext application;
+    private final Servlet servlet;
+    private final Map<String,String> initParameters;
+    private final List<ServletContextListener> listeners = new ArrayList<ServletContextListener>();
+    private MockSession[] sessions = new MockSession[0];
+
+    /**
+     * Deploys the webapp and initializes the servlet.
+     * @param webapp webapp directory
+     * @param servlet servlet, not initialized yet
+     * @throws Exception if the webapp cannot be deployed
+     */
+    public ServletHarness(File webapp, Servlet servlet) throws Exception
+    {
+        this(webapp, servlet, Collections.<String,String>emptyMap());
+    }
+
+    /**
+     * Deploys the webapp and initializes the servlet.
+     * @param webapp webapp directory
+     * @param servlet servlet, not initialized yet
+     * @param initParameters servlet init parameters
+     * @throws Exception if the webapp cannot be deployed
+     */
+    public ServletHarness(File webapp, Servlet servlet, Map<String,String> initParameters) throws Exception
+    {
+        this.application = new MockServletContext(webapp);
+        this.servlet = servlet;
+        this.initParameters = initParameters;
+        File webXml = new File(webapp, "WEB-INF/web.xml");
+        if (webXml.exists())
+        {
+            readDescriptor(webXml);
+        }
+        // servlet Velocity properties replace the conventional webapp ones, unless these are named
+        Map<String,String> contextParameters = application.getInitParameters();
+        if (initParameters.containsKey(VelocityView.PROPERTIES_KEY)
+            && !contextParameters.containsKey(VelocityView.PROPERTIES_KEY)
+            && new File(webapp, VelocityView.USER_PROPERTIES_PATH.substring(1)).exists())
+        {
+            contextParameters.put(VelocityView.PROPERTIES_KEY, VelocityView.USER_PROPERTIES_PATH);
+        }
+        ServletContextEvent event = new ServletContextEvent(application.getServletContext());
+        for (ServletContextListener listener : listeners)
+        {
+            listener.contextInitialized(event);
+        }
+        servlet.init(new Config(servlet.getClass().getSimpleName()).proxy(ServletConfig.class));
+        application.setServlet(servlet);
+    }
+
+    private void readDescriptor(File webXml) throws Exception
+    {
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(webXml);
+        NodeList params = doc.getElementsByTagName("context-param");
+        for (int i = 0; i < params.getLength(); ++i)
+        {
+            Element param = (Element)params.item(i);
+            application.getInitParameters().put(getText(param, "param-name"), getText(param, "param-value"));
+        }
+        NodeList classes = doc.getElementsByTagName("listener-class");
+        for (int i = 0; i < classes.getLength(); ++i)
+        {
+            Class<?> clazz = Class.forName(classes.item(i).getTextContent().trim());
+            if (ServletContextListener.class.isAssignableFrom(clazz))
+            {
+                listeners.add((ServletContextListener)clazz.getDeclaredConstructor().newInstance());
+            }
+        }
+    }
+
+    private static String getText(Element element, String child)
+    {
+        NodeList nodes = element.getElementsByTagName(child);
+        return nodes.getLength() == 0 ? null : nodes.item(0).getTextContent().trim();
+    }
+
+    /**
+     * @return servlet context of the webapp
+     */
+    public MockServletContext getApplication()
+    {
+        return application;
+    }
+
+    /**
+     * Serves a single request.
+     * @param page requested path, with an optional query string
+     * @param session client session, or null
+     * @param response response
+     * @return request, to get the session it may have created
+     * @throws Exception if the servlet fails
+     */
+    public MockRequest serve(String page, MockSession session, MockResponse response) throws Exception
+    {
+        int query = page.indexOf('?');
+        MockRequest request = new MockRequest(application.getServletContext(), query == -1 ? page : page.substring(0, query));
+        if (query != -1)
+        {
+            for (String pair : page.substring(query + 1).split("&"))
+            {
+                int eq = pair.indexOf('=');
+                request.param(eq == -1 ? pair : pair.substring(0, eq), eq == -1 ? "" : pair.substring(eq + 1));
+            }
+        }
+        request.header("User-Agent", "Mozilla/5.0 (X11; Linux x86_64; rv:128.0) Gecko/20100101 Firefox/128.0")
+            .header("Accept-Language", "en-US,en;q=0.5")
+            .session(session);
+        servlet.service(request, response);
+        response.flushBuffer();
+        return request;
+    }
+
+    /**
+     * Runs a series of requests.
+     * @param pages requested pages, in turn
+     * @param threads number of worker threads
+     * @param virtual whether to use virtual threads
+     * @param requests number of requests
+     * @param clients number of distinct client sessions
+     * @return measures
+     * @throws Exception if a worker thread cannot be started or is interrupted
+     */
+    public Report run(final List<String> pages, int threads, boolean virtual, final int requests, int clients) throws Exception
+    {
+        if (sessions.length != clients)
+        {
+            sessions = new MockSession[clients];
+        }
+        final long[] latencies = new long[requests];
+        final AtomicInteger next = new AtomicInteger();
+        final LongAdder errors = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(threads);
+        final CountDownLatch release = new CountDownLatch(1);
+        Runnable worker = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    start.await();
+                    int index;
+                    while ((index = next.getAndIncrement()) < requests)
+                    {
+                        long begin = System.nanoTime();
+                        if (!request(pages.get(index % pages.size()), index % sessions.length, bytes, failure))
+                        {
+                            errors.increment();
+                        }
+                        latencies[index] = System.nanoTime() - begin;
+                    }
+                    finished.countDown();
+                    // keep the thread alive until its allocations are read
+                    release.await();
+                }
+                catch (InterruptedException ie)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        ThreadFactory factory = virtual ? getVirtualThreadFactory() : new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                return new Thread(runnable);
+            }
+        };
+        for (int i = 0; i < threads; ++i)
+        {
+            factory.newThread(worker).start();
+        }
+
+        long allocatedBefore = getAllocatedBytes();
+        long begin = System.nanoTime();
+        start.countDown();
+        finished.await();
+        long elapsed = System.nanoTime() - begin;
+        long allocated = getAllocatedBytes() - allocatedBefore;
+        release.countDown();
+
+        Arrays.sort(latencies);
+        return new Report(threads, virtual, requests, errors.sum(), failure.get(), elapsed, latencies,
+                          allocated < 0 ? -1 : allocated / requests, bytes.sum() / requests);
+    }
+
+    private boolean request(String page, int client, LongAdder bytes, AtomicReference<Throwable> failure)
+    {
+        try
+        {
+            MockResponse response = new MockResponse();
+            MockRequest request = serve(page, sessions[client], response);
+            if (sessions[client] == null)
+            {
+                sessions[client] = (MockSession)request.getSession(false);
+            }
+            bytes.add(response.getContentLength());
+            return response.getStatus() < 400;
+        }
+        catch (Exception e)
+        {
+            failure.compareAndSet(null, e);
+            return false;
+        }
+    }
+
+    /**
+     * Sums the bytes allocated by all live threads, virtual threads
+     * allocations being accounted to their carrier threads.
+     */
+    private static long getAllocatedBytes()
+    {
+        java.lang.management.ThreadMXBean mxBean = ManagementFactory.getThreadMXBean();
+        if (!(mxBean instanceof com.sun.management.ThreadMXBean))
+        {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)mxBean;
+        if (!threads.isThreadAllocatedMemorySupported())
+        {
+            return -1;
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long total = 0;
+        for (long allocated : threads.getThreadAllocatedBytes(threads.getAllThreadIds()))
+        {
+            if (allocated > 0)
+            {
+                total += allocated;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Virtual threads are looked up by reflection, to keep building with Java 17.
+     */
+    private static ThreadFactory getVirtualThreadFactory()
+    {
+        try
+        {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return (ThreadFactory)factory.invoke(builder);
+        }
+        catch (ReflectiveOperationException roe)
+        {
+            throw new UnsupportedOperationException("virtual threads require Java 21 or later", roe);
+        }
+    }
+
+    /**
+     * Destroys the servlet, then the webapp.
+     */
+    public void destroy()
+    {
+        servlet.destroy();
+        ServletContextEvent event = new ServletContextEvent(application.getServletContext());
+        for (int i = listeners.size() - 1; i >= 0; --i)
+        {
+            listeners.get(i).contextDestroyed(event);
+        }
+    }
+
+    /**
+     * Servlet configuration.
+     */
+    private class Config extends Defaults
+    {
+        private final String name;
+
+        Config(String name)
+        {
+            this.name = name;
+        }
+
+        @Override
+        protected Object handle(Object proxy, Method method, Object[] args)
+        {
+            switch (method.getName())
+            {
+                case "getServletContext":
+                    return application.getServletContext();
+                case "getServletName":
+                    return name;
+                case "getInitParameter":
+                    return initParameters.get((String)args[0]);
+                case "getInitParameterNames":
+                    return Collections.enumeration(initParameters.keySet());
+                default:
+                    return UNHANDLED;
+            }
+        }
+    }
+
+    /**
+     * Measures of a run.
+     */
+    public static class Report
+    {
+        private final int threads;
+        private final boolean virtual;
+        private final int requests;
+        private final long errors;
+        private final Throwable failure;
+        private final long elapsed;
+        private final long[] latencies;
+        private final long allocatedPerRequest;
+        private final long bytesPerRequest;
+
+        Report(int threads, boolean virtual, int requests, long errors, Throwable failure, long elapsed, long[] latencies,
+               long allocatedPerRequest, long bytesPerRequest)
+        {
+            this.threads = threads;
+            this.virtual = virtual;
+            this.requests = requests;
+            this.errors = errors;
+            this.failure = failure;
+            this.elapsed = elapsed;
+            this.latencies = latencies;
+            this.allocatedPerRequest = allocatedPerRequest;
+            this.bytesPerRequest = bytesPerRequest;
+        }
+
+        /**
+         * @return number of failed requests: exceptions, and 4xx or 5xx statuses
+         */
+        public long getErrors()
+        {
+            return errors;
+        }
+
+        /**
+         * @return first exception thrown by the servlet, if any
+         */
+        public Throwable getFailure()
+        {
+            return failure;
+        }
+
+        /**
+         * @return requests per second
+         */
+        public double getThroughput()
+        {
+            return requests * 1e9 / elapsed;
+        }
+
+        /**
+         * @param percentile percentile, between 0 and 100
+         * @return latency in nanoseconds
+         */
+        public long getLatency(double percentile)
+        {
+            if (latencies.length == 0)
+            {
+                return 0;
+            }
+            int index = (int)Math.ceil(percentile / 100 * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(latencies.length - 1, index))];
+        }
+
+        /**
+         * @return bytes allocated per request, or -1 if the JVM cannot tell
+         */
+        public long getAllocatedPerRequest()
+        {
+            return allocatedPerRequest;
+        }
+
+        /**
+         * @return response bytes per request
+         */
+        public long getBytesPerRequest()
+        {
+            return bytesPerRequest;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format(Locale.ROOT,
+                "%d requests, %d %s threads, %d errors%n"
+                + "throughput  %.1f req/s%n"
+                + "latency     p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, p99.9 %.3f ms, max %.3f ms%n"
+                + "allocated   %d bytes/req%n"
+                + "written     %d bytes/req",
+                requests, threads, virtual ? "virtual" : "platform", errors, getThroughput(),
+                getLatency(50) / 1e6, getLatency(90) / 1e6, getLatency(99) / 1e6, getLatency(99.9) / 1e6,
+                getLatency(100) / 1e6, allocatedPerRequest, bytesPerRequest)
+                + (failure == null ? "" : String.format("%nfirst error %s", failure));
+        }
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        Map<String,String> options = new HashMap<String,String>();
+        for (int i = 0; i < args.length; ++i)
+        {
+            if (!args[i].startsWith("-"))
+            {
+                throw new IllegalArgumentException("unexpected argument: " + args[i]);
+            }
+            String name = args[i].substring(1);
+            boolean flag = name.equals("virtual") || name.equals("cache");
+            if (!flag && i + 1 == args.length)
+            {
+                throw new IllegalArgumentException("missing value for option: " + args[i]);
+            }
+            options.put(name, flag ? "true" : args[++i]);
+        }
+        File webapp = new File(options.getOrDefault("webapp", SHOWCASE_WEBAPP));
+        Servlet servlet = (Servlet)Class.forName(options.getOrDefault("servlet", SHOWCASE_SERVLET))
+            .getDeclaredConstructor().newInstance();
+        List<String> pages = options.containsKey("pages")
+            ? Arrays.asList(options.get("pages").split(",")) : SHOWCASE_PAGES;
+        int threads = Integer.parseInt(options.getOrDefault("threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+        boolean virtual = options.containsKey("virtual");
+        int requests = Integer.parseInt(options.getOrDefault("requests", "20000"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "5000"));
+        int clients = Integer.parseInt(options.getOrDefault("clients", "100"));
+
+        Map<String,String> initParameters = new HashMap<String,String>();
+        if (options.containsKey("cache"))
+        {
+            initParameters.put(VelocityView.PROPERTIES_KEY, CACHE_PROPERTIES);
+        }
+        ServletHarness harness = new ServletHarness(webapp, servlet, initParameters);
+        try
+        {
+            System.out.println("# " + servlet.getClass().getName() + " serving " + webapp.getCanonicalPath());
+            System.out.println("# warm-up");
+            System.out.println(harness.run(pages, threads, virtual, warmup, clients));
+            System.out.println("# measure");
+            System.out.println(harness.run(pages, threads, virtual, requests, clients));
+        }
+        finally
+        {
+            harness.destroy();
+        }
+    }
+}
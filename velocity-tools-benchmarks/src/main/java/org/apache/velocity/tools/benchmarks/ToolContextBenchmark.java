@@ -0,0 +1,133 @@
+package org.apache.velocity.tools.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.tools.ToolContext;
+import org.apache.velocity.tools.ToolInfo;
+import org.apache.velocity.tools.ToolManager;
+import org.apache.velocity.tools.Toolbox;
+import org.apache.velocity.tools.config.ConfigurationUtils;
+import org.apache.velocity.tools.generic.EscapeTool;
+import org.apache.velocity.tools.generic.LinkTool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>JMH benchmarks of tool lookups through a {@link ToolContext} configured
+ * with the default generic tools, and of the underlying {@link Toolbox} and
+ * {@link ToolInfo} calls:</p>
+ * <ul>
+ *   <li><code>applicationTool</code>: lookup of an already created application tool</li>
+ *   <li><code>requestTool</code>: first lookup of a request tool in a new context, as each request does</li>
+ *   <li><code>localValue</code> and <code>miss</code>: lookups of a context value, and of an unknown key</li>
+ *   <li><code>toolboxGet</code>: direct lookup in the application toolbox</li>
+ *   <li><code>toolInfoCreate</code> and <code>toolInfoCreateConfigurable</code>: tool instantiation
+ *   and configuration</li>
+ * </ul>
+ *
+ * @since VelocityTools 4.0
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ToolContextBenchmark
+{
+    private ToolManager manager;
+    private ToolContext context;
+    private Toolbox toolbox;
+    private ToolInfo escape;
+    private ToolInfo link;
+    private Map<String,Object> properties;
+
+    @Setup
+    public void setup()
+    {
+        manager = new ToolManager(false, true);
+        manager.configure(ConfigurationUtils.getGenericTools());
+        manager.setVelocityEngine(new VelocityEngine());
+        context = manager.createContext();
+        context.put("title", "VelocityTools Showcase");
+        context.get("esc");
+        toolbox = manager.getApplicationToolbox();
+        escape = new ToolInfo("esc", EscapeTool.class);
+        link = new ToolInfo("link", LinkTool.class);
+        link.putProperty(LinkTool.URI_KEY, "http://localhost:8080/showcase/index.vm");
+        properties = new HashMap<String,Object>();
+    }
+
+    @Benchmark
+    public Object applicationTool()
+    {
+        return context.get("esc");
+    }
+
+    @Benchmark
+    public Object requestTool()
+    {
+        return manager.createContext().get("link");
+    }
+
+    @Benchmark
+    public Object localValue()
+    {
+        return context.get("title");
+    }
+
+    @Benchmark
+    public Object miss()
+    {
+        return context.get("missing");
+    }
+
+    @Benchmark
+    public Object toolboxGet()
+    {
+        return toolbox.get("math");
+    }
+
+    @Benchmark
+    public Object toolInfoCreate()
+    {
+        return escape.create(properties);
+    }
+
+    @Benchmark
+    public Object toolInfoCreateConfigurable()
+    {
+        return link.create(properties);
+    }
+}
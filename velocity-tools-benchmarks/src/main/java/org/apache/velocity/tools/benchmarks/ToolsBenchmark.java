@@ -0,0 +1,178 @@
+package org.apache.velocity.tools.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.velocity.tools.generic.CollectionTool;
+import org.apache.velocity.tools.generic.DateTool;
+import org.apache.velocity.tools.generic.EscapeTool;
+import org.apache.velocity.tools.generic.FormatConfig;
+import org.apache.velocity.tools.generic.NumberTool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>JMH benchmarks of the hot tool methods, configured like in the showcase
+ * <code>tools.xml</code>: date format <code>yyyy-MM-dd</code> and number format
+ * <code>#0.0</code>. The escaped text and the sorted items mimic the showcase
+ * pages. See also <code>LinkToolBenchmark</code>.</p>
+ *
+ * @since VelocityTools 4.0
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ToolsBenchmark
+{
+    private static final String TEXT =
+        "<p>The <b>EscapeTool</b> escapes \"special\" characters & symbols, like <code>$esc.html($text)</code>, "
+        + "so that user input such as <script>alert('xss')</script> is rendered safely.</p>";
+
+    private static final String PLAIN_TEXT =
+        "Welcome to the VelocityTools showcase, which demonstrates each of the generic and view tools";
+
+    private EscapeTool esc;
+    private DateTool date;
+    private NumberTool number;
+    private CollectionTool collection;
+    private Date now;
+    private Double price;
+    private List<Item> items;
+
+    /**
+     * Sorted bean.
+     */
+    public static class Item
+    {
+        private final String name;
+        private final int price;
+
+        Item(String name, int price)
+        {
+            this.name = name;
+            this.price = price;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public int getPrice()
+        {
+            return price;
+        }
+    }
+
+    @Setup
+    public void setup()
+    {
+        esc = new EscapeTool();
+        date = new DateTool();
+        Map<String,Object> config = new HashMap<String,Object>();
+        config.put(FormatConfig.FORMAT_KEY, "yyyy-MM-dd");
+        date.configure(config);
+        number = new NumberTool();
+        config.put(FormatConfig.FORMAT_KEY, "#0.0");
+        number.configure(config);
+        collection = new CollectionTool();
+
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(2024, Calendar.MARCH, 14, 15, 9, 26);
+        now = calendar.getTime();
+        price = 1234.5678;
+
+        Random random = new Random(42);
+        items = new ArrayList<Item>();
+        for (int i = 0; i < 50; ++i)
+        {
+            items.add(new Item("item" + random.nextInt(1000), random.nextInt(100)));
+        }
+    }
+
+    @Benchmark
+    public String escapeHtml()
+    {
+        return esc.html(TEXT);
+    }
+
+    @Benchmark
+    public String escapeHtmlNothingToEscape()
+    {
+        return esc.html(PLAIN_TEXT);
+    }
+
+    @Benchmark
+    public String dateFormat()
+    {
+        return date.format(now);
+    }
+
+    @Benchmark
+    public String dateFormatStyle()
+    {
+        return date.format("medium", now);
+    }
+
+    @Benchmark
+    public String numberFormat()
+    {
+        return number.format(price);
+    }
+
+    @Benchmark
+    public String numberFormatCurrency()
+    {
+        return number.format("currency", price);
+    }
+
+    @Benchmark
+    public Collection<?> sortByProperty()
+    {
+        return collection.sort(items, "name");
+    }
+
+    @Benchmark
+    public Collection<?> sortByProperties()
+    {
+        return collection.sort(items, List.of("price:desc", "name"));
+    }
+}
@@ -0,0 +1,135 @@
+package org.apache.velocity.tools.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.tools.config.ConfigurationUtils;
+import org.apache.velocity.tools.view.ViewToolContext;
+import org.apache.velocity.tools.view.ViewToolManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>JMH benchmarks of {@link ViewToolContext} lookups, with the default
+ * generic and view tools, on an in-process request carrying parameters and
+ * a session, like the showcase <code>params.vm</code> page:</p>
+ * <ul>
+ *   <li><code>createContext</code>: per-request context creation, toolboxes publication included</li>
+ *   <li><code>requestTool</code>: first lookup of a request tool in a new context</li>
+ *   <li><code>cachedTool</code>: lookup of an already created tool</li>
+ *   <li><code>requestAttribute</code>, <code>sessionAttribute</code> and <code>applicationAttribute</code>:
+ *   lookups falling back to the servlet API attributes</li>
+ *   <li><code>miss</code>: lookup of an unknown key, going through all scopes</li>
+ * </ul>
+ *
+ * @since VelocityTools 4.0
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ViewToolContextBenchmark
+{
+    private MockServletContext application;
+    private ViewToolManager manager;
+    private MockSession session;
+    private MockRequest request;
+    private ViewToolContext context;
+
+    @Setup
+    public void setup()
+    {
+        application = new MockServletContext(null);
+        application.getServletContext().setAttribute("appName", "showcase");
+        manager = new ViewToolManager(application.getServletContext(), false, true);
+        manager.configure(ConfigurationUtils.getDefaultTools());
+        manager.setVelocityEngine(new VelocityEngine());
+        session = new MockSession(application.getServletContext());
+        session.setAttribute("user", "jdoe");
+        request = newRequest();
+        context = manager.createContext(request, null);
+        context.get("params");
+    }
+
+    private MockRequest newRequest()
+    {
+        MockRequest req = new MockRequest(application.getServletContext(), "/params.vm");
+        req.param("foo", "bar").param("page", "3").param("tags", "a").param("tags", "b");
+        req.header("User-Agent", "Mozilla/5.0 (X11; Linux x86_64; rv:128.0) Gecko/20100101 Firefox/128.0");
+        req.session(session);
+        req.setAttribute("layout", "Default.vm");
+        return req;
+    }
+
+    @Benchmark
+    public Object createContext()
+    {
+        return manager.createContext(newRequest(), null);
+    }
+
+    @Benchmark
+    public Object requestTool()
+    {
+        return manager.createContext(newRequest(), null).get("params");
+    }
+
+    @Benchmark
+    public Object cachedTool()
+    {
+        return context.get("params");
+    }
+
+    @Benchmark
+    public Object requestAttribute()
+    {
+        return context.get("layout");
+    }
+
+    @Benchmark
+    public Object sessionAttribute()
+    {
+        return context.get("user");
+    }
+
+    @Benchmark
+    public Object applicationAttribute()
+    {
+        return context.get("appName");
+    }
+
+    @Benchmark
+    public Object miss()
+    {
+        return context.get("missing");
+    }
+}
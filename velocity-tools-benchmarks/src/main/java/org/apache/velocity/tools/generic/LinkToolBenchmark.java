@@ -0,0 +1,155 @@
+package org.apache.velocity.tools.generic;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>JMH benchmarks of {@link LinkTool} rendering, over scenarios taken from
+ * <code>LinkToolTests</code>. The <code>legacy</code> variants render through
+ * {@link URI} like {@link LinkTool#toString()} used to.</p>
+ * <p>Run it with:</p>
+ * <pre>
+ * mvn -P benchmark verify -Djmh.include=LinkToolBenchmark
+ * </pre>
+ *
+ * @since VelocityTools 4.0
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LinkToolBenchmark
+{
+    private LinkTool base;
+    private LinkTool relative;
+    private LinkTool withParams;
+    private LinkTool withAnchor;
+
+    @Setup
+    public void setup()
+    {
+        Map<String,Object> props = new HashMap<String,Object>();
+        props.put(LinkTool.URI_KEY, "http://velocity.apache.org/tools/devel/index.html");
+        base = new LinkTool();
+        base.configure(props);
+        relative = base.relative("/foo/bar.vm");
+        withParams = base.path("/foo").param("q", "a:b c").param("page", 3).param("sort", "name");
+        withAnchor = withParams.anchor("a(b, c)");
+    }
+
+    private static String legacy(LinkTool link)
+    {
+        URI uri = link.createURI();
+        if (uri == null)
+        {
+            return null;
+        }
+        return link.query != null ? link.decodeQueryPercents(uri.toString()) : uri.toString();
+    }
+
+    @Benchmark
+    public String absolute()
+    {
+        return base.toString();
+    }
+
+    @Benchmark
+    public String absoluteLegacy()
+    {
+        return legacy(base);
+    }
+
+    @Benchmark
+    public String relativePath()
+    {
+        return relative.toString();
+    }
+
+    @Benchmark
+    public String relativePathLegacy()
+    {
+        return legacy(relative);
+    }
+
+    @Benchmark
+    public String params()
+    {
+        return withParams.toString();
+    }
+
+    @Benchmark
+    public String paramsLegacy()
+    {
+        return legacy(withParams);
+    }
+
+    @Benchmark
+    public String anchor()
+    {
+        return withAnchor.toString();
+    }
+
+    @Benchmark
+    public String anchorLegacy()
+    {
+        return legacy(withAnchor);
+    }
+
+    @Benchmark
+    public String fluentParam()
+    {
+        return base.param("id", 42).anchor("top").toString();
+    }
+
+    @Benchmark
+    public String fluentParamLegacy()
+    {
+        return legacy(base.param("id", 42).anchor("top"));
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        Options options = new OptionsBuilder()
+            .include(LinkToolBenchmark.class.getSimpleName())
+            .build();
+        new Runner(options).run();
+    }
+}
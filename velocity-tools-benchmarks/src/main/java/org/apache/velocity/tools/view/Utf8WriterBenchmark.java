@@ -0,0 +1,149 @@
+package org.apache.velocity.tools.view;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>JMH throughput benchmarks of the {@link VelocityViewServlet} output paths,
+ * feeding a page in {@link VelocityWriterPool#MIN_BUFFER_SIZE} chunks, like the
+ * {@link org.apache.velocity.io.VelocityWriter} does, to a discarding stream:</p>
+ * <ul>
+ *   <li><code>writer</code>: container like {@link PrintWriter} over a UTF-8 {@link OutputStreamWriter}</li>
+ *   <li><code>stringBuffer</code>: <code>bufferOutput</code> mode, through a {@link StringWriter}</li>
+ *   <li><code>utf8</code> and <code>utf8Buffer</code>: the same with <code>directOutput</code>,
+ *   through a {@link Utf8Writer}</li>
+ * </ul>
+ * <p>Run it with the following command; the GC profiler reports allocations per operation
+ * (<code>gc.alloc.rate.norm</code>):</p>
+ * <pre>
+ * mvn -P benchmark verify -Djmh.include=Utf8WriterBenchmark -Djmh.options="-prof gc"
+ * </pre>
+ *
+ * @since VelocityTools 4.0
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Utf8WriterBenchmark
+{
+    /** Page size, in characters */
+    @Param({ "2000", "50000" })
+    public int size;
+
+    /** Proportion of non-ASCII characters, in percents */
+    @Param({ "0", "10" })
+    public int accents;
+
+    private char[] page;
+    private OutputStream sink;
+
+    @Setup
+    public void setup()
+    {
+        page = new char[size];
+        for (int i = 0; i < size; ++i)
+        {
+            page[i] = i % 100 < accents ? '\u00e9' : (char)('a' + i % 26);
+        }
+        sink = OutputStream.nullOutputStream();
+    }
+
+    private void render(Writer writer) throws IOException
+    {
+        int chunk = VelocityWriterPool.MIN_BUFFER_SIZE;
+        for (int off = 0; off < size; off += chunk)
+        {
+            writer.write(page, off, Math.min(chunk, size - off));
+        }
+        writer.flush();
+    }
+
+    @Benchmark
+    public void writer() throws IOException
+    {
+        render(new PrintWriter(new OutputStreamWriter(sink, StandardCharsets.UTF_8)));
+    }
+
+    @Benchmark
+    public void stringBuffer() throws IOException
+    {
+        StringWriter buffer = new StringWriter();
+        render(buffer);
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(sink, StandardCharsets.UTF_8));
+        writer.write(buffer.toString());
+        writer.flush();
+    }
+
+    @Benchmark
+    public void utf8() throws IOException
+    {
+        Utf8Writer writer = new Utf8Writer(sink);
+        render(writer);
+        writer.close();
+    }
+
+    @Benchmark
+    public void utf8Buffer(Blackhole blackhole) throws IOException
+    {
+        Utf8Writer writer = new Utf8Writer();
+        render(writer);
+        blackhole.consume(writer.size());
+        writer.writeTo(sink);
+        writer.close();
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        Options options = new OptionsBuilder()
+            .include(Utf8WriterBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(options).run();
+    }
+}
@@ -21,6 +21,8 @@ package org.apache.velocity.tools;
 
 import java.io.InputStream;
 import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -38,6 +40,8 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Predicate;
 
 import org.apache.velocity.util.ArrayIterator;
@@ -76,6 +80,84 @@ public class ClassUtils
         }
     }
 
+    /**
+     * Cache of resolved classes and known misses, keyed by the thread context
+     * classloader in effect at lookup time. Both the loaders and the resolved
+     * classes are only weakly referenced, so that a redeployed webapp
+     * does not keep its old classloader alive through this cache.
+     */
+    private static final Map<ClassLoader, Map<String, Reference<Class>>> classCache =
+        Collections.synchronizedMap(new WeakHashMap<ClassLoader, Map<String, Reference<Class>>>());
+
+    /**
+     * How long a miss is remembered, in milliseconds, since a class
+     * may become loadable later.
+     */
+    private static final long MISS_TTL = 60000L;
+
+    /**
+     * Number of cached entries per classloader above which misses are
+     * no longer remembered, since class names may come from user input.
+     */
+    private static final int MAX_CACHED = 10000;
+
+    /**
+     * Marker for a class name which could not be resolved, until it expires.
+     */
+    private static class Miss extends WeakReference<Class>
+    {
+        private final long expiry = System.currentTimeMillis() + MISS_TTL;
+
+        Miss()
+        {
+            super(null);
+        }
+
+        boolean isExpired(long now)
+        {
+            return now >= expiry;
+        }
+    }
+
+    /**
+     * Lightweight exception thrown for cached misses, to avoid filling
+     * in a stack trace for each repeated lookup of a missing class.
+     */
+    private static class CachedClassNotFoundException extends ClassNotFoundException
+    {
+        private static final long serialVersionUID = 1L;
+
+        CachedClassNotFoundException(String name)
+        {
+            super(name);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace()
+        {
+            return this;
+        }
+    }
+
+    private static Map<String, Reference<Class>> getClassCache()
+    {
+        ClassLoader key = getThreadContextLoader();
+        if (key == null)
+        {
+            key = getClassLoader();
+        }
+        synchronized (classCache)
+        {
+            Map<String, Reference<Class>> cache = classCache.get(key);
+            if (cache == null)
+            {
+                cache = new ConcurrentHashMap<String, Reference<Class>>();
+                classCache.put(key, cache);
+            }
+            return cache;
+        }
+    }
+
     /**
      * Load a class with a given name.
      * It will try to load the class in the following order:
@@ -84,12 +166,64 @@ public class ClassUtils
      * <li>Using the basic {@link Class#forName(java.lang.String) }
      * <li>From {@link ClassUtils}.class.getClassLoader()
      * </ul>
+     * Results are cached per thread context classloader. Misses are only
+     * remembered for a minute, and only while the cache is not too big.
      *
      * @param name Fully qualified class name to be loaded
      * @return Class object
      * @exception ClassNotFoundException if the class cannot be found
      */
     public static Class getClass(String name) throws ClassNotFoundException
+    {
+        Map<String, Reference<Class>> cache = getClassCache();
+        Reference<Class> ref = cache.get(name);
+        if (ref instanceof Miss)
+        {
+            if (!((Miss)ref).isExpired(System.currentTimeMillis()))
+            {
+                throw new CachedClassNotFoundException(name);
+            }
+            cache.remove(name, ref);
+        }
+        else if (ref != null)
+        {
+            Class foundClass = ref.get();
+            if (foundClass != null)
+            {
+                return foundClass;
+            }
+        }
+        try
+        {
+            Class foundClass = loadClass(name);
+            cache.put(name, new WeakReference<Class>(foundClass));
+            return foundClass;
+        }
+        catch (ClassNotFoundException cnfe)
+        {
+            if (cache.size() >= MAX_CACHED)
+            {
+                long now = System.currentTimeMillis();
+                cache.values().removeIf(miss -> miss instanceof Miss && ((Miss)miss).isExpired(now));
+            }
+            if (cache.size() < MAX_CACHED)
+            {
+                cache.put(name, new Miss());
+            }
+            throw cnfe;
+        }
+    }
+
+    /**
+     * Clear the resolved classes cache for the current thread context classloader.
+     */
+    public static void clearClassCache()
+    {
+        ClassLoader key = getThreadContextLoader();
+        classCache.remove(key == null ? getClassLoader() : key);
+    }
+
+    private static Class loadClass(String name) throws ClassNotFoundException
     {
         Class foundClass = null;
         try
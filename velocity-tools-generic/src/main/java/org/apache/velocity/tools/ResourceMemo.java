@@ -0,0 +1,183 @@
+package org.apache.velocity.tools;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * <p>Request scoped memo of imported contents, so that a URL or resource read
+ * several times while rendering a page is only loaded once. Each
+ * {@link ToolContext} provides one to its tools under the
+ * {@link ToolContext#RESOURCE_MEMO_KEY} tool property.</p>
+ * <p>Loads are single-flight: concurrent renderings asking for the same key
+ * wait for the first load rather than starting their own. Failed loads are
+ * not remembered.</p>
+ *
+ * @since VelocityTools 4.0
+ * @version $Id$
+ */
+public class ResourceMemo
+{
+    /**
+     * Loader of a content.
+     */
+    public interface Loader
+    {
+        /**
+         * @return loaded content, which may be null
+         * @throws IOException if the content could not be loaded
+         */
+        String load() throws IOException;
+    }
+
+    private final ConcurrentHashMap<String,CompletableFuture<String>> contents =
+        new ConcurrentHashMap<String,CompletableFuture<String>>();
+
+    /**
+     * Returns the content of the given key, loading it if needed.
+     * @param key memo key, see {@link #urlKey(String)} and {@link #resourceKey(String)}
+     * @param loader content loader
+     * @return content
+     * @throws IOException if thrown by the loader, possibly in another thread
+     */
+    public String get(String key, Loader loader) throws IOException
+    {
+        CompletableFuture<String> content = contents.get(key);
+        if (content == null)
+        {
+            CompletableFuture<String> loading = new CompletableFuture<String>();
+            content = contents.putIfAbsent(key, loading);
+            if (content == null)
+            {
+                try
+                {
+                    String value = loader.load();
+                    loading.complete(value);
+                    return value;
+                }
+                catch (IOException | RuntimeException | Error e)
+                {
+                    // let the next call try again
+                    contents.remove(key, loading);
+                    loading.completeExceptionally(e);
+                    throw e;
+                }
+            }
+        }
+        try
+        {
+            return content.get();
+        }
+        catch (InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for " + key, ie);
+        }
+        catch (ExecutionException ee)
+        {
+            throw new IOException(ee.getCause().getMessage(), ee.getCause());
+        }
+    }
+
+    /**
+     * @return number of contents loaded or being loaded
+     */
+    public int size()
+    {
+        return contents.size();
+    }
+
+    /**
+     * Builds the key of an URL, whose scheme and host are lowercased,
+     * whose path is normalized, and whose fragment is dropped.
+     * @param url URL
+     * @return memo key
+     */
+    public static String urlKey(String url)
+    {
+        String key = url.trim();
+        try
+        {
+            URI uri = new URI(key).normalize();
+            if (uri.isOpaque())
+            {
+                key = uri.getScheme().toLowerCase(Locale.ROOT) + ':' + uri.getRawSchemeSpecificPart();
+            }
+            else
+            {
+                StringBuilder builder = new StringBuilder();
+                if (uri.getScheme() != null)
+                {
+                    builder.append(uri.getScheme().toLowerCase(Locale.ROOT)).append(':');
+                }
+                if (uri.getRawAuthority() != null)
+                {
+                    builder.append("//");
+                    if (uri.getHost() != null)
+                    {
+                        if (uri.getRawUserInfo() != null)
+                        {
+                            builder.append(uri.getRawUserInfo()).append('@');
+                        }
+                        builder.append(uri.getHost().toLowerCase(Locale.ROOT));
+                        if (uri.getPort() != -1)
+                        {
+                            builder.append(':').append(uri.getPort());
+                        }
+                    }
+                    else
+                    {
+                        builder.append(uri.getRawAuthority());
+                    }
+                }
+                if (uri.getRawPath() != null)
+                {
+                    builder.append(uri.getRawPath());
+                }
+                if (uri.getRawQuery() != null)
+                {
+                    builder.append('?').append(uri.getRawQuery());
+                }
+                key = builder.toString();
+            }
+        }
+        catch (URISyntaxException use)
+        {
+            // keep it as is
+        }
+        return "url:" + key;
+    }
+
+    /**
+     * Builds the key of a local resource.
+     * @param resource resource name
+     * @return memo key
+     */
+    public static String resourceKey(String resource)
+    {
+        return "resource:" + resource.trim();
+    }
+}
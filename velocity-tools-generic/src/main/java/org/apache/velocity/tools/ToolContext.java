@@ -47,6 +47,12 @@ public class ToolContext implements Context
     public static final String LOG_KEY = "log";
     public static final String TOOLKEY_KEY = "key";
     public static final String CATCH_EXCEPTIONS_KEY = "catchExceptions";
+    /**
+     * Key of the {@link ResourceMemo} tool property, shared by
+     * the request scoped tools importing resources.
+     * @since VelocityTools 4.0
+     */
+    public static final String RESOURCE_MEMO_KEY = "resourceMemo";
 
     private List<Toolbox> toolboxes = new ArrayList<Toolbox>();
     // this is meant solely for tool setup,
@@ -60,6 +66,8 @@ public class ToolContext implements Context
     {
         // add this as a common tool property
         putToolProperty(CONTEXT_KEY, this);
+        // along with a memo of the imported resources
+        putToolProperty(RESOURCE_MEMO_KEY, new ResourceMemo());
     }
 
     /**
@@ -201,6 +209,28 @@ public class ToolContext implements Context
         }
     }
 
+    /**
+     * Makes the given map the storage of the values put in this context,
+     * so that an existing set of values can be exposed without copying them.
+     * Values put in this context beforehand are carried over unless the given
+     * map has a value for the same key; values put afterwards, as well as
+     * removals, will go to the given map.
+     * @param values backing map of the local values
+     * @since VelocityTools 4.0
+     */
+    public void setLocalContext(Map<String,Object> values)
+    {
+        if (values == null)
+        {
+            throw new NullPointerException("local context map cannot be null");
+        }
+        for (Map.Entry<String,Object> entry : localContext.entrySet())
+        {
+            values.putIfAbsent(entry.getKey(), entry.getValue());
+        }
+        localContext = values;
+    }
+
     public Object put(String key, Object value)
     {
         return localContext.put(key, value);
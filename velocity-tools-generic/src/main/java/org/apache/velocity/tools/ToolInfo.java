@@ -25,6 +25,8 @@ import java.util.HashMap;
 import java.util.Map;
 import org.apache.commons.beanutils.PropertyUtils;
 import org.apache.velocity.tools.config.SkipSetters;
+import org.apache.velocity.tools.jfr.FlightRecorder;
+import org.apache.velocity.tools.jfr.ToolCreationEvent;
 
 /**
  * Manages data needed to create instances of a tool. New instances
@@ -317,6 +319,13 @@ public class ToolInfo implements java.io.Serializable
      */
     public Object create(Map<String,Object> dynamicProperties)
     {
+        ToolCreationEvent event = null;
+        if (FlightRecorder.isAvailable())
+        {
+            event = new ToolCreationEvent();
+            event.begin();
+        }
+
         /* Get the tool instance */
         Object tool = newInstance();
 
@@ -335,6 +344,17 @@ public class ToolInfo implements java.io.Serializable
 
         // perform the actual configuration of the new tool
         configure(tool, props);
+
+        if (event != null)
+        {
+            event.end();
+            if (event.shouldCommit())
+            {
+                event.key = getKey();
+                event.toolClass = getToolClass();
+                event.commit();
+            }
+        }
         return tool;
     }
 
@@ -24,6 +24,7 @@ import java.util.Map;
 import org.apache.velocity.app.VelocityEngine;
 import org.apache.velocity.tools.config.ConfigurationUtils;
 import org.apache.velocity.tools.config.FactoryConfiguration;
+import org.apache.velocity.tools.metrics.Metrics;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,6 +46,7 @@ public class ToolManager
     protected Logger log = null;
     private Toolbox application;
     private boolean userOverwrite = true;
+    private Metrics metrics = Metrics.NONE;
 
     /**
      * Constructs an instance already configured to use the default tools and
@@ -210,6 +212,31 @@ public class ToolManager
         return this.userOverwrite;
     }
 
+    /**
+     * Sets the metrics receiving toolbox creations, tool creations and
+     * tool cache hits. The default is {@link Metrics#NONE}.
+     * @param metrics metrics
+     * @since VelocityTools 4.0
+     */
+    public void setMetrics(Metrics metrics)
+    {
+        this.metrics = metrics == null ? Metrics.NONE : metrics;
+        if (this.application != null)
+        {
+            this.application.setMetrics(this.metrics);
+        }
+    }
+
+    /**
+     * Get the metrics receiving toolbox and tool creations
+     * @return metrics
+     * @since VelocityTools 4.0
+     */
+    public Metrics getMetrics()
+    {
+        return this.metrics;
+    }
+
     /**
      * Get logger
      * @return logger
@@ -313,7 +340,15 @@ public class ToolManager
      */
     protected Toolbox createToolbox(String scope)
     {
-        return this.factory.createToolbox(scope);
+        if (!this.metrics.isEnabled())
+        {
+            return this.factory.createToolbox(scope);
+        }
+        long start = System.nanoTime();
+        Toolbox toolbox = this.factory.createToolbox(scope);
+        this.metrics.toolboxCreated(scope, System.nanoTime() - start);
+        toolbox.setMetrics(this.metrics);
+        return toolbox;
     }
 
     /**
@@ -24,6 +24,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import org.apache.velocity.tools.metrics.Metrics;
 
 /**
  * <p>Instances of this class are typically created by a {@link ToolboxFactory}
@@ -35,6 +36,9 @@ import java.util.Set;
  * </p><p>
  * When a Toolbox creates a tool instance asked of it (see {@link #get}),
  * it will cache that instance for future requests.
+ * </p><p>
+ * Tool creations and cache hits are reported to the {@link Metrics}
+ * set with {@link #setMetrics(Metrics)}, if any.
  * </p>
  *
  * @author Nathan Bubna
@@ -52,6 +56,7 @@ public class Toolbox implements java.io.Serializable
     private Map<String,ToolInfo> infoMap;
     private Map<String,Object> properties;
     private Map<String,Object> cache;
+    private transient Metrics metrics;
 
     public Toolbox(Map<String,ToolInfo> toolInfo)
     {
@@ -85,6 +90,26 @@ public class Toolbox implements java.io.Serializable
         return properties;
     }
 
+    /**
+     * Sets the metrics receiving tool creations and cache hits.
+     * They are not serialized along with the toolbox.
+     * @param metrics metrics, or null
+     * @since VelocityTools 4.0
+     */
+    public void setMetrics(Metrics metrics)
+    {
+        this.metrics = metrics == null || !metrics.isEnabled() ? null : metrics;
+    }
+
+    /**
+     * @return metrics receiving tool creations and cache hits, or null
+     * @since VelocityTools 4.0
+     */
+    public Metrics getMetrics()
+    {
+        return metrics;
+    }
+
     public Object get(String key)
     {
         return get(key, null, null);
@@ -117,6 +142,10 @@ public class Toolbox implements java.io.Serializable
                 }
             }
         }
+        else if (metrics != null)
+        {
+            metrics.toolCacheHit(key);
+        }
         return tool;
     }
 
@@ -155,7 +184,17 @@ public class Toolbox implements java.io.Serializable
         ToolInfo info = infoMap.get(key);
         if (info != null && (path == null || hasPermission(info, path)))
         {
-            Object tool = info.create(context);
+            Object tool;
+            if (metrics == null)
+            {
+                tool = info.create(context);
+            }
+            else
+            {
+                long start = System.nanoTime();
+                tool = info.create(context);
+                metrics.toolCreated(key, info.getToolClass(), System.nanoTime() - start);
+            }
             if (cache == null)
             {
                 cache = new HashMap<String,Object>();
@@ -236,6 +275,7 @@ public class Toolbox implements java.io.Serializable
         }
         Toolbox combination = new Toolbox(info, props);
         combination.cacheData(data);
+        combination.setMetrics(metrics);
         return combination;
     }
 
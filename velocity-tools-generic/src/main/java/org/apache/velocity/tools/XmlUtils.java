@@ -19,6 +19,8 @@
 package org.apache.velocity.tools;
 
 import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.tools.jfr.FlightRecorder;
+import org.apache.velocity.tools.jfr.XmlParseEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Attr;
@@ -366,13 +368,38 @@ public final class XmlUtils
      */
     public static Element parse(Reader xml)
     {
+        return parse(xml, -1);
+    }
+
+    /**
+     * Attempts to parse the input xml into a single element.
+     * @param xml xml string
+     * @return The document object
+     */
+    public static Element parse(String xml)
+    {
+        return parse(new StringReader(xml), xml.length());
+    }
+
+    /**
+     * Parses the input xml, recording an {@link XmlParseEvent}.
+     * @param xml xml stream reader
+     * @param size number of characters of the input, or -1 if unknown
+     * @return The document object
+     */
+    private static Element parse(Reader xml, long size)
+    {
+        XmlParseEvent event = null;
+        if (FlightRecorder.isAvailable())
+        {
+            event = new XmlParseEvent();
+            event.begin();
+        }
         Element ret = null;
         DocumentBuilder builder = getDocumentBuilder();
         try
         {
             ret = builder.parse(new InputSource(xml)).getDocumentElement();
-            releaseBuilder(builder);
-            return ret;
         }
         catch(Exception e)
         {
@@ -382,19 +409,19 @@ public final class XmlUtils
         {
             releaseBuilder(builder);
         }
+        if (event != null)
+        {
+            event.end();
+            if (event.shouldCommit())
+            {
+                event.root = ret == null ? null : ret.getNodeName();
+                event.size = size;
+                event.commit();
+            }
+        }
         return ret;
     }
 
-    /**
-     * Attempts to parse the input xml into a single element.
-     * @param xml xml string
-     * @return The document object
-     */
-    public static Element parse(String xml)
-    {
-        return parse(new StringReader(xml));
-    }
-
     /**
      * Search for nodes using an XPath expression
      * @param xpath XPath expression
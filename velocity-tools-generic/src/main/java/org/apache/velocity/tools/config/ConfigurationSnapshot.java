@@ -0,0 +1,425 @@
+package org.apache.velocity.tools.config;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * <p>Compact binary form of a {@link FactoryConfiguration}, which is read back
+ * without any XML parsing, Digester rules nor classpath search.</p>
+ * <p>A snapshot records a digest of its inputs: the configuration files and
+ * the parameters the configuration was built from, as given to
+ * {@link #addInput(String, URL)} and {@link #addInput(String, String)} before
+ * writing it. Reading it back with the same inputs gives the configuration,
+ * while reading it with changed inputs gives {@code null}, telling the caller
+ * to build the configuration again.</p>
+ * <p>Only string valued data and properties are supported, which is what
+ * configuration files produce. Data converters, when not the standard ones
+ * of their type, must have a public no-argument constructor.</p>
+ *
+ * @since VelocityTools 4.0
+ * @version $Id$
+ */
+public class ConfigurationSnapshot
+{
+    private static final int MAGIC = 0x56544353; // "VTCS"
+    private static final int VERSION = 1;
+
+    private final MessageDigest digest;
+
+    public ConfigurationSnapshot()
+    {
+        try
+        {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException nsae)
+        {
+            // every JVM has to provide it
+            throw new IllegalStateException(nsae);
+        }
+    }
+
+    /**
+     * Adds a parameter the configuration depends upon.
+     * @param name parameter name
+     * @param value parameter value, may be null
+     */
+    public void addInput(String name, String value)
+    {
+        update(name);
+        update(value == null ? "\u0000null" : value);
+    }
+
+    /**
+     * Adds a configuration file the configuration depends upon.
+     * @param name input name
+     * @param url file URL, or null for a missing file
+     * @throws IOException if the file could not be read
+     */
+    public void addInput(String name, URL url) throws IOException
+    {
+        update(name);
+        if (url == null)
+        {
+            update("\u0000missing");
+            return;
+        }
+        try (InputStream in = url.openStream())
+        {
+            byte[] buffer = new byte[8192];
+            int len;
+            while ((len = in.read(buffer)) != -1)
+            {
+                digest.update(buffer, 0, len);
+            }
+        }
+        digest.update((byte)0);
+    }
+
+    private void update(String value)
+    {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte)0);
+    }
+
+    private byte[] getDigest()
+    {
+        try
+        {
+            return ((MessageDigest)digest.clone()).digest();
+        }
+        catch (CloneNotSupportedException cnse)
+        {
+            // the JDK message digests are cloneable
+            throw new IllegalStateException(cnse);
+        }
+    }
+
+    /**
+     * Writes the given configuration, along with the digest of the inputs.
+     * @param config configuration to write
+     * @param out output stream, which is not closed
+     * @throws IOException if thrown by the output stream
+     * @throws ConfigurationException if the configuration holds values which cannot be written
+     */
+    public void write(FactoryConfiguration config, OutputStream out) throws IOException
+    {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        byte[] inputs = getDigest();
+        data.writeInt(inputs.length);
+        data.write(inputs);
+
+        List<String> sources = config.getSources();
+        data.writeInt(sources.size());
+        for (String source : sources)
+        {
+            writeString(data, source);
+        }
+        writeProperties(data, config);
+        writeData(data, config.getData());
+        Collection<ToolboxConfiguration> toolboxes = config.getToolboxes();
+        data.writeInt(toolboxes.size());
+        for (ToolboxConfiguration toolbox : toolboxes)
+        {
+            writeString(data, toolbox.getScope());
+            writeProperties(data, toolbox);
+            Collection<ToolConfiguration> tools = toolbox.getTools();
+            data.writeInt(tools.size());
+            for (ToolConfiguration tool : tools)
+            {
+                writeString(data, tool.getClassname());
+                writeString(data, tool.getFactoryClassname());
+                writeString(data, tool.getRestrictTo());
+                Boolean skipSetters = tool.getSkipSetters();
+                data.writeByte(skipSetters == null ? -1 : skipSetters ? 1 : 0);
+                writeString(data, tool.getKey());
+                writeProperties(data, tool);
+            }
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads a configuration written with the same inputs.
+     * @param in input stream, which is not closed
+     * @return configuration, or null if the inputs changed since it was written
+     * @throws IOException if thrown by the input stream, or if it is not a snapshot
+     */
+    public FactoryConfiguration read(InputStream in) throws IOException
+    {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if (data.readInt() != MAGIC)
+        {
+            throw new IOException("Not a configuration snapshot");
+        }
+        if (data.readInt() != VERSION)
+        {
+            // written by another version
+            return null;
+        }
+        byte[] inputs = new byte[data.readInt()];
+        data.readFully(inputs);
+        if (!Arrays.equals(inputs, getDigest()))
+        {
+            return null;
+        }
+
+        int count = data.readInt();
+        List<String> sources = new ArrayList<String>(count);
+        for (int i = 0; i < count; ++i)
+        {
+            sources.add(readString(data));
+        }
+        FactoryConfiguration config = new FactoryConfiguration();
+        config.setSource(sources.isEmpty() ? null : sources.get(0));
+        for (int i = 1; i < sources.size(); ++i)
+        {
+            config.addSource(sources.get(i));
+        }
+        readProperties(data, config);
+        for (int i = data.readInt(); i > 0; --i)
+        {
+            Data datum = new Data();
+            readData(data, datum);
+            config.addData(datum);
+        }
+        for (int i = data.readInt(); i > 0; --i)
+        {
+            ToolboxConfiguration toolbox = new ToolboxConfiguration();
+            toolbox.setScope(readString(data));
+            readProperties(data, toolbox);
+            for (int j = data.readInt(); j > 0; --j)
+            {
+                ToolConfiguration tool = new ToolConfiguration();
+                tool.setClassname(readString(data));
+                tool.setFactoryClassname(readString(data));
+                tool.setRestrictTo(readString(data));
+                byte skipSetters = data.readByte();
+                if (skipSetters != -1)
+                {
+                    tool.setSkipSetters(skipSetters == 1);
+                }
+                String key = readString(data);
+                readProperties(data, tool);
+                tool.setKey(key);
+                toolbox.addTool(tool);
+            }
+            config.addToolbox(toolbox);
+        }
+        return config;
+    }
+
+    /**
+     * Reads a snapshot file written with the same inputs.
+     * @param file snapshot file
+     * @return configuration, or null if the file is missing or if the inputs changed
+     * @throws IOException if the file could not be read
+     */
+    public FactoryConfiguration read(File file) throws IOException
+    {
+        if (!file.isFile())
+        {
+            return null;
+        }
+        try (InputStream in = new FileInputStream(file))
+        {
+            return read(in);
+        }
+    }
+
+    /**
+     * Writes a snapshot file. The file is replaced at once, so that
+     * concurrent readers never see a partial snapshot.
+     * @param config configuration to write
+     * @param file snapshot file
+     * @throws IOException if the file could not be written
+     * @throws ConfigurationException if the configuration holds values which cannot be written
+     */
+    public void write(FactoryConfiguration config, File file) throws IOException
+    {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs())
+        {
+            throw new IOException("Could not create directory " + dir);
+        }
+        File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+        try
+        {
+            try (OutputStream out = new FileOutputStream(tmp))
+            {
+                write(config, out);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally
+        {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+
+    /**
+     * Gives the binary form of a configuration, see {@link #copy(byte[])}.
+     * @param config configuration
+     * @return binary form
+     * @throws ConfigurationException if the configuration holds values which cannot be written
+     */
+    public static byte[] toBytes(FactoryConfiguration config)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try
+        {
+            new ConfigurationSnapshot().write(config, out);
+        }
+        catch (IOException ioe)
+        {
+            // no I/O involved
+            throw new IllegalStateException(ioe);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Gives a new configuration from its binary form.
+     * @param bytes binary form, see {@link #toBytes(FactoryConfiguration)}
+     * @return new configuration
+     */
+    public static FactoryConfiguration copy(byte[] bytes)
+    {
+        try
+        {
+            return new ConfigurationSnapshot().read(new ByteArrayInputStream(bytes));
+        }
+        catch (IOException ioe)
+        {
+            // no I/O involved
+            throw new IllegalStateException(ioe);
+        }
+    }
+
+    private static void writeProperties(DataOutputStream out, Configuration config) throws IOException
+    {
+        writeData(out, config.getProperties());
+    }
+
+    private static void readProperties(DataInputStream in, Configuration config) throws IOException
+    {
+        for (int i = in.readInt(); i > 0; --i)
+        {
+            Property property = new Property();
+            readData(in, property);
+            config.addProperty(property);
+        }
+    }
+
+    private static void writeData(DataOutputStream out, Collection<? extends Data> data) throws IOException
+    {
+        out.writeInt(data.size());
+        for (Data datum : data)
+        {
+            Object value = datum.getValue();
+            if (value != null && !(value instanceof String))
+            {
+                throw new ConfigurationException(datum, "Cannot write the " + value.getClass().getName() + " value of '" + datum.getKey() + "' in a snapshot");
+            }
+            writeString(out, datum.getKey());
+            writeString(out, datum.getType());
+            writeString(out, (String)value);
+
+            // only keep target and converter when not implied by the type,
+            // custom types keeping the ones of the default type
+            Data.Type type = Data.Type.get(datum.getType());
+            if (type.isCustom())
+            {
+                type = Data.DEFAULT_TYPE;
+            }
+            Class target = datum.getTargetClass();
+            writeString(out, target == null || target == type.getTarget() ? null : target.getName());
+            Object converter = datum.getConverter();
+            writeString(out, converter == null || converter == type.getConverter() ? null : converter.getClass().getName());
+        }
+    }
+
+    private static void readData(DataInputStream in, Data datum) throws IOException
+    {
+        datum.setKey(readString(in));
+        datum.setType(readString(in));
+        datum.setValue(readString(in));
+        String target = readString(in);
+        if (target != null)
+        {
+            datum.setClassname(target);
+        }
+        String converter = readString(in);
+        if (converter != null)
+        {
+            datum.setConverter(converter);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException
+    {
+        if (value == null)
+        {
+            out.writeInt(-1);
+        }
+        else
+        {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException
+    {
+        int length = in.readInt();
+        if (length == -1)
+        {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -26,6 +26,8 @@ import java.lang.reflect.Modifier;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.velocity.app.VelocityEngine;
 import org.apache.velocity.exception.ResourceNotFoundException;
@@ -55,6 +57,12 @@ public class ConfigurationUtils
         "org.apache.velocity.tools";
     public static final ConfigurationUtils INSTANCE = new ConfigurationUtils();
 
+    /**
+     * Binary form of the default configurations already read, keyed by
+     * the URLs they were read from.
+     */
+    private static final Map<String,byte[]> DEFAULTS = new ConcurrentHashMap<String,byte[]>();
+
     private ConfigurationUtils() {}
 
     public ConfigurationUtils getInstance()
@@ -76,16 +84,8 @@ public class ConfigurationUtils
      */
     public static FactoryConfiguration getDefaultTools()
     {
-        FileFactoryConfiguration config =
-            new XmlFactoryConfiguration("ConfigurationUtils.getDefaultTools()");
-        config.read(GENERIC_DEFAULTS_PATH);
-
         // view tools may not be available
-        config.read(VIEW_DEFAULTS_PATH, false);
-
-        // defaults should *always* be clean!
-        clean(config);
-        return config;
+        return getDefaults("ConfigurationUtils.getDefaultTools()", true, false);
     }
 
     /**
@@ -95,13 +95,7 @@ public class ConfigurationUtils
      */
     public static FactoryConfiguration getGenericTools()
     {
-        FileFactoryConfiguration config =
-            new XmlFactoryConfiguration("ConfigurationUtils.getGenericTools()");
-        config.read(GENERIC_DEFAULTS_PATH);
-
-        // defaults should *always* be clean!
-        clean(config);
-        return config;
+        return getDefaults("ConfigurationUtils.getGenericTools()", false, false);
     }
 
     /**
@@ -112,13 +106,38 @@ public class ConfigurationUtils
      */
     public static FactoryConfiguration getVelocityView()
     {
-        FileFactoryConfiguration config =
-            new XmlFactoryConfiguration("ConfigurationUtils.getVelocityView()");
+        return getDefaults("ConfigurationUtils.getVelocityView()", true, true);
+    }
+
+    /**
+     * Reads the generic, and maybe view, default tools. The XML files are
+     * only parsed once: further calls get a copy of the first result.
+     * @param id configuration source name
+     * @param view whether to read the view tools
+     * @param viewRequired whether the view tools are required
+     * @return default tools {@link FactoryConfiguration}
+     */
+    private static FactoryConfiguration getDefaults(String id, boolean view, boolean viewRequired)
+    {
+        FileFactoryConfiguration config = new XmlFactoryConfiguration(id);
+        // different class loaders may see different files
+        String key = id + ' ' + ClassUtils.getResource(GENERIC_DEFAULTS_PATH, config) +
+            (view ? " " + ClassUtils.getResource(VIEW_DEFAULTS_PATH, config) : "");
+        byte[] cached = DEFAULTS.get(key);
+        if (cached != null)
+        {
+            return ConfigurationSnapshot.copy(cached);
+        }
+
         config.read(GENERIC_DEFAULTS_PATH);
-        config.read(VIEW_DEFAULTS_PATH);
+        if (view)
+        {
+            config.read(VIEW_DEFAULTS_PATH, viewRequired);
+        }
 
         // defaults should *always* be clean!
         clean(config);
+        DEFAULTS.put(key, ConfigurationSnapshot.toBytes(config));
         return config;
     }
 
@@ -0,0 +1,267 @@
+package org.apache.velocity.tools.generic;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.velocity.tools.generic.ClassTool.ConstructorSub;
+import org.apache.velocity.tools.generic.ClassTool.FieldSub;
+import org.apache.velocity.tools.generic.ClassTool.MethodSub;
+import org.apache.velocity.tools.generic.ClassTool.Sub;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Shared cache of the immutable reflective inspection results used
+ * by {@link ClassTool} and {@link FieldTool}.</p>
+ * <p>The cache belongs to the tools classloader: it holds the inspected
+ * classes through weak references and their metadata through soft references,
+ * so that neither the tools nor the inspected classes keep each other's
+ * classloader alive. Metadata is thus shared across requests, and only
+ * computed again when the memory is needed elsewhere.</p>
+ *
+ * @since VelocityTools 4.0
+ * @version $Id$
+ */
+final class ClassMetadata
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClassMetadata.class);
+
+    private static final Map<Class, Reference<ClassMetadata>> CACHE =
+        Collections.synchronizedMap(new WeakHashMap<Class, Reference<ClassMetadata>>());
+
+    /**
+     * Get the cached metadata for the given class.
+     * @param type inspected class
+     * @return class metadata
+     */
+    static ClassMetadata of(Class type)
+    {
+        Reference<ClassMetadata> ref = CACHE.get(type);
+        ClassMetadata metadata = ref == null ? null : ref.get();
+        if (metadata == null)
+        {
+            metadata = new ClassMetadata(type);
+            CACHE.put(type, new SoftReference<ClassMetadata>(metadata));
+        }
+        return metadata;
+    }
+
+    private final Class type;
+
+    /* sub lists are indexed by their safe mode and show deprecated flags */
+    private final AtomicReferenceArray<List<MethodSub>> methods = new AtomicReferenceArray<List<MethodSub>>(4);
+    private final AtomicReferenceArray<List<ConstructorSub>> constructors = new AtomicReferenceArray<List<ConstructorSub>>(4);
+    private final AtomicReferenceArray<List<FieldSub>> fields = new AtomicReferenceArray<List<FieldSub>>(4);
+
+    private volatile List<Map.Entry<String,Object>> staticFields;
+
+    private ClassMetadata(Class type)
+    {
+        this.type = type;
+    }
+
+    private static int index(boolean safeMode, boolean showDeprecated)
+    {
+        return (safeMode ? 1 : 0) | (showDeprecated ? 2 : 0);
+    }
+
+    private static <T extends Sub> List<T> filter(List<T> subs, boolean safeMode, boolean showDeprecated)
+    {
+        List<T> result = new ArrayList<T>(subs.size());
+        for (T sub : subs)
+        {
+            if ((!safeMode || sub.isPublic()) &&
+                (showDeprecated || !sub.isDeprecated()))
+            {
+                result.add(sub);
+            }
+        }
+        Collections.sort(result);
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Safe mode lists public methods incl. inherited; otherwise
+     * only the methods declared on the class itself, at any access level.
+     * @param safeMode safe mode flag
+     * @param showDeprecated whether to include deprecated methods
+     * @return sorted unmodifiable list of method inspectors
+     */
+    List<MethodSub> getMethods(boolean safeMode, boolean showDeprecated)
+    {
+        int index = index(safeMode, showDeprecated);
+        List<MethodSub> result = methods.get(index);
+        if (result == null)
+        {
+            Method[] available = safeMode ? type.getMethods() : type.getDeclaredMethods();
+            List<MethodSub> subs = new ArrayList<MethodSub>(available.length);
+            for (Method method : available)
+            {
+                subs.add(new MethodSub(method));
+            }
+            result = filter(subs, safeMode, showDeprecated);
+            methods.compareAndSet(index, null, result);
+        }
+        return result;
+    }
+
+    /**
+     * @param safeMode safe mode flag
+     * @param showDeprecated whether to include deprecated constructors
+     * @return sorted unmodifiable list of constructor inspectors
+     */
+    List<ConstructorSub> getConstructors(boolean safeMode, boolean showDeprecated)
+    {
+        int index = index(safeMode, showDeprecated);
+        List<ConstructorSub> result = constructors.get(index);
+        if (result == null)
+        {
+            Constructor[] declared = type.getDeclaredConstructors();
+            List<ConstructorSub> subs = new ArrayList<ConstructorSub>(declared.length);
+            for (Constructor constructor : declared)
+            {
+                subs.add(new ConstructorSub(constructor));
+            }
+            result = filter(subs, safeMode, showDeprecated);
+            constructors.compareAndSet(index, null, result);
+        }
+        return result;
+    }
+
+    /**
+     * @param safeMode safe mode flag
+     * @param showDeprecated whether to include deprecated fields
+     * @return sorted unmodifiable list of field inspectors
+     */
+    List<FieldSub> getFields(boolean safeMode, boolean showDeprecated)
+    {
+        int index = index(safeMode, showDeprecated);
+        List<FieldSub> result = fields.get(index);
+        if (result == null)
+        {
+            Field[] declared = type.getDeclaredFields();
+            List<FieldSub> subs = new ArrayList<FieldSub>(declared.length);
+            for (Field field : declared)
+            {
+                subs.add(new FieldSub(field));
+            }
+            result = filter(subs, safeMode, showDeprecated);
+            fields.compareAndSet(index, null, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns an unmodifiable list of all public static field names, in the
+     * order of {@link Class#getFields()}, along with either their value,
+     * if final, or a {@link StaticGetter} otherwise. A name appears more
+     * than once when a field hides another one.
+     * @return static fields list
+     */
+    List<Map.Entry<String,Object>> getStaticFields()
+    {
+        List<Map.Entry<String,Object>> result = staticFields;
+        if (result == null)
+        {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            result = new ArrayList<Map.Entry<String,Object>>();
+            for (Field field : type.getFields())
+            {
+                int mod = field.getModifiers();
+                if (Modifier.isStatic(mod) && Modifier.isPublic(mod))
+                {
+                    StaticGetter getter = new StaticGetter(lookup, field);
+                    // just get the value now if the field is final
+                    Object value = Modifier.isFinal(mod) ? getter.get() : getter;
+                    result.add(new AbstractMap.SimpleImmutableEntry<String,Object>(field.getName(), value));
+                }
+            }
+            result = Collections.unmodifiableList(result);
+            staticFields = result;
+        }
+        return result;
+    }
+
+    /**
+     * Getter for a static field value, bound once through a {@link MethodHandle}.
+     */
+    static final class StaticGetter
+    {
+        private final String name;
+        private final MethodHandle handle;
+
+        StaticGetter(MethodHandles.Lookup lookup, Field field)
+        {
+            name = field.getName();
+            MethodHandle mh = null;
+            try
+            {
+                mh = lookup.unreflectGetter(field).asType(MethodType.methodType(Object.class));
+            }
+            catch (IllegalAccessException iae)
+            {
+                LOGGER.warn("IllegalAccessException while trying to access {}", name, iae);
+            }
+            handle = mh;
+        }
+
+        MethodHandle getHandle()
+        {
+            return handle;
+        }
+
+        Object get()
+        {
+            if (handle == null)
+            {
+                return null;
+            }
+            try
+            {
+                return (Object)handle.invokeExact();
+            }
+            catch (Error e)
+            {
+                throw e;
+            }
+            catch (Throwable t)
+            {
+                LOGGER.warn("could not retrieve value of static field {}", name, t);
+                return null;
+            }
+        }
+    }
+}
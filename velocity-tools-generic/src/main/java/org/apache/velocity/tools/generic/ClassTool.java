@@ -25,9 +25,7 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
 import java.util.HashSet;
 import java.util.Set;
@@ -398,30 +396,15 @@ public class ClassTool extends SafeConfig
      * inspected class. In safe mode (which *is* the default), this returns the
      * public methods, including those inherited from superclasses and interfaces.
      * With safe mode off, it returns the methods declared directly on the class
-     * (all access levels, no inheritance).
+     * (all access levels, no inheritance). Inspection results are shared
+     * between instances through a per-class cache.
      * @return methods inspectors list
      */
     public List<MethodSub> getMethods()
     {
         if (methods == null)
         {
-            // safe mode lists public methods incl. inherited; otherwise
-            // only the methods declared on the class itself, at any access level
-            Method[] available = isSafeMode()
-                                 ? getType().getMethods()
-                                 : getType().getDeclaredMethods();
-            List<MethodSub> subs = new ArrayList<MethodSub>(available.length);
-            for (Method method : available)
-            {
-                MethodSub sub = new MethodSub(method);
-                if ((!isSafeMode() || sub.isPublic()) &&
-                    (showDeprecated || !sub.isDeprecated()))
-                {
-                    subs.add(sub);
-                }
-            }
-            Collections.sort(subs);
-            methods = Collections.unmodifiableList(subs);
+            methods = ClassMetadata.of(getType()).getMethods(isSafeMode(), showDeprecated);
         }
         return methods;
     }
@@ -438,19 +421,7 @@ public class ClassTool extends SafeConfig
     {
         if (constructors == null)
         {
-            Constructor[] declared = getType().getDeclaredConstructors();
-            List<ConstructorSub> subs = new ArrayList<ConstructorSub>(declared.length);
-            for (Constructor constructor : declared)
-            {
-                ConstructorSub sub = new ConstructorSub(constructor);
-                if ((!isSafeMode() || sub.isPublic()) &&
-                    (showDeprecated || !sub.isDeprecated()))
-                {
-                    subs.add(sub);
-                }
-            }
-            Collections.sort(subs);
-            constructors = Collections.unmodifiableList(subs);
+            constructors = ClassMetadata.of(getType()).getConstructors(isSafeMode(), showDeprecated);
         }
         return constructors;
     }
@@ -467,19 +438,7 @@ public class ClassTool extends SafeConfig
     {
         if (fields == null)
         {
-            Field[] declared = getType().getDeclaredFields();
-            List<FieldSub> subs = new ArrayList<FieldSub>(declared.length);
-            for (Field field : declared)
-            {
-                FieldSub sub = new FieldSub(field);
-                if ((!isSafeMode() || sub.isPublic()) &&
-                    (showDeprecated || !sub.isDeprecated()))
-                {
-                    subs.add(sub);
-                }
-            }
-            Collections.sort(subs);
-            fields = Collections.unmodifiableList(subs);
+            fields = ClassMetadata.of(getType()).getFields(isSafeMode(), showDeprecated);
         }
         return fields;
     }
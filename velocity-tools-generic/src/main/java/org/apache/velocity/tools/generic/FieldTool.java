@@ -19,9 +19,10 @@ package org.apache.velocity.tools.generic;
  * under the License.    
  */
 
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.velocity.tools.ClassUtils;
@@ -223,36 +224,29 @@ public class FieldTool extends SafeConfig
      * stores their value (if final) or else a {@link MutableField} for
      * in a {@link Map} under the fields' names.  This will never return
      * null, only an empty Map if there are no public static fields.
+     * The reflective lookup itself is done once per class and shared
+     * between tool instances.
      * @param clazz target class
      * @return fields map
      */
     protected Map<String,Object> inspect(Class clazz)
     {
-        Map<String,Object> results = new HashMap<String,Object>();
-        for(Field field : clazz.getFields())
+        List<Map.Entry<String,Object>> fields = ClassMetadata.of(clazz).getStaticFields();
+        Map<String,Object> results = new HashMap<String,Object>(fields.size() * 4 / 3 + 1);
+        for (Map.Entry<String,Object> entry : fields)
         {
-            // ignore anything non-public or non-static
-            int mod = field.getModifiers();
-            if (Modifier.isStatic(mod) && Modifier.isPublic(mod))
+            // make it easy to debug key collisions
+            if (getLog().isDebugEnabled() && results.containsKey(entry.getKey()))
             {
-                // make it easy to debug key collisions
-                if (getLog().isDebugEnabled() && results.containsKey(field.getName()))
-                {
-                    getLog().debug("{} is being overridden by {}", field.getName(), clazz.getName());
-                }
-                // if the field is final
-                if (Modifier.isFinal(mod))
-                {
-                    // just get the value now
-                    results.put(field.getName(), retrieve(field, clazz));
-                }
-                else
-                {
-                    // put a wrapper with easy access
-                    results.put(field.getName(),
-                                new MutableField(field, clazz));
-                }
+                getLog().debug("{} is being overridden by {}", entry.getKey(), clazz.getName());
             }
+            Object value = entry.getValue();
+            if (value instanceof ClassMetadata.StaticGetter)
+            {
+                // put a wrapper with easy access
+                value = new MutableField(((ClassMetadata.StaticGetter)value).getHandle());
+            }
+            results.put(entry.getKey(), value);
         }
         return results;
     }
@@ -326,14 +320,15 @@ public class FieldTool extends SafeConfig
 
 
     /**
-     * Holds a {@link Field} and {@link Class} reference for later
-     * retrieval of the value of a field that is not final and may
-     * change at different lookups.
+     * Holds a {@link Field} and {@link Class} reference, or a bound
+     * {@link MethodHandle} getter, for later retrieval of the value
+     * of a field that is not final and may change at different lookups.
      */
     public class MutableField
     {
         private final Class clazz;
         private final Field field;
+        private final MethodHandle getter;
 
         public MutableField(Field f, Class c)
         {
@@ -344,11 +339,44 @@ public class FieldTool extends SafeConfig
 
             field = f;
             clazz = c;
+            getter = null;
+        }
+
+        /**
+         * @param getter static field getter, returning an {@link Object},
+         * or null if the field is not accessible
+         * @since VelocityTools 4.0
+         */
+        public MutableField(MethodHandle getter)
+        {
+            field = null;
+            clazz = null;
+            this.getter = getter;
         }
 
         public Object getValue()
         {
-            return retrieve(field, clazz);
+            if (field != null)
+            {
+                return retrieve(field, clazz);
+            }
+            if (getter == null)
+            {
+                return null;
+            }
+            try
+            {
+                return (Object)getter.invokeExact();
+            }
+            catch (Error e)
+            {
+                throw e;
+            }
+            catch (Throwable t)
+            {
+                getLog().warn("could not retrieve static field value", t);
+                return null;
+            }
         }
     }
 
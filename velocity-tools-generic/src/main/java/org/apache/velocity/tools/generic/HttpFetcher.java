@@ -0,0 +1,358 @@
+package org.apache.velocity.tools.generic;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.velocity.runtime.RuntimeConstants;
+
+/**
+ * <p>Fetcher of http and https URLs, sharing one {@link HttpClient} per connect
+ * timeout, hence its pool of keep-alive connections. HTTP/2 is used when
+ * the server supports it, and gzip encoded contents are accepted and decoded.
+ * Contents can be fetched synchronously as a stream, or asynchronously as a
+ * string.</p>
+ * <p>Response statuses other than 2xx are reported as IOExceptions, and the
+ * content charset is taken from the Content-Type header, defaulting to UTF-8.</p>
+ * <p>The timeout given to the fetch methods bounds the wait for the response
+ * headers, then each read of a stream, like the read timeout of an
+ * URLConnection, or the whole content of an asynchronous fetch.</p>
+ *
+ * @since VelocityTools 4.0
+ * @version $Id$
+ */
+public final class HttpFetcher
+{
+    private static final int MAX_CLIENTS = 100;
+    private static final Map<Long,HttpFetcher> fetchers = new ConcurrentHashMap<Long,HttpFetcher>();
+
+    private final HttpClient client;
+
+    private HttpFetcher(long connectTimeout)
+    {
+        HttpClient.Builder builder = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .followRedirects(HttpClient.Redirect.NORMAL);
+        if (connectTimeout > 0)
+        {
+            builder.connectTimeout(Duration.ofMillis(connectTimeout));
+        }
+        client = builder.build();
+    }
+
+    /**
+     * Returns the shared fetcher for the given connect timeout.
+     * @param connectTimeout connect timeout in milliseconds, 0 for none
+     * @return shared fetcher
+     */
+    public static HttpFetcher getInstance(long connectTimeout)
+    {
+        Long key = Math.max(0, connectTimeout);
+        HttpFetcher fetcher = fetchers.get(key);
+        if (fetcher == null)
+        {
+            if (fetchers.size() >= MAX_CLIENTS)
+            {
+                // do not multiply clients for odd configurations
+                return new HttpFetcher(key);
+            }
+            fetcher = fetchers.computeIfAbsent(key, HttpFetcher::new);
+        }
+        return fetcher;
+    }
+
+    /**
+     * @param url URL
+     * @return whether the URL is an http or https one
+     */
+    public static boolean isHttpURL(String url)
+    {
+        String protocol = ImportSupport.getProtocol(url);
+        if (protocol == null)
+        {
+            return false;
+        }
+        protocol = protocol.toLowerCase(Locale.ROOT);
+        return protocol.equals("http") || protocol.equals("https");
+    }
+
+    /**
+     * Opens a reader on the content of an URL.
+     * @param url http or https URL
+     * @param timeout timeout of the response headers and of each read, in milliseconds, 0 for none
+     * @return content reader, to be closed by the caller
+     * @throws IOException if the URL cannot be fetched or gives an error status
+     */
+    public Reader open(String url, long timeout) throws IOException
+    {
+        HttpResponse<InputStream> response;
+        try
+        {
+            response = client.send(newRequest(url, timeout), HttpResponse.BodyHandlers.ofInputStream());
+        }
+        catch (InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching " + url);
+        }
+        InputStream body = response.body();
+        if (timeout > 0)
+        {
+            body = new TimedInputStream(body, timeout);
+        }
+        try
+        {
+            checkStatus(response, url);
+            return new InputStreamReader(decode(response, body), getCharset(response));
+        }
+        catch (IOException | RuntimeException e)
+        {
+            body.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Fetches the content of an URL asynchronously. The future completes
+     * exceptionally with an {@link UncheckedIOException} on I/O errors, and
+     * with a {@link java.util.concurrent.TimeoutException} on timeout.
+     * @param url http or https URL
+     * @param timeout timeout of the whole fetch in milliseconds, 0 for none
+     * @return future content
+     */
+    public CompletableFuture<String> fetch(final String url, long timeout)
+    {
+        CompletableFuture<String> future = client.sendAsync(newRequest(url, timeout), HttpResponse.BodyHandlers.ofByteArray())
+            .thenApply(response ->
+            {
+                try
+                {
+                    checkStatus(response, url);
+                    InputStream body = decode(response, new ByteArrayInputStream(response.body()));
+                    return new String(body.readAllBytes(), getCharset(response));
+                }
+                catch (IOException ioe)
+                {
+                    throw new UncheckedIOException(ioe);
+                }
+            });
+        // the request timeout only bounds the wait for the response headers
+        return timeout > 0 ? future.orTimeout(timeout, TimeUnit.MILLISECONDS) : future;
+    }
+
+    private static HttpRequest newRequest(String url, long timeout)
+    {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+            .header("Accept-Encoding", "gzip")
+            .GET();
+        if (timeout > 0)
+        {
+            builder.timeout(Duration.ofMillis(timeout));
+        }
+        return builder.build();
+    }
+
+    private static void checkStatus(HttpResponse<?> response, String url) throws IOException
+    {
+        int status = response.statusCode();
+        if (status < 200 || status > 299)
+        {
+            throw new IOException(status + " " + url);
+        }
+    }
+
+    private static InputStream decode(HttpResponse<?> response, InputStream body) throws IOException
+    {
+        String encoding = response.headers().firstValue("Content-Encoding").orElse(null);
+        if (encoding != null && encoding.trim().equalsIgnoreCase("gzip"))
+        {
+            return new GZIPInputStream(body, ImportSupport.COPY_BUFFER_SIZE);
+        }
+        return body;
+    }
+
+    private static Charset getCharset(HttpResponse<?> response)
+    {
+        // charSet extracted according to RFC 2045, section 5.1
+        String contentType = response.headers().firstValue("Content-Type").orElse(null);
+        String charSet = contentType == null ? null : ImportSupport.getContentTypeAttribute(contentType, "charset");
+        if (charSet != null)
+        {
+            try
+            {
+                return Charset.forName(charSet);
+            }
+            catch (IllegalArgumentException iae)
+            {
+                // unknown or illegal charset, use the default one
+            }
+        }
+        return Charset.forName(RuntimeConstants.ENCODING_DEFAULT);
+    }
+
+    /**
+     * Lazily started daemon thread checking stream reads.
+     */
+    private static final class Watchdog
+    {
+        static final ScheduledThreadPoolExecutor EXECUTOR = new ScheduledThreadPoolExecutor(1, runnable ->
+        {
+            Thread thread = new Thread(runnable, "velocity-tools-http-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        static
+        {
+            EXECUTOR.setRemoveOnCancelPolicy(true);
+        }
+    }
+
+    /**
+     * Stream closed by the watchdog when a read blocks for longer than
+     * the timeout, the pending read then failing with a
+     * {@link SocketTimeoutException}.
+     */
+    private static final class TimedInputStream extends FilterInputStream implements Runnable
+    {
+        private final long timeout;
+        private final ScheduledFuture<?> check;
+        private volatile boolean reading = false;
+        private volatile long readStart;
+        private volatile boolean timedOut = false;
+
+        TimedInputStream(InputStream in, long timeout)
+        {
+            super(in);
+            this.timeout = TimeUnit.MILLISECONDS.toNanos(timeout);
+            long period = Math.max(1, timeout / 2);
+            check = Watchdog.EXECUTOR.scheduleAtFixedRate(this, period, period, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void run()
+        {
+            if (reading && System.nanoTime() - readStart > timeout && !timedOut)
+            {
+                timedOut = true;
+                try
+                {
+                    in.close();
+                }
+                catch (IOException ioe)
+                {
+                    // the pending read fails anyway
+                }
+            }
+        }
+
+        private void begin() throws IOException
+        {
+            checkTimeout();
+            readStart = System.nanoTime();
+            reading = true;
+        }
+
+        private void end() throws IOException
+        {
+            reading = false;
+            checkTimeout();
+        }
+
+        private void checkTimeout() throws IOException
+        {
+            if (timedOut)
+            {
+                throw new SocketTimeoutException("Read timed out");
+            }
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            begin();
+            try
+            {
+                return in.read();
+            }
+            finally
+            {
+                end();
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            begin();
+            try
+            {
+                return in.read(b, off, len);
+            }
+            finally
+            {
+                end();
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException
+        {
+            begin();
+            try
+            {
+                return in.skip(n);
+            }
+            finally
+            {
+                end();
+            }
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            check.cancel(false);
+            in.close();
+        }
+    }
+}
@@ -22,23 +22,50 @@ package org.apache.velocity.tools.generic;
 import org.apache.velocity.runtime.RuntimeConstants;
 import org.apache.velocity.tools.ClassUtils;
 import org.apache.velocity.tools.ConversionUtils;
+import org.apache.velocity.tools.ResourceMemo;
 import org.apache.velocity.tools.Scope;
+import org.apache.velocity.tools.ToolContext;
 import org.apache.velocity.tools.config.InvalidScope;
+import org.apache.velocity.tools.jfr.FlightRecorder;
+import org.apache.velocity.tools.jfr.ImportEvent;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * <p>Provides methods to import arbitrary local or remote resources as strings, generic version.</p>
  * <p>Based on ImportSupport from the JSTL taglib by Shawn Bayern</p>
+ * <p>Http and https URLs are fetched through a shared {@link HttpFetcher}, with the
+ * optional <code>connectTimeout</code> and <code>readTimeout</code> configuration
+ * values, in milliseconds (the latter bounding the wait for the response headers
+ * and then each read of the content, or the whole fetch of prefetched URLs).
+ * When configured by a request scoped tool, they can also be
+ * {@link #prefetch(String) prefetched} asynchronously early in the request,
+ * the first acquisition of the same URL then joining the pending fetch.</p>
+ * <p>When configured by a request scoped tool, remote URLs and local resources
+ * are only loaded once per request, through the {@link ResourceMemo} of the
+ * tool context. Local URLs of the view flavor are not memoized, since they are
+ * rendered against the current state of the request, and neither are remote
+ * URLs acquired in safe mode.</p>
  *
  * @author <a href="mailto:marinoj@centrum.is">Marino A. Jonsson</a>
  * @author Claude Brisson
@@ -59,6 +86,24 @@ public class ImportSupport extends SafeConfig
      */
     public static final String URL_KEY = "url";
 
+    /** Configuration key for the connect timeout of remote URLs, in milliseconds
+     */
+    public static final String CONNECT_TIMEOUT_KEY = "connectTimeout";
+
+    /** Configuration key for the read timeout of remote URLs, in milliseconds
+     */
+    public static final String READ_TIMEOUT_KEY = "readTimeout";
+
+    /** Size of the buffer used by {@link #acquire(String, Writer)}
+     */
+    protected static final int COPY_BUFFER_SIZE = 8 * 1024;
+
+    private int connectTimeout = 0;
+    private int readTimeout = 0;
+    private final Map<String,CompletableFuture<String>> prefetched = new ConcurrentHashMap<String,CompletableFuture<String>>();
+    private ResourceMemo memo = null;
+    private boolean requestScoped = false;
+
     //*********************************************************************
     // URL importation logic
 
@@ -89,6 +134,40 @@ public class ImportSupport extends SafeConfig
     protected void configure(ValueParser values)
     {
         super.configure(values);
+        connectTimeout = values.getInt(CONNECT_TIMEOUT_KEY, connectTimeout);
+        readTimeout = values.getInt(READ_TIMEOUT_KEY, readTimeout);
+        // a longer lived tool must not hold on to the memo of its first request,
+        // nor accumulate prefetched contents
+        requestScoped = Scope.REQUEST.equals(values.getString("scope"));
+        Object memo = values.get(ToolContext.RESOURCE_MEMO_KEY);
+        if (memo instanceof ResourceMemo && requestScoped)
+        {
+            this.memo = (ResourceMemo)memo;
+        }
+    }
+
+    /**
+     * @return memo of the contents loaded during the request, or null
+     */
+    protected ResourceMemo getResourceMemo()
+    {
+        return memo;
+    }
+
+    /**
+     * @return connect timeout of remote URLs, in milliseconds, 0 for none
+     */
+    public int getConnectTimeout()
+    {
+        return connectTimeout;
+    }
+
+    /**
+     * @return read timeout of remote URLs, in milliseconds, 0 for none
+     */
+    public int getReadTimeout()
+    {
+        return readTimeout;
     }
 
     /**
@@ -110,14 +189,50 @@ public class ImportSupport extends SafeConfig
     public String acquireString(String url) throws IOException
     {
         getLog().debug("acquire URL {}", url);
-        if (isRemoteURL(url))
+        ImportEvent event = null;
+        if (FlightRecorder.isAvailable())
         {
-            return acquireRemoteURLString(url);
+            event = new ImportEvent();
+            event.begin();
         }
-        else
+        boolean remote = isRemoteURL(url);
+        String content = null;
+        try
+        {
+            content = remote ? acquireMemoizedURLString(url) : acquireLocalURLString(url);
+            return content;
+        }
+        finally
+        {
+            if (event != null)
+            {
+                event.end();
+                if (event.shouldCommit())
+                {
+                    event.url = url;
+                    event.remote = remote;
+                    event.size = content == null ? -1 : content.length();
+                    event.commit();
+                }
+            }
+        }
+    }
+
+    /**
+     * Aquire the content of a remote URL, through the request memo if any.
+     * Safe mode tools bypass the memo, so that they neither see contents
+     * loaded by other tools nor share their refusals with them.
+     * @param url remote URL
+     * @return the URL resource as string
+     * @throws IOException if operation failed
+     */
+    private String acquireMemoizedURLString(final String url) throws IOException
+    {
+        if (memo == null || isSafeMode())
         {
-            return acquireLocalURLString(url);
+            return acquireRemoteURLString(url);
         }
+        return memo.get(ResourceMemo.urlKey(url), () -> acquireRemoteURLString(url));
     }
 
     /**
@@ -128,20 +243,17 @@ public class ImportSupport extends SafeConfig
      */
     protected String acquireRemoteURLString(String url) throws IOException
     {
+        Future<String> future = prefetched.remove(url);
+        if (future != null)
+        {
+            return join(url, future);
+        }
         // delegate to our peer
-        BufferedReader r = null;
+        Reader r = null;
         try
         {
-            r = new BufferedReader(acquireRemoteURLReader(url));
-            StringBuilder sb = new StringBuilder();
-            int i;
-            // under JIT, testing seems to show this simple loop is as fast
-            // as any of the alternatives
-            while ((i = r.read()) != -1)
-            {
-                sb.append((char)i);
-            }
-            return sb.toString();
+            r = acquireRemoteURLReader(url);
+            return r == null ? null : readAll(r);
         }
         finally
         {
@@ -159,6 +271,98 @@ public class ImportSupport extends SafeConfig
         }
     }
 
+    /**
+     * Starts fetching an http or https URL asynchronously, so that the first
+     * subsequent acquisition of the same URL only has to wait for the end
+     * of the fetch. Other URLs are ignored, as well as all URLs when not
+     * configured by a request scoped tool, since prefetched contents are
+     * only dropped once acquired.
+     * @param url the URL to prefetch
+     * @since VelocityTools 4.0
+     */
+    public void prefetch(String url)
+    {
+        if (!requestScoped)
+        {
+            getLog().debug("ignoring prefetch of URL {} outside of request scope", url);
+        }
+        else if (HttpFetcher.isHttpURL(url) && !prefetched.containsKey(url))
+        {
+            getLog().debug("prefetch URL {}", url);
+            try
+            {
+                prefetched.put(url, HttpFetcher.getInstance(connectTimeout).fetch(url, readTimeout));
+            }
+            catch (RuntimeException re)
+            {
+                getLog().error("could not prefetch URL {}", url, re);
+            }
+        }
+    }
+
+    /**
+     * @param url URL
+     * @return whether the URL is being prefetched and not acquired yet
+     */
+    boolean isPrefetched(String url)
+    {
+        return prefetched.containsKey(url);
+    }
+
+    /**
+     * Waits for a prefetched content.
+     * @param url prefetched URL
+     * @param future pending fetch
+     * @return fetched content
+     * @throws IOException if the fetch failed
+     */
+    private String join(String url, Future<String> future) throws IOException
+    {
+        try
+        {
+            return readTimeout > 0 ? future.get(readTimeout, TimeUnit.MILLISECONDS) : future.get();
+        }
+        catch (TimeoutException te)
+        {
+            future.cancel(true);
+            throw new SocketTimeoutException("Timed out while fetching " + url);
+        }
+        catch (InterruptedException ie)
+        {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching " + url);
+        }
+        catch (ExecutionException ee)
+        {
+            Throwable cause = ee.getCause();
+            if (cause instanceof UncheckedIOException)
+            {
+                cause = cause.getCause();
+            }
+            throw new IOException("Problem accessing the remote URL \""
+                + url + "\". " + cause, cause);
+        }
+    }
+
+    /**
+     * Reads a reader until its end, by chunks.
+     * @param reader source reader
+     * @return read content
+     * @throws IOException if thrown by the reader
+     */
+    protected static String readAll(Reader reader) throws IOException
+    {
+        StringBuilder sb = new StringBuilder();
+        char[] buffer = new char[COPY_BUFFER_SIZE];
+        int len;
+        while ((len = reader.read(buffer)) != -1)
+        {
+            sb.append(buffer, 0, len);
+        }
+        return sb.toString();
+    }
+
     /**
      * Aquire the content of a local URL.
      * @param url local URL
@@ -170,6 +374,76 @@ public class ImportSupport extends SafeConfig
         throw new IOException("Only remote URLs are supported");
     }
 
+    /**
+     * Copies the content of an URL to the given writer, through a bounded buffer,
+     * so that the whole content is never held in memory.
+     * @param url the URL to copy
+     * @param writer target writer
+     * @throws IOException if operation failed
+     * @since VelocityTools 4.0
+     */
+    public void acquire(String url, Writer writer) throws IOException
+    {
+        getLog().debug("acquire URL {}", url);
+        if (isRemoteURL(url))
+        {
+            acquireRemoteURL(url, writer);
+        }
+        else
+        {
+            acquireLocalURL(url, writer);
+        }
+    }
+
+    /**
+     * Copies the content of a remote URL to the given writer.
+     * @param url remote URL
+     * @param writer target writer
+     * @throws IOException if operation failed
+     * @since VelocityTools 4.0
+     */
+    protected void acquireRemoteURL(String url, Writer writer) throws IOException
+    {
+        Reader reader = acquireRemoteURLReader(url);
+        if (reader == null)
+        {
+            return;
+        }
+        try
+        {
+            char[] buffer = new char[COPY_BUFFER_SIZE];
+            int len;
+            while ((len = reader.read(buffer)) != -1)
+            {
+                writer.write(buffer, 0, len);
+            }
+        }
+        finally
+        {
+            try
+            {
+                reader.close();
+            }
+            catch (IOException ioe)
+            {
+                getLog().error("Could not close reader.", ioe);
+            }
+        }
+    }
+
+    /**
+     * Copies the content of a local URL to the given writer - non applicable
+     * to the generic version of ImportSupport
+     * @param url local URL
+     * @param writer target writer
+     * @throws IOException if operation failed
+     * @since VelocityTools 4.0
+     */
+    protected void acquireLocalURL(String url, Writer writer) throws IOException
+    {
+        throw new IOException("Only remote URLs are supported");
+    }
+
     /**
      * Acquire a reader to an URL
      * @param url the URL to read
@@ -179,13 +453,35 @@ public class ImportSupport extends SafeConfig
     public Reader acquireReader(String url) throws IOException
     {
         getLog().debug("acquire URL {}", url);
-        if (isRemoteURL(url))
+        ImportEvent event = null;
+        if (FlightRecorder.isAvailable())
         {
-            return acquireRemoteURLReader(url);
+            event = new ImportEvent();
+            event.begin();
         }
-        else
+        boolean remote = isRemoteURL(url);
+        try
         {
-            return acquireLocalURLReader(url);
+            if (remote && memo != null && !isSafeMode())
+            {
+                String content = acquireMemoizedURLString(url);
+                return content == null ? null : new StringReader(content);
+            }
+            return remote ? acquireRemoteURLReader(url) : acquireLocalURLReader(url);
+        }
+        finally
+        {
+            if (event != null)
+            {
+                event.end();
+                if (event.shouldCommit())
+                {
+                    event.url = url;
+                    event.remote = remote;
+                    event.reader = true;
+                    event.commit();
+                }
+            }
         }
     }
 
@@ -197,7 +493,25 @@ public class ImportSupport extends SafeConfig
      */
     protected Reader acquireRemoteURLReader(String url) throws  IOException
     {
-        // remote URL
+        Future<String> future = prefetched.remove(url);
+        if (future != null)
+        {
+            return new StringReader(join(url, future));
+        }
+        if (HttpFetcher.isHttpURL(url))
+        {
+            try
+            {
+                return HttpFetcher.getInstance(connectTimeout).open(url, readTimeout);
+            }
+            catch (IOException | RuntimeException ex)
+            {
+                throw new IOException("Problem accessing the remote URL \""
+                    + url + "\". " + ex, ex);
+            }
+        }
+
+        // other remote URL
         URLConnection uc = null;
         HttpURLConnection huc = null;
         InputStream i = null;
@@ -207,6 +521,8 @@ public class ImportSupport extends SafeConfig
             // handle remote URLs ourselves, using java.net.URL
             URL u = ConversionUtils.toURL(url);
             uc = u.openConnection();
+            uc.setConnectTimeout(connectTimeout);
+            uc.setReadTimeout(readTimeout);
             i = uc.getInputStream();
 
             // check response code for HTTP URLs, per spec,
@@ -485,30 +801,54 @@ public class ImportSupport extends SafeConfig
      * @param resource the resource to read
      * @return the content of the resource
      */
-    public String getResourceString(String resource)
+    public String getResourceString(final String resource)
+    {
+        if (memo != null)
+        {
+            try
+            {
+                return memo.get(ResourceMemo.resourceKey(resource), () -> readResource(resource));
+            }
+            catch (IOException ioe)
+            {
+                // already logged
+                return null;
+            }
+        }
+        return readResource(resource);
+    }
+
+    /**
+     * Reads a local resource.
+     * @param resource the resource to read
+     * @return the content of the resource, or null
+     */
+    private String readResource(String resource)
     {
         String ret = null;
-        try
+        Reader reader = openResource(resource);
+        if (reader != null)
         {
-            Reader rawReader = getResourceReader(resource);
-            if (rawReader != null)
+            try
+            {
+                ret = readAll(reader);
+            }
+            catch (IOException ioe)
+            {
+                getLog().error("could not load resource {}", resource, ioe);
+            }
+            finally
             {
-                BufferedReader reader = new BufferedReader(rawReader);
-                StringBuilder sb = new StringBuilder();
-                int i;
-                // under JIT, testing seems to show this simple loop is as fast
-                // as any of the alternatives
-                while ((i = reader.read()) != -1)
+                try
+                {
+                    reader.close();
+                }
+                catch (IOException ioe)
                 {
-                    sb.append((char) i);
+                    getLog().error("Could not close reader.", ioe);
                 }
-                ret = sb.toString();
             }
         }
-        catch (IOException ioe)
-        {
-            getLog().error("could not load resource {}", resource, ioe);
-        }
         return ret;
     }
 
@@ -519,6 +859,21 @@ public class ImportSupport extends SafeConfig
      * @return a reader of the resource
      */
     public Reader getResourceReader(String resource)
+    {
+        if (memo != null)
+        {
+            String content = getResourceString(resource);
+            return content == null ? null : new StringReader(content);
+        }
+        return openResource(resource);
+    }
+
+    /**
+     * Opens a reader of a local resource.
+     * @param resource the resource to read
+     * @return a reader of the resource, or null
+     */
+    private Reader openResource(String resource)
     {
         getLog().debug("get resource {}", resource);
         URL url = null;
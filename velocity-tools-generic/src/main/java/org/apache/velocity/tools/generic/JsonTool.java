@@ -220,6 +220,27 @@ public class JsonTool extends ImportSupport implements Iterable, Serializable
         return this;
     }
 
+    /**
+     * Starts fetching the supplied http or https URL asynchronously, for
+     * a subsequent {@link #fetch(String)} of the same URL to find it
+     * ready or pending. Meant to be called early in the request, and
+     * ignored unless the tool is request scoped.
+     * @param url the URL to prefetch
+     * @since VelocityTools 4.0
+     */
+    public void prefetch(String url)
+    {
+        if (url == null || url.length() == 0)
+        {
+            return;
+        }
+        if (importSupport == null)
+        {
+            initializeImportSupport(new ValueParser());
+        }
+        importSupport.prefetch(url);
+    }
+
     /**
      * Reads and parses a remote or local URL
      * @param url resource URL
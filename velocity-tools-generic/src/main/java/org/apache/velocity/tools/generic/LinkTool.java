@@ -22,13 +22,17 @@ package org.apache.velocity.tools.generic;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Array;
+import java.lang.reflect.Method;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 import org.apache.velocity.tools.Scope;
@@ -124,6 +128,12 @@ public class LinkTool extends SafeConfig implements Cloneable, Serializable
     protected boolean opaque;
     protected final LinkTool self;
 
+    /* pre-encoded scheme, user info, host and port, shared with duplicates */
+    private transient EncodedPrefix encodedPrefix;
+
+    /* pre-encoded path, shared with duplicates */
+    private transient EncodedPath encodedPath;
+
 
     /**
      * Default constructor. Tool typically is configured before use.
@@ -1745,6 +1755,18 @@ public class LinkTool extends SafeConfig implements Cloneable, Serializable
      */
     public String toString()
     {
+        if (port > -2 && !opaque && DIRECT_RENDERING.get(getClass()))
+        {
+            if (isEmpty())
+            {
+                return null;
+            }
+            StringBuilder out = new StringBuilder(64);
+            if (render(out))
+            {
+                return out.toString();
+            }
+        }
         URI uri = createURI();
         if (uri == null)
         {
@@ -1757,6 +1779,271 @@ public class LinkTool extends SafeConfig implements Cloneable, Serializable
         return uri.toString();
     }
 
+    /**
+     * Whether there is nothing to render, in which case {@link #createURI()}
+     * returns null.
+     * @return emptiness
+     */
+    private boolean isEmpty()
+    {
+        return path == null && query == null && fragment == null &&
+            (forceRelative || (scheme == null && user == null && host == null));
+    }
+
+    /**
+     * <p>Encodes the link straight into the provided buffer, producing the
+     * same result as {@link #createURI()} followed by
+     * {@link #decodeQueryPercents(String)}. The encoded scheme/user/host/port
+     * prefix and path are cached, and shared with duplicates.</p>
+     * <p>Returns false without rendering anything for the less common
+     * cases where the {@link URI} constructor would have to validate or
+     * normalize the result (opaque URIs, scheme without host, relative
+     * paths with a host, non-ASCII space or control characters...).</p>
+     * @param out target buffer
+     * @return whether the link has been rendered
+     */
+    private boolean render(StringBuilder out)
+    {
+        String prefix = "";
+        if (!forceRelative && host != null)
+        {
+            prefix = getEncodedPrefix();
+            if (prefix == null ||
+                path != null && path.length() > 0 && path.charAt(0) != '/')
+            {
+                return false;
+            }
+        }
+        else if (!forceRelative && scheme != null)
+        {
+            return false;
+        }
+        else if (path != null && (path.startsWith("//") || hasSchemeLikePrefix(path)))
+        {
+            return false;
+        }
+        int start = out.length();
+        out.append(prefix);
+        if (path != null)
+        {
+            String encoded = getEncodedPath();
+            if (encoded == null)
+            {
+                out.setLength(start);
+                return false;
+            }
+            out.append(encoded);
+        }
+        String qs = toQuery(query);
+        if (qs != null)
+        {
+            out.append('?');
+            // percents are kept as is in the query, see decodeQueryPercents()
+            if (!quote(out, qs, QUERY_PERCENT_CHARS))
+            {
+                out.setLength(start);
+                return false;
+            }
+        }
+        if (fragment != null)
+        {
+            out.append('#');
+            if (!quote(out, fragment, QUERY_CHARS))
+            {
+                out.setLength(start);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether a relative path would be parsed as starting with a scheme.
+     * @param path path
+     * @return whether a colon appears before any slash
+     */
+    private static boolean hasSchemeLikePrefix(String path)
+    {
+        for (int i = 0; i < path.length(); ++i)
+        {
+            char c = path.charAt(i);
+            if (c == '/' || c == '?' || c == '#')
+            {
+                return false;
+            }
+            if (c == ':')
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the encoded scheme, user info, host and port, or null if the {@link URI}
+     * class rejects them
+     */
+    private String getEncodedPrefix()
+    {
+        EncodedPrefix cached = encodedPrefix;
+        if (cached == null || cached.port != port || !Objects.equals(cached.host, host) ||
+            !Objects.equals(cached.scheme, scheme) || !Objects.equals(cached.user, user))
+        {
+            String encoded;
+            try
+            {
+                encoded = new URI(scheme, user, host, port, null, null, null).toString();
+            }
+            catch (URISyntaxException use)
+            {
+                encoded = null;
+            }
+            cached = new EncodedPrefix(scheme, user, host, port, encoded);
+            encodedPrefix = cached;
+        }
+        return cached.encoded;
+    }
+
+    /**
+     * @return the encoded path, or null if it cannot be encoded without the {@link URI} class
+     */
+    private String getEncodedPath()
+    {
+        EncodedPath cached = encodedPath;
+        if (cached == null || !cached.path.equals(path))
+        {
+            StringBuilder out = new StringBuilder(path.length() + 16);
+            String encoded = quote(out, path, PATH_CHARS) ? out.toString() : null;
+            cached = new EncodedPath(path, encoded);
+            encodedPath = cached;
+        }
+        return cached.encoded;
+    }
+
+    /**
+     * Appends the given URI component, escaping ASCII characters which are
+     * not part of the given allowed set, exactly like the {@link URI}
+     * multi-argument constructors do.
+     * @param out target buffer
+     * @param str URI component
+     * @param allowed allowed ASCII characters
+     * @return false if the component contains non-ASCII space or control characters,
+     * which are left to the {@link URI} class
+     */
+    private static boolean quote(StringBuilder out, String str, boolean[] allowed)
+    {
+        for (int i = 0; i < str.length(); ++i)
+        {
+            char c = str.charAt(i);
+            if (c < 0x80)
+            {
+                if (allowed[c])
+                {
+                    out.append(c);
+                }
+                else
+                {
+                    out.append('%').append(HEX_DIGITS[(c >> 4) & 0x0F]).append(HEX_DIGITS[c & 0x0F]);
+                }
+            }
+            else if (Character.isSpaceChar(c) || Character.isISOControl(c))
+            {
+                return false;
+            }
+            else
+            {
+                out.append(c);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether {@link #toString()} can encode links directly, which is only the case
+     * for classes overriding neither {@link #createURI()} nor {@link #decodeQueryPercents(String)}.
+     */
+    private static final ClassValue<Boolean> DIRECT_RENDERING = new ClassValue<Boolean>()
+    {
+        @Override
+        protected Boolean computeValue(Class<?> type)
+        {
+            for (Class<?> c = type; c != LinkTool.class; c = c.getSuperclass())
+            {
+                for (Method method : c.getDeclaredMethods())
+                {
+                    if (method.getName().equals("createURI") && method.getParameterCount() == 0 ||
+                        method.getName().equals("decodeQueryPercents") && Arrays.equals(method.getParameterTypes(), new Class<?>[] { String.class }))
+                    {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    };
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    /* characters allowed as is in URI paths and queries, as per RFC 2396 */
+    private static final boolean[] PATH_CHARS = asciiSet("-_.!~*'()" + ":@&=+$," + ";/");
+    private static final boolean[] QUERY_CHARS = asciiSet("-_.!~*'()" + ";/?:@&=+$,[]");
+    private static final boolean[] QUERY_PERCENT_CHARS = asciiSet("-_.!~*'()" + ";/?:@&=+$,[]" + "%");
+
+    private static boolean[] asciiSet(String punct)
+    {
+        boolean[] set = new boolean[0x80];
+        for (char c = '0'; c <= '9'; ++c)
+        {
+            set[c] = true;
+        }
+        for (char c = 'a'; c <= 'z'; ++c)
+        {
+            set[c] = true;
+            set[Character.toUpperCase(c)] = true;
+        }
+        for (char c : punct.toCharArray())
+        {
+            set[c] = true;
+        }
+        return set;
+    }
+
+    /**
+     * Immutable pre-encoded scheme, user info, host and port.
+     */
+    private static final class EncodedPrefix
+    {
+        final String scheme;
+        final String user;
+        final String host;
+        final int port;
+        final String encoded;
+
+        EncodedPrefix(String scheme, String user, String host, int port, String encoded)
+        {
+            this.scheme = scheme;
+            this.user = user;
+            this.host = host;
+            this.port = port;
+            this.encoded = encoded;
+        }
+    }
+
+    /**
+     * Immutable pre-encoded path.
+     */
+    private static final class EncodedPath
+    {
+        final String path;
+        final String encoded;
+
+        EncodedPath(String path, String encoded)
+        {
+            this.path = path;
+            this.encoded = encoded;
+        }
+    }
+
     /**
      * This is an ugly (but fast) hack that's needed because URI encodes
      * things that we don't need encoded while not encoding things
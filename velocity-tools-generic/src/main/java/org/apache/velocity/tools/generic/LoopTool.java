@@ -20,13 +20,13 @@ package org.apache.velocity.tools.generic;
  */
 
 import java.io.Serializable;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.Stack;
 
 import org.apache.velocity.tools.ClassUtils;
 import org.apache.velocity.tools.Scope;
@@ -78,6 +78,16 @@ import org.apache.velocity.tools.config.ValidScope;
  *  3 -&gt; 5
  *  4 -&gt; 6
  *  5 -&gt; 7
+ * </pre>
+ * <p>
+ * Watched loops can also be given a lazy pipeline of operators, applied
+ * in the order they are added, element by element and without recursion,
+ * so that big iterables are processed in constant stack and memory:
+ * </p>
+ * <pre>
+ *  #foreach( $names in $loop.watch($users).filter('active', true).map('name').limit(100).chunk(10) )
+ *  $names
+ *  #end
  *
  * Example tools.xml config (if you want to use this with VelocityView):
  * &lt;tools&gt;
@@ -97,7 +107,8 @@ public class LoopTool extends SafeConfig implements Serializable
 {
     private static final long serialVersionUID = -4760226781390687478L;
 
-    private Stack<ManagedIterator> iterators = new Stack<ManagedIterator>();
+    // unsynchronized stack, bottom first
+    private ArrayDeque<ManagedIterator> iterators = new ArrayDeque<ManagedIterator>();
     private ManagedIterator last;
     private Map<String,Object> lastSyncedValues;
 
@@ -122,7 +133,7 @@ public class LoopTool extends SafeConfig implements Serializable
         }
 
         ManagedIterator managed = manage(iterator, null);
-        iterators.push(managed);
+        iterators.addLast(managed);
         this.last = managed;
         return managed;
     }
@@ -154,7 +165,7 @@ public class LoopTool extends SafeConfig implements Serializable
         }
 
         ManagedIterator managed = manage(iterator, name);
-        iterators.push(managed);
+        iterators.addLast(managed);
         this.last = managed;
         return managed;
     }
@@ -179,10 +190,10 @@ public class LoopTool extends SafeConfig implements Serializable
     public void stop()
     {
         // if we have an iterator on the stack
-        if (!iterators.empty())
+        if (!iterators.isEmpty())
         {
             // stop the top one, so #foreach doesn't loop again
-            iterators.peek().stop();
+            iterators.peekLast().stop();
         }
     }
 
@@ -217,36 +228,20 @@ public class LoopTool extends SafeConfig implements Serializable
      */
     public void stopTo(String name)
     {
-        if (!iterators.empty())
+        // look for the innermost iterator with the specified name
+        int depth = 0;
+        boolean found = false;
+        for (Iterator<ManagedIterator> i = iterators.descendingIterator(); !found && i.hasNext(); depth++)
         {
-            // create a backup stack to put things back as they were
-            Stack<ManagedIterator> backup = new Stack<ManagedIterator>();
-            // look for the iterator with the specified name
-            boolean found = false;
-            while (!found && !iterators.empty())
-            {
-                ManagedIterator iterator = iterators.pop();
-                if (iterator.getName().equals(name))
-                {
-                    found = true;
-                    iterator.stop();
-                }
-                else
-                {
-                    // keep a backup of the ones that don't match
-                    backup.push(iterator);
-                }
-            }
-
-            while (!backup.empty())
+            found = i.next().getName().equals(name);
+        }
+        if (found)
+        {
+            // stop it, and the ones nested within it
+            Iterator<ManagedIterator> i = iterators.descendingIterator();
+            while (depth-- > 0)
             {
-                // push the nested iterators back
-                ManagedIterator iterator = backup.pop();
-                iterators.push(iterator);
-                if (found)
-                {
-                    iterator.stop();
-                }
+                i.next().stop();
             }
         }
     }
@@ -277,10 +272,10 @@ public class LoopTool extends SafeConfig implements Serializable
     public void skip(int number)
     {
         // if we have an iterator on the stack
-        if (!iterators.empty())
+        if (!iterators.isEmpty())
         {
             // tell the top one to skip the specified number
-            skip(number, iterators.peek());
+            skip(number, iterators.peekLast());
         }
     }
 
@@ -411,9 +406,9 @@ public class LoopTool extends SafeConfig implements Serializable
         // search all iterators in reverse
         // (so nested ones take priority)
         // for one that is responsible for synced
-        for (int i=iterators.size() - 1; i >= 0; i--)
+        for (Iterator<ManagedIterator> i = iterators.descendingIterator(); i.hasNext(); )
         {
-            ManagedIterator iterator = iterators.get(i);
+            ManagedIterator iterator = i.next();
             if (iterator.isSyncedWith(key))
             {
                 return iterator.get(key);
@@ -593,7 +588,7 @@ public class LoopTool extends SafeConfig implements Serializable
      */
     protected ManagedIterator pop()
     {
-        ManagedIterator i = iterators.pop();
+        ManagedIterator i = iterators.removeLast();
         this.lastSyncedValues = i.getLastSyncedValues();
         return i;
     }
@@ -631,7 +626,10 @@ public class LoopTool extends SafeConfig implements Serializable
      * associated with a name for advanced nested loop control.
      * This also allows a arbitrary {@link ActionCondition}s to be added
      * in order to have it automatically skip over or stop before
-     * certain elements in the iterator.
+     * certain elements in the iterator, and a pipeline of lazy operators
+     * ({@link #filter(Condition)}, {@link #map(String)}, {@link #limit(int)},
+     * {@link #skipWhile(Condition)} and {@link #chunk(int)}) to be applied
+     * to the elements before those conditions are checked.
      */
     public class ManagedIterator implements Iterator
     {
@@ -642,6 +640,7 @@ public class LoopTool extends SafeConfig implements Serializable
         private Boolean first = null;
         private int count = 0;
         private Object next;
+        private boolean cached = false;
         private List<ActionCondition> conditions;
         private Map<String,SyncedIterator> synced;
 
@@ -735,7 +734,7 @@ public class LoopTool extends SafeConfig implements Serializable
                 return false;
             }
             // we're not stopped, so do we have a next cached?
-            if (this.next != null)
+            if (cached)
             {
                 return true;
             }
@@ -748,42 +747,55 @@ public class LoopTool extends SafeConfig implements Serializable
         // Returns true if there is a next to get.
         private boolean cacheNext(boolean popWhenDone)
         {
-            // ok, let's see if we can get a next
-            if (!iterator.hasNext())
+            // loop rather than recurse over excluded elements
+            while (iterator.hasNext())
             {
-                if (popWhenDone)
+                // ok, the iterator has more, but do they work for us?
+                Object value = iterator.next();
+                Action action = getAction(value);
+                if (action == null)
                 {
-                    // this iterator is done, pop it from the owner's stack
-                    owner.pop();
-                    // and make sure we don't pop twice
-                    stop();
+                    this.next = value;
+                    this.cached = true;
+                    return true;
                 }
-                return false;
+                switch (action)
+                {
+                    case EXCLUDE:
+                        // go on to the next one
+                        break;
+                    case STOP:
+                        stop();
+                        return false;
+                    default:
+                        throw new IllegalStateException("ActionConditions should never have a null Action");
+                }
+            }
+
+            if (popWhenDone)
+            {
+                // this iterator is done, pop it from the owner's stack
+                owner.pop();
+                // and make sure we don't pop twice
+                stop();
             }
+            return false;
+        }
 
-            // ok, the iterator has more, but do they work for us?
-            this.next = iterator.next();
+        // Returns the action of the first condition matched by the value, if any.
+        private Action getAction(Object value)
+        {
             if (conditions != null)
             {
                 for (ActionCondition condition : conditions)
                 {
-                    if (condition.matches(this.next))
+                    if (condition.matches(value))
                     {
-                        switch (condition.action)
-                        {
-                            case EXCLUDE:
-                                // recurse on to the next one
-                                return cacheNext(popWhenDone);
-                            case STOP:
-                                stop();
-                                return false;
-                            default:
-                                throw new IllegalStateException("ActionConditions should never have a null Action");
-                        }
+                        return condition.action;
                     }
                 }
             }
-            return true;
+            return null;
         }
 
         private void shiftSynced()
@@ -856,7 +868,7 @@ public class LoopTool extends SafeConfig implements Serializable
         public Object next()
         {
             // if no next is cached...
-            if (this.next == null)
+            if (!cached)
             {
                 // try to cache one
                 if (!cacheNext(true))
@@ -883,6 +895,7 @@ public class LoopTool extends SafeConfig implements Serializable
             Object value = this.next;
             // clear the cache
             this.next = null;
+            this.cached = false;
             // call next on synced ones
             shiftSynced();
             // return the no-longer-cached value
@@ -905,6 +918,7 @@ public class LoopTool extends SafeConfig implements Serializable
         {
             this.stopped = true;
             this.next = null;
+            this.cached = false;
         }
 
         /**
@@ -950,6 +964,141 @@ public class LoopTool extends SafeConfig implements Serializable
             return this;
         }
 
+        /**
+         * Directs this instance to only keep the elements
+         * equal to the specified Object.
+         * @param compare value to keep
+         * @return This same {@link ManagedIterator} instance
+         */
+        public ManagedIterator filter(Object compare)
+        {
+            return filter(new Equals(compare));
+        }
+
+        /**
+         * Directs this instance to only keep the elements whose
+         * specified property is equal to the specified Object.
+         * @param property bean property
+         * @param compare property value to keep
+         * @return This same {@link ManagedIterator} instance
+         */
+        public ManagedIterator filter(String property, Object compare)
+        {
+            if (property == null)
+            {
+                return null;
+            }
+            return filter(new PropertyCondition(property, new Equals(compare)));
+        }
+
+        /**
+         * Adds a lazy operator only keeping the elements
+         * which satisfy the specified {@link Condition}.
+         * @param condition condition
+         * @return This same {@link ManagedIterator} instance
+         */
+        public ManagedIterator filter(Condition condition)
+        {
+            if (condition == null)
+            {
+                return null;
+            }
+            iterator = new FilterIterator(iterator, condition);
+            return this;
+        }
+
+        /**
+         * Adds a lazy operator replacing each element
+         * with the value of its specified property.
+         * Elements whose property cannot be read are replaced with {@code null}.
+         * @param property bean property
+         * @return This same {@link ManagedIterator} instance
+         */
+        public ManagedIterator map(String property)
+        {
+            if (property == null)
+            {
+                return null;
+            }
+            iterator = new MapIterator(iterator, new PropertyAccessor(property));
+            return this;
+        }
+
+        /**
+         * Adds a lazy operator letting at most the specified
+         * number of elements through.
+         * @param max maximum number of elements
+         * @return This same {@link ManagedIterator} instance
+         */
+        public ManagedIterator limit(int max)
+        {
+            if (max < 0)
+            {
+                return null;
+            }
+            iterator = new LimitIterator(iterator, max);
+            return this;
+        }
+
+        /**
+         * Directs this instance to skip the leading elements
+         * equal to the specified Object.
+         * @param compare value to skip
+         * @return This same {@link ManagedIterator} instance
+         */
+        public ManagedIterator skipWhile(Object compare)
+        {
+            return skipWhile(new Equals(compare));
+        }
+
+        /**
+         * Directs this instance to skip the leading elements whose
+         * specified property is equal to the specified Object.
+         * @param property bean property
+         * @param compare property value to skip
+         * @return This same {@link ManagedIterator} instance
+         */
+        public ManagedIterator skipWhile(String property, Object compare)
+        {
+            if (property == null)
+            {
+                return null;
+            }
+            return skipWhile(new PropertyCondition(property, new Equals(compare)));
+        }
+
+        /**
+         * Adds a lazy operator skipping the leading elements
+         * which satisfy the specified {@link Condition}.
+         * @param condition condition
+         * @return This same {@link ManagedIterator} instance
+         */
+        public ManagedIterator skipWhile(Condition condition)
+        {
+            if (condition == null)
+            {
+                return null;
+            }
+            iterator = new SkipWhileIterator(iterator, condition);
+            return this;
+        }
+
+        /**
+         * Adds a lazy operator grouping the elements in lists of
+         * the specified size, the last one being possibly shorter.
+         * @param size chunk size
+         * @return This same {@link ManagedIterator} instance
+         */
+        public ManagedIterator chunk(int size)
+        {
+            if (size < 1)
+            {
+                return null;
+            }
+            iterator = new ChunkIterator(iterator, size);
+            return this;
+        }
+
         /**
          * <p>Adds another iterator to be kept in sync with the one
          * being managed by this instance.  The values of the parallel
@@ -1024,6 +1173,195 @@ public class LoopTool extends SafeConfig implements Serializable
         }
     }
 
+    /**
+     * Lazy operator replacing elements with one of their properties.
+     */
+    private class MapIterator implements Iterator
+    {
+        private final Iterator source;
+        private final PropertyAccessor accessor;
+
+        MapIterator(Iterator source, PropertyAccessor accessor)
+        {
+            this.source = source;
+            this.accessor = accessor;
+        }
+
+        public boolean hasNext()
+        {
+            return source.hasNext();
+        }
+
+        public Object next()
+        {
+            Object element = source.next();
+            try
+            {
+                return accessor.get(element);
+            }
+            catch (Exception e)
+            {
+                getLog().error("could not read property '{}' of {}", accessor.getProperty(), element, e);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Base class of the lazy operators which may consume several
+     * source elements to produce one. The next element is looked
+     * for in a loop, so that the stack does not grow with the
+     * number of skipped elements.
+     */
+    private static abstract class LookAheadIterator implements Iterator
+    {
+        protected final Iterator source;
+        private Object next;
+        private boolean cached = false;
+
+        LookAheadIterator(Iterator source)
+        {
+            this.source = source;
+        }
+
+        /**
+         * @param element next source element
+         * @return whether the element is let through
+         */
+        protected abstract boolean accept(Object element);
+
+        public boolean hasNext()
+        {
+            while (!cached && source.hasNext())
+            {
+                Object element = source.next();
+                if (accept(element))
+                {
+                    next = element;
+                    cached = true;
+                }
+            }
+            return cached;
+        }
+
+        public Object next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException("There are no more valid elements in this iterator");
+            }
+            Object value = next;
+            next = null;
+            cached = false;
+            return value;
+        }
+    }
+
+    /**
+     * Lazy operator only keeping the elements satisfying a {@link Condition}.
+     */
+    private static class FilterIterator extends LookAheadIterator
+    {
+        private final Condition condition;
+
+        FilterIterator(Iterator source, Condition condition)
+        {
+            super(source);
+            this.condition = condition;
+        }
+
+        protected boolean accept(Object element)
+        {
+            return condition.test(element);
+        }
+    }
+
+    /**
+     * Lazy operator skipping the leading elements satisfying a {@link Condition}.
+     */
+    private static class SkipWhileIterator extends LookAheadIterator
+    {
+        private final Condition condition;
+        private boolean skipping = true;
+
+        SkipWhileIterator(Iterator source, Condition condition)
+        {
+            super(source);
+            this.condition = condition;
+        }
+
+        protected boolean accept(Object element)
+        {
+            if (skipping && condition.test(element))
+            {
+                return false;
+            }
+            skipping = false;
+            return true;
+        }
+    }
+
+    /**
+     * Lazy operator letting a maximum number of elements through.
+     */
+    private static class LimitIterator implements Iterator
+    {
+        private final Iterator source;
+        private int remaining;
+
+        LimitIterator(Iterator source, int max)
+        {
+            this.source = source;
+            this.remaining = max;
+        }
+
+        public boolean hasNext()
+        {
+            return remaining > 0 && source.hasNext();
+        }
+
+        public Object next()
+        {
+            if (remaining <= 0)
+            {
+                throw new NoSuchElementException("There are no more valid elements in this iterator");
+            }
+            --remaining;
+            return source.next();
+        }
+    }
+
+    /**
+     * Lazy operator grouping elements in lists of a given size.
+     */
+    private static class ChunkIterator implements Iterator
+    {
+        private final Iterator source;
+        private final int size;
+
+        ChunkIterator(Iterator source, int size)
+        {
+            this.source = source;
+            this.size = size;
+        }
+
+        public boolean hasNext()
+        {
+            return source.hasNext();
+        }
+
+        public Object next()
+        {
+            List<Object> chunk = new ArrayList<Object>(size);
+            do
+            {
+                chunk.add(source.next());
+            }
+            while (chunk.size() < size && source.hasNext());
+            return chunk;
+        }
+    }
+
     /**
      * Represents an automatic action taken by a {@link ManagedIterator}
      * when a {@link Condition} is satisfied by the subsequent element.
@@ -1124,6 +1462,40 @@ public class LoopTool extends SafeConfig implements Serializable
     }
 
 
+    /**
+     * Condition checking a property of the elements in the iterator
+     * against another condition. Elements whose property cannot be read
+     * do not satisfy it.
+     */
+    public static class PropertyCondition implements Condition
+    {
+        private final PropertyAccessor accessor;
+        private final Condition condition;
+
+        public PropertyCondition(String property, Condition condition)
+        {
+            if (property == null || condition == null)
+            {
+                throw new IllegalArgumentException("Property and Condition must both not be null");
+            }
+            this.accessor = new PropertyAccessor(property);
+            this.condition = condition;
+        }
+
+        public boolean test(Object value)
+        {
+            try
+            {
+                return condition.test(accessor.get(value));
+            }
+            catch (Exception e)
+            {
+                return false;
+            }
+        }
+    }
+
+
     /**
      * Simple wrapper to make it easy to keep an arbitray Iterator
      * in sync with a {@link ManagedIterator}.
@@ -20,10 +20,13 @@ package org.apache.velocity.tools.generic;
  */
 
 import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Iterator;
-import org.apache.commons.beanutils.PropertyUtils;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.velocity.tools.ConversionUtils;
 import org.apache.velocity.tools.Scope;
 import org.apache.velocity.tools.config.DefaultKey;
@@ -50,12 +53,20 @@ import org.apache.velocity.tools.config.ValidScope;
  * This class does <i>not</i> give correct results with values that would
  * require BigInteger or BigDecimal representations, or with Long values having more digits
  * than what Double can handle.</li>
+ *
+ * <li>The aggregation methods ({@code getTotal()} and {@code getAverage()}) on
+ * collections are the exception: they sum integral values as longs and
+ * {@link BigDecimal} or {@link BigInteger} values as BigDecimals, so that
+ * currency amounts do not lose precision. Collections larger than the
+ * {@code parallelThreshold} configuration value, if set, are summed using
+ * a parallel stream.</li>
  * </ul>
  * <p>Example tools.xml config:</p>
  * <pre>
  * &lt;tools&gt;
  *   &lt;toolbox scope="application"&gt;
- *     &lt;tool class="org.apache.velocity.tools.generic.MathTool"/&gt;
+ *     &lt;tool class="org.apache.velocity.tools.generic.MathTool"
+ *              parallelThreshold="10000"/&gt;
  *   &lt;/toolbox&gt;
  * &lt;/tools&gt;
  * </pre>
@@ -71,6 +82,27 @@ public class MathTool extends FormatConfig implements Serializable
 {
     private static final long serialVersionUID = 3207828679772113341L;
 
+    /**
+     * The key used for specifying the minimum collection size above which
+     * aggregations are computed in parallel. Zero or negative (the default)
+     * disables parallel aggregation.
+     * @since VelocityTools 4.0
+     */
+    public static final String PARALLEL_THRESHOLD_KEY = "parallelThreshold";
+
+    private int parallelThreshold = 0;
+
+    /**
+     * Does the actual configuration.
+     * @param values configuration values
+     */
+    @Override
+    protected void configure(ValueParser values)
+    {
+        super.configure(values);
+        this.parallelThreshold = values.getInt(PARALLEL_THRESHOLD_KEY, parallelThreshold);
+    }
+
     public Number add(Object num1, Object num2)
     {
         return add(new Object[] { num1, num2 });
@@ -756,31 +788,8 @@ public class MathTool extends FormatConfig implements Serializable
         {
             return null;
         }
-        double result = 0;
-        // hold the first number and use it to match return type
-        Number first = null;
-        try
-        {
-            for (Iterator i = collection.iterator(); i.hasNext();)
-            {
-                Object property = PropertyUtils.getProperty(i.next(), field);
-                Number value = toNumber(property);
-                // skip over nulls (i.e. treat them as 0)
-                if (value != null)
-                {
-                    if (first == null)
-                    {
-                        first = value;
-                    }
-                    result += value.doubleValue();
-                }
-            }
-            return matchType(first, result);
-        }
-        catch (Exception e)
-        {
-            return null;
-        }
+        // skip over nulls (i.e. treat them as 0)
+        return aggregate(collection, field, true);
     }
 
     /**
@@ -794,12 +803,7 @@ public class MathTool extends FormatConfig implements Serializable
     public Number getAverage(Collection collection, String field)
     {
         Number result = getTotal(collection, field);
-        if (result == null)
-        {
-            return null;
-        }
-        double avg = result.doubleValue() / collection.size();
-        return matchType(result, avg);
+        return average(result, collection);
     }
 
     /**
@@ -840,25 +844,8 @@ public class MathTool extends FormatConfig implements Serializable
         {
             return null;
         }
-
-        double result = 0;
-        // grab the first number and use it to match return type
-        Number first = null;
-        for (Iterator i = collection.iterator(); i.hasNext();)
-        {
-            Number value = toNumber(i.next());
-            if (value == null)
-            {
-                //FIXME? or should we ignore this and keep adding?
-                return null;
-            }
-            if (first ==  null)
-            {
-                first = value;
-            }
-            result += value.doubleValue();
-        }
-        return matchType(first, result);
+        //FIXME? or should we ignore nulls and keep adding?
+        return aggregate(collection, null, false);
     }
 
     /**
@@ -870,12 +857,7 @@ public class MathTool extends FormatConfig implements Serializable
     public Number getAverage(Collection collection)
     {
         Number result = getTotal(collection);
-        if (result == null)
-        {
-            return null;
-        }
-        double avg = result.doubleValue() / collection.size();
-        return matchType(result, avg);
+        return average(result, collection);
     }
 
     /**
@@ -973,4 +955,239 @@ public class MathTool extends FormatConfig implements Serializable
         return matchType(total, avg);
     }
 
+    /**
+     * Sums the values (or the values of the specified property of the elements)
+     * of the collection, in parallel if the collection is big enough.
+     * @param collection collection of values or beans
+     * @param field bean property, or null to sum the elements themselves
+     * @param skipNulls whether null values are skipped or make the result null
+     * @return the sum of the values, or null
+     */
+    private Number aggregate(Collection collection, String field, boolean skipNulls)
+    {
+        Aggregator aggregator;
+        if (parallelThreshold > 0 && collection.size() >= parallelThreshold)
+        {
+            aggregator = (Aggregator)collection.parallelStream().collect(
+                () -> new Aggregator(field, skipNulls),
+                (a, element) -> ((Aggregator)a).accept(element),
+                (a, b) -> ((Aggregator)a).combine((Aggregator)b));
+        }
+        else
+        {
+            aggregator = new Aggregator(field, skipNulls);
+            for (Object element : collection)
+            {
+                aggregator.accept(element);
+                if (aggregator.failed)
+                {
+                    break;
+                }
+            }
+        }
+        return aggregator.getTotal();
+    }
+
+    /**
+     * @param total sum of the values
+     * @param collection aggregated collection
+     * @return average of the values, or null
+     */
+    private Number average(Number total, Collection collection)
+    {
+        if (total == null)
+        {
+            return null;
+        }
+        if (total instanceof BigDecimal)
+        {
+            return ((BigDecimal)total).divide(BigDecimal.valueOf(collection.size()), MathContext.DECIMAL128);
+        }
+        double avg = total.doubleValue() / collection.size();
+        return matchType(total, avg);
+    }
+
+    /**
+     * Type preserving accumulator: integral values are summed as longs,
+     * BigDecimal and BigInteger values (or long overflows) as BigDecimals,
+     * and everything else as doubles. Bean property getters are resolved
+     * once per element class.
+     */
+    private final class Aggregator
+    {
+        private static final int INTEGRAL = 0;
+        private static final int DOUBLE = 1;
+        private static final int DECIMAL = 2;
+
+        private final PropertyAccessor field;
+        private final boolean skipNulls;
+
+        private int mode = INTEGRAL;
+        private long longTotal = 0;
+        private double doubleTotal = 0;
+        private BigDecimal decimalTotal = null;
+        // hold the first number and use it to match return type
+        private Number first = null;
+        private boolean failed = false;
+
+        Aggregator(String field, boolean skipNulls)
+        {
+            this.field = field == null ? null : new PropertyAccessor(field);
+            this.skipNulls = skipNulls;
+        }
+
+        void accept(Object element)
+        {
+            if (failed)
+            {
+                return;
+            }
+            try
+            {
+                Object property = field == null ? element : field.get(element);
+                Number value = toNumber(property);
+                if (value == null)
+                {
+                    failed = !skipNulls;
+                }
+                else
+                {
+                    add(value);
+                }
+            }
+            catch (Exception e)
+            {
+                failed = true;
+            }
+        }
+
+        private void add(Number value)
+        {
+            if (first == null)
+            {
+                first = value;
+            }
+            switch (mode)
+            {
+                case INTEGRAL:
+                    if (isIntegral(value))
+                    {
+                        try
+                        {
+                            longTotal = Math.addExact(longTotal, value.longValue());
+                            return;
+                        }
+                        catch (ArithmeticException ae)
+                        {
+                            // overflow
+                            mode = DECIMAL;
+                            decimalTotal = BigDecimal.valueOf(longTotal);
+                        }
+                    }
+                    else if (isDecimal(value))
+                    {
+                        mode = DECIMAL;
+                        decimalTotal = BigDecimal.valueOf(longTotal);
+                    }
+                    else
+                    {
+                        mode = DOUBLE;
+                        doubleTotal = longTotal;
+                    }
+                    break;
+                case DOUBLE:
+                    if (isDecimal(value))
+                    {
+                        mode = DECIMAL;
+                        decimalTotal = BigDecimal.valueOf(doubleTotal);
+                    }
+                    break;
+                default:
+            }
+            if (mode == DOUBLE)
+            {
+                doubleTotal += value.doubleValue();
+            }
+            else
+            {
+                decimalTotal = decimalTotal.add(toBigDecimal(value));
+            }
+        }
+
+        Aggregator combine(Aggregator other)
+        {
+            if (other.failed)
+            {
+                failed = true;
+            }
+            if (failed || other.first == null)
+            {
+                return this;
+            }
+            Number firstBefore = first;
+            try
+            {
+                add(other.mode == INTEGRAL ? Long.valueOf(other.longTotal)
+                    : other.mode == DOUBLE ? Double.valueOf(other.doubleTotal) : other.decimalTotal);
+            }
+            catch (Exception e)
+            {
+                // like accept(), e.g. a NaN or infinite double total meeting a decimal one
+                failed = true;
+            }
+            first = firstBefore == null ? other.first : firstBefore;
+            return this;
+        }
+
+        Number getTotal()
+        {
+            if (failed)
+            {
+                return null;
+            }
+            switch (mode)
+            {
+                case INTEGRAL:
+                    if (longTotal > Integer.MAX_VALUE || longTotal < Integer.MIN_VALUE)
+                    {
+                        return Long.valueOf(longTotal);
+                    }
+                    return Integer.valueOf((int)longTotal);
+                case DOUBLE:
+                    return matchType(first, doubleTotal);
+                default:
+                    return decimalTotal;
+            }
+        }
+
+        private boolean isIntegral(Number value)
+        {
+            return value instanceof Integer || value instanceof Long ||
+                value instanceof Short || value instanceof Byte ||
+                value instanceof AtomicInteger || value instanceof AtomicLong;
+        }
+
+        private boolean isDecimal(Number value)
+        {
+            return value instanceof BigDecimal || value instanceof BigInteger;
+        }
+
+        private BigDecimal toBigDecimal(Number value)
+        {
+            if (value instanceof BigDecimal)
+            {
+                return (BigDecimal)value;
+            }
+            if (value instanceof BigInteger)
+            {
+                return new BigDecimal((BigInteger)value);
+            }
+            if (isIntegral(value))
+            {
+                return BigDecimal.valueOf(value.longValue());
+            }
+            return new BigDecimal(value.toString());
+        }
+    }
+
 }
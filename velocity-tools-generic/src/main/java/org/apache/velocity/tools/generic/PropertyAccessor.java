@@ -0,0 +1,86 @@
+package org.apache.velocity.tools.generic;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.lang.reflect.Method;
+import java.util.Map;
+
+import org.apache.commons.beanutils.DynaBean;
+import org.apache.commons.beanutils.PropertyUtils;
+
+/**
+ * <p>Reads a property of successive beans. For a simple property name, the
+ * getter of the last bean class seen is kept, which is all it takes for the
+ * homogeneous collections templates iterate over. Nested, indexed and mapped
+ * properties, as well as dyna beans, are left to commons-beanutils.</p>
+ * <p>Instances are not thread-safe.</p>
+ *
+ * @since VelocityTools 4.0
+ * @version $Id$
+ */
+class PropertyAccessor
+{
+    private final String property;
+    private final boolean simple;
+    private Class<?> lastClass = null;
+    private Method lastGetter = null;
+
+    PropertyAccessor(String property)
+    {
+        this.property = property;
+        this.simple = property.indexOf('.') == -1 && property.indexOf('[') == -1 && property.indexOf('(') == -1;
+    }
+
+    /**
+     * @return property name
+     */
+    String getProperty()
+    {
+        return property;
+    }
+
+    /**
+     * @param bean target bean
+     * @return property value
+     * @throws Exception if the property cannot be read
+     */
+    Object get(Object bean) throws Exception
+    {
+        if (!simple || bean == null || bean instanceof DynaBean)
+        {
+            return PropertyUtils.getProperty(bean, property);
+        }
+        if (bean instanceof Map)
+        {
+            return ((Map)bean).get(property);
+        }
+        if (bean.getClass() != lastClass)
+        {
+            Method getter = PropertyUtils.getReadMethod(PropertyUtils.getPropertyDescriptor(bean, property));
+            if (getter == null)
+            {
+                throw new NoSuchMethodException("Unknown property '" + property + "' on class '" + bean.getClass() + "'");
+            }
+            lastClass = bean.getClass();
+            lastGetter = getter;
+        }
+        return lastGetter.invoke(bean);
+    }
+}
@@ -20,6 +20,19 @@ package org.apache.velocity.tools.generic;
  */
 
 import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.velocity.Template;
 import org.apache.velocity.VelocityContext;
 import org.apache.velocity.app.Velocity;
 import org.apache.velocity.app.VelocityEngine;
@@ -27,6 +40,8 @@ import org.apache.velocity.context.Context;
 import org.apache.velocity.tools.Scope;
 import org.apache.velocity.tools.config.DefaultKey;
 import org.apache.velocity.tools.config.InvalidScope;
+import org.apache.velocity.tools.jfr.FlightRecorder;
+import org.apache.velocity.tools.jfr.RenderEvent;
 
 /**
  * This tool exposes methods to evaluate the given
@@ -58,12 +73,20 @@ import org.apache.velocity.tools.config.InvalidScope;
  *      ------
  *      hello world!
  *
+ * Example of parseAll():
+ *      Input
+ *      -----
+ *      #foreach( $widget in $render.parseAll(['news.vm', 'weather.vm', 'stocks.vm']) )
+ *      &lt;div class="widget"&gt;$!widget&lt;/div&gt;
+ *      #end
+ *
  *
  * Toolbox configuration:
  * &lt;tools&gt;
  *   &lt;toolbox scope="request"&gt;
  *     &lt;tool class="org.apache.velocity.tools.generic.RenderTool"&gt;
  *       &lt;property name="parseDepth" type="number" value="10"/&gt;
+ *       &lt;property name="timeout" type="number" value="5000"/&gt;
  *     &lt;/tool&gt;
  *   &lt;/toolbox&gt;
  * &lt;/tools&gt;
@@ -96,6 +119,17 @@ import org.apache.velocity.tools.config.InvalidScope;
  * to 20 cycles, to prevent infinite loops. Both settings may be configured
  * to behave otherwise.</p>
  *
+ * <p>The {@link #evalAll(Collection)} and {@link #parseAll(Collection)} methods
+ * render independent page regions concurrently, each in its own child context
+ * of the current one, and return their outputs in the given order, so that
+ * slow regions (doing I/O through the import or json tools, for instance) no
+ * longer add up. Variables set by a region are not seen by the others nor by
+ * the page, and the request scoped tools they use must tolerate being called
+ * from several threads. The regions run on virtual threads where available,
+ * or on a shared pool of daemon threads otherwise, unless another executor
+ * is given. An optional 'timeout' property, in milliseconds, bounds the
+ * waiting for all of them.</p>
+ *
  * @author Nathan Bubna
  * @version $Revision$ $Date$
  */
@@ -121,6 +155,8 @@ public class RenderTool extends SafeConfig
     private int parseDepth = DEFAULT_PARSE_DEPTH;
     private boolean catchExceptions = true;
     private boolean forceThreadSafe = true;
+    private ExecutorService executor = null;
+    private int timeout = 0;
 
     /**
      * Looks for deprecated parse depth and catch.exceptions properties,
@@ -239,6 +275,55 @@ public class RenderTool extends SafeConfig
         return this.catchExceptions;
     }
 
+    /**
+     * Sets the executor of {@link #evalAll} and {@link #parseAll}.
+     * @param executor executor service
+     */
+    public void setExecutor(ExecutorService executor)
+    {
+        if (!isConfigLocked())
+        {
+            this.executor = executor;
+        }
+        else if (this.executor != executor)
+        {
+            getLog().error("Attempt was made to alter executor while config was locked.");
+        }
+    }
+
+    /**
+     * @return executor of {@link #evalAll} and {@link #parseAll}
+     */
+    public ExecutorService getExecutor()
+    {
+        return executor == null ? DefaultExecutor.INSTANCE : executor;
+    }
+
+    /**
+     * Sets the maximum time {@link #evalAll} and {@link #parseAll}
+     * wait for all the regions to be rendered.
+     * @param timeout timeout in milliseconds, 0 for none
+     */
+    public void setTimeout(int timeout)
+    {
+        if (!isConfigLocked())
+        {
+            this.timeout = timeout;
+        }
+        else if (this.timeout != timeout)
+        {
+            getLog().error("Attempt was made to alter timeout while config was locked.");
+        }
+    }
+
+    /**
+     * @return timeout of {@link #evalAll} and {@link #parseAll}, in milliseconds
+     */
+    public int getTimeout()
+    {
+        return this.timeout;
+    }
+
     /**
      * <p>Evaluates a String containing VTL using the context passed
      * to the {@link #setVelocityContext} method. If this tool is request
@@ -292,22 +377,39 @@ public class RenderTool extends SafeConfig
      */
     public String eval(Context ctx, String vtl) throws Exception
     {
-        if (this.catchExceptions)
+        RenderEvent event = null;
+        if (FlightRecorder.isAvailable())
         {
-            try
-            {
-                return internalEval(ctx, vtl);
-            }
-            catch (Exception e)
+            event = new RenderEvent();
+            event.begin();
+        }
+        String result = null;
+        try
+        {
+            result = internalEval(ctx, vtl);
+        }
+        catch (Exception e)
+        {
+            if (!this.catchExceptions)
             {
-                getLog().error("evaluation failed:", e);
-                return null;
+                throw e;
             }
+            getLog().error("evaluation failed:", e);
         }
-        else
+        finally
         {
-            return internalEval(ctx, vtl);
+            if (event != null)
+            {
+                event.end();
+                if (event.shouldCommit())
+                {
+                    event.sourceSize = vtl == null ? 0 : vtl.length();
+                    event.outputSize = result == null ? -1 : result.length();
+                    event.commit();
+                }
+            }
         }
+        return result;
     }
 
 
@@ -354,6 +456,193 @@ public class RenderTool extends SafeConfig
         return internalRecurse(ctx, vtl, 0);
     }
 
+    /**
+     * <p>Merges the template of the given name with the context passed
+     * to the {@link #setVelocityContext} method, like {@link #eval(String)}
+     * does for VTL, and returns the result as a String.</p>
+     *
+     * @param template template name
+     * @return the merged template as a String
+     * @throws Exception if something went wrong
+     */
+    public String parse(String template) throws Exception
+    {
+        Context ctx = forceThreadSafe ? new VelocityContext(context) : context;
+        return parse(ctx, template);
+    }
+
+    /**
+     * <p>Merges the template of the given name with the given context, and
+     * returns the result as a String. By default, <code>null</code> is
+     * returned if this fails.</p>
+     *
+     * @param ctx the current Context
+     * @param template template name
+     * @return the merged template as a String
+     * @throws Exception if something went wrong
+     */
+    public String parse(Context ctx, String template) throws Exception
+    {
+        try
+        {
+            return internalParse(ctx, template);
+        }
+        catch (Exception e)
+        {
+            if (!this.catchExceptions)
+            {
+                throw e;
+            }
+            getLog().error("merging of {} failed:", template, e);
+            return null;
+        }
+    }
+
+    /* Internal implementation of the parse() method function. */
+    protected String internalParse(Context ctx, String template) throws Exception
+    {
+        if (template == null)
+        {
+            return null;
+        }
+        Template t = engine == null ? Velocity.getTemplate(template) : engine.getTemplate(template);
+        StringWriter sw = new StringWriter();
+        t.merge(ctx, sw);
+        return sw.toString();
+    }
+
+    /**
+     * <p>Concurrently evaluates independent Strings containing VTL, each in
+     * its own child context of the context passed to the
+     * {@link #setVelocityContext} method, and returns the results in the
+     * same order. Failed or timed out evaluations give <code>null</code>
+     * unless exceptions are not caught.</p>
+     *
+     * @param fragments the codes to be evaluated
+     * @return the evaluated codes as Strings
+     * @throws Exception if something went wrong
+     */
+    public List<String> evalAll(Collection<?> fragments) throws Exception
+    {
+        return evalAll(context, fragments);
+    }
+
+    /**
+     * Concurrently evaluates independent Strings containing VTL,
+     * each in its own child context of the given one.
+     *
+     * @see #evalAll(Collection)
+     * @param ctx the current Context
+     * @param fragments the codes to be evaluated
+     * @return the evaluated codes as Strings
+     * @throws Exception if something went wrong
+     */
+    public List<String> evalAll(Context ctx, Collection<?> fragments) throws Exception
+    {
+        return renderAll(ctx, fragments, false);
+    }
+
+    /**
+     * <p>Concurrently merges independent templates, each with its own child
+     * context of the context passed to the {@link #setVelocityContext} method,
+     * and returns the results in the same order. Failed or timed out merges
+     * give <code>null</code> unless exceptions are not caught.</p>
+     *
+     * @param templates template names
+     * @return the merged templates as Strings
+     * @throws Exception if something went wrong
+     */
+    public List<String> parseAll(Collection<?> templates) throws Exception
+    {
+        return parseAll(context, templates);
+    }
+
+    /**
+     * Concurrently merges independent templates,
+     * each with its own child context of the given one.
+     *
+     * @see #parseAll(Collection)
+     * @param ctx the current Context
+     * @param templates template names
+     * @return the merged templates as Strings
+     * @throws Exception if something went wrong
+     */
+    public List<String> parseAll(Context ctx, Collection<?> templates) throws Exception
+    {
+        return renderAll(ctx, templates, true);
+    }
+
+    /* Submits the renderings, then gathers them in order. */
+    private List<String> renderAll(Context ctx, Collection<?> sources, final boolean templates) throws Exception
+    {
+        if (sources == null)
+        {
+            return null;
+        }
+        // tools of the shared context are not meant to be created concurrently
+        SynchronizedContext shared = ctx == null ? null : new SynchronizedContext(ctx);
+        ExecutorService service = getExecutor();
+        List<Future<String>> futures = new ArrayList<Future<String>>(sources.size());
+        for (Object source : sources)
+        {
+            final String name = source == null ? null : String.valueOf(source);
+            final Context child = new VelocityContext(shared);
+            futures.add(service.submit(() -> templates ? parse(child, name) : eval(child, name)));
+        }
+
+        List<String> results = new ArrayList<String>(futures.size());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        try
+        {
+            for (Future<String> future : futures)
+            {
+                try
+                {
+                    results.add(timeout > 0
+                        ? future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)
+                        : future.get());
+                }
+                catch (ExecutionException ee)
+                {
+                    // only thrown if exceptions are not caught
+                    Throwable cause = ee.getCause();
+                    if (cause instanceof Error)
+                    {
+                        throw (Error)cause;
+                    }
+                    throw (Exception)cause;
+                }
+                catch (TimeoutException te)
+                {
+                    if (!this.catchExceptions)
+                    {
+                        throw te;
+                    }
+                    getLog().error("rendering timed out after {} ms", timeout);
+                    future.cancel(true);
+                    results.add(null);
+                }
+            }
+        }
+        finally
+        {
+            if (results.size() < futures.size())
+            {
+                // do not leave orphan renderings behind on failure
+                for (Future<String> future : futures)
+                {
+                    future.cancel(true);
+                }
+            }
+            // renderings still running past this point cannot reach the request anymore
+            if (shared != null)
+            {
+                shared.close();
+            }
+        }
+        return results;
+    }
+
     protected String internalRecurse(Context ctx, String vtl, int count) throws Exception
     {
         String result = eval(ctx, vtl);
@@ -379,4 +668,85 @@ public class RenderTool extends SafeConfig
             }
         }
     }
+
+    /**
+     * Context serializing the accesses to another one, so that the
+     * concurrent renderings do not create its tools concurrently.
+     * Only the lookups are serialized, not the use of the tools.
+     * Once closed, it is empty and ignores modifications.
+     */
+    private static class SynchronizedContext implements Context
+    {
+        private Context context;
+
+        SynchronizedContext(Context context)
+        {
+            this.context = context;
+        }
+
+        synchronized void close()
+        {
+            context = null;
+        }
+
+        public synchronized Object put(String key, Object value)
+        {
+            return context == null ? null : context.put(key, value);
+        }
+
+        public synchronized Object get(String key)
+        {
+            return context == null ? null : context.get(key);
+        }
+
+        public synchronized boolean containsKey(String key)
+        {
+            return context != null && context.containsKey(key);
+        }
+
+        public synchronized String[] getKeys()
+        {
+            return context == null ? new String[0] : context.getKeys();
+        }
+
+        public synchronized Object remove(String key)
+        {
+            return context == null ? null : context.remove(key);
+        }
+    }
+
+    /**
+     * Shared default executor: one virtual thread per rendering where the
+     * JVM provides them (Java 21+), a bounded pool of daemon threads otherwise.
+     * When all of its threads are busy, renderings are done by the calling
+     * thread, which also prevents nested renderings from starving the pool.
+     */
+    private static class DefaultExecutor
+    {
+        static final int MAX_THREADS = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
+        static final ExecutorService INSTANCE = create();
+
+        private static ExecutorService create()
+        {
+            try
+            {
+                // looked up by reflection, to keep building with Java 11
+                return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            }
+            catch (ReflectiveOperationException roe)
+            {
+                final AtomicInteger count = new AtomicInteger();
+                return new ThreadPoolExecutor(0, MAX_THREADS, 60L, TimeUnit.SECONDS,
+                    new SynchronousQueue<Runnable>(),
+                    runnable ->
+                    {
+                        Thread thread = new Thread(runnable, "velocity-render-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+            }
+        }
+    }
 }
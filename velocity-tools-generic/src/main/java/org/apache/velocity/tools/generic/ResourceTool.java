@@ -22,10 +22,13 @@ package org.apache.velocity.tools.generic;
 import java.io.Serializable;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.velocity.tools.config.DefaultKey;
 
 /**
@@ -66,10 +69,10 @@ import org.apache.velocity.tools.config.DefaultKey;
  *    to {@code null}: in the default (non-strict) engine mode it then renders
  *    literally (e.g. {@code $text.missing}), a quiet reference {@code $!text.missing}
  *    renders nothing, and in strict mode the engine throws.</p>
- * <p>Also, be aware that very few performance considerations have been made
- *    in this initial version.  It should do fine, but if you have performance
- *    issues, please report them to dev@velocity.apache.org, so we can make
- *    improvements.
+ * <p>Resolved bundles, their values, their key lists and compiled message
+ *    formats are cached in static caches shared by all instances of this tool,
+ *    so that a request scoped tool does not pay for them on each request.
+ *    Use {@link #clearCache()} if bundles are reloaded at runtime.
  * </p>
  *
  * @author Nathan Bubna
@@ -84,6 +87,29 @@ public class ResourceTool extends LocaleConfig implements Serializable
 
     public static final String BUNDLES_KEY = "bundles";
 
+    /**
+     * Maximum number of entries for the bundles and message formats caches,
+     * which are cleared when it is exceeded since their keys may come from
+     * arbitrary request locales or values.
+     */
+    private static final int MAX_CACHE_SIZE = 1000;
+
+    private static final Map<BundleKey, CachedBundle> bundleCache = new ConcurrentHashMap<BundleKey, CachedBundle>();
+
+    private static final Map<String, MessageFormat> formatCache = new ConcurrentHashMap<String, MessageFormat>();
+
+    /**
+     * Clears the shared bundles, values and message formats caches,
+     * along with the JDK resource bundles cache.
+     * @since VelocityTools 4.0
+     */
+    public static void clearCache()
+    {
+        bundleCache.clear();
+        formatCache.clear();
+        ResourceBundle.clearCache(ResourceTool.class.getClassLoader());
+    }
+
     private String[] bundles = new String[] { "resources" };
 
     protected final void setDefaultBundle(String bundle)
@@ -177,7 +203,9 @@ public class ResourceTool extends LocaleConfig implements Serializable
      * Retrieves the {@link ResourceBundle} for the specified baseName
      * and locale, if such exists.  If the baseName or locale is null
      * or if the locale argument cannot be converted to a {@link Locale},
-     * then this will return null.
+     * then this will return null. The bundles returned by this method
+     * are cached per tool class, baseName and locale, so overriding
+     * methods must give the same bundle for the same arguments.
      * @param baseName base name
      * @param loc locale
      * @return resource bundle
@@ -192,6 +220,39 @@ public class ResourceTool extends LocaleConfig implements Serializable
         return ResourceBundle.getBundle(baseName, locale);
     }
 
+    /**
+     * Retrieves the cached entry for the specified baseName and locale,
+     * resolving its bundle through {@link #getBundle(String, Object)}.
+     * @param baseName base name
+     * @param loc locale
+     * @return cached bundle, or null if there is no such bundle
+     */
+    private CachedBundle getCachedBundle(String baseName, Object loc)
+    {
+        Locale locale = (loc == null) ? getLocale() : toLocale(loc);
+        if (baseName == null || locale == null)
+        {
+            return null;
+        }
+        BundleKey key = new BundleKey(getClass().getName(), baseName, locale);
+        CachedBundle cached = bundleCache.get(key);
+        if (cached == null)
+        {
+            ResourceBundle bundle = getBundle(baseName, locale);
+            if (bundle == null)
+            {
+                return null;
+            }
+            cached = new CachedBundle(bundle);
+            if (bundleCache.size() >= MAX_CACHE_SIZE)
+            {
+                bundleCache.clear();
+            }
+            bundleCache.put(key, cached);
+        }
+        return cached;
+    }
+
     /**
      * Returns the value for the specified key in the ResourceBundle for
      * the specified basename and locale.  If no such resource can be
@@ -204,19 +265,12 @@ public class ResourceTool extends LocaleConfig implements Serializable
      */
     public Object get(Object key, String baseName, Object loc)
     {
-        ResourceBundle bundle = getBundle(baseName, loc);
+        CachedBundle bundle = getCachedBundle(baseName, loc);
         if (key == null || bundle == null)
         {
             return null;
         }
-        try
-        {
-            return bundle.getObject(String.valueOf(key));
-        }
-        catch (Exception e)
-        {
-            return null;
-        }
+        return bundle.get(String.valueOf(key));
     }
 
     /**
@@ -252,42 +306,22 @@ public class ResourceTool extends LocaleConfig implements Serializable
      * remaining ones.  If the prefix is null, then no filtering or trimming
      * will be done.
      *
+     * <p>Since VelocityTools 4.0, the returned list is unmodifiable,
+     * as it is cached along with the bundle.</p>
+     *
      * @param prefix the prefix for the requested keys
      * @param baseName the resource bundle base name
      * @param loc the locale to use
-     * @return keys list
+     * @return unmodifiable keys list
      */
     public List<String> getKeys(String prefix, String baseName, Object loc)
     {
-        ResourceBundle bundle = getBundle(baseName, loc);
+        CachedBundle bundle = getCachedBundle(baseName, loc);
         if (bundle == null)
         {
             return null;
         }
-        Enumeration<String> keys = bundle.getKeys();
-        if (keys == null)
-        {
-            return null;
-        }
-        ArrayList<String> list = new ArrayList<String>();
-        while (keys.hasMoreElements())
-        {
-            String key = keys.nextElement();
-            if (prefix == null)
-            {
-                list.add(key);
-            }
-            else if (key.startsWith(prefix))
-            {
-                key = key.substring(prefix.length(), key.length());
-                if (key.charAt(0) == '.')
-                {
-                    key = key.substring(1, key.length());
-                }
-                list.add(key);
-            }
-        }
-        return list;
+        return bundle.getKeys(prefix);
     }
 
     /**
@@ -328,6 +362,8 @@ public class ResourceTool extends LocaleConfig implements Serializable
      * Renders the specified resource value and arguments as a String.
      * The resource is treated as a {@link MessageFormat} pattern which
      * is used for formatting along with any specified argument values.
+     * Compiled patterns are cached, and cloned for each use since
+     * {@link MessageFormat} is not thread-safe.
      * @param resource resource object
      * @param args arguments
      * @return formatted string
@@ -335,7 +371,135 @@ public class ResourceTool extends LocaleConfig implements Serializable
     public String render(Object resource, Object[] args)
     {
         String value = String.valueOf(resource);
-        return MessageFormat.format(value, args);
+        if (value.indexOf('{') == -1 && value.indexOf('\'') == -1)
+        {
+            // nothing to format
+            return value;
+        }
+        Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+        MessageFormat format = formatCache.get(value);
+        if (format == null || !locale.equals(format.getLocale()))
+        {
+            format = new MessageFormat(value, locale);
+            if (formatCache.size() >= MAX_CACHE_SIZE)
+            {
+                formatCache.clear();
+            }
+            formatCache.put(value, format);
+        }
+        return ((MessageFormat)format.clone()).format(args);
+    }
+
+    /**
+     * Key of the shared bundles cache.
+     */
+    private static final class BundleKey
+    {
+        private final String toolClass;
+        private final String baseName;
+        private final Locale locale;
+
+        BundleKey(String toolClass, String baseName, Locale locale)
+        {
+            this.toolClass = toolClass;
+            this.baseName = baseName;
+            this.locale = locale;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof BundleKey))
+            {
+                return false;
+            }
+            BundleKey that = (BundleKey)obj;
+            return toolClass.equals(that.toolClass) && baseName.equals(that.baseName) && locale.equals(that.locale);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * (31 * toolClass.hashCode() + baseName.hashCode()) + locale.hashCode();
+        }
+    }
+
+    /**
+     * Resolved bundle along with its resolved values and key lists.
+     * Only existing keys and non-empty prefixes are cached, so that
+     * the caches are bounded by the content of the bundle.
+     */
+    private static final class CachedBundle
+    {
+        private final ResourceBundle bundle;
+        private final Map<String, Object> values = new ConcurrentHashMap<String, Object>();
+        private final Map<String, List<String>> keys = new ConcurrentHashMap<String, List<String>>();
+        private volatile List<String> allKeys;
+
+        CachedBundle(ResourceBundle bundle)
+        {
+            this.bundle = bundle;
+        }
+
+        Object get(String key)
+        {
+            Object value = values.get(key);
+            if (value == null && bundle.containsKey(key))
+            {
+                try
+                {
+                    value = bundle.getObject(key);
+                }
+                catch (Exception e)
+                {
+                    return null;
+                }
+                if (value != null)
+                {
+                    values.put(key, value);
+                }
+            }
+            return value;
+        }
+
+        List<String> getKeys(String prefix)
+        {
+            if (prefix == null)
+            {
+                List<String> list = allKeys;
+                if (list == null)
+                {
+                    list = Collections.unmodifiableList(Collections.list(bundle.getKeys()));
+                    allKeys = list;
+                }
+                return list;
+            }
+            List<String> list = keys.get(prefix);
+            if (list == null)
+            {
+                List<String> found = new ArrayList<String>();
+                Enumeration<String> e = bundle.getKeys();
+                while (e.hasMoreElements())
+                {
+                    String key = e.nextElement();
+                    if (key.startsWith(prefix))
+                    {
+                        key = key.substring(prefix.length(), key.length());
+                        if (key.length() > 0 && key.charAt(0) == '.')
+                        {
+                            key = key.substring(1, key.length());
+                        }
+                        found.add(key);
+                    }
+                }
+                list = Collections.unmodifiableList(found);
+                if (!found.isEmpty())
+                {
+                    keys.put(prefix, list);
+                }
+            }
+            return list;
+        }
     }
 
 
@@ -20,6 +20,7 @@ package org.apache.velocity.tools.generic;
  */
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
@@ -40,6 +41,10 @@ import org.apache.velocity.tools.config.SkipSetters;
  * <p>When subkeys are allowed, getValue("foo") will also search for all keys
  * of the form "foo.bar" and return a ValueParser of the type "bar" -&gt; value for all found values.</p>
  *
+ * <p>Subkeys are indexed on first lookup. The index follows modifications done
+ * through this parser, but not the ones done directly on the source map
+ * afterwards: subclasses doing so must call {@link #invalidateSubkeys()}.</p>
+ *
  * TODO: someone doing java configuration ought to be able to put a source Map
  *       in the tool properties, allowing this to be used like other tools
  *
@@ -67,6 +72,14 @@ public class ValueParser extends FormatConfig implements Map<String,Object>
      */
     private Boolean hasSubkeys = null;
 
+    /* lazily built subkeys index: first-level subkey -> sub parser,
+    invalidated whenever the source map is modified through this parser
+     */
+    private Map<String,ValueParser> subkeyIndex = null;
+
+    /* lazily built set of first-level subkeys */
+    private Set<String> subkeys = null;
+
     /* whether the wrapped map should be read-only or not */
     private boolean readOnly = true;
 
@@ -92,6 +105,18 @@ public class ValueParser extends FormatConfig implements Map<String,Object>
     protected void setSource(Map<String,Object> source)
     {
         this.source = source;
+        invalidateSubkeys();
+    }
+
+    /**
+     * Drops the cached subkeys index, so that it gets rebuilt
+     * on next access. Subclasses which modify the source map
+     * behind this parser's back should call it.
+     */
+    protected void invalidateSubkeys()
+    {
+        subkeyIndex = null;
+        subkeys = null;
     }
 
     protected Map<String,Object> getSource(boolean create)
@@ -658,7 +683,7 @@ public class ValueParser extends FormatConfig implements Map<String,Object>
             for (String key : getSource().keySet())
             {
                 int dot = key.indexOf('.');
-                if (dot > 0 && dot < key.length())
+                if (dot > 0 && dot < key.length() - 1)
                 {
                     hasSubkeys = Boolean.TRUE;
                     break;
@@ -685,19 +710,63 @@ public class ValueParser extends FormatConfig implements Map<String,Object>
         }
         else
         {
-            Set<String> result = new TreeSet<String>();
-            for (String key: keys)
+            if (subkeys == null)
+            {
+                Set<String> result = new TreeSet<String>();
+                for (String key: keys)
+                {
+                    int dot = key.indexOf('.');
+                    if (dot > 0 && dot < key.length() - 1)
+                    {
+                        result.add(key.substring(0, dot));
+                    }
+                }
+                subkeys = Collections.unmodifiableSet(result);
+            }
+            return subkeys;
+        }
+    }
+
+    /**
+     * Returns the subkeys index, building it if needed: a map of each
+     * first-level subkey towards a sub parser holding the values of
+     * all "subkey.subkey2" keys under "subkey2".
+     * @return subkeys index
+     */
+    private Map<String,ValueParser> getSubkeyIndex()
+    {
+        if (subkeyIndex == null)
+        {
+            Map<String,Map<String,Object>> groups = new HashMap<String,Map<String,Object>>();
+            for (Map.Entry<String,Object> entry : getSource().entrySet())
             {
+                String key = entry.getKey();
                 int dot = key.indexOf('.');
-                if (dot > 0 && dot < key.length())
+                if (dot > 0 && dot < key.length() - 1)
                 {
-                    result.add(key.substring(0, dot));
+                    String subkey = key.substring(0, dot);
+                    Map<String,Object> values = groups.get(subkey);
+                    if (values == null)
+                    {
+                        values = new HashMap<String,Object>();
+                        groups.put(subkey, values);
+                    }
+                    values.put(key.substring(dot + 1), entry.getValue());
                 }
             }
-            return result;
+            Map<String,ValueParser> index = new HashMap<String,ValueParser>(groups.size() * 4 / 3 + 1);
+            for (Map.Entry<String,Map<String,Object>> group : groups.entrySet())
+            {
+                ValueParser sub = new ValueParser(group.getValue());
+                /* honnor readOnly option on submaps */
+                sub.setReadOnly(getReadOnly());
+                index.put(group.getKey(), sub);
+            }
+            subkeyIndex = index;
         }
+        return subkeyIndex;
     }
-    
+
     /**
      * subkey getter that returns a map subkey#2 -&gt; value
      * for every "subkey.subkey2" found entry
@@ -712,6 +781,38 @@ public class ValueParser extends FormatConfig implements Map<String,Object>
             return null;
         }
 
+        int dot = subkey.indexOf('.');
+        if (dot == -1)
+        {
+            ValueParser sub = getSubkeyIndex().get(subkey);
+            if (sub != null && !getReadOnly())
+            {
+                /* writable submaps are not shared */
+                sub = new ValueParser(new HashMap<String,Object>(sub.getSource()));
+                sub.setReadOnly(false);
+            }
+            return sub;
+        }
+        else if (dot > 0 && dot < subkey.length() - 1)
+        {
+            /* walk down the index */
+            ValueParser sub = getSubkeyIndex().get(subkey.substring(0, dot));
+            return sub == null ? null : sub.getSubkey(subkey.substring(dot + 1));
+        }
+        else
+        {
+            /* empty path segments, not covered by the index */
+            return scanSubkey(subkey);
+        }
+    }
+
+    /**
+     * Linear scan of the source map for keys starting with the given subkey.
+     * @param subkey subkey to search for
+     * @return the map of found values
+     */
+    private ValueParser scanSubkey(String subkey)
+    {
         Map<String,Object> values = null;
         subkey = subkey.concat(".");
         for (Map.Entry<String,Object> entry : getSource().entrySet())
@@ -774,6 +875,10 @@ public class ValueParser extends FormatConfig implements Map<String,Object>
         {
             hasSubkeys = Boolean.TRUE;
         }
+        if (key.indexOf('.') != -1)
+        {
+            invalidateSubkeys();
+        }
         return getSource().put(key,value); // TODO this tool should be made thread-safe (the request-scoped ParameterTool doesn't need it, but other uses could...)
     }
 
@@ -787,6 +892,10 @@ public class ValueParser extends FormatConfig implements Map<String,Object>
         {
             hasSubkeys = null;
         }
+        if (((String)key).indexOf('.') != -1)
+        {
+            invalidateSubkeys();
+        }
         return getSource().remove(key);
     }
 
@@ -796,6 +905,7 @@ public class ValueParser extends FormatConfig implements Map<String,Object>
             throw new UnsupportedOperationException("Cannot putAll("+m+"); "+getClass().getName()+" is read-only");
         }
         hasSubkeys = null;
+        invalidateSubkeys();
         getSource().putAll(m);
     }
 
@@ -805,6 +915,7 @@ public class ValueParser extends FormatConfig implements Map<String,Object>
             throw new UnsupportedOperationException("Cannot clear(); "+getClass().getName()+" is read-only");
         }
         hasSubkeys = Boolean.FALSE;
+        invalidateSubkeys();
         getSource().clear();
     }
 
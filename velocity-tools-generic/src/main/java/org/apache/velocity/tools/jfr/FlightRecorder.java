@@ -0,0 +1,47 @@
+package org.apache.velocity.tools.jfr;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * <p>Tells whether the Flight Recorder events of this package can be used.
+ * They extend {@link jdk.jfr.Event}, so they cannot even be loaded on a
+ * runtime without the <code>jdk.jfr</code> module, like trimmed jlink
+ * images: callers only create events when {@link #isAvailable()} returns
+ * true, and otherwise do nothing.</p>
+ *
+ * @since VelocityTools 4.0
+ * @version $Id$
+ */
+public final class FlightRecorder
+{
+    private static final boolean AVAILABLE = ModuleLayer.boot().findModule("jdk.jfr").isPresent();
+
+    private FlightRecorder()
+    {
+    }
+
+    /**
+     * @return whether the <code>jdk.jfr</code> module is present
+     */
+    public static boolean isAvailable()
+    {
+        return AVAILABLE;
+    }
+}
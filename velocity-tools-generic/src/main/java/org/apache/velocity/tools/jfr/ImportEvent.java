@@ -0,0 +1,56 @@
+package org.apache.velocity.tools.jfr;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * <p>Flight Recorder event for the acquisition of an imported resource.
+ * Readers are only opened during the event, so their size is unknown.</p>
+ *
+ * @since VelocityTools 4.0
+ * @version $Id$
+ */
+@Name(ImportEvent.NAME)
+@Label("Import")
+@Category(TemplateMergeEvent.CATEGORY)
+@Description("Acquisition of a local or remote resource")
+public final class ImportEvent extends jdk.jfr.Event
+{
+    /** Event name, to be used in recording settings. */
+    public static final String NAME = "org.apache.velocity.tools.Import";
+
+    @Label("URL")
+    public String url;
+
+    @Label("Remote")
+    public boolean remote;
+
+    @Label("Reader")
+    @Description("Whether a reader was acquired rather than a string")
+    public boolean reader;
+
+    @Label("Size")
+    @Description("Number of characters acquired, or -1 if unknown")
+    public long size = -1;
+}
@@ -0,0 +1,49 @@
+package org.apache.velocity.tools.jfr;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * <p>Flight Recorder event for the evaluation of a VTL string by the RenderTool.</p>
+ *
+ * @since VelocityTools 4.0
+ * @version $Id$
+ */
+@Name(RenderEvent.NAME)
+@Label("Render Evaluation")
+@Category(TemplateMergeEvent.CATEGORY)
+@Description("Evaluation of a VTL string")
+public final class RenderEvent extends jdk.jfr.Event
+{
+    /** Event name, to be used in recording settings. */
+    public static final String NAME = "org.apache.velocity.tools.Render";
+
+    @Label("Source Size")
+    @Description("Number of characters of the evaluated VTL")
+    public long sourceSize;
+
+    @Label("Output Size")
+    @Description("Number of characters rendered, or -1 if the evaluation failed")
+    public long outputSize = -1;
+}
@@ -0,0 +1,66 @@
+package org.apache.velocity.tools.jfr;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * <p>Flight Recorder event for the merge of a template. The layout servlet
+ * records the screen and layout phases of a page separately, the latter
+ * enclosing the plain page merge of the layout template.</p>
+ *
+ * @since VelocityTools 4.0
+ * @version $Id$
+ */
+@Name(TemplateMergeEvent.NAME)
+@Label("Template Merge")
+@Category(TemplateMergeEvent.CATEGORY)
+@Description("Merge of a template with its context")
+public final class TemplateMergeEvent extends jdk.jfr.Event
+{
+    /** Event name, to be used in recording settings. */
+    public static final String NAME = "org.apache.velocity.tools.TemplateMerge";
+
+    /** Category of all VelocityTools events. */
+    public static final String CATEGORY = "Velocity Tools";
+
+    /** Merge of a page, directly into the response. */
+    public static final String PAGE = "page";
+
+    /** First pass of a layout servlet, merging the screen content. */
+    public static final String SCREEN = "screen";
+
+    /** Second pass of a layout servlet, merging the layout into the response. */
+    public static final String LAYOUT = "layout";
+
+    @Label("Template")
+    public String template;
+
+    @Label("Phase")
+    @Description("page, screen or layout")
+    public String phase;
+
+    @Label("Output Size")
+    @Description("Number of characters rendered, or -1 if unknown")
+    public long outputSize = -1;
+}
@@ -0,0 +1,49 @@
+package org.apache.velocity.tools.jfr;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * <p>Flight Recorder event for the parsing of an XML document.</p>
+ *
+ * @since VelocityTools 4.0
+ * @version $Id$
+ */
+@Name(XmlParseEvent.NAME)
+@Label("XML Parse")
+@Category(TemplateMergeEvent.CATEGORY)
+@Description("Parsing of an XML document")
+public final class XmlParseEvent extends jdk.jfr.Event
+{
+    /** Event name, to be used in recording settings. */
+    public static final String NAME = "org.apache.velocity.tools.XmlParse";
+
+    @Label("Root Element")
+    @Description("Name of the document element, or null if parsing failed")
+    public String root;
+
+    @Label("Size")
+    @Description("Number of characters of the source, or -1 if read from a stream")
+    public long size = -1;
+}
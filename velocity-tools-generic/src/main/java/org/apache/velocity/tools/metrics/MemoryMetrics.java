@@ -0,0 +1,345 @@
+package org.apache.velocity.tools.metrics;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.ObjectName;
+
+/**
+ * <p>Reference {@link Metrics} implementation, keeping counts and timings in
+ * memory with no outside service: tool instantiations and cache hits by tool
+ * key, toolbox creations by scope, and template merges by template name.</p>
+ * <p>At most {@link #MAX_NAMES} names are tracked per kind of figure, further
+ * ones being gathered under {@link #OTHER}. Figures can be read directly,
+ * or through JMX once {@link #register(String) registered}, under the
+ * <code>org.apache.velocity.tools:type=Metrics,name=...</code> object name.</p>
+ *
+ * @since VelocityTools 4.0
+ * @version $Id$
+ */
+public class MemoryMetrics implements Metrics, MemoryMetricsMXBean
+{
+    /** Maximum number of names tracked per kind of figure. */
+    public static final int MAX_NAMES = 1000;
+
+    /** Name gathering the figures past {@link #MAX_NAMES}. */
+    public static final String OTHER = "(other)";
+
+    /** JMX domain. */
+    public static final String JMX_DOMAIN = "org.apache.velocity.tools";
+
+    private final ConcurrentMap<String,Timer> tools = new ConcurrentHashMap<String,Timer>();
+    private final ConcurrentMap<String,LongAdder> hits = new ConcurrentHashMap<String,LongAdder>();
+    private final ConcurrentMap<String,Timer> toolboxes = new ConcurrentHashMap<String,Timer>();
+    private final ConcurrentMap<String,Timer> templates = new ConcurrentHashMap<String,Timer>();
+    private volatile ObjectName objectName = null;
+
+    @Override
+    public boolean isEnabled()
+    {
+        return true;
+    }
+
+    @Override
+    public void toolCreated(String key, Class<?> toolClass, long nanos)
+    {
+        timer(tools, key).record(nanos);
+    }
+
+    @Override
+    public void toolCacheHit(String key)
+    {
+        LongAdder counter = hits.get(key);
+        if (counter == null)
+        {
+            if (hits.size() >= MAX_NAMES)
+            {
+                key = OTHER;
+            }
+            counter = hits.computeIfAbsent(key, k -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    @Override
+    public void toolboxCreated(String scope, long nanos)
+    {
+        timer(toolboxes, scope).record(nanos);
+    }
+
+    @Override
+    public void templateMerged(String template, long nanos)
+    {
+        timer(templates, template == null ? OTHER : template).record(nanos);
+    }
+
+    private static Timer timer(ConcurrentMap<String,Timer> timers, String name)
+    {
+        Timer timer = timers.get(name);
+        if (timer == null)
+        {
+            if (timers.size() >= MAX_NAMES)
+            {
+                name = OTHER;
+            }
+            timer = timers.computeIfAbsent(name, k -> new Timer());
+        }
+        return timer;
+    }
+
+    /**
+     * @return tool instantiation timers, by tool key
+     */
+    public Map<String,Timer> getToolTimers()
+    {
+        return Collections.unmodifiableMap(tools);
+    }
+
+    /**
+     * @return toolbox creation timers, by scope
+     */
+    public Map<String,Timer> getToolboxTimers()
+    {
+        return Collections.unmodifiableMap(toolboxes);
+    }
+
+    /**
+     * @return template merge timers, by template name
+     */
+    public Map<String,Timer> getTemplateTimers()
+    {
+        return Collections.unmodifiableMap(templates);
+    }
+
+    @Override
+    public Map<String,Long> getToolCreations()
+    {
+        return counts(tools);
+    }
+
+    @Override
+    public Map<String,Double> getToolCreationAverageMillis()
+    {
+        return averages(tools);
+    }
+
+    @Override
+    public Map<String,Long> getToolCacheHits()
+    {
+        Map<String,Long> counts = new TreeMap<String,Long>();
+        for (Map.Entry<String,LongAdder> entry : hits.entrySet())
+        {
+            counts.put(entry.getKey(), entry.getValue().sum());
+        }
+        return counts;
+    }
+
+    @Override
+    public double getToolCacheHitRatio()
+    {
+        long hitCount = 0;
+        for (LongAdder counter : hits.values())
+        {
+            hitCount += counter.sum();
+        }
+        long lookups = hitCount;
+        for (Timer timer : tools.values())
+        {
+            lookups += timer.getCount();
+        }
+        return lookups == 0 ? 0 : (double)hitCount / lookups;
+    }
+
+    @Override
+    public Map<String,Long> getToolboxCreations()
+    {
+        return counts(toolboxes);
+    }
+
+    @Override
+    public Map<String,Double> getToolboxCreationAverageMillis()
+    {
+        return averages(toolboxes);
+    }
+
+    @Override
+    public Map<String,Long> getTemplateMerges()
+    {
+        return counts(templates);
+    }
+
+    @Override
+    public Map<String,Double> getTemplateMergeAverageMillis()
+    {
+        return averages(templates);
+    }
+
+    @Override
+    public Map<String,Double> getTemplateMergeMaxMillis()
+    {
+        Map<String,Double> max = new TreeMap<String,Double>();
+        for (Map.Entry<String,Timer> entry : templates.entrySet())
+        {
+            max.put(entry.getKey(), entry.getValue().getMaxNanos() / 1e6);
+        }
+        return max;
+    }
+
+    private static Map<String,Long> counts(Map<String,Timer> timers)
+    {
+        Map<String,Long> counts = new TreeMap<String,Long>();
+        for (Map.Entry<String,Timer> entry : timers.entrySet())
+        {
+            counts.put(entry.getKey(), entry.getValue().getCount());
+        }
+        return counts;
+    }
+
+    private static Map<String,Double> averages(Map<String,Timer> timers)
+    {
+        Map<String,Double> averages = new TreeMap<String,Double>();
+        for (Map.Entry<String,Timer> entry : timers.entrySet())
+        {
+            averages.put(entry.getKey(), entry.getValue().getAverageNanos() / 1e6);
+        }
+        return averages;
+    }
+
+    @Override
+    public void reset()
+    {
+        tools.clear();
+        hits.clear();
+        toolboxes.clear();
+        templates.clear();
+    }
+
+    /**
+     * Registers these metrics in the platform MBean server. If other metrics
+     * are already registered under the same name, like those of another webapp
+     * with the same name, a <code>#2</code>, <code>#3</code>... suffix is added.
+     * They must be {@link #unregister() unregistered} when not used anymore.
+     * @param name name of the metrics, like the webapp name
+     * @return JMX object name
+     * @throws JMException if registration fails
+     */
+    public synchronized ObjectName register(String name) throws JMException
+    {
+        unregister();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        String unique = name;
+        for (int i = 2; ; ++i)
+        {
+            ObjectName on = new ObjectName(JMX_DOMAIN + ":type=Metrics,name=" + ObjectName.quote(unique));
+            try
+            {
+                server.registerMBean(this, on);
+                objectName = on;
+                return on;
+            }
+            catch (InstanceAlreadyExistsException iaee)
+            {
+                unique = name + '#' + i;
+            }
+        }
+    }
+
+    /**
+     * Unregisters these metrics from the platform MBean server, if needed.
+     * @throws JMException if unregistration fails
+     */
+    public synchronized void unregister() throws JMException
+    {
+        if (objectName != null)
+        {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName))
+            {
+                server.unregisterMBean(objectName);
+            }
+            objectName = null;
+        }
+    }
+
+    /**
+     * Lock-free count, total and maximum of durations.
+     */
+    public static class Timer
+    {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long nanos)
+        {
+            count.increment();
+            total.add(nanos);
+            long previous = max.get();
+            while (nanos > previous && !max.compareAndSet(previous, nanos))
+            {
+                previous = max.get();
+            }
+        }
+
+        /**
+         * @return number of recorded durations
+         */
+        public long getCount()
+        {
+            return count.sum();
+        }
+
+        /**
+         * @return sum of recorded durations, in nanoseconds
+         */
+        public long getTotalNanos()
+        {
+            return total.sum();
+        }
+
+        /**
+         * @return longest recorded duration, in nanoseconds
+         */
+        public long getMaxNanos()
+        {
+            return max.get();
+        }
+
+        /**
+         * @return average recorded duration, in nanoseconds
+         */
+        public double getAverageNanos()
+        {
+            long n = count.sum();
+            return n == 0 ? 0 : (double)total.sum() / n;
+        }
+    }
+}
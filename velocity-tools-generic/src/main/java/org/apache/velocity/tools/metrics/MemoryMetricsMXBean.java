@@ -0,0 +1,82 @@
+package org.apache.velocity.tools.metrics;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import java.util.Map;
+
+/**
+ * <p>JMX view of {@link MemoryMetrics}. Durations are in milliseconds.</p>
+ *
+ * @since VelocityTools 4.0
+ * @version $Id$
+ */
+public interface MemoryMetricsMXBean
+{
+    /**
+     * @return number of instances created, by tool key
+     */
+    Map<String,Long> getToolCreations();
+
+    /**
+     * @return average instantiation and configuration time, by tool key
+     */
+    Map<String,Double> getToolCreationAverageMillis();
+
+    /**
+     * @return number of lookups of already created tools, by tool key
+     */
+    Map<String,Long> getToolCacheHits();
+
+    /**
+     * @return ratio of the tool lookups which did not create a tool
+     */
+    double getToolCacheHitRatio();
+
+    /**
+     * @return number of toolboxes created, by scope
+     */
+    Map<String,Long> getToolboxCreations();
+
+    /**
+     * @return average toolbox creation time, by scope
+     */
+    Map<String,Double> getToolboxCreationAverageMillis();
+
+    /**
+     * @return number of merges, by template name
+     */
+    Map<String,Long> getTemplateMerges();
+
+    /**
+     * @return average merge time, by template name
+     */
+    Map<String,Double> getTemplateMergeAverageMillis();
+
+    /**
+     * @return longest merge time, by template name
+     */
+    Map<String,Double> getTemplateMergeMaxMillis();
+
+    /**
+     * Forgets all figures.
+     */
+    void reset();
+}
@@ -0,0 +1,72 @@
+package org.apache.velocity.tools.metrics;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+/**
+ * <p>Metrics SPI, receiving the timings of tool instantiations, toolbox
+ * creations and template merges, and the tool cache hits.</p>
+ * <p>The tools and views call it only if {@link #isEnabled()}, and do not
+ * even read the clock otherwise. Implementations must be thread-safe
+ * and fast, as they are called on every request.</p>
+ * <p>{@link #NONE} is the default, and {@link MemoryMetrics} a reference
+ * implementation keeping the figures in memory and exposing them through JMX.</p>
+ *
+ * @since VelocityTools 4.0
+ * @version $Id$
+ */
+public interface Metrics
+{
+    /** No-op metrics, the default. */
+    Metrics NONE = new NoMetrics();
+
+    /**
+     * @return whether metrics are collected at all
+     */
+    boolean isEnabled();
+
+    /**
+     * Records the creation and configuration of a tool instance.
+     * @param key tool key
+     * @param toolClass tool class
+     * @param nanos elapsed time, in nanoseconds
+     */
+    void toolCreated(String key, Class<?> toolClass, long nanos);
+
+    /**
+     * Records the lookup of a tool already created, or of a data, by a toolbox.
+     * @param key tool or data key
+     */
+    void toolCacheHit(String key);
+
+    /**
+     * Records the creation of a toolbox.
+     * @param scope toolbox scope
+     * @param nanos elapsed time, in nanoseconds
+     */
+    void toolboxCreated(String scope, long nanos);
+
+    /**
+     * Records the merge of a template.
+     * @param template template name
+     * @param nanos elapsed time, in nanoseconds
+     */
+    void templateMerged(String template, long nanos);
+}
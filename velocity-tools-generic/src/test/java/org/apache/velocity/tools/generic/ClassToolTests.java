@@ -23,6 +23,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -34,6 +35,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.apache.velocity.tools.ClassUtils;
 import org.apache.velocity.tools.config.DefaultKey;
 import org.apache.velocity.tools.config.InvalidScope;
 import org.apache.velocity.tools.config.SkipSetters;
@@ -260,6 +262,150 @@ public class ClassToolTests {
         assertEquals(Map.class, classTool.inspect("java.util.Map").getType());
     }
 
+    public @Test void classCache() throws Exception
+    {
+        CountingClassLoader loader = new CountingClassLoader();
+        Thread thread = Thread.currentThread();
+        ClassLoader previous = thread.getContextClassLoader();
+        thread.setContextClassLoader(loader);
+        try
+        {
+            // hits are answered by the cache
+            assertEquals(MyAbstract.class, ClassUtils.getClass(CountingClassLoader.NAME));
+            assertEquals(MyAbstract.class, ClassUtils.getClass(CountingClassLoader.NAME));
+            assertEquals(1, loader.attempts);
+
+            // so are misses, until the cache is cleared
+            ClassUtils.clearClassCache();
+            loader.attempts = 0;
+            loader.found = false;
+            assertMissing(CountingClassLoader.NAME);
+            assertMissing(CountingClassLoader.NAME);
+            assertEquals(1, loader.attempts);
+            loader.found = true;
+            assertMissing(CountingClassLoader.NAME);
+            ClassUtils.clearClassCache();
+            assertEquals(MyAbstract.class, ClassUtils.getClass(CountingClassLoader.NAME));
+            assertEquals(2, loader.attempts);
+
+            // misses stop being remembered once the cache is full
+            ClassUtils.clearClassCache();
+            loader.attempts = 0;
+            loader.found = false;
+            for (int i = 0; i < 10000; ++i)
+            {
+                assertMissing("missing.Class" + i);
+            }
+            assertMissing(CountingClassLoader.NAME);
+            assertMissing(CountingClassLoader.NAME);
+            assertEquals(2, loader.attempts);
+        }
+        finally
+        {
+            ClassUtils.clearClassCache();
+            thread.setContextClassLoader(previous);
+        }
+    }
+
+    private static void assertMissing(String name)
+    {
+        try
+        {
+            ClassUtils.getClass(name);
+            fail("Class " + name + " should not be found");
+        }
+        catch (ClassNotFoundException cnfe)
+        {
+            // expected
+        }
+    }
+
+    private static class CountingClassLoader extends ClassLoader
+    {
+        static final String NAME = "counted.Class";
+
+        volatile int attempts = 0;
+        volatile boolean found = true;
+
+        CountingClassLoader()
+        {
+            super(ClassToolTests.class.getClassLoader());
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException
+        {
+            if (NAME.equals(name))
+            {
+                ++attempts;
+                if (found)
+                {
+                    return MyAbstract.class;
+                }
+                throw new ClassNotFoundException(name);
+            }
+            return super.loadClass(name, resolve);
+        }
+    }
+
+    public static class Hidden
+    {
+        public static final String CONSTANT = "hidden";
+        public static int counter = 0;
+    }
+
+    public static class Hiding extends Hidden
+    {
+        public static final String CONSTANT = "hiding";
+    }
+
+    public @Test void classMetadata() throws Exception
+    {
+        // metadata is shared between lookups and tools
+        ClassMetadata metadata = ClassMetadata.of(Hiding.class);
+        assertSame(metadata, ClassMetadata.of(Hiding.class));
+        assertSame(metadata.getMethods(true, false), metadata.getMethods(true, false));
+        ClassTool classTool = new ClassTool().inspect(Hiding.class);
+        assertSame(metadata.getMethods(classTool.isSafeMode(), false), classTool.getMethods());
+        assertSame(metadata.getFields(false, true), metadata.getFields(false, true));
+
+        // static fields keep the order of Class.getFields(), including hidden ones
+        List<Map.Entry<String,Object>> fields = metadata.getStaticFields();
+        assertSame(fields, metadata.getStaticFields());
+        assertEquals(Hiding.class.getFields().length, fields.size());
+        int constants = 0;
+        for (Map.Entry<String,Object> entry : fields)
+        {
+            if ("CONSTANT".equals(entry.getKey()))
+            {
+                ++constants;
+                assertTrue(entry.getValue() instanceof String);
+            }
+        }
+        assertEquals(2, constants);
+        assertEquals("hiding", fields.get(0).getValue());
+    }
+
+    public @Test void staticGetter() throws Exception
+    {
+        Object value = null;
+        for (Map.Entry<String,Object> entry : ClassMetadata.of(Hidden.class).getStaticFields())
+        {
+            if ("counter".equals(entry.getKey()))
+            {
+                value = entry.getValue();
+            }
+        }
+        // non final fields are read at each access
+        assertTrue(value instanceof ClassMetadata.StaticGetter);
+        ClassMetadata.StaticGetter getter = (ClassMetadata.StaticGetter)value;
+        assertNotNull(getter.getHandle());
+        Hidden.counter = 1;
+        assertEquals(1, getter.get());
+        Hidden.counter = 2;
+        assertEquals(2, getter.get());
+    }
+
     public @Test void methodIsAbstract() throws Exception
     {
         ClassTool classTool = new ClassTool();
@@ -0,0 +1,400 @@
+package org.apache.velocity.tools.generic;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.velocity.tools.ResourceMemo;
+import org.apache.velocity.tools.Scope;
+import org.apache.velocity.tools.ToolContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>Tests remote fetches of {@link ImportSupport} against a loopback server</p>
+ *
+ * @since VelocityTools 4.0
+ * @version $Id$
+ */
+public class ImportSupportTests
+{
+    private static final String BIG;
+
+    static
+    {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 20000; ++i)
+        {
+            builder.append("line ").append(i).append(" é€\n");
+        }
+        BIG = builder.toString();
+    }
+
+    private HttpServer server;
+    private String base;
+    private final AtomicInteger slowHits = new AtomicInteger();
+    private final CountDownLatch stalled = new CountDownLatch(1);
+
+    @Before
+    public void startServer() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/latin1", exchange ->
+        {
+            byte[] body = "héllo".getBytes(StandardCharsets.ISO_8859_1);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=ISO-8859-1");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                out.write(body);
+            }
+        });
+        server.createContext("/gzip", exchange ->
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(bytes))
+            {
+                gzip.write(BIG.getBytes(StandardCharsets.UTF_8));
+            }
+            assertEquals("gzip", exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, bytes.size());
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                bytes.writeTo(out);
+            }
+        });
+        server.createContext("/slow", exchange ->
+        {
+            slowHits.incrementAndGet();
+            try
+            {
+                Thread.sleep(300);
+            }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = "slow".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                out.write(body);
+            }
+        });
+        server.createContext("/stall", exchange ->
+        {
+            // send the headers and part of the body, then stall
+            exchange.sendResponseHeaders(200, 100);
+            OutputStream out = exchange.getResponseBody();
+            out.write("part".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            try
+            {
+                stalled.await(10, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+            }
+            exchange.close();
+        });
+        server.createContext("/missing", exchange ->
+        {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.start();
+        base = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void stopServer()
+    {
+        stalled.countDown();
+        server.stop(0);
+    }
+
+    private ImportSupport newImportSupport(int readTimeout)
+    {
+        Map<String,Object> config = new HashMap<String,Object>();
+        config.put(ImportSupport.READ_TIMEOUT_KEY, readTimeout);
+        ImportSupport importSupport = new ImportSupport();
+        importSupport.configure(new ValueParser(config));
+        return importSupport;
+    }
+
+    private ImportSupport newImportSupport(ResourceMemo memo, String scope)
+    {
+        Map<String,Object> config = new HashMap<String,Object>();
+        config.put(ToolContext.RESOURCE_MEMO_KEY, memo);
+        config.put("scope", scope);
+        ImportSupport importSupport = new ImportSupport();
+        importSupport.configure(new ValueParser(config));
+        return importSupport;
+    }
+
+    public @Test void fetchWithCharset() throws Exception
+    {
+        assertEquals("héllo", newImportSupport(0).acquireString(base + "/latin1"));
+    }
+
+    public @Test void fetchGzip() throws Exception
+    {
+        ImportSupport importSupport = newImportSupport(0);
+        assertEquals(BIG, importSupport.acquireString(base + "/gzip"));
+        try (Reader reader = importSupport.acquireReader(base + "/gzip"))
+        {
+            assertEquals(BIG, ImportSupport.readAll(reader));
+        }
+    }
+
+    public @Test void errorStatus() throws Exception
+    {
+        try
+        {
+            newImportSupport(0).acquireString(base + "/missing");
+            fail("an IOException was expected");
+        }
+        catch (IOException ioe)
+        {
+            assertTrue(ioe.getMessage(), ioe.getMessage().contains("404"));
+        }
+    }
+
+    public @Test void readTimeout() throws Exception
+    {
+        try
+        {
+            newImportSupport(50).acquireString(base + "/slow");
+            fail("an IOException was expected");
+        }
+        catch (IOException ioe)
+        {
+            assertTrue(ioe.getMessage(), ioe.getMessage().contains("timed out"));
+        }
+    }
+
+    public @Test void stalledBody() throws Exception
+    {
+        ImportSupport importSupport = newImportSupport(100);
+        long start = System.nanoTime();
+        try (Reader reader = importSupport.acquireReader(base + "/stall"))
+        {
+            ImportSupport.readAll(reader);
+            fail("an IOException was expected");
+        }
+        catch (IOException ioe)
+        {
+            assertTrue(ioe.getMessage(), ioe.getMessage().contains("timed out"));
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+    }
+
+    public @Test void stalledPrefetch() throws Exception
+    {
+        Map<String,Object> config = new HashMap<String,Object>();
+        config.put("scope", Scope.REQUEST);
+        config.put(ImportSupport.READ_TIMEOUT_KEY, 100);
+        ImportSupport importSupport = new ImportSupport();
+        importSupport.configure(new ValueParser(config));
+        importSupport.prefetch(base + "/stall");
+        long start = System.nanoTime();
+        try
+        {
+            importSupport.acquireString(base + "/stall");
+            fail("an IOException was expected");
+        }
+        catch (IOException ioe)
+        {
+            // expected
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+    }
+
+    public @Test void prefetch() throws Exception
+    {
+        Map<String,Object> config = new HashMap<String,Object>();
+        config.put("scope", Scope.REQUEST);
+        ImportTool importTool = new ImportTool();
+        importTool.configure(config);
+        importTool.prefetch(base + "/slow");
+        importTool.prefetch(base + "/slow");
+        assertEquals("slow", importTool.fetch(base + "/slow"));
+        assertEquals(1, slowHits.get());
+        // the prefetched content is only used once
+        assertEquals("slow", importTool.fetch(base + "/slow"));
+        assertEquals(2, slowHits.get());
+
+        JsonTool jsonTool = new JsonTool();
+        jsonTool.configure(config);
+        jsonTool.prefetch(base + "/missing");
+        jsonTool.fetch(base + "/missing");
+        assertEquals(null, jsonTool.root());
+
+        // only request scoped tools prefetch
+        String url = base + "/latin1";
+        ImportSupport importSupport = newImportSupport(new ResourceMemo(), Scope.REQUEST);
+        importSupport.prefetch(url);
+        assertTrue(importSupport.isPrefetched(url));
+        importSupport.acquireString(url);
+        assertFalse(importSupport.isPrefetched(url));
+        importSupport = newImportSupport(new ResourceMemo(), Scope.APPLICATION);
+        importSupport.prefetch(url);
+        assertFalse(importSupport.isPrefetched(url));
+        importSupport = newImportSupport(0);
+        importSupport.prefetch(url);
+        assertFalse(importSupport.isPrefetched(url));
+    }
+
+    public @Test void memoizedPerRequest() throws Exception
+    {
+        ResourceMemo memo = new ResourceMemo();
+        ImportSupport first = newImportSupport(memo, Scope.REQUEST);
+        ImportSupport second = newImportSupport(memo, Scope.REQUEST);
+        assertEquals("slow", first.acquireString(base + "/slow"));
+        assertEquals("slow", second.acquireString(base + "/slow#top"));
+        try (Reader reader = second.acquireReader(base + "/slow"))
+        {
+            assertEquals("slow", ImportSupport.readAll(reader));
+        }
+        assertEquals(1, slowHits.get());
+
+        // failures are not remembered
+        for (int i = 0; i < 2; ++i)
+        {
+            try
+            {
+                first.acquireString(base + "/missing");
+                fail("an IOException was expected");
+            }
+            catch (IOException ioe)
+            {
+            }
+        }
+        assertEquals(1, memo.size());
+
+        // longer lived tools do not use the memo of a request
+        newImportSupport(memo, Scope.APPLICATION).acquireString(base + "/slow");
+        assertEquals(2, slowHits.get());
+    }
+
+    /**
+     * Refuses remote URLs in safe mode, as the view flavor does
+     */
+    private static class RefusingImportSupport extends ImportSupport
+    {
+        @Override
+        protected String acquireRemoteURLString(String url) throws IOException
+        {
+            return isSafeMode() ? null : super.acquireRemoteURLString(url);
+        }
+
+        @Override
+        protected Reader acquireRemoteURLReader(String url) throws IOException
+        {
+            return isSafeMode() ? null : super.acquireRemoteURLReader(url);
+        }
+    }
+
+    private ImportSupport newImportSupport(ResourceMemo memo, boolean safeMode)
+    {
+        Map<String,Object> config = new HashMap<String,Object>();
+        config.put(ToolContext.RESOURCE_MEMO_KEY, memo);
+        config.put("scope", Scope.REQUEST);
+        config.put(SafeConfig.SAFE_MODE_KEY, safeMode);
+        ImportSupport importSupport = new RefusingImportSupport();
+        importSupport.configure(config);
+        return importSupport;
+    }
+
+    public @Test void memoizedWithSafeMode() throws Exception
+    {
+        ResourceMemo memo = new ResourceMemo();
+        ImportSupport safe = newImportSupport(memo, true);
+        ImportSupport unsafe = newImportSupport(memo, false);
+
+        // a safe mode refusal is not shared with other tools
+        assertNull(safe.acquireString(base + "/slow"));
+        assertEquals("slow", unsafe.acquireString(base + "/slow"));
+        assertEquals(1, slowHits.get());
+
+        // nor does a safe mode tool get contents loaded by other tools
+        assertNull(safe.acquireString(base + "/slow"));
+        assertNull(safe.acquireReader(base + "/slow"));
+        assertEquals("slow", unsafe.acquireString(base + "/slow"));
+        assertEquals(1, slowHits.get());
+        assertEquals(1, memo.size());
+    }
+
+    public @Test void memoizedConcurrently() throws Exception
+    {
+        final ResourceMemo memo = new ResourceMemo();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try
+        {
+            Future<?>[] results = new Future<?>[8];
+            for (int i = 0; i < results.length; ++i)
+            {
+                final ImportSupport importSupport = newImportSupport(memo, Scope.REQUEST);
+                results[i] = executor.submit((Callable<String>)() -> importSupport.acquireString(base + "/slow"));
+            }
+            for (Future<?> result : results)
+            {
+                assertEquals("slow", result.get());
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        assertEquals(1, slowHits.get());
+    }
+
+    public @Test void urlKey()
+    {
+        assertEquals(ResourceMemo.urlKey("HTTP://Example.COM/a/../b?x=1#y"), ResourceMemo.urlKey("http://example.com/b?x=1"));
+    }
+}
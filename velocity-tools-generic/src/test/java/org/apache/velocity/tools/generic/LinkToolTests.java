@@ -31,6 +31,7 @@ import java.net.URI;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Random;
 
 import org.junit.Test;
 
@@ -851,6 +852,39 @@ public class LinkToolTests {
         assertEquals("#42", link.anchor(42).toString());
     }
 
+    public static class CustomURILinkTool extends LinkTool
+    {
+        @Override
+        protected URI createURI()
+        {
+            URI uri = super.createURI();
+            return uri == null ? null : URI.create(uri.toString() + "#custom");
+        }
+    }
+
+    public static class CustomDecodingLinkTool extends LinkTool
+    {
+        @Override
+        protected String decodeQueryPercents(String url)
+        {
+            return super.decodeQueryPercents(url).toUpperCase();
+        }
+    }
+
+    public @Test void methodToString_overriddenCreateURI() throws Exception
+    {
+        LinkTool link = new CustomURILinkTool();
+        link.configure(DEFAULT_PROPS);
+        assertEquals("http://go.com/foo#custom", link.host("go.com").path("foo").toString());
+
+        link = new CustomDecodingLinkTool();
+        link.configure(DEFAULT_PROPS);
+        assertEquals("/FOO?A=1", link.path("foo").param("a", 1).toString());
+
+        // the plain tool is not affected
+        assertEquals("http://go.com/foo", newInstance().host("go.com").path("foo").toString());
+    }
+
     public @Test void methodNoDoubleEncode() throws Exception
     {
         LinkTool link = newInstance().relative("/foo");
@@ -863,5 +897,56 @@ public class LinkToolTests {
         assertEquals("/foo?q=a%3Ab+c&amp;evil=%2525%2524%25", link.toString());
     }
 
+    /**
+     * The legacy rendering, through java.net.URI
+     */
+    private String toURIString(LinkTool link)
+    {
+        URI uri = link.createURI();
+        if (uri == null)
+        {
+            return null;
+        }
+        return link.query != null ? link.decodeQueryPercents(uri.toString()) : uri.toString();
+    }
+
+    private static String pick(Random random, String[] values)
+    {
+        return values[random.nextInt(values.length)];
+    }
+
+    public @Test void methodToStringMatchesURIRendering() throws Exception
+    {
+        String[] schemes = { null, "http", "https", "mailto", "1bad" };
+        String[] users = { null, "bob", "bob:pw", "a b" };
+        String[] hosts = { null, "go.com", "localhost", "127.0.0.1", "::1", "[::1]", "bad_host", "-bad", "exämple.com" };
+        String[] paths = { null, "", "/", "foo", "/foo/bar.vm", "//foo", "a:b", "/a b/%41", "/été", "/a b", "/q?#x", "/[x]", "/a;b=c@d" };
+        String[] queries = { null, "", "a=1", "a=1&b=2", "q=%25%zz", "x=a b&y=\"<>\"", "k=é" };
+        String[] fragments = { null, "", "top", "a b", "%41#", "é " };
+        int[] ports = { -1, 80, 8080, -2 };
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; ++i)
+        {
+            LinkTool link = newInstance();
+            link.scheme = pick(random, schemes);
+            link.user = pick(random, users);
+            link.host = pick(random, hosts);
+            link.port = ports[random.nextInt(ports.length)];
+            link.path = pick(random, paths);
+            String query = pick(random, queries);
+            if (query != null)
+            {
+                link.setQuery(query);
+            }
+            link.fragment = pick(random, fragments);
+            link.forceRelative = random.nextInt(5) == 0;
+            link.opaque = random.nextInt(10) == 0;
+            assertEquals(toURIString(link), link.toString());
+            // also check cached segments of duplicates
+            LinkTool copy = link.duplicate();
+            copy.path = pick(random, paths);
+            assertEquals(toURIString(copy), copy.toString());
+        }
+    }
+
 }
-        
\ No newline at end of file
@@ -416,5 +416,49 @@ public class LoopToolTests {
         assertEquals(0, loop.getDepth());
     }
 
+    public @Test void excludeManyElements() throws Exception
+    {
+        LoopTool loop = new LoopTool();
+        List<Integer> list = new ArrayList<Integer>(Collections.nCopies(200000, 0));
+        list.add(1);
+        Iterator i = loop.watch(list).exclude(0);
+        assertTrue(i.hasNext());
+        assertEquals(1, i.next());
+        assertFalse(i.hasNext());
+        assertEquals(0, loop.getDepth());
+    }
+
+    public @Test void pipeline() throws Exception
+    {
+        LoopTool loop = new LoopTool();
+        List<Map<String,Object>> rows = new ArrayList<Map<String,Object>>();
+        for (int n = 0; n < 100000; n++)
+        {
+            Map<String,Object> row = new HashMap<String,Object>();
+            row.put("id", n);
+            row.put("even", n % 2 == 0);
+            rows.add(row);
+        }
+        Iterator i = loop.watch(rows).skipWhile("id", 0).filter("even", true).map("id").limit(5).chunk(2);
+        assertEquals(Arrays.asList(2, 4), i.next());
+        assertEquals(Arrays.asList(6, 8), i.next());
+        assertEquals(Arrays.asList(10), i.next());
+        assertFalse(i.hasNext());
+    }
+
+    public @Test void pipelineWithConditions() throws Exception
+    {
+        LoopTool loop = new LoopTool();
+        Map<String,Object> foo = Collections.singletonMap("name", (Object)"foo");
+        Map<String,Object> bar = Collections.singletonMap("name", (Object)"bar");
+        Map<String,Object> none = Collections.emptyMap();
+        Iterator i = loop.watch(new Object[] { foo, none, bar, foo }).map("name").exclude("foo");
+        // conditions apply to the pipeline output, nulls are returned
+        assertNull(i.next());
+        assertEquals("bar", i.next());
+        assertFalse(i.hasNext());
+        assertNull(loop.watch(ARRAY).chunk(0));
+        assertNull(loop.watch(ARRAY).map(null));
+    }
+
 }
-        
@@ -19,7 +19,15 @@ package org.apache.velocity.tools.generic;
  * under the License.    
  */
 
+import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 import org.apache.velocity.VelocityContext;
 
@@ -67,4 +75,106 @@ public class MathToolTests extends BaseTestCase
         assertTrue("expected Double, got " + r.getClass(), r instanceof Double);
         assertEquals(1.6e19, r.doubleValue(), 1.0e6);
     }
+
+    public static class Item
+    {
+        private final Object price;
+
+        public Item(Object price)
+        {
+            this.price = price;
+        }
+
+        public Object getPrice()
+        {
+            return price;
+        }
+    }
+
+    public void testTotalKeepsNumericType()
+    {
+        MathTool math = new MathTool();
+        List<Item> items = Arrays.asList(new Item(1), new Item(2L), new Item(null));
+        assertEquals(Integer.valueOf(3), math.getTotal(items, "price"));
+
+        items = Arrays.asList(new Item(new BigDecimal("0.10")), new Item(new BigDecimal("0.20")), new Item(1));
+        assertEquals(new BigDecimal("1.30"), math.getTotal(items, "price"));
+
+        items = Arrays.asList(new Item(Long.MAX_VALUE), new Item(1));
+        assertEquals(new BigDecimal(Long.MAX_VALUE).add(BigDecimal.ONE), math.getTotal(items, "price"));
+
+        assertEquals(Double.valueOf(3.5), math.getTotal(Arrays.asList(1, 2.5)));
+        assertNull(math.getTotal(Arrays.asList(1, null)));
+        assertNull(math.getTotal(Arrays.asList(new Item(1)), "nothing"));
+        assertEquals(new BigDecimal("0.15"), math.getAverage(Arrays.asList(new BigDecimal("0.10"), new BigDecimal("0.20"))));
+    }
+
+    public void testParallelTotal()
+    {
+        MathTool math = new MathTool();
+        Map<String,Object> conf = new HashMap<String,Object>();
+        conf.put(MathTool.PARALLEL_THRESHOLD_KEY, "100");
+        math.configure(conf);
+        List<Item> items = new ArrayList<Item>();
+        BigDecimal expected = BigDecimal.ZERO;
+        for (int i = 0; i < 1000; ++i)
+        {
+            BigDecimal price = new BigDecimal(i).movePointLeft(2);
+            items.add(new Item(price));
+            expected = expected.add(price);
+        }
+        assertEquals(expected, math.getTotal(items, "price"));
+
+        ParallelList<Integer> values = new ParallelList<Integer>();
+        for (int i = 0; i < 1000; ++i)
+        {
+            values.add(i);
+        }
+        assertEquals(Integer.valueOf(499500), math.getTotal(values));
+        assertTrue(values.parallel);
+        values.add(null);
+        assertNull(math.getTotal(values));
+    }
+
+    public void testParallelNaNWithDecimals()
+    {
+        MathTool math = new MathTool();
+        Map<String,Object> conf = new HashMap<String,Object>();
+        conf.put(MathTool.PARALLEL_THRESHOLD_KEY, "100");
+        math.configure(conf);
+        // chunks of doubles, including NaN, and chunks of decimals
+        ParallelList<Number> values = new ParallelList<Number>();
+        values.add(Double.NaN);
+        for (int i = 1; i < 1000; ++i)
+        {
+            values.add(i < 500 ? (Number)Double.valueOf(1.5) : (Number)new BigDecimal("0.25"));
+        }
+        // same as the sequential path
+        assertNull(new MathTool().getTotal(values));
+        assertFalse(values.parallel);
+        assertNull(math.getTotal(values));
+        assertNull(math.getAverage(values));
+        assertTrue(values.parallel);
+
+        // and the other way round
+        Collections.reverse(values);
+        assertNull(math.getTotal(values));
+        values.set(values.size() - 1, Double.POSITIVE_INFINITY);
+        assertNull(math.getTotal(values));
+    }
+
+    /**
+     * List recording whether it has been aggregated through a parallel stream.
+     */
+    private static class ParallelList<T> extends ArrayList<T>
+    {
+        boolean parallel = false;
+
+        @Override
+        public Stream<T> parallelStream()
+        {
+            parallel = true;
+            return super.parallelStream();
+        }
+    }
 }
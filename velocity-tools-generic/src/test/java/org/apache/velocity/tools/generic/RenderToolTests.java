@@ -0,0 +1,176 @@
+package org.apache.velocity.tools.generic;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Tests for the concurrent renderings of RenderTool</p>
+ *
+ * @since VelocityTools 4.0
+ * @version $Id$
+ */
+public class RenderToolTests extends BaseTestCase
+{
+    public RenderToolTests(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * Latch only opening once all the regions await it.
+     */
+    public static class Barrier
+    {
+        private final CountDownLatch latch;
+
+        public Barrier(int parties)
+        {
+            latch = new CountDownLatch(parties);
+        }
+
+        public boolean await() throws InterruptedException
+        {
+            latch.countDown();
+            return latch.await(10, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Gate ignoring interruptions, like a rendering stuck in I/O.
+     */
+    public static class Gate
+    {
+        private final CountDownLatch latch = new CountDownLatch(1);
+
+        public void open()
+        {
+            latch.countDown();
+        }
+
+        public boolean pass()
+        {
+            while (true)
+            {
+                try
+                {
+                    return latch.await(10, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException ie)
+                {
+                    // keep waiting
+                }
+            }
+        }
+    }
+
+    /**
+     * Records a value seen by a rendering.
+     */
+    public static class Recorder
+    {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile Object seen = "nothing";
+
+        public String record(Object value)
+        {
+            seen = value;
+            done.countDown();
+            return "";
+        }
+    }
+
+    private RenderTool newTool()
+    {
+        RenderTool render = new RenderTool();
+        render.setVelocityEngine(engine);
+        render.setVelocityContext(context);
+        return render;
+    }
+
+    public void testEvalAllIsConcurrentAndOrdered() throws Exception
+    {
+        context.put("barrier", new Barrier(3));
+        context.put("name", "world");
+        List<String> results = newTool().evalAll(Arrays.asList(
+            "#set($x = 1)a $barrier.await()", "b $barrier.await() $name", "c $barrier.await() $!x"));
+        // each region waits for the two others
+        assertEquals(Arrays.asList("a true", "b true world", "c true "), results);
+        // variables set by the regions stay there
+        assertNull(context.get("x"));
+    }
+
+    public void testParseAll() throws Exception
+    {
+        addTemplate("hello.vm", "hello $name");
+        addTemplate("bye.vm", "bye $name");
+        context.put("name", "world");
+        List<String> results = newTool().parseAll(Arrays.asList("hello.vm", null, "missing.vm", "bye.vm"));
+        assertEquals(Arrays.asList("hello world", null, null, "bye world"), results);
+    }
+
+    public void testTimeout() throws Exception
+    {
+        // a barrier which cannot open
+        context.put("barrier", new Barrier(2));
+        RenderTool render = newTool();
+        // leaves room for a cold engine
+        render.setTimeout(1000);
+        long start = System.nanoTime();
+        List<String> results = render.evalAll(Arrays.asList("fast", "$barrier.await()"));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertEquals(Arrays.asList("fast", null), results);
+
+        context.put("barrier", new Barrier(2));
+        render = newTool();
+        render.setTimeout(1000);
+        render.setCatchExceptions(false);
+        try
+        {
+            render.evalAll(Arrays.asList("$barrier.await()"));
+            fail("a timeout was expected");
+        }
+        catch (java.util.concurrent.TimeoutException te)
+        {
+            // expected
+        }
+    }
+
+    public void testOrphanCannotReachContext() throws Exception
+    {
+        Gate gate = new Gate();
+        Recorder recorder = new Recorder();
+        context.put("gate", gate);
+        context.put("recorder", recorder);
+        context.put("name", "world");
+        RenderTool render = newTool();
+        render.setTimeout(100);
+        List<String> results = render.evalAll(Arrays.asList("#set($r = $recorder)$gate.pass()$r.record($name)"));
+        assertEquals(Arrays.asList((String)null), results);
+
+        // the timed out rendering goes on, but does not see the context anymore
+        gate.open();
+        assertTrue(recorder.done.await(10, TimeUnit.SECONDS));
+        assertNull(recorder.seen);
+    }
+}
@@ -21,8 +21,14 @@ package org.apache.velocity.tools.generic;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.ListResourceBundle;
+import java.util.Locale;
+import java.util.MissingResourceException;
+import java.util.ResourceBundle;
 
 import org.junit.Test;
 
@@ -49,4 +55,71 @@ public class ResourceToolTests
     {
         assertEquals("", text().get((Object) null).toString());
     }
+
+    public static class CustomResourceTool extends ResourceTool
+    {
+        int lookups = 0;
+
+        @Override
+        protected ResourceBundle getBundle(String baseName, Object loc)
+        {
+            ++lookups;
+            if (!"custom".equals(baseName))
+            {
+                return null;
+            }
+            return new ListResourceBundle()
+            {
+                @Override
+                protected Object[][] getContents()
+                {
+                    return new Object[][] { { "greeting", "hi" }, { "greeting.formal", "hello" } };
+                }
+            };
+        }
+    }
+
+    // bundles are resolved, and then cached, through the overridable getBundle()
+    public @Test void overriddenGetBundleIsUsed()
+    {
+        ResourceTool.clearCache();
+        CustomResourceTool text = new CustomResourceTool();
+        text.configure(new HashMap<String, Object>());
+        assertEquals("hi", text.get("greeting", "custom", Locale.ENGLISH));
+        assertEquals("hello", text.get("greeting.formal", "custom", Locale.ENGLISH));
+        assertEquals(Arrays.asList("formal"), text.getKeys("greeting.", "custom", Locale.ENGLISH));
+        assertEquals(1, text.lookups);
+        assertNull(text.get("greeting", "other", Locale.ENGLISH));
+        assertNull(text.getKeys(null, "other", Locale.ENGLISH));
+
+        // the cache of the subclass is not shared with the base tool
+        try
+        {
+            text().get("greeting", "custom", Locale.ENGLISH);
+            fail("a MissingResourceException was expected");
+        }
+        catch (MissingResourceException mre)
+        {
+            // expected
+        }
+    }
+
+    // cached key lists cannot be modified by callers
+    public @Test(expected = UnsupportedOperationException.class) void keysAreUnmodifiable()
+    {
+        ResourceTool.clearCache();
+        CustomResourceTool text = new CustomResourceTool();
+        text.configure(new HashMap<String, Object>());
+        text.getKeys(null, "custom", Locale.ENGLISH).clear();
+    }
+
+    // compiled message formats are cached, repeated renders must not interfere
+    public @Test void renderUsesCachedFormats()
+    {
+        ResourceTool text = text();
+        assertEquals("a 1 b", text.render("a {0} b", new Object[] { 1 }));
+        assertEquals("a 2 b", text.render("a {0} b", new Object[] { 2 }));
+        assertEquals("it's", text.render("it''s", null));
+        assertEquals("plain", text.render("plain", new Object[] { 3 }));
+    }
 }
@@ -0,0 +1,135 @@
+package org.apache.velocity.tools.jfr;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.tools.ToolManager;
+import org.apache.velocity.tools.XmlUtils;
+import org.apache.velocity.tools.config.ConfigurationUtils;
+import org.apache.velocity.tools.generic.RenderTool;
+import org.junit.Test;
+
+/**
+ * Tests the Flight Recorder events emitted by the tools.
+ */
+public class JfrEventsTest
+{
+    private static List<RecordedEvent> record(String name, Runnable action) throws Exception
+    {
+        Path file = Files.createTempFile("velocity-tools", ".jfr");
+        try
+        {
+            try (Recording recording = new Recording())
+            {
+                recording.enable(name).withoutStackTrace();
+                recording.start();
+                action.run();
+                recording.stop();
+                recording.dump(file);
+            }
+            List<RecordedEvent> events = new ArrayList<RecordedEvent>();
+            for (RecordedEvent event : RecordingFile.readAllEvents(file))
+            {
+                if (event.getEventType().getName().equals(name))
+                {
+                    events.add(event);
+                }
+            }
+            return events;
+        }
+        finally
+        {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void flightRecorderIsAvailable()
+    {
+        // events are only emitted when the jdk.jfr module is present
+        assertTrue(FlightRecorder.isAvailable());
+    }
+
+    @Test
+    public void toolCreationIsRecorded() throws Exception
+    {
+        ToolManager manager = new ToolManager(false, false);
+        manager.configure(ConfigurationUtils.getGenericTools());
+        manager.setVelocityEngine(new VelocityEngine());
+        List<RecordedEvent> events = record(ToolCreationEvent.NAME, () -> manager.createContext().get("math"));
+        assertEquals(1, events.size());
+        assertEquals("math", events.get(0).getString("key"));
+        assertEquals("org.apache.velocity.tools.generic.MathTool",
+                     events.get(0).getClass("toolClass").getName());
+    }
+
+    @Test
+    public void xmlParseIsRecorded() throws Exception
+    {
+        String xml = "<root><child/></root>";
+        List<RecordedEvent> events = record(XmlParseEvent.NAME, () ->
+        {
+            XmlUtils.parse(xml);
+            XmlUtils.parse("<unclosed>");
+        });
+        assertEquals(2, events.size());
+        assertEquals("root", events.get(0).getString("root"));
+        assertEquals(xml.length(), events.get(0).getLong("size"));
+        assertNull(events.get(1).getString("root"));
+    }
+
+    @Test
+    public void renderEvalIsRecorded() throws Exception
+    {
+        RenderTool render = new RenderTool();
+        render.setVelocityEngine(new VelocityEngine());
+        VelocityContext context = new VelocityContext();
+        context.put("name", "world");
+        List<RecordedEvent> events = record(RenderEvent.NAME, () ->
+        {
+            try
+            {
+                assertEquals("hello world", render.eval(context, "hello $name"));
+            }
+            catch (Exception e)
+            {
+                throw new RuntimeException(e);
+            }
+        });
+        assertEquals(1, events.size());
+        assertEquals(11, events.get(0).getLong("sourceSize"));
+        assertEquals(11, events.get(0).getLong("outputSize"));
+        assertTrue(events.get(0).getDuration().toNanos() >= 0);
+    }
+}
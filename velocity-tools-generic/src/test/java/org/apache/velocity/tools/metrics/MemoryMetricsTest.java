@@ -0,0 +1,143 @@
+package org.apache.velocity.tools.metrics;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.tools.Scope;
+import org.apache.velocity.tools.ToolContext;
+import org.apache.velocity.tools.ToolManager;
+import org.apache.velocity.tools.config.ConfigurationUtils;
+import org.junit.Test;
+
+/**
+ * Tests {@link MemoryMetrics} figures, as fed by {@link ToolManager}, and their JMX exposure.
+ */
+public class MemoryMetricsTest
+{
+    private static ToolManager newManager(Metrics metrics)
+    {
+        ToolManager manager = new ToolManager(false, false);
+        manager.configure(ConfigurationUtils.getGenericTools());
+        manager.setVelocityEngine(new VelocityEngine());
+        manager.setMetrics(metrics);
+        return manager;
+    }
+
+    @Test
+    public void toolsAndToolboxesAreRecorded()
+    {
+        MemoryMetrics metrics = new MemoryMetrics();
+        ToolManager manager = newManager(metrics);
+        for (int i = 0; i < 3; ++i)
+        {
+            ToolContext context = manager.createContext();
+            context.get("esc");
+            context.get("esc");
+            context.get("loop");
+        }
+
+        // the application tool is created once, then always found in the toolbox
+        assertEquals(Long.valueOf(1), metrics.getToolCreations().get("esc"));
+        assertEquals(Long.valueOf(5), metrics.getToolCacheHits().get("esc"));
+        // the request tool once per context
+        assertEquals(Long.valueOf(3), metrics.getToolCreations().get("loop"));
+        assertNull(metrics.getToolCacheHits().get("loop"));
+        assertEquals(5.0 / 9, metrics.getToolCacheHitRatio(), 1e-9);
+
+        Map<String,Long> toolboxes = metrics.getToolboxCreations();
+        assertEquals(Long.valueOf(1), toolboxes.get(Scope.APPLICATION));
+        assertEquals(Long.valueOf(3), toolboxes.get(Scope.REQUEST));
+        assertTrue(metrics.getToolboxCreationAverageMillis().get(Scope.REQUEST) >= 0);
+
+        metrics.reset();
+        assertTrue(metrics.getToolCreations().isEmpty());
+    }
+
+    @Test
+    public void noMetricsByDefault()
+    {
+        ToolManager manager = newManager(null);
+        assertSame(Metrics.NONE, manager.getMetrics());
+        assertFalse(manager.getMetrics().isEnabled());
+        assertNull(manager.getApplicationToolbox().getMetrics());
+    }
+
+    @Test
+    public void namesAreBounded()
+    {
+        MemoryMetrics metrics = new MemoryMetrics();
+        for (int i = 0; i < MemoryMetrics.MAX_NAMES + 10; ++i)
+        {
+            metrics.templateMerged("page" + i + ".vm", 1000000);
+        }
+        Map<String,Long> merges = metrics.getTemplateMerges();
+        assertEquals(MemoryMetrics.MAX_NAMES + 1, merges.size());
+        assertEquals(Long.valueOf(10), merges.get(MemoryMetrics.OTHER));
+        assertEquals(1.0, metrics.getTemplateMergeMaxMillis().get("page0.vm"), 1e-9);
+    }
+
+    @Test
+    public void registeredInJmx() throws Exception
+    {
+        MemoryMetrics metrics = new MemoryMetrics();
+        metrics.templateMerged("index.vm", 2000000);
+        metrics.templateMerged("index.vm", 4000000);
+        ObjectName name = metrics.register("/test");
+        try
+        {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertTrue(server.isRegistered(name));
+            Map<Object,Object> averages = toMap(server.getAttribute(name, "TemplateMergeAverageMillis"));
+            assertEquals(3.0, (Double)averages.get("index.vm"), 1e-9);
+        }
+        finally
+        {
+            metrics.unregister();
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+
+    /** MXBean maps are exposed as tabular data. */
+    private static Map<Object,Object> toMap(Object tabular)
+    {
+        Map<Object,Object> map = new HashMap<Object,Object>();
+        for (Object row : ((TabularData)tabular).values())
+        {
+            CompositeData data = (CompositeData)row;
+            map.put(data.get("key"), data.get("value"));
+        }
+        return map;
+    }
+}
@@ -19,6 +19,8 @@ package org.apache.velocity.tools.test.whitebox;
  * under the License.
  */
 
+import java.io.File;
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -29,6 +31,7 @@ import org.apache.commons.beanutils.Converter;
 import org.apache.commons.beanutils.converters.BooleanConverter;
 import org.apache.commons.beanutils.converters.DoubleConverter;
 import org.apache.commons.beanutils.converters.IntegerConverter;
+import org.apache.velocity.tools.ClassUtils;
 import org.apache.velocity.tools.Scope;
 import org.apache.velocity.tools.config.*;
 import org.apache.velocity.tools.generic.MathTool;
@@ -154,6 +157,63 @@ public class ConfigTests {
         assertValid(def);
     }
 
+    public @Test void testDefaultConfigCopies()
+    {
+        FactoryConfiguration first = ConfigurationUtils.getDefaultTools();
+        FactoryConfiguration second = ConfigurationUtils.getDefaultTools();
+        assertNotSame(first, second);
+        assertConfigEquals(first, second);
+        assertEquals(first.getSources(), second.getSources());
+        // changing one of them does not affect the next ones
+        second.addToolbox(new ToolboxConfiguration()).setProperty("foo", "bar");
+        assertConfigEquals(first, ConfigurationUtils.getDefaultTools());
+    }
+
+    public @Test void testSnapshot() throws Exception
+    {
+        URL url = ClassUtils.getResource(XML_PATH, this);
+        FileFactoryConfiguration xml = new XmlFactoryConfiguration();
+        xml.read(url);
+        xml.getData("version").setTargetClass(Double.class);
+
+        ConfigurationSnapshot snapshot = new ConfigurationSnapshot();
+        snapshot.addInput(XML_PATH, url);
+        snapshot.addInput("param", "value");
+        File file = File.createTempFile("tools", ".snapshot");
+        try
+        {
+            snapshot.write(xml, file);
+
+            ConfigurationSnapshot same = new ConfigurationSnapshot();
+            same.addInput(XML_PATH, url);
+            same.addInput("param", "value");
+            FactoryConfiguration read = same.read(file);
+            assertValid(read);
+            assertConfigEquals(xml, read);
+            assertEquals(xml.getSources(), read.getSources());
+            assertEquals(Double.class, read.getData("version").getTargetClass());
+
+            ConfigurationSnapshot changed = new ConfigurationSnapshot();
+            changed.addInput(XML_PATH, url);
+            changed.addInput("param", "other");
+            assertNull(changed.read(file));
+        }
+        finally
+        {
+            file.delete();
+        }
+
+        // only configuration file values can be written
+        try
+        {
+            ConfigurationSnapshot.toBytes(getBaseConfig());
+            fail("a ConfigurationException was expected");
+        }
+        catch (ConfigurationException ce)
+        {
+        }
+    }
+
     public @Test void testAutoConfig()
     {
         // get the default tools
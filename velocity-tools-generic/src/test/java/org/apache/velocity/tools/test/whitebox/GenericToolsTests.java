@@ -26,11 +26,16 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 import org.apache.velocity.tools.ToolContext;
 import org.apache.velocity.tools.ToolManager;
@@ -42,6 +47,7 @@ import org.apache.velocity.tools.generic.JsonTool;
 import org.apache.velocity.tools.generic.MathTool;
 import org.apache.velocity.tools.generic.NumberTool;
 import org.apache.velocity.tools.generic.ResourceTool;
+import org.apache.velocity.tools.generic.ValueParser;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
@@ -115,6 +121,15 @@ public class GenericToolsTests {
 
     public static String MUTABLE_FIELD = "foo";
 
+    public static final String FINAL_FIELD = "bar";
+
+    public static class InspectingFieldTool extends FieldTool {
+        @Override
+        public Map<String,Object> inspect(Class clazz) {
+            return super.inspect(clazz);
+        }
+    }
+
     public @Test void testFieldTool() {
         FieldTool fieldTool = (FieldTool)toolbox.get("field");
         assertNotNull(fieldTool);
@@ -146,6 +161,37 @@ public class GenericToolsTests {
         assertEquals(Long.MIN_VALUE, fieldTool.get("java.lang.Long.MIN_VALUE"));
     }
 
+    public @Test void testFieldToolInspect() throws Exception {
+        InspectingFieldTool fieldTool = new InspectingFieldTool();
+        Map<String,Object> fields = fieldTool.inspect(GenericToolsTests.class);
+        // final values are read once, other ones are wrapped
+        assertSame(FINAL_FIELD, fields.get("FINAL_FIELD"));
+        Object mutable = fields.get("MUTABLE_FIELD");
+        assertTrue(mutable instanceof FieldTool.MutableField);
+        assertEquals(MUTABLE_FIELD, ((FieldTool.MutableField)mutable).getValue());
+        // each call gives its own map
+        assertFalse(fields == fieldTool.inspect(GenericToolsTests.class));
+        assertEquals(fields.keySet(), fieldTool.inspect(GenericToolsTests.class).keySet());
+    }
+
+    public @Test void testFieldToolMutableField() throws Exception {
+        FieldTool fieldTool = new FieldTool();
+        MethodHandle getter = MethodHandles.lookup()
+            .findStaticGetter(GenericToolsTests.class, "MUTABLE_FIELD", String.class)
+            .asType(MethodType.methodType(Object.class));
+        FieldTool.MutableField field = fieldTool.new MutableField(getter);
+        assertEquals(MUTABLE_FIELD, field.getValue());
+        String previous = MUTABLE_FIELD;
+        try {
+            MUTABLE_FIELD = "changed";
+            assertEquals("changed", field.getValue());
+        } finally {
+            MUTABLE_FIELD = previous;
+        }
+        // inaccessible fields have no getter
+        assertNull(fieldTool.new MutableField((MethodHandle)null).getValue());
+    }
+
     public @Test void testMathTool() {
         MathTool mathTool = (MathTool)toolbox.get("math");
         assertNotNull(mathTool);
@@ -242,4 +288,34 @@ public class GenericToolsTests {
         assertEquals(11l, whenIs.getMonths());
         assertEquals(25l, whenIs.getDays());
     }
+
+    public @Test void testValueParserSubkeys() {
+        Map<String,Object> source = new HashMap<String,Object>();
+        source.put("address.line1", "1 Main St");
+        source.put("address.city.name", "Springfield");
+        source.put("address.city.zip", "12345");
+        source.put("name", "Homer");
+        ValueParser parser = new ValueParser(source);
+        assertTrue(parser.hasSubkeys());
+        assertEquals(1, parser.getSubkeys().size());
+        assertTrue(parser.getSubkeys().contains("address"));
+        ValueParser address = (ValueParser)parser.get("address");
+        assertNotNull(address);
+        assertStringEquals("1 Main St", address.get("line1"));
+        assertStringEquals("Springfield", ((ValueParser)address.get("city")).get("name"));
+        assertStringEquals("12345", parser.getSubkey("address.city").get("zip"));
+        /* sub parsers are shared when read-only */
+        assertSame(address, parser.get("address"));
+        assertNull(parser.getSubkey("name"));
+        assertNull(parser.getSubkey("address.nothing"));
+
+        /* modifications invalidate the index */
+        Map<String,Object> conf = new HashMap<String,Object>();
+        conf.put(ValueParser.READONLY_KEY, "false");
+        parser.configure(conf);
+        parser.put("address.line2", "Apt 2");
+        assertStringEquals("Apt 2", parser.getSubkey("address").get("line2"));
+        parser.remove("address.line2");
+        assertNull(parser.getSubkey("address").get("line2"));
+    }
 }
@@ -20,7 +20,9 @@ package org.apache.velocity.tools.view;
  */
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -50,7 +52,11 @@ import org.apache.velocity.tools.Scope;
  * &lt;/tools&gt;
  * </pre>
  *
- * <p>This class is only designed for use as a request-scope tool.</p>
+ * <p>This class is only designed for use as a request-scope tool.
+ * Request cookies are only wrapped in {@link SugarCookie}s when accessed,
+ * and looked up by name through an index built on first access, unless
+ * {@link #getAll()} was called: its list may be modified, and is then
+ * searched instead.</p>
  *
  * @author <a href="mailto:dim@colebatch.com">Dmitri Colebatch</a>
  * @author Nathan Bubna
@@ -65,7 +71,10 @@ public class CookieTool extends SafeConfig
 
     protected HttpServletRequest request;
     protected HttpServletResponse response;
+    private Cookie[] cookies;
+    private SugarCookie[] sugared;
     private List<Cookie> jar;
+    private Map<String,Integer> index;
 
     // --------------------------------------- Setup Methods -------------
 
@@ -110,18 +119,16 @@ public class CookieTool extends SafeConfig
      */
     public List<Cookie> getAll()
     {
-        if (jar == null) {
-            Cookie[] array = request.getCookies();
-            if (array == null)
+        if (jar == null)
+        {
+            if (!loadCookies())
             {
                 return null;
             }
-
-            jar = new ArrayList<Cookie>(array.length);
-            for (Cookie c : array)
+            jar = new ArrayList<Cookie>(cookies.length);
+            for (int i = 0; i < cookies.length; i++)
             {
-                Cookie sc = new SugarCookie(c);
-                jar.add(sc);
+                jar.add(sugar(i));
             }
         }
         return jar;
@@ -138,18 +145,62 @@ public class CookieTool extends SafeConfig
      */
     public Cookie get(String name)
     {
-        List<Cookie> all = getAll();
-        if (all != null)
+        if (jar != null)
         {
-            for (Cookie c : all)
+            // the list returned by getAll() may have been modified
+            for (Cookie c : jar)
             {
                 if (c.getName().equals(name))
                 {
                     return c;
                 }
             }
+            return null;
         }
-        return null;
+        if (index == null)
+        {
+            if (!loadCookies())
+            {
+                return null;
+            }
+            index = new HashMap<String,Integer>(cookies.length * 4 / 3 + 1);
+            for (int i = 0; i < cookies.length; i++)
+            {
+                // first cookie of a given name wins
+                index.putIfAbsent(cookies[i].getName(), i);
+            }
+        }
+        Integer i = index.get(name);
+        return i == null ? null : sugar(i);
+    }
+
+    /**
+     * Reads the request cookies, once.
+     * @return whether the request has cookies
+     */
+    private boolean loadCookies()
+    {
+        if (cookies == null)
+        {
+            cookies = request.getCookies();
+            if (cookies == null)
+            {
+                return false;
+            }
+            sugared = new SugarCookie[cookies.length];
+        }
+        return true;
+    }
+
+    private SugarCookie sugar(int i)
+    {
+        SugarCookie sc = sugared[i];
+        if (sc == null)
+        {
+            sc = new SugarCookie(cookies[i]);
+            sugared[i] = sc;
+        }
+        return sc;
     }
 
     /**
@@ -269,20 +320,29 @@ public class CookieTool extends SafeConfig
     @Override
     public String toString()
     {
-        List<Cookie> all = getAll();
-        if (all == null)
+        if (!loadCookies())
         {
             return super.toString();
         }
+        int size = jar == null ? cookies.length : jar.size();
         StringBuilder out = new StringBuilder();
         out.append('[');
-        for (int i=0; i < all.size(); i++)
+        for (int i=0; i < size; i++)
         {
             if (i != 0)
             {
                 out.append(", ");
             }
-            Cookie c = all.get(i);
+            Cookie c;
+            if (jar != null)
+            {
+                c = jar.get(i);
+            }
+            else
+            {
+                // no need to wrap cookies not accessed yet
+                c = sugared[i] == null ? cookies[i] : sugared[i];
+            }
             out.append(c.getName());
             out.append('=');
             out.append(c.getValue());
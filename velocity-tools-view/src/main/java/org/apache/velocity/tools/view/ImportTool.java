@@ -19,6 +19,10 @@ package org.apache.velocity.tools.view;
  * under the License.
  */
 
+import java.io.Writer;
+
+import org.apache.velocity.context.InternalContextAdapter;
+import org.apache.velocity.runtime.Renderable;
 import org.apache.velocity.tools.Scope;
 import org.apache.velocity.tools.config.DefaultKey;
 import org.apache.velocity.tools.config.ValidScope;
@@ -30,6 +34,9 @@ import org.apache.velocity.tools.generic.ValueParser;
  * Just call $import.read("http://www.foo.com/bleh.jsp?sneh=bar") to insert the contents of the named
  * resource into the template.
  * </p>
+ * <p>For large resources, $import.stream("/fragment.vm") inserts the same content without ever
+ * holding it whole in memory: it is forwarded to the template output as the resource produces it.
+ * </p>
  * <pre>
  * Toolbox configuration:
  * &lt;tools&gt;
@@ -92,4 +99,53 @@ public class ImportTool extends org.apache.velocity.tools.generic.ImportTool
             return null;
         }
     }
+
+    /**
+     * <p>Returns a renderable which streams the supplied URL to the template output
+     * when rendered, through bounded buffers. Contrary to {@link #read(Object)},
+     * peak memory does not grow with the size of the imported content.</p>
+     * <p>Errors are logged. Since content may already have been written, an error
+     * during rendering only interrupts the import.</p>
+     *
+     * @param obj the URL to import
+     * @return the URL content as a renderable, or null if the URL is null or empty
+     * @since VelocityTools 4.0
+     */
+    public Renderable stream(Object obj)
+    {
+        if (obj == null)
+        {
+            getLog().warn("URL is null!");
+            return null;
+        }
+        final String url = String.valueOf(obj).trim();
+        if (url.length() == 0)
+        {
+            getLog().warn("URL is empty string!");
+            return null;
+        }
+        return new Renderable()
+        {
+            @Override
+            public boolean render(InternalContextAdapter context, Writer writer)
+            {
+                try
+                {
+                    importSupport.acquire(url, writer);
+                }
+                catch (Exception ex)
+                {
+                    getLog().error("Exception while streaming '{}'", url, ex);
+                }
+                // never let Velocity fall back to toString()
+                return true;
+            }
+
+            @Override
+            public String toString()
+            {
+                return read(url);
+            }
+        };
+    }
 }
@@ -20,11 +20,18 @@ package org.apache.velocity.tools.view;
  */
 
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Locale;
 import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import jakarta.servlet.ServletContext;
 import org.apache.velocity.app.VelocityEngine;
 import org.apache.velocity.exception.ResourceNotFoundException;
+import org.apache.velocity.runtime.RuntimeConstants;
 import org.apache.velocity.tools.Scope;
 import org.apache.velocity.tools.config.DefaultKey;
 import org.apache.velocity.tools.config.InvalidScope;
@@ -45,6 +52,15 @@ import org.apache.velocity.tools.generic.ValueParser;
  * Please note that it does NOT do the actual #include or #parse for
  * you, but is merely to aid in include content negotiation.</p>
  *
+ * <p>Results of {@link #find(String, String)} are cached per engine and
+ * default language, and the cache is emptied whenever the template cache
+ * would check for modifications, that is after the shortest
+ * <code>modification_check_interval</code> of the resource loaders. Names for
+ * which no localized resource was found are kept one minute at most, so
+ * that localized resources added later are eventually found. Nothing
+ * is cached if one of the resource loaders has its cache turned off. See
+ * {@link #getCacheHits()} and {@link #getCacheMisses()} for statistics.</p>
+ *
  * @version $Id$
  * @author <a href="mailto:dlr@finemaltcoding.com">Daniel Rall</a>
  * @author Nathan Bubna
@@ -71,6 +87,21 @@ public class IncludeTool extends SafeConfig implements Serializable
     protected String defaultLanguage;
     protected VelocityEngine engine;
 
+    /**
+     * Maximum number of resolved names cached per engine and default language.
+     */
+    private static final int MAX_CACHED_NAMES = 1000;
+
+    /**
+     * Maximum time, in milliseconds, names without localized resource are cached.
+     */
+    private static final long FALLBACK_VALIDITY = 60000L;
+
+    private static final Map<VelocityEngine, Map<String, FindCache>> findCaches =
+        new WeakHashMap<VelocityEngine, Map<String, FindCache>>();
+
+    private transient FindCache findCache;
+
     /**
      * Extracts the default language from the specified
      * <code>ViewContext</code>, looking first at the Velocity
@@ -102,6 +133,94 @@ public class IncludeTool extends SafeConfig implements Serializable
         }
 
         this.engine = ctx.getVelocityEngine();
+        // subclasses may resolve names differently
+        if (engine != null && getClass() == IncludeTool.class)
+        {
+            findCache = getFindCache(engine, defaultLanguage);
+        }
+    }
+
+    private static FindCache getFindCache(VelocityEngine engine, String defaultLanguage)
+    {
+        Map<String, FindCache> caches;
+        synchronized (findCaches)
+        {
+            caches = findCaches.get(engine);
+            if (caches == null)
+            {
+                caches = new ConcurrentHashMap<String, FindCache>();
+                findCaches.put(engine, caches);
+            }
+        }
+        FindCache cache = caches.get(defaultLanguage);
+        if (cache == null)
+        {
+            long validity = getCacheValidity(engine);
+            if (validity == 0)
+            {
+                return null;
+            }
+            cache = new FindCache(validity);
+            FindCache previous = caches.putIfAbsent(defaultLanguage, cache);
+            if (previous != null)
+            {
+                cache = previous;
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Gets how long resolved names can be kept, from the resource loaders configuration.
+     * @param engine Velocity engine
+     * @return validity in milliseconds, 0 if one of the loaders does not cache resources,
+     * or <code>Long.MAX_VALUE</code> if they never check for modifications
+     */
+    private static long getCacheValidity(VelocityEngine engine)
+    {
+        Object loaders = engine.getProperty(RuntimeConstants.RESOURCE_LOADERS);
+        Collection<?> names;
+        if (loaders instanceof Collection)
+        {
+            names = (Collection<?>)loaders;
+        }
+        else if (loaders != null)
+        {
+            names = Arrays.asList(String.valueOf(loaders).split(","));
+        }
+        else
+        {
+            // engine default
+            names = Arrays.asList("file");
+        }
+        long validity = Long.MAX_VALUE;
+        for (Object name : names)
+        {
+            String prefix = RuntimeConstants.RESOURCE_LOADER + '.' + String.valueOf(name).trim() + '.';
+            Object caching = engine.getProperty(prefix + RuntimeConstants.RESOURCE_LOADER_CACHE);
+            if (caching == null || !Boolean.parseBoolean(String.valueOf(caching).trim()))
+            {
+                return 0;
+            }
+            Object interval = engine.getProperty(prefix + RuntimeConstants.RESOURCE_LOADER_CHECK_INTERVAL);
+            long seconds = 2; // engine default
+            if (interval != null)
+            {
+                try
+                {
+                    seconds = Long.parseLong(String.valueOf(interval).trim());
+                }
+                catch (NumberFormatException nfe)
+                {
+                    // keep the default
+                }
+            }
+            if (seconds > 0)
+            {
+                validity = Math.min(validity, seconds * 1000);
+            }
+        }
+        return validity;
     }
 
     /**
@@ -158,6 +277,29 @@ public class IncludeTool extends SafeConfig implements Serializable
      * not localizable.
      */
     public String find(String name, String language)
+    {
+        FindCache cache = findCache;
+        if (cache == null || name == null || language == null)
+        {
+            return resolve(name, language);
+        }
+        Map<String, Object> names = cache.get(language);
+        String localizedName = cache.lookup(names, name);
+        if (localizedName == null)
+        {
+            cache.misses.increment();
+            localizedName = resolve(name, language);
+            boolean fallback = !localizedName.equals(name + '.' + language);
+            cache.put(names, name, localizedName, fallback);
+        }
+        else
+        {
+            cache.hits.increment();
+        }
+        return localizedName;
+    }
+
+    private String resolve(String name, String language)
     {
         String localizedName = name + '.' + language;
         if (!exists(localizedName))
@@ -225,4 +367,135 @@ public class IncludeTool extends SafeConfig implements Serializable
         return exists(localizedName);
     }
 
+    /**
+     * @return number of {@link #find(String, String)} calls answered from the cache,
+     * for this tool's engine and default language
+     */
+    public long getCacheHits()
+    {
+        return findCache == null ? 0 : findCache.hits.sum();
+    }
+
+    /**
+     * @return number of {@link #find(String, String)} calls which had to check
+     * for resources existence, for this tool's engine and default language, or
+     * 0 if caching is disabled
+     */
+    public long getCacheMisses()
+    {
+        return findCache == null ? 0 : findCache.misses.sum();
+    }
+
+    /**
+     * @return number of resolved names currently cached for this tool's engine
+     * and default language
+     */
+    public int getCacheSize()
+    {
+        return findCache == null ? 0 : findCache.size.get();
+    }
+
+    /**
+     * Resolved name for which the requested localized resource was not found.
+     */
+    private static final class Fallback
+    {
+        private final String name;
+        private final long expiration;
+
+        Fallback(String name, long expiration)
+        {
+            this.name = name;
+            this.expiration = expiration;
+        }
+    }
+
+    /**
+     * Resolved names, per language then name, with statistics.
+     */
+    private static final class FindCache
+    {
+        private final long validity;
+        private volatile long expiration;
+        private final Map<String, Map<String, Object>> languages =
+            new ConcurrentHashMap<String, Map<String, Object>>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+
+        FindCache(long validity)
+        {
+            this.validity = validity;
+            expiration = expirationFrom(System.currentTimeMillis());
+        }
+
+        private long expirationFrom(long now)
+        {
+            return validity == Long.MAX_VALUE ? Long.MAX_VALUE : now + validity;
+        }
+
+        Map<String, Object> get(String language)
+        {
+            if (validity != Long.MAX_VALUE)
+            {
+                long now = System.currentTimeMillis();
+                if (now >= expiration)
+                {
+                    // racy clearing is fine, entries are only recomputed
+                    expiration = expirationFrom(now);
+                    languages.clear();
+                    size.set(0);
+                }
+            }
+            Map<String, Object> names = languages.get(language);
+            if (names == null)
+            {
+                names = new ConcurrentHashMap<String, Object>();
+                Map<String, Object> previous = languages.putIfAbsent(language, names);
+                if (previous != null)
+                {
+                    names = previous;
+                }
+            }
+            return names;
+        }
+
+        String lookup(Map<String, Object> names, String name)
+        {
+            Object cached = names.get(name);
+            if (cached instanceof Fallback)
+            {
+                Fallback fallback = (Fallback)cached;
+                if (System.currentTimeMillis() < fallback.expiration)
+                {
+                    return fallback.name;
+                }
+                if (names.remove(name, cached))
+                {
+                    size.decrementAndGet();
+                }
+                return null;
+            }
+            return (String)cached;
+        }
+
+        void put(Map<String, Object> names, String name, String localizedName, boolean fallback)
+        {
+            if (size.incrementAndGet() > MAX_CACHED_NAMES)
+            {
+                languages.clear();
+                size.set(0);
+            }
+            else if (fallback)
+            {
+                long ttl = Math.min(validity, FALLBACK_VALIDITY);
+                names.put(name, new Fallback(localizedName, System.currentTimeMillis() + ttl));
+            }
+            else
+            {
+                names.put(name, localizedName);
+            }
+        }
+    }
+
 }
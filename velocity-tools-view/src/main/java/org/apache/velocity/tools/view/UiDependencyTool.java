@@ -19,13 +19,17 @@ package org.apache.velocity.tools.view;
  * under the License.    
  */
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import jakarta.servlet.ServletContext;
 import jakarta.servlet.http.HttpServletRequest;
 
@@ -51,8 +55,6 @@ import org.apache.velocity.tools.config.ValidScope;
  *
  * Tool to make it easier to manage usage of client-side dependencies.
  * This is essentially a simple dependency system for javascript and css.
- * This could be cleaned up to use fewer maps, use more classes,
- * and cache formatted values, but this is good enough for now.
  *
  * To use it, create a ui.xml file at the root of the classpath.
  * Follow the example below.  By default, it prepends the request context path
@@ -63,7 +65,13 @@ import org.apache.velocity.tools.config.ValidScope;
  * the {context}.
  *
  * This is safe in request scope, but the group info (from ui.xml)
- * should only be read once.  It is not re-parsed on every request.
+ * should only be read once.  It is not re-parsed on every request:
+ * the file is compiled once per webapp into an immutable index holding the
+ * resolved dependencies of each group, which is then shared without locking
+ * by all the tool instances. Formatted files are cached per type.
+ * If the <code>modificationCheckInterval</code> configuration property is set
+ * to a positive number of seconds, the file is checked for modifications at
+ * most once per interval and recompiled when it changed.
  * <p>
  * Example of use:
  * <pre>
@@ -123,8 +131,11 @@ public class UiDependencyTool extends SafeConfig
 
     public static final String GROUPS_KEY_SPACE = UiDependencyTool.class.getName() + ":";
     public static final String TYPES_KEY_SPACE = UiDependencyTool.class.getName() + ":types:";
+    private static final String INDEX_KEY_SPACE = UiDependencyTool.class.getName() + ":index:";
     public static final String SOURCE_FILE_KEY = "file";
     public static final String DEFAULT_SOURCE_FILE = "ui.xml";
+    public static final String MODIFICATION_CHECK_INTERVAL_KEY = "modificationCheckInterval";
+    private static final int MAX_FRAGMENTS = 1000;
     private static final List<Type> DEFAULT_TYPES;
     static {
         List<Type> types = new ArrayList<Type>();
@@ -136,6 +147,7 @@ public class UiDependencyTool extends SafeConfig
 
     private Map<String,Group> groups = null;
     private List<Type> types = DEFAULT_TYPES;
+    private boolean sharedTypes = true;
     private Map<String,List<String>> dependencies;
     private static Logger LOG = LoggerFactory.getLogger(UiDependencyTool.class);
     private String context = "";
@@ -152,26 +164,56 @@ public class UiDependencyTool extends SafeConfig
         } else {
             getLog().debug("UiDependencyTool: Loading file: {}", file);
         }
-
-        synchronized (app) {
-            // first, see if we've already read this file
-            groups = (Map<String,Group>)app.getAttribute(GROUPS_KEY_SPACE+file);
-            if (groups == null) {
-                groups = new LinkedHashMap<String,Group>();
-                // only require file presence, if one is specified
-                read(file, (file != DEFAULT_SOURCE_FILE));
-                app.setAttribute(GROUPS_KEY_SPACE+file, groups);
-                if (types != DEFAULT_TYPES) {
-                    app.setAttribute(TYPES_KEY_SPACE+file, types);
-                }
-            } else {
-                // load any custom types too
-                List<Type> alt = (List<Type>)app.getAttribute(TYPES_KEY_SPACE+file);
-                if (alt != null) {
-                    types = alt;
+        long interval = params.getLong(MODIFICATION_CHECK_INTERVAL_KEY, 0L) * 1000L;
+
+        // first, see if we've already read this file
+        String key = INDEX_KEY_SPACE+file;
+        Object cached = app.getAttribute(key);
+        Index index = cached instanceof Index ? (Index)cached : null;
+        if (index == null || index.isModified(interval)) {
+            synchronized (app) {
+                cached = app.getAttribute(key);
+                if (cached == index || !(cached instanceof Index)) {
+                    // only require file presence, if one is specified
+                    index = compile(file, (file != DEFAULT_SOURCE_FILE));
+                    app.setAttribute(key, index);
+                    // keep publishing the groups and custom types as before
+                    app.setAttribute(GROUPS_KEY_SPACE+file, index.groups);
+                    if (index.types != DEFAULT_TYPES) {
+                        app.setAttribute(TYPES_KEY_SPACE+file, index.types);
+                    } else {
+                        app.removeAttribute(TYPES_KEY_SPACE+file);
+                    }
+                } else {
+                    index = (Index)cached;
                 }
             }
         }
+        groups = index.groups;
+        types = index.types;
+        sharedTypes = true;
+    }
+
+    /**
+     * Reads the specified file and compiles its group info into an immutable
+     * {@link Index}, with every group dependencies already resolved.
+     * @param file file
+     * @param required whether this file is required
+     * @return compiled index
+     */
+    private Index compile(String file, boolean required) {
+        URL url = toURL(file);
+        // get the timestamp first, so that concurrent modifications are caught next time
+        long lastModified = getLastModified(url);
+        groups = new LinkedHashMap<String,Group>();
+        types = DEFAULT_TYPES;
+        sharedTypes = true;
+        read(file, required);
+        for (Group group : groups.values()) {
+            group.compile(this);
+        }
+        List<Type> compiledTypes = sharedTypes ? types : Collections.unmodifiableList(types);
+        return new Index(Collections.unmodifiableMap(groups), compiledTypes, url, lastModified);
     }
 
     /**
@@ -254,10 +296,10 @@ public class UiDependencyTool extends SafeConfig
             return null;
         }
 
-        String format = getFormat(type);
+        Type t = getType(type);
         StringBuilder out = new StringBuilder();
         for (String file : files) {
-            out.append(format(format, file));
+            out.append(t == null ? file : render(t, file));
             out.append(delim);
         }
         return out.toString();
@@ -285,7 +327,7 @@ public class UiDependencyTool extends SafeConfig
                     if (i > 0) {
                         out.append(delim);
                     }
-                    out.append(format(type.format, files.get(i)));
+                    out.append(render(type, files.get(i)));
                 }
             }
         }
@@ -325,19 +367,18 @@ public class UiDependencyTool extends SafeConfig
         if (format == null || type == null) {
             throw new NullPointerException("Type name and format must not be null");
         }
-        // do NOT alter the defaults, just copy them
-        if (types == DEFAULT_TYPES) {
-            types = new ArrayList<Type>();
-            for (Type t : DEFAULT_TYPES) {
-                types.add(new Type(t.name, t.format));
-            }
+        // do NOT alter the defaults or the shared types, just copy them
+        if (sharedTypes) {
+            types = new ArrayList<Type>(types);
+            sharedTypes = false;
         }
-        Type t = getType(type);
-        if (t == null) {
-            types.add(new Type(type, format));
-        } else {
-            t.format = format;
+        for (int i = 0; i < types.size(); i++) {
+            if (types.get(i).name.equals(type)) {
+                types.set(i, new Type(type, format));
+                return;
+            }
         }
+        types.add(new Type(type, format));
     }
 
     /**
@@ -459,6 +500,20 @@ public class UiDependencyTool extends SafeConfig
         return format.replace("{file}", value).replace("{context}", this.context);
     }
 
+    /**
+     * Formats the given file with the given type format, reusing the
+     * cached fragment of the type whenever {@link #format} is not overridden.
+     * @param type file type
+     * @param file dependency file
+     * @return formatted string
+     */
+    private String render(Type type, String file) {
+        if (getClass() != UiDependencyTool.class || context == null) {
+            return format(type.format, file);
+        }
+        return type.render(file, context);
+    }
+
     /**
      * NOTE: This method may change or disappear w/o warning; don't depend
      * on it unless you're willing to update your code whenever this changes.
@@ -550,6 +605,26 @@ public class UiDependencyTool extends SafeConfig
         return null;
     }
 
+    private static long getLastModified(URL url) {
+        if (url == null) {
+            return 0L;
+        }
+        try
+        {
+            if ("file".equals(url.getProtocol())) {
+                return new File(url.toURI()).lastModified();
+            }
+            URLConnection conn = url.openConnection();
+            conn.setUseCaches(false);
+            long lastModified = conn.getLastModified();
+            conn.getInputStream().close();
+            return lastModified;
+        }
+        catch (Exception e) {
+            return 0L;
+        }
+    }
+
     //TODO: replace this method with ConversionUtils.toURL(file, this)
     //      once VelocityTools 2.0-beta3 or 2.0 final is released.
     private URL toURL(String file) {
@@ -570,6 +645,7 @@ public class UiDependencyTool extends SafeConfig
     protected class Group {
 
         private volatile boolean resolved = true;
+        private String error = null;
         private String name;
         private Map<String,Integer> typeCounts = new LinkedHashMap<String,Integer>();
         private Map<String,List<String>> dependencies = new LinkedHashMap<String,List<String>>();
@@ -604,9 +680,34 @@ public class UiDependencyTool extends SafeConfig
 
         public Map<String,List<String>> getDependencies(UiDependencyTool parent) {
             resolve(parent);
+            if (error != null) {
+                throw new NullPointerException(error);
+            }
             return this.dependencies;
         }
 
+        /**
+         * Resolves the transitive dependencies of this group once and for all,
+         * then freezes them.
+         * @param parent tool reading the groups
+         */
+        protected void compile(UiDependencyTool parent) {
+            try {
+                resolve(parent);
+            } catch (NullPointerException npe) {
+                if (error == null) {
+                    error = npe.getMessage();
+                }
+                getLog().error("Group {}: {}", name, error);
+            }
+            Map<String,List<String>> frozen = new LinkedHashMap<String,List<String>>(dependencies.size());
+            for (Map.Entry<String,List<String>> entry : dependencies.entrySet()) {
+                frozen.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<String>(entry.getValue())));
+            }
+            dependencies = Collections.unmodifiableMap(frozen);
+            typeCounts = null;
+        }
+
         protected void resolve(UiDependencyTool parent) {
             if (!resolved)  {
                 // mark first to keep circular from becoming infinite
@@ -615,7 +716,8 @@ public class UiDependencyTool extends SafeConfig
                 for (String name : groups) {
                     Group group = parent.getGroup(name);
                     if (group == null) {
-                        throw new NullPointerException("No group named '"+name+"'");
+                        error = "No group named '"+name+"'";
+                        throw new NullPointerException(error);
                     }
                     Map<String,List<String>> dependencies = group.getDependencies(parent);
                     for (Map.Entry<String,List<String>> type : dependencies.entrySet()) {
@@ -743,13 +845,79 @@ public class UiDependencyTool extends SafeConfig
 
     private static final class Type {
 
-        protected String name;
-        protected String format;
+        protected final String name;
+        protected final String format;
+        private volatile Fragments fragments = null;
 
         Type(String n, String f) {
             name = n;
             format = f;
         }
+
+        String render(String file, String context) {
+            Fragments cache = fragments;
+            if (cache == null || !cache.context.equals(context)) {
+                cache = new Fragments(context);
+                fragments = cache;
+            }
+            String fragment = cache.get(file);
+            if (fragment == null) {
+                fragment = format.replace("{file}", file).replace("{context}", context);
+                if (cache.size() < MAX_FRAGMENTS) {
+                    cache.put(file, fragment);
+                }
+            }
+            return fragment;
+        }
+    }
+
+    /**
+     * Formatted files of a type, for a given context path.
+     */
+    private static final class Fragments extends ConcurrentHashMap<String,String> {
+
+        private final String context;
+
+        Fragments(String context) {
+            this.context = context;
+        }
+    }
+
+    /**
+     * Immutable compiled content of a ui.xml file, shared by all tool instances.
+     */
+    private static final class Index {
+
+        private final Map<String,Group> groups;
+        private final List<Type> types;
+        private final URL url;
+        private final long lastModified;
+        private final AtomicLong lastChecked = new AtomicLong(System.currentTimeMillis());
+
+        Index(Map<String,Group> groups, List<Type> types, URL url, long lastModified) {
+            this.groups = groups;
+            this.types = types;
+            this.url = url;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * Checks, at most once per interval and from one thread only,
+         * whether the source file changed since it was compiled.
+         * @param interval check interval in milliseconds, zero or less to never check
+         * @return whether the index should be recompiled
+         */
+        boolean isModified(long interval) {
+            if (interval <= 0 || url == null) {
+                return false;
+            }
+            long now = System.currentTimeMillis();
+            long last = lastChecked.get();
+            if (now - last < interval || !lastChecked.compareAndSet(last, now)) {
+                return false;
+            }
+            return getLastModified(url) != lastModified;
+        }
     }
 
 }
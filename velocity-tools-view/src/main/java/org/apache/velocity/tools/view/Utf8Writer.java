@@ -0,0 +1,282 @@
+package org.apache.velocity.tools.view;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Writer encoding characters to UTF-8 straight into a byte buffer, with
+ * no intermediate char buffer nor lock, contrary to the writers returned by
+ * servlet containers.</p>
+ * <p>In streaming mode, the buffer is written to the given output stream
+ * whenever full. In buffered mode, it grows as needed and keeps the whole
+ * output, whose exact byte size is then known; it is written out with
+ * {@link #writeTo(OutputStream)}.</p>
+ * <p>Initial buffers are pooled, and given back to the pool by {@link #close()},
+ * which does <i>not</i> close the underlying stream.
+ * Malformed surrogates are encoded as '?', like the JDK encoders do.</p>
+ *
+ * @since VelocityTools 4.0
+ * @version $Id$
+ */
+public class Utf8Writer extends Writer
+{
+    /** Size of the pooled buffers. */
+    public static final int BUFFER_SIZE = 8 * 1024;
+
+    private static final int MAX_POOLED = 256;
+    private static final int MAX_CHARS = 1024;
+    private static final ConcurrentLinkedDeque<byte[]> pool = new ConcurrentLinkedDeque<byte[]>();
+    private static final AtomicInteger pooled = new AtomicInteger();
+
+    private final OutputStream out;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private byte[] buf;
+    private int count = 0;
+    private char highSurrogate = 0;
+    private char[] chars = null;
+
+    /**
+     * Creates a buffered writer, see {@link #writeTo(OutputStream)}.
+     */
+    public Utf8Writer()
+    {
+        this(null);
+    }
+
+    /**
+     * Creates a streaming writer.
+     * @param out target output stream, or null for a buffered writer
+     */
+    public Utf8Writer(OutputStream out)
+    {
+        this.out = out;
+        byte[] buffer = pool.pollFirst();
+        if (buffer == null)
+        {
+            buffer = new byte[BUFFER_SIZE];
+        }
+        else
+        {
+            pooled.decrementAndGet();
+        }
+        buf = buffer;
+    }
+
+    private void ensureOpen() throws IOException
+    {
+        if (buf == null)
+        {
+            throw new IOException("Writer closed");
+        }
+    }
+
+    /**
+     * Empties the buffer when streaming, or grows it when buffering.
+     */
+    private void makeRoom() throws IOException
+    {
+        if (out == null)
+        {
+            buf = Arrays.copyOf(buf, buf.length << 1);
+        }
+        else
+        {
+            out.write(buf, 0, count);
+            count = 0;
+        }
+    }
+
+    @Override
+    public void write(int c) throws IOException
+    {
+        ensureOpen();
+        if (highSurrogate == 0 && c < 0x80 && count < buf.length)
+        {
+            buf[count++] = (byte)c;
+        }
+        else
+        {
+            write(new char[] { (char)c }, 0, 1);
+        }
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException
+    {
+        ensureOpen();
+        while (highSurrogate != 0 && len > 0)
+        {
+            char[] pair = { highSurrogate, cbuf[off] };
+            highSurrogate = 0;
+            encode(CharBuffer.wrap(pair), false);
+            ++off;
+            --len;
+        }
+        if (len > 0)
+        {
+            encode(CharBuffer.wrap(cbuf, off, len), false);
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException
+    {
+        ensureOpen();
+        // array backed buffers take the encoder fast path
+        if (chars == null || chars.length < len && chars.length < MAX_CHARS)
+        {
+            chars = new char[Math.min(Math.max(len, 16), MAX_CHARS)];
+        }
+        int end = off + len;
+        while (off < end)
+        {
+            int chunk = Math.min(chars.length, end - off);
+            str.getChars(off, off + chunk, chars, 0);
+            write(chars, 0, chunk);
+            off += chunk;
+        }
+    }
+
+    private void encode(CharBuffer in, boolean endOfInput) throws IOException
+    {
+        while (true)
+        {
+            ByteBuffer out = ByteBuffer.wrap(buf, count, buf.length - count);
+            CoderResult result = encoder.encode(in, out, endOfInput);
+            count = out.position();
+            if (!result.isOverflow())
+            {
+                break;
+            }
+            makeRoom();
+        }
+        if (in.hasRemaining())
+        {
+            // a high surrogate waiting for its low surrogate
+            highSurrogate = in.get();
+        }
+    }
+
+    /**
+     * Encodes a dangling high surrogate, once no more characters are expected.
+     */
+    private void finish() throws IOException
+    {
+        if (highSurrogate != 0)
+        {
+            char[] single = { highSurrogate };
+            highSurrogate = 0;
+            encode(CharBuffer.wrap(single), true);
+            encoder.reset();
+        }
+    }
+
+    /**
+     * In streaming mode, writes out the buffered bytes and flushes the
+     * underlying stream. Does nothing in buffered mode.
+     * @throws IOException if thrown by the underlying stream
+     */
+    @Override
+    public void flush() throws IOException
+    {
+        if (out != null && buf != null)
+        {
+            if (count > 0)
+            {
+                out.write(buf, 0, count);
+                count = 0;
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * @return number of bytes currently buffered
+     * @throws IOException if thrown by the underlying stream
+     */
+    public int size() throws IOException
+    {
+        ensureOpen();
+        finish();
+        return count;
+    }
+
+    /**
+     * Writes out the buffered bytes to the given stream.
+     * @param stream output stream
+     * @throws IOException if thrown by the output stream
+     */
+    public void writeTo(OutputStream stream) throws IOException
+    {
+        ensureOpen();
+        finish();
+        stream.write(buf, 0, count);
+        count = 0;
+    }
+
+    /**
+     * Writes out any remaining byte in streaming mode, then gives back the
+     * buffer. The underlying stream is not closed.
+     * @throws IOException if thrown by the underlying stream
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if (buf == null)
+        {
+            return;
+        }
+        try
+        {
+            if (out != null)
+            {
+                finish();
+                flush();
+            }
+        }
+        finally
+        {
+            byte[] buffer = buf;
+            buf = null;
+            if (buffer.length == BUFFER_SIZE && pooled.incrementAndGet() <= MAX_POOLED)
+            {
+                pool.offerFirst(buffer);
+            }
+            else if (buffer.length == BUFFER_SIZE)
+            {
+                pooled.decrementAndGet();
+            }
+        }
+    }
+}
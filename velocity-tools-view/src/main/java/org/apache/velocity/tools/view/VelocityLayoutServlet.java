@@ -28,6 +28,9 @@ import jakarta.servlet.http.HttpServletResponse;
 import org.apache.velocity.Template;
 import org.apache.velocity.context.Context;
 import org.apache.velocity.exception.MethodInvocationException;
+import org.apache.velocity.tools.jfr.FlightRecorder;
+import org.apache.velocity.tools.jfr.TemplateMergeEvent;
+import org.apache.velocity.tools.metrics.Metrics;
 
 /**
  * Extension of the VelocityViewServlet to perform "two-pass"
@@ -209,7 +212,34 @@ public class VelocityLayoutServlet extends VelocityViewServlet
         //
         // Render the screen content
         StringWriter sw = new StringWriter();
-        template.merge(context, sw);
+        TemplateMergeEvent event = null;
+        if (FlightRecorder.isAvailable())
+        {
+            event = new TemplateMergeEvent();
+            event.begin();
+        }
+        Metrics metrics = getVelocityView().getMetrics();
+        if (metrics.isEnabled())
+        {
+            long start = System.nanoTime();
+            template.merge(context, sw);
+            metrics.templateMerged(template.getName(), System.nanoTime() - start);
+        }
+        else
+        {
+            template.merge(context, sw);
+        }
+        if (event != null)
+        {
+            event.end();
+            if (event.shouldCommit())
+            {
+                event.template = template.getName();
+                event.phase = TemplateMergeEvent.SCREEN;
+                event.outputSize = sw.getBuffer().length();
+                event.commit();
+            }
+        }
         // Add the resulting content to the context
         context.put(KEY_SCREEN_CONTENT, sw.toString());
 
@@ -250,7 +280,22 @@ public class VelocityLayoutServlet extends VelocityViewServlet
         }
 
         // Render the layout template into the response
+        if (event != null)
+        {
+            event = new TemplateMergeEvent();
+            event.begin();
+        }
         super.mergeTemplate(template, context, request, response);
+        if (event != null)
+        {
+            event.end();
+            if (event.shouldCommit())
+            {
+                event.template = template.getName();
+                event.phase = TemplateMergeEvent.LAYOUT;
+                event.commit();
+            }
+        }
     }
 
 
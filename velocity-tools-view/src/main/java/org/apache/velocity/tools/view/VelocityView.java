@@ -19,6 +19,7 @@ package org.apache.velocity.tools.view;
  * under the License.
  */
 
+import java.io.File;
 import java.io.InputStream;
 import java.io.IOException;
 import java.io.Writer;
@@ -36,12 +37,17 @@ import org.apache.velocity.app.VelocityEngine;
 import org.apache.velocity.context.Context;
 import org.apache.velocity.exception.ResourceNotFoundException;
 import org.apache.velocity.io.VelocityWriter;
+import org.apache.velocity.tools.ClassUtils;
 import org.apache.velocity.tools.ToolboxFactory;
 import org.apache.velocity.tools.config.ConfigurationCleaner;
+import org.apache.velocity.tools.config.ConfigurationSnapshot;
 import org.apache.velocity.tools.config.ConfigurationUtils;
 import org.apache.velocity.tools.config.FactoryConfiguration;
+import org.apache.velocity.tools.jfr.FlightRecorder;
+import org.apache.velocity.tools.jfr.TemplateMergeEvent;
+import org.apache.velocity.tools.metrics.MemoryMetrics;
+import org.apache.velocity.tools.metrics.Metrics;
 import org.apache.velocity.util.ExtProperties;
-import org.apache.velocity.util.SimplePool;
 
 /**
  * <p>The class provides the following features:</p>
@@ -69,6 +75,14 @@ import org.apache.velocity.util.SimplePool;
  *     '/WEB-INF/velocity.properties'.  If no file is found there, then
  *     Velocity is initialized with the settings in the classpath at
  *     'org.apache.velocity.tools.view.velocity.properties'.</dd>
+ *   <dt>org.apache.velocity.tools.writerBufferMax</dt>
+ *   <dd>Largest size, in characters, of the buffers used to render
+ *     templates. Buffers grow with the output size of each template up to
+ *     this size. The default is 32768; set it to 4096 for fixed size buffers.</dd>
+ *   <dt>org.apache.velocity.tools.metrics</dt>
+ *   <dd>Class of the {@link Metrics} receiving tool, toolbox and template
+ *     merge timings, like {@link MemoryMetrics}, which is then registered
+ *     in JMX under the webapp name. There are no metrics by default.</dd>
  * </dl>
  *
  * @author Dave Bryson
@@ -160,7 +174,42 @@ public class VelocityView extends ViewToolManager
     public static final String USER_OVERWRITE_KEY =
         "org.apache.velocity.tools.userCanOverwriteTools";
 
-    private static SimplePool writerPool = new SimplePool(40);
+    /**
+     * Largest size of the template rendering buffers, see {@link VelocityWriterPool}.
+     */
+    public static final String WRITER_BUFFER_MAX_KEY =
+        "org.apache.velocity.tools.writerBufferMax";
+
+    /**
+     * Class of the {@link Metrics} implementation, see {@link #initMetrics(String)}.
+     */
+    public static final String METRICS_KEY =
+        "org.apache.velocity.tools.metrics";
+
+    /**
+     * File system path of the tools configuration snapshot, see
+     * {@link #configure(JeeConfig, ToolboxFactory)}.
+     */
+    public static final String CONFIGURATION_SNAPSHOT_KEY =
+        "org.apache.velocity.tools.configurationSnapshot";
+
+    /**
+     * Warm-up to perform at the end of the initialization: either {@code true}
+     * to instantiate the application tools, or the path of a {@link WarmUp}
+     * manifest listing templates to render beforehand as well.
+     */
+    public static final String WARM_UP_KEY =
+        "org.apache.velocity.tools.warmUp";
+
+    /**
+     * Servlet context attribute set to {@link Boolean#TRUE} once the view
+     * is initialized and warmed up, see {@link #isReady()}.
+     */
+    public static final String READY_KEY =
+        "org.apache.velocity.tools.ready";
+
+    private volatile boolean ready = false;
+    private VelocityWriterPool writerPool = new VelocityWriterPool();
     private String defaultContentType = DEFAULT_CONTENT_TYPE;
 
     public VelocityView(ServletConfig config)
@@ -267,14 +316,146 @@ public class VelocityView extends ViewToolManager
             setUserCanOverwriteTools(false);
         }
 
+        String writerBufferMax = config.findInitParameter(WRITER_BUFFER_MAX_KEY);
+        if (writerBufferMax != null)
+        {
+            try
+            {
+                writerPool = new VelocityWriterPool(Integer.parseInt(writerBufferMax.trim()));
+            }
+            catch (NumberFormatException nfe)
+            {
+                getLog().warn("Invalid {} value '{}', using the default of {}", WRITER_BUFFER_MAX_KEY, writerBufferMax, VelocityWriterPool.DEFAULT_MAX_BUFFER_SIZE);
+            }
+        }
+
         // configure and initialize the VelocityEngine
         init(config, velocity);
 
+        String metricsClass = config.findInitParameter(METRICS_KEY);
+        if (metricsClass != null && metricsClass.trim().length() > 0)
+        {
+            initMetrics(metricsClass.trim());
+        }
+
         // configure the ToolboxFactory
         configure(config, factory);
 
         // set encoding & content-type
         setEncoding(config);
+
+        // warm up before telling that we are ready
+        String warmUp = config.findInitParameter(WARM_UP_KEY);
+        if (warmUp != null && warmUp.trim().length() > 0 && !"false".equalsIgnoreCase(warmUp.trim()))
+        {
+            warmUp(warmUp.trim());
+        }
+        ready = true;
+        servletContext.setAttribute(READY_KEY, Boolean.TRUE);
+    }
+
+    /**
+     * Instantiates the application tools and, unless the given manifest is
+     * {@code true}, renders the templates it lists, see {@link WarmUp}.
+     * Failures are logged and do not prevent the initialization.
+     * @param manifest manifest path, or {@code true}
+     */
+    protected void warmUp(String manifest)
+    {
+        long start = System.nanoTime();
+        WarmUp warmUp = new WarmUp(this, servletContext);
+        int tools = warmUp.createApplicationTools();
+        int renderings = 0;
+        if (!"true".equalsIgnoreCase(manifest))
+        {
+            try
+            {
+                renderings = warmUp.replay(manifest);
+            }
+            catch (IOException ioe)
+            {
+                getLog().error("Could not read warm-up manifest {}", manifest, ioe);
+            }
+        }
+        getLog().info("Warm-up: created {} application tools and performed {} renderings in {} ms",
+            tools, renderings, (System.nanoTime() - start) / 1000000);
+    }
+
+    /**
+     * Tells whether this view is initialized and warmed up, and thus
+     * ready to serve requests at full speed. The {@link #READY_KEY}
+     * servlet context attribute gives the same information to other
+     * components of the webapp, like a health check.
+     * @return whether this view is ready
+     */
+    public boolean isReady()
+    {
+        return ready;
+    }
+
+    /**
+     * Releases what this view holds outside of the webapp, that is the
+     * {@link MemoryMetrics} JMX registration, so that the webapp classloader
+     * can be collected. Called when the servlet or filter using it is destroyed.
+     * @since VelocityTools 4.0
+     */
+    public void destroy()
+    {
+        ready = false;
+        Metrics metrics = getMetrics();
+        if (metrics instanceof MemoryMetrics)
+        {
+            try
+            {
+                ((MemoryMetrics)metrics).unregister();
+            }
+            catch (Exception e)
+            {
+                getLog().warn("Could not unregister metrics MBean", e);
+            }
+        }
+    }
+
+    /**
+     * Instantiates the metrics of the given class and sets them.
+     * {@link MemoryMetrics} are also registered in JMX, under the webapp
+     * name, or its context path if unnamed, until {@link #destroy()}.
+     * @param className {@link Metrics} implementation class
+     */
+    protected void initMetrics(String className)
+    {
+        Metrics metrics;
+        try
+        {
+            metrics = (Metrics)ClassUtils.getInstance(className);
+        }
+        catch (Exception e)
+        {
+            String msg = "Could not instantiate metrics " + className;
+            getLog().error(msg, e);
+            throw new RuntimeException(msg + ": " + e, e);
+        }
+        setMetrics(metrics);
+        if (metrics instanceof MemoryMetrics)
+        {
+            String name = servletContext.getServletContextName();
+            if (name == null || name.length() == 0)
+            {
+                name = servletContext.getContextPath();
+            }
+            if (name == null || name.length() == 0)
+            {
+                name = "/";
+            }
+            try
+            {
+                getLog().debug("Registering metrics MBean: {}", ((MemoryMetrics)metrics).register(name));
+            }
+            catch (Exception e)
+            {
+                getLog().warn("Could not register metrics MBean for {}", name, e);
+            }
+        }
     }
 
     /**
@@ -387,11 +568,47 @@ public class VelocityView extends ViewToolManager
      * tool, toolbox or data configurations if you set the
      * {@code org.apache.velocity.tools.cleanConfiguration} init-param to true in
      * either your servlet or servletContext init-params.
+     * <p>If the {@code org.apache.velocity.tools.configurationSnapshot} init-param
+     * gives a file path, the resulting configuration is written there as a
+     * {@link ConfigurationSnapshot}, and read back by the next initializations
+     * as long as the configuration files and init-params above did not change.
+     * The snapshot is not used along with an injected configuration.</p>
      * @param config configuration values container
      * @param factory toolbox factory instance
      */
     protected void configure(final JeeConfig config, final ToolboxFactory factory)
     {
+        ConfigurationSnapshot snapshot = null;
+        File snapshotFile = null;
+        String snapshotPath = config.findInitParameter(CONFIGURATION_SNAPSHOT_KEY);
+        if (snapshotPath != null && snapshotPath.trim().length() > 0)
+        {
+            if (ServletUtils.getConfiguration(servletContext) != null)
+            {
+                getLog().debug("Configuration snapshot not used along with an injected configuration");
+            }
+            else
+            {
+                snapshotFile = new File(snapshotPath.trim());
+                try
+                {
+                    snapshot = getConfigurationSnapshot(config);
+                    FactoryConfiguration snapshotConfig = snapshot.read(snapshotFile);
+                    if (snapshotConfig != null)
+                    {
+                        getLog().debug("Configuring factory with snapshot {}: {}", snapshotFile, snapshotConfig);
+                        configure(snapshotConfig);
+                        return;
+                    }
+                    getLog().debug("Configuration snapshot {} missing or outdated", snapshotFile);
+                }
+                catch (IOException | RuntimeException e)
+                {
+                    getLog().warn("Could not read configuration snapshot {}", snapshotFile, e);
+                }
+            }
+        }
+
         FactoryConfiguration factoryConfig = new FactoryConfiguration("VelocityView.configure(config,factory)");
 
         String loadDefaults = config.findInitParameter(LOAD_DEFAULTS_KEY);
@@ -456,11 +673,71 @@ public class VelocityView extends ViewToolManager
             cleaner.clean(factoryConfig);
         }
 
+        if (snapshot != null)
+        {
+            try
+            {
+                snapshot.write(factoryConfig, snapshotFile);
+                getLog().debug("Wrote configuration snapshot {}", snapshotFile);
+            }
+            catch (IOException | RuntimeException e)
+            {
+                getLog().warn("Could not write configuration snapshot {}", snapshotFile, e);
+            }
+        }
+
         // apply this configuration to the specified factory
         getLog().debug("Configuring factory with: {}", factoryConfig);
         configure(factoryConfig);
     }
 
+    /**
+     * Gives a configuration snapshot whose inputs are the configuration
+     * files and init-params read by {@link #configure(JeeConfig, ToolboxFactory)}.
+     * @param config configuration values container
+     * @return configuration snapshot
+     * @throws IOException if a configuration file could not be read
+     */
+    protected ConfigurationSnapshot getConfigurationSnapshot(final JeeConfig config) throws IOException
+    {
+        ConfigurationSnapshot snapshot = new ConfigurationSnapshot();
+        // subclasses may provide other default tools
+        snapshot.addInput("class", getClass().getName());
+
+        String loadDefaults = config.findInitParameter(LOAD_DEFAULTS_KEY);
+        snapshot.addInput(LOAD_DEFAULTS_KEY, loadDefaults);
+        if (loadDefaults != null && !"false".equalsIgnoreCase(loadDefaults))
+        {
+            snapshot.addInput(ConfigurationUtils.GENERIC_DEFAULTS_PATH,
+                ClassUtils.getResource(ConfigurationUtils.GENERIC_DEFAULTS_PATH, this));
+            snapshot.addInput(ConfigurationUtils.VIEW_DEFAULTS_PATH,
+                ClassUtils.getResource(ConfigurationUtils.VIEW_DEFAULTS_PATH, this));
+        }
+
+        String appToolsPath = servletContext.getInitParameter(TOOLS_KEY);
+        String servletToolsPath = config.getInitParameter(TOOLS_KEY);
+        snapshot.addInput("application " + TOOLS_KEY, appToolsPath);
+        snapshot.addInput("servlet " + TOOLS_KEY, servletToolsPath);
+        if (appToolsPath == null && servletToolsPath == null)
+        {
+            snapshot.addInput(USER_TOOLS_PATH, ServletUtils.getURL(USER_TOOLS_PATH, servletContext));
+        }
+        else
+        {
+            if (appToolsPath != null)
+            {
+                snapshot.addInput(appToolsPath, ServletUtils.getURL(appToolsPath, servletContext));
+            }
+            if (servletToolsPath != null)
+            {
+                snapshot.addInput(servletToolsPath, ServletUtils.getURL(servletToolsPath, servletContext));
+            }
+        }
+
+        snapshot.addInput(CLEAN_CONFIGURATION_KEY, config.findInitParameter(CLEAN_CONFIGURATION_KEY));
+        return snapshot;
+    }
+
     protected FactoryConfiguration getDefaultToolsConfiguration()
     {
         return ConfigurationUtils.getDefaultTools();
@@ -799,43 +1076,64 @@ public class VelocityView extends ViewToolManager
     public void merge(Template template, Context context, Writer writer)
         throws IOException
     {
-        VelocityWriter vw = null;
+        TemplateMergeEvent event = null;
+        if (FlightRecorder.isAvailable())
+        {
+            event = new TemplateMergeEvent();
+            event.begin();
+        }
+        VelocityWriterPool.PooledWriter pooled = writerPool.get(template.getName(), writer);
         try
         {
-            vw = (VelocityWriter)writerPool.get();
-            if (vw == null)
+            VelocityWriter vw = pooled.getWriter();
+            Metrics metrics = getMetrics();
+            if (metrics.isEnabled())
             {
-                vw = new VelocityWriter(writer, 4 * 1024, true);
+                long start = System.nanoTime();
+                performMerge(template, context, vw);
+                metrics.templateMerged(template.getName(), System.nanoTime() - start);
             }
             else
             {
-                vw.recycle(writer);
+                performMerge(template, context, vw);
             }
-            performMerge(template, context, vw);
 
             // flush writer but don't close to allow us to play nicely with others.
             vw.flush();
         }
         finally
         {
-            if (vw != null)
+            if (event != null)
             {
-                try
-                {
-                    /* This hack sets the VelocityWriter's internal ref to the
-                     * PrintWriter to null to keep memory free while
-                     * the writer is pooled. See bug report #18951 */
-                    vw.recycle(null);
-                    writerPool.put(vw);
-                }
-                catch (Exception e)
+                event.end();
+                if (event.shouldCommit())
                 {
-                    getLog().error("Trouble releasing VelocityWriter: ", e);
+                    event.template = template.getName();
+                    event.phase = TemplateMergeEvent.PAGE;
+                    event.outputSize = pooled.getCharCount();
+                    event.commit();
                 }
             }
+            try
+            {
+                writerPool.put(pooled);
+            }
+            catch (Exception e)
+            {
+                getLog().error("Trouble releasing VelocityWriter: ", e);
+            }
         }
     }
 
+    /**
+     * Returns the pool of writers used by {@link #merge}, which
+     * gives access to its usage statistics.
+     * @return writer pool
+     */
+    public VelocityWriterPool getWriterPool()
+    {
+        return writerPool;
+    }
 
     /**
      * This is here so developers may override it and gain access to the
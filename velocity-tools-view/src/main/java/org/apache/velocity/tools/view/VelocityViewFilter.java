@@ -180,7 +180,10 @@ public class VelocityViewFilter implements Filter
 
     public void destroy()
     {
-        // do anything else?
+        if (this.view != null)
+        {
+            this.view.destroy();
+        }
         this.view = null;
         this.config = null;
         this.contextKey = null;
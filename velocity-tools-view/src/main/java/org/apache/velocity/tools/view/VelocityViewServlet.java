@@ -24,6 +24,7 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import jakarta.servlet.ServletConfig;
 import jakarta.servlet.ServletContext;
 import jakarta.servlet.ServletException;
@@ -94,6 +95,13 @@ import org.apache.commons.lang3.StringEscapeUtils;
  *     at least not return any of the failed request content. Essentially,
  *     setting this to {@code true} degrades performance in order to enable
  *     a more "correct" error response"</dd>
+ *   <dt>org.apache.velocity.tools.directOutput</dt>
+ *   <dd>By default, this is {@code false}. If set to {@code true} and the
+ *     response character encoding is UTF-8, the merged templates are encoded
+ *     by a {@link Utf8Writer} straight into the response output stream,
+ *     bypassing the container writer. When the output is also buffered,
+ *     it is buffered as bytes and the response <code>Content-Length</code>
+ *     is set.</dd>
  *   <dt>org.apache.velocity.tools.view.class</dt>
  *   <dd>Allows to specify a custom class (inheriting from VelocityView) as
  *   the View class.</dd>
@@ -106,10 +114,13 @@ public class VelocityViewServlet extends HttpServlet
 {
     public static final String BUFFER_OUTPUT_PARAM =
         "org.apache.velocity.tools.bufferOutput";
+    public static final String DIRECT_OUTPUT_PARAM =
+        "org.apache.velocity.tools.directOutput";
     private static final long serialVersionUID = -3329444102562079189L;
 
     private transient VelocityView view;
     private boolean bufferOutput = false;
+    private boolean directOutput = false;
 
     /**
      * <p>Initializes servlet and VelocityView used to process requests.
@@ -130,6 +141,28 @@ public class VelocityViewServlet extends HttpServlet
             this.bufferOutput = true;
             getLog().debug("VelocityViewServlet will buffer mergeTemplate output.");
         }
+
+        String direct = findInitParameter(config, DIRECT_OUTPUT_PARAM);
+        if (direct != null && direct.equals("true"))
+        {
+            this.directOutput = true;
+            getLog().debug("VelocityViewServlet will encode mergeTemplate output to the response output stream.");
+        }
+    }
+
+    /**
+     * <p>Releases the VelocityView, called by the servlet container
+     * when taking the servlet out of service.</p>
+     */
+    @Override
+    public void destroy()
+    {
+        if (this.view != null)
+        {
+            this.view.destroy();
+            this.view = null;
+        }
+        super.destroy();
     }
 
 
@@ -382,11 +415,32 @@ public class VelocityViewServlet extends HttpServlet
         throws IOException
     {
         Writer writer = getOutputWriter(request, response);
-        getVelocityView().merge(template, context, writer);
-        Boolean buffered = request == null ? Boolean.FALSE : (Boolean)request.getAttribute(BUFFER_OUTPUT_PARAM);
-        if (buffered != null && buffered)
+        try
         {
-            response.getWriter().write(writer.toString());            
+            getVelocityView().merge(template, context, writer);
+            Boolean buffered = request == null ? Boolean.FALSE : (Boolean)request.getAttribute(BUFFER_OUTPUT_PARAM);
+            if (buffered != null && buffered)
+            {
+                if (writer instanceof Utf8Writer)
+                {
+                    // no need to go through a String, and the exact length is known
+                    Utf8Writer bytes = (Utf8Writer)writer;
+                    response.setContentLengthLong(bytes.size());
+                    bytes.writeTo(response.getOutputStream());
+                }
+                else
+                {
+                    response.getWriter().write(writer.toString());
+                }
+            }
+        }
+        finally
+        {
+            if (writer instanceof Utf8Writer)
+            {
+                // gives back the byte buffer
+                writer.close();
+            }
         }
     }
 
@@ -403,7 +457,26 @@ public class VelocityViewServlet extends HttpServlet
             throws IOException
     {
         Writer writer;
-        if (this.bufferOutput)
+        // without request (deprecated mergeTemplate), buffering cannot be flagged
+        boolean buffer = this.bufferOutput && request != null;
+        if (this.directOutput && isUtf8(response.getCharacterEncoding()))
+        {
+            if (buffer)
+            {
+                writer = new Utf8Writer();
+                request.setAttribute(BUFFER_OUTPUT_PARAM, true);
+            }
+            else
+            {
+                writer = new Utf8Writer(response.getOutputStream());
+                if (request != null)
+                {
+                    // the error page will have to be written to the stream as well
+                    request.setAttribute(DIRECT_OUTPUT_PARAM, true);
+                }
+            }
+        }
+        else if (buffer)
         {
             writer = new StringWriter();
             request.setAttribute(BUFFER_OUTPUT_PARAM, true);
@@ -415,6 +488,12 @@ public class VelocityViewServlet extends HttpServlet
         return writer;
     }
 
+    private static boolean isUtf8(String encoding)
+    {
+        return encoding != null &&
+            (encoding.equalsIgnoreCase("UTF-8") || encoding.equalsIgnoreCase("UTF8"));
+    }
+
     /**
      * Merge template
      * @param template target template
@@ -488,7 +567,14 @@ public class VelocityViewServlet extends HttpServlet
             html.append("</pre>\n");
             html.append("</body>\n");
             html.append("</html>");
-            response.getWriter().write(html.toString());
+            if (request != null && request.getAttribute(DIRECT_OUTPUT_PARAM) != null)
+            {
+                response.getOutputStream().write(html.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            else
+            {
+                response.getWriter().write(html.toString());
+            }
         }
         catch (Exception e2)
         {
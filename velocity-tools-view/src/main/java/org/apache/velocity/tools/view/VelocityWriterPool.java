@@ -0,0 +1,434 @@
+package org.apache.velocity.tools.view;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.velocity.io.VelocityWriter;
+
+/**
+ * <p>Lock-free pool of the {@link VelocityWriter}s used by
+ * {@link VelocityView#merge}.</p>
+ * <p>Writers are kept in one stack per buffer size, from {@link #MIN_BUFFER_SIZE}
+ * up to the configured maximum, in powers of two. The buffer size used for a
+ * template follows the average size of its previous outputs, so that
+ * large pages are flushed to the servlet writer in fewer, bigger chunks.
+ * The number of idle writers kept grows with the peak number of writers
+ * in use at once, with a floor of {@link #MIN_IDLE}, while their buffers
+ * never total more than {@link #MAX_IDLE_CHARS}. This peak is halved
+ * every minute, down to the current use, and the idle writers in excess
+ * are then dropped, biggest buffers first.</p>
+ * <p>No lock is ever held, so borrowing threads, virtual or not, are never
+ * blocked by each other. Pool hits and misses and the number of flushes to the
+ * underlying writers are counted, to help tuning the maximum buffer size.</p>
+ *
+ * @since VelocityTools 4.0
+ * @version $Id$
+ */
+public class VelocityWriterPool
+{
+    /** Smallest buffer size, also used for templates not seen yet. */
+    public static final int MIN_BUFFER_SIZE = 4 * 1024;
+
+    /** Default largest buffer size. */
+    public static final int DEFAULT_MAX_BUFFER_SIZE = 32 * 1024;
+
+    /** Minimum number of idle writers kept. */
+    public static final int MIN_IDLE = 40;
+
+    /** Hard limit on the number of idle writers kept. */
+    public static final int MAX_IDLE = 512;
+
+    /** Hard limit on the total buffer size of the idle writers kept, in chars. */
+    public static final long MAX_IDLE_CHARS = 4 * 1024 * 1024;
+
+    private static final int MAX_TEMPLATES = 1000;
+
+    private static final long DECAY_INTERVAL = 60000L;
+
+    private final ConcurrentLinkedDeque<PooledWriter>[] queues;
+    private final Map<String,AtomicInteger> outputSizes = new ConcurrentHashMap<String,AtomicInteger>();
+    private final AtomicInteger idle = new AtomicInteger();
+    private final AtomicLong idleChars = new AtomicLong();
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final AtomicInteger peakInUse = new AtomicInteger();
+    private final long decayInterval;
+    private final AtomicLong lastDecay = new AtomicLong(System.currentTimeMillis());
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+
+    public VelocityWriterPool()
+    {
+        this(DEFAULT_MAX_BUFFER_SIZE);
+    }
+
+    /**
+     * @param maxBufferSize largest buffer size, rounded up to a power of two;
+     *                      use {@link #MIN_BUFFER_SIZE} to disable buffer size adaptation
+     */
+    public VelocityWriterPool(int maxBufferSize)
+    {
+        this(maxBufferSize, DECAY_INTERVAL);
+    }
+
+    /**
+     * @param maxBufferSize largest buffer size
+     * @param decayInterval interval between peak use decays, in milliseconds
+     */
+    @SuppressWarnings("unchecked")
+    VelocityWriterPool(int maxBufferSize, long decayInterval)
+    {
+        this.decayInterval = decayInterval;
+        int classes = 1;
+        while ((MIN_BUFFER_SIZE << (classes - 1)) < maxBufferSize && classes < 16)
+        {
+            ++classes;
+        }
+        queues = new ConcurrentLinkedDeque[classes];
+        for (int i = 0; i < classes; ++i)
+        {
+            queues[i] = new ConcurrentLinkedDeque<PooledWriter>();
+        }
+    }
+
+    /**
+     * Borrows a writer buffering towards the given target writer.
+     * It must be given back using {@link #put(PooledWriter)}.
+     * @param template name of the rendered template, may be null
+     * @param target underlying writer
+     * @return pooled writer
+     */
+    public PooledWriter get(String template, Writer target)
+    {
+        int sizeClass = getSizeClass(template);
+        PooledWriter pooled = null;
+        // a bigger buffer than needed will do
+        for (int i = sizeClass; pooled == null && i < queues.length; ++i)
+        {
+            pooled = queues[i].pollFirst();
+        }
+        if (pooled == null)
+        {
+            misses.increment();
+            pooled = new PooledWriter(MIN_BUFFER_SIZE << sizeClass);
+        }
+        else
+        {
+            idle.decrementAndGet();
+            idleChars.addAndGet(-pooled.getBufferSize());
+            hits.increment();
+        }
+        pooled.open(template, target);
+
+        int count = inUse.incrementAndGet();
+        int peak = peakInUse.get();
+        while (count > peak && !peakInUse.compareAndSet(peak, count))
+        {
+            peak = peakInUse.get();
+        }
+        return pooled;
+    }
+
+    /**
+     * Gives back a writer previously borrowed with {@link #get(String, Writer)},
+     * recording the size of its output for its template.
+     * @param pooled pooled writer
+     */
+    public void put(PooledWriter pooled)
+    {
+        inUse.decrementAndGet();
+        CountingWriter target = pooled.target;
+        flushes.add(target.flushes);
+        record(pooled.template, target.chars);
+        pooled.close();
+
+        int bufferSize = pooled.getBufferSize();
+        if (idle.incrementAndGet() > getCapacity())
+        {
+            idle.decrementAndGet();
+        }
+        else if (idleChars.addAndGet(bufferSize) > MAX_IDLE_CHARS)
+        {
+            idleChars.addAndGet(-bufferSize);
+            idle.decrementAndGet();
+        }
+        else
+        {
+            queues[pooled.sizeClass].offerFirst(pooled);
+        }
+        decay();
+    }
+
+    private int getCapacity()
+    {
+        return Math.min(MAX_IDLE, Math.max(MIN_IDLE, peakInUse.get()));
+    }
+
+    /**
+     * Halves the peak use once per decay interval, from one thread only,
+     * then drops the idle writers in excess, biggest and least recently used first.
+     */
+    private void decay()
+    {
+        long now = System.currentTimeMillis();
+        long last = lastDecay.get();
+        if (now - last < decayInterval || !lastDecay.compareAndSet(last, now))
+        {
+            return;
+        }
+        int peak = peakInUse.get();
+        // losing a race against a growing peak is fine
+        peakInUse.compareAndSet(peak, Math.max(inUse.get(), peak >> 1));
+        int capacity = getCapacity();
+        for (int i = queues.length - 1; i >= 0; --i)
+        {
+            PooledWriter dropped;
+            while (idle.get() > capacity && (dropped = queues[i].pollLast()) != null)
+            {
+                idle.decrementAndGet();
+                idleChars.addAndGet(-dropped.getBufferSize());
+            }
+        }
+    }
+
+    private int getSizeClass(String template)
+    {
+        AtomicInteger average = template == null ? null : outputSizes.get(template);
+        if (average == null)
+        {
+            return 0;
+        }
+        int size = average.get();
+        int sizeClass = 0;
+        while (sizeClass < queues.length - 1 && (MIN_BUFFER_SIZE << sizeClass) < size)
+        {
+            ++sizeClass;
+        }
+        return sizeClass;
+    }
+
+    private void record(String template, long chars)
+    {
+        if (template == null)
+        {
+            return;
+        }
+        int size = (int)Math.min(chars, Integer.MAX_VALUE);
+        AtomicInteger average = outputSizes.get(template);
+        if (average == null)
+        {
+            if (outputSizes.size() >= MAX_TEMPLATES)
+            {
+                outputSizes.clear();
+            }
+            average = outputSizes.putIfAbsent(template, new AtomicInteger(size));
+        }
+        if (average != null)
+        {
+            // moving average, racy updates are fine
+            int previous = average.get();
+            average.set(previous - (previous >> 2) + (size >> 2));
+        }
+    }
+
+    /**
+     * @param template template name
+     * @return buffer size which will be used for this template
+     */
+    public int getBufferSize(String template)
+    {
+        return MIN_BUFFER_SIZE << getSizeClass(template);
+    }
+
+    /**
+     * @return number of writers served from the pool
+     */
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    /**
+     * @return number of writers which had to be created
+     */
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    /**
+     * @return number of writes of buffered content to the underlying writers
+     */
+    public long getFlushes()
+    {
+        return flushes.sum();
+    }
+
+    /**
+     * @return number of idle writers in the pool
+     */
+    public int getIdle()
+    {
+        return idle.get();
+    }
+
+    /**
+     * @return total buffer size of the idle writers in the pool, in chars
+     */
+    public long getIdleChars()
+    {
+        return idleChars.get();
+    }
+
+    /**
+     * @return number of borrowed writers
+     */
+    public int getInUse()
+    {
+        return inUse.get();
+    }
+
+    /**
+     * @return recent peak number of writers borrowed at the same time
+     */
+    public int getPeakInUse()
+    {
+        return peakInUse.get();
+    }
+
+    /**
+     * A pooled {@link VelocityWriter}, along with the writer counting what it flushes.
+     */
+    public static final class PooledWriter
+    {
+        private final VelocityWriter writer;
+        private final CountingWriter target = new CountingWriter();
+        private final int sizeClass;
+        private String template;
+
+        private PooledWriter(int bufferSize)
+        {
+            writer = new VelocityWriter(target, bufferSize, true);
+            sizeClass = Integer.numberOfTrailingZeros(bufferSize / MIN_BUFFER_SIZE);
+        }
+
+        /**
+         * @return buffering writer to render into
+         */
+        public VelocityWriter getWriter()
+        {
+            return writer;
+        }
+
+        /**
+         * @return buffer size of the writer, in chars
+         */
+        public int getBufferSize()
+        {
+            return MIN_BUFFER_SIZE << sizeClass;
+        }
+
+        /**
+         * @return number of characters written out so far by the buffering writer
+         */
+        public long getCharCount()
+        {
+            return target.chars;
+        }
+
+        private void open(String template, Writer out)
+        {
+            this.template = template;
+            target.reset(out);
+            writer.recycle(target);
+        }
+
+        private void close()
+        {
+            /* This hack sets the VelocityWriter's internal ref to the
+             * PrintWriter to null to keep memory free while
+             * the writer is pooled. See bug report #18951 */
+            writer.recycle(null);
+            target.reset(null);
+            template = null;
+        }
+    }
+
+    /**
+     * Writer counting the chunks and characters it forwards.
+     */
+    private static final class CountingWriter extends Writer
+    {
+        private Writer out;
+        private long chars;
+        private int flushes;
+
+        void reset(Writer out)
+        {
+            this.out = out;
+            chars = 0;
+            flushes = 0;
+        }
+
+        @Override
+        public void write(int c) throws IOException
+        {
+            ++flushes;
+            ++chars;
+            out.write(c);
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException
+        {
+            ++flushes;
+            chars += len;
+            out.write(cbuf, off, len);
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException
+        {
+            ++flushes;
+            chars += len;
+            out.write(str, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException
+        {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            out.close();
+        }
+    }
+}
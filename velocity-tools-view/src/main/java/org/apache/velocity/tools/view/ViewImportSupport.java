@@ -26,9 +26,16 @@ import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.util.Locale;
 import java.util.HashSet;
 import java.util.Map;
@@ -163,6 +170,22 @@ public class ViewImportSupport extends ImportSupport
         return super.acquireRemoteURLString(url);
     }
 
+    /**
+     * Prefetches a remote URL, unless in safe mode.
+     * @param url the URL to prefetch
+     * @since VelocityTools 4.0
+     */
+    @Override
+    public void prefetch(String url)
+    {
+        if (isSafeMode())
+        {
+            getLog().warn("safe mode prevented prefetching resource from remote url: {}", url);
+            return;
+        }
+        super.prefetch(url);
+    }
+
     /**
      *
      * @param url the local URL resource to return as string
@@ -170,6 +193,36 @@ public class ViewImportSupport extends ImportSupport
      * @throws IOException if not allowed or if thrown by underlying code
      */
     protected String acquireLocalURLString(String url) throws IOException
+    {
+        checkLocalImport();
+        ImportResponseWrapper irw =
+            new ImportResponseWrapper((HttpServletResponse)response);
+        includeLocalURL(url, irw);
+
+        // recover the response String from our wrapper
+        return irw.getString();
+    }
+
+    /**
+     * Streams the content of a local URL to the given writer, as the included
+     * resource produces it. Only bounded buffers are used, whatever the size
+     * of the content.
+     * @param url the local URL resource to copy
+     * @param writer target writer
+     * @throws IOException if not allowed or if thrown by underlying code
+     * @since VelocityTools 4.0
+     */
+    @Override
+    protected void acquireLocalURL(String url, Writer writer) throws IOException
+    {
+        checkLocalImport();
+        StreamingResponseWrapper srw =
+            new StreamingResponseWrapper((HttpServletResponse)response, writer);
+        includeLocalURL(url, srw);
+        srw.finish();
+    }
+
+    private void checkLocalImport() throws IOException
     {
         // URL is local, so we must be an HTTP request
         if (!(request instanceof HttpServletRequest
@@ -177,7 +230,17 @@ public class ViewImportSupport extends ImportSupport
         {
             throw new IOException("Local import from non-HTTP request not allowed");
         }
+    }
 
+    /**
+     * Includes a local URL into the given response wrapper.
+     * @param url the local URL resource to include
+     * @param irw response wrapper
+     * @throws IOException if thrown by underlying code or if the response status is invalid
+     * @since VelocityTools 4.0
+     */
+    protected void includeLocalURL(String url, ImportResponseWrapper irw) throws IOException
+    {
         // retrieve an appropriate ServletContext
         // normalize the URL if we have an HttpServletRequest
         if (!url.startsWith("/"))
@@ -206,8 +269,6 @@ public class ViewImportSupport extends ImportSupport
         }
 
         // include the resource, using our custom wrapper
-        ImportResponseWrapper irw =
-            new ImportResponseWrapper((HttpServletResponse)response);
         try
         {
             rd.include(request, irw);
@@ -233,9 +294,6 @@ public class ViewImportSupport extends ImportSupport
             throw new IOException("Invalid response code '" + irw.getStatus()
                 + "' for \"" + url + "\"");
         }
-
-        // recover the response String from our wrapper
-        return irw.getString();
     }
 
     /**
@@ -491,6 +549,202 @@ public class ViewImportSupport extends ImportSupport
         }
     }
 
+    /**
+     * Wraps responses to forward their content to a writer as soon as it is
+     * produced, instead of retrieving it as a String. Bytes are decoded
+     * through bounded buffers, using the response character encoding.
+     * Since the content cannot be taken back, anything written after an
+     * invalid status has been set is discarded.
+     * @since VelocityTools 4.0
+     */
+    protected static class StreamingResponseWrapper extends ImportResponseWrapper
+    {
+        /** The Writer we forward to. */
+        private final Writer target;
+
+        /** The first exception thrown by the target writer. */
+        private IOException failure;
+
+        private PrintWriter writer;
+        private ServletOutputStream stream;
+        private CharsetDecoder decoder;
+        private ByteBuffer bytes;
+        private CharBuffer chars;
+
+        /**
+         * Constructs a new StreamingResponseWrapper.
+         * @param response the response to wrap
+         * @param target the writer to forward content to
+         */
+        public StreamingResponseWrapper(HttpServletResponse response, Writer target)
+        {
+            super(response);
+            this.target = target;
+        }
+
+        private void forward(char[] cbuf, int off, int len)
+        {
+            if (failure == null && len > 0 && getStatus() >= 200 && getStatus() <= 299)
+            {
+                try
+                {
+                    target.write(cbuf, off, len);
+                }
+                catch (IOException ioe)
+                {
+                    failure = ioe;
+                }
+            }
+        }
+
+        /**
+         * @return a Writer forwarding the output.
+         */
+        @Override
+        public PrintWriter getWriter()
+        {
+            if (stream != null)
+            {
+                throw new IllegalStateException("Unexpected internal error during import: "
+                                                + "Target servlet called getWriter(), then getOutputStream()");
+            }
+            if (writer == null)
+            {
+                writer = new PrintWriter(new Writer()
+                    {
+                        @Override
+                        public void write(char[] cbuf, int off, int len)
+                        {
+                            forward(cbuf, off, len);
+                        }
+
+                        @Override
+                        public void flush()
+                        {
+                            // nop
+                        }
+
+                        @Override
+                        public void close()
+                        {
+                            // nop
+                        }
+                    });
+            }
+            return writer;
+        }
+
+        /**
+         * @return a ServletOutputStream decoding and forwarding the output.
+         */
+        @Override
+        public ServletOutputStream getOutputStream()
+        {
+            if (writer != null)
+            {
+                throw new IllegalStateException("Unexpected internal error during import: "
+                                                + "Target servlet called getOutputStream(), then getWriter()");
+            }
+            if (stream == null)
+            {
+                decoder = Charset.forName(getCharacterEncoding()).newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+                bytes = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+                chars = CharBuffer.allocate(COPY_BUFFER_SIZE);
+                stream = new ServletOutputStream()
+                    {
+                        @Override
+                        public void write(int b)
+                        {
+                            if (!bytes.hasRemaining())
+                            {
+                                decode(false);
+                            }
+                            bytes.put((byte)b);
+                        }
+
+                        @Override
+                        public void write(byte[] b, int off, int len)
+                        {
+                            while (len > 0)
+                            {
+                                if (!bytes.hasRemaining())
+                                {
+                                    decode(false);
+                                }
+                                int chunk = Math.min(len, bytes.remaining());
+                                bytes.put(b, off, chunk);
+                                off += chunk;
+                                len -= chunk;
+                            }
+                        }
+
+                        @Override
+                        public boolean isReady()
+                        {
+                            return true;
+                        }
+
+                        @Override
+                        public void setWriteListener(WriteListener writeListener)
+                        {
+                            // nop
+                        }
+                    };
+            }
+            return stream;
+        }
+
+        /**
+         * Decodes the buffered bytes, keeping an incomplete trailing sequence
+         * unless at end of input.
+         */
+        private void decode(boolean endOfInput)
+        {
+            bytes.flip();
+            CoderResult result;
+            do
+            {
+                result = decoder.decode(bytes, chars, endOfInput);
+                drain();
+            }
+            while (result.isOverflow());
+            if (endOfInput)
+            {
+                while (decoder.flush(chars).isOverflow())
+                {
+                    drain();
+                }
+                drain();
+            }
+            bytes.compact();
+        }
+
+        private void drain()
+        {
+            chars.flip();
+            forward(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining());
+            chars.clear();
+        }
+
+        /**
+         * Forwards any remaining buffered content.
+         * @throws IOException if the target writer failed
+         */
+        public void finish() throws IOException
+        {
+            if (stream != null)
+            {
+                decode(true);
+            }
+            if (failure != null)
+            {
+                throw failure;
+            }
+        }
+    }
+
     //*********************************************************************
     // Public utility methods
 
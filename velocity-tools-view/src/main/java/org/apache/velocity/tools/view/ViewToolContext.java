@@ -75,6 +75,7 @@ public class ViewToolContext extends ToolContext implements ViewContext
     private final ServletContext application;
     private final VelocityEngine velocity;
     private String toolboxKey = DEFAULT_TOOLBOX_KEY;
+    private Toolbox sessionToolbox = null;
 
     public ViewToolContext(VelocityEngine velocity,
                            HttpServletRequest request,
@@ -97,6 +98,17 @@ public class ViewToolContext extends ToolContext implements ViewContext
         this.toolboxKey = key;
     }
 
+    /**
+     * Sets the session toolbox to use instead of the one found
+     * in the session attributes.
+     * @param toolbox session toolbox
+     * @see ViewToolManager#setLocalSessionTools(boolean)
+     */
+    protected void setSessionToolbox(Toolbox toolbox)
+    {
+        this.sessionToolbox = toolbox;
+    }
+
     protected void putToolProperties()
     {
         putToolProperty(REQUEST, getRequest());
@@ -138,7 +150,11 @@ public class ViewToolContext extends ToolContext implements ViewContext
                 addToolbox(reqTools);
             }
         }
-        if (getSession() != null)
+        if (sessionToolbox != null)
+        {
+            addToolbox(sessionToolbox);
+        }
+        else if (getSession() != null)
         {
             Toolbox sessTools = (Toolbox)getSession().getAttribute(toolboxKey);
             if (sessTools != null)
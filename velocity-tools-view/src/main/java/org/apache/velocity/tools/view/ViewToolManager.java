@@ -19,11 +19,15 @@ package org.apache.velocity.tools.view;
  * under the License.
  */
 
+import java.io.Serializable;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import jakarta.servlet.ServletContext;
 import jakarta.servlet.ServletRequest;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpSession;
+import jakarta.servlet.http.HttpSessionBindingEvent;
+import jakarta.servlet.http.HttpSessionBindingListener;
 import jakarta.servlet.http.HttpServletResponse;
 import org.apache.velocity.app.VelocityEngine;
 import org.apache.velocity.tools.Scope;
@@ -42,6 +46,14 @@ import org.apache.velocity.tools.config.FactoryConfiguration;
  * via a tools.xml or tools.properties file in
  * either the classpath or the local file system.
  *
+ * <p>Session tools are normally stored in a {@link Toolbox} session attribute.
+ * With the <code>localSessionTools</code> property of the session toolbox set to true,
+ * they are instead kept in a node-local cache keyed by session id, and the session
+ * only holds a small marker, so that session replication never carries tool
+ * objects. Session tools must then only hold state that can be rebuilt, since
+ * another node, or the same node after the cache has been emptied, will
+ * create new instances.</p>
+ *
  * @author Nathan Bubna
  * @version $Id: ToolManager.java 511959 2007-02-26 19:24:39Z nbubna $
  */
@@ -49,6 +61,7 @@ public class ViewToolManager extends ToolManager
 {
     public static final String CREATE_SESSION_PROPERTY = "createSession";
     public static final String PUBLISH_TOOLBOXES_PROPERTY = "publishToolboxes";
+    public static final String LOCAL_SESSION_TOOLS_PROPERTY = "localSessionTools";
     public static final String DEFAULT_TOOLBOX_KEY = Toolbox.KEY;
 
     protected ServletContext servletContext;
@@ -56,6 +69,10 @@ public class ViewToolManager extends ToolManager
     private boolean publishToolboxes = true;
     private boolean appToolsPublished = false;
     private String toolboxKey = DEFAULT_TOOLBOX_KEY;
+    private boolean localSessionTools = false;
+
+    /* node-local session toolboxes, evicted when their session ends */
+    private final Map<String,Toolbox> localSessionToolboxes = new ConcurrentHashMap<String,Toolbox>();
 
     /**
      * Constructs an instance already configured to use
@@ -174,9 +191,30 @@ public class ViewToolManager extends ToolManager
         return this.createSession;
     }
 
+    /**
+     * Sets whether session tools should be kept in a node-local cache
+     * keyed by session id, rather than in the session attributes.
+     * @param local whether to keep session tools out of the session
+     * @see #publishToolboxes
+     */
+    public void setLocalSessionTools(boolean local)
+    {
+        if (local != this.localSessionTools)
+        {
+            getLog().debug("Local session tools setting was changed to {}", local);
+            this.localSessionTools = local;
+            localSessionToolboxes.clear();
+        }
+    }
+
+    public boolean getLocalSessionTools()
+    {
+        return this.localSessionTools;
+    }
+
     /**
      * Checks the internal {@link ToolboxFactory} for any changes to
-     * the createSession or publishToolboxes settings.
+     * the createSession, localSessionTools or publishToolboxes settings.
      */
     protected void updateGlobalProperties()
     {
@@ -191,6 +229,15 @@ public class ViewToolManager extends ToolManager
                              : Boolean.parseBoolean(create.toString()));
         }
 
+        // check for a localSessionTools setting, also at the session-toolbox level
+        Object local = this.factory.getProperty(Scope.SESSION, LOCAL_SESSION_TOOLS_PROPERTY);
+        if (local != null)
+        {
+            setLocalSessionTools(local instanceof Boolean
+                                 ? (Boolean)local
+                                 : Boolean.parseBoolean(local.toString()));
+        }
+
         // check for a publishToolboxes setting
         Boolean publish =
             (Boolean)this.factory.getGlobalProperty(PUBLISH_TOOLBOXES_PROPERTY);
@@ -279,6 +326,15 @@ public class ViewToolManager extends ToolManager
             // put the toolboxes where the ViewToolContext
             // and others can find them
             publishToolboxes(request);
+            if (this.localSessionTools && hasSessionTools())
+            {
+                HttpSession session = request.getSession(false);
+                if (session != null)
+                {
+                    // use the published toolbox, even if evicted meanwhile
+                    context.setSessionToolbox(publishLocalSessionToolbox(session));
+                }
+            }
 
             // these would otherwise be done in super.prepareContext
             VelocityEngine engine = getVelocityEngine();
@@ -308,6 +364,10 @@ public class ViewToolManager extends ToolManager
 
     public Toolbox getSessionToolbox(HttpSession session)
     {
+        if (this.localSessionTools)
+        {
+            return localSessionToolboxes.get(session.getId());
+        }
         return (Toolbox)session.getAttribute(this.toolboxKey);
     }
 
@@ -349,12 +409,20 @@ public class ViewToolManager extends ToolManager
             HttpSession session = request.getSession(this.createSession);
             if (session != null)
             {
-                // allow only one thread per session
-                synchronized(ServletUtils.getMutex(session, "session.mutex", this))
+                if (this.localSessionTools)
+                {
+                    publishLocalSessionToolbox(session);
+                }
+                // fast path, once published; partial initialization is not an issue
+                else if (session.getAttribute(this.toolboxKey) == null)
                 {
-                    if (session.getAttribute(this.toolboxKey) == null)
+                    // allow only one thread per session
+                    synchronized(ServletUtils.getMutex(session, "session.mutex", this))
                     {
-                        session.setAttribute(this.toolboxKey, getSessionToolbox());
+                        if (session.getAttribute(this.toolboxKey) == null)
+                        {
+                            session.setAttribute(this.toolboxKey, getSessionToolbox());
+                        }
                     }
                 }
             }
@@ -365,4 +433,59 @@ public class ViewToolManager extends ToolManager
         }
     }
 
+    /**
+     * Ensures that the node-local cache holds a {@link Scope#SESSION}
+     * Toolbox for the given session, without locking. Entries are evicted
+     * by the session marker, when the session ends or changes id.
+     * @param session http session
+     * @return the session toolbox
+     */
+    private Toolbox publishLocalSessionToolbox(HttpSession session)
+    {
+        String id = session.getId();
+        Toolbox toolbox = localSessionToolboxes.get(id);
+        if (toolbox == null)
+        {
+            Toolbox created = getSessionToolbox();
+            toolbox = localSessionToolboxes.putIfAbsent(id, created);
+            if (toolbox == null)
+            {
+                toolbox = created;
+                // evicts the toolbox when the session ends or changes id
+                session.setAttribute(this.toolboxKey + ".local",
+                                     new LocalSessionToolbox(id, toolbox, localSessionToolboxes));
+            }
+        }
+        return toolbox;
+    }
+
+    /**
+     * Session marker of a node-local session toolbox. Only the session id is
+     * serialized, and the toolbox is evicted when the marker is unbound.
+     */
+    private static final class LocalSessionToolbox implements HttpSessionBindingListener, Serializable
+    {
+        private static final long serialVersionUID = 4390158374917456261L;
+
+        private final String id;
+        private final transient Toolbox toolbox;
+        private final transient Map<String,Toolbox> toolboxes;
+
+        LocalSessionToolbox(String id, Toolbox toolbox, Map<String,Toolbox> toolboxes)
+        {
+            this.id = id;
+            this.toolbox = toolbox;
+            this.toolboxes = toolboxes;
+        }
+
+        @Override
+        public void valueUnbound(HttpSessionBindingEvent event)
+        {
+            // a deserialized marker has nothing to evict on this node
+            if (toolboxes != null)
+            {
+                toolboxes.remove(id, toolbox);
+            }
+        }
+    }
 }
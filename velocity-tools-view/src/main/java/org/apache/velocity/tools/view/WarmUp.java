@@ -0,0 +1,563 @@
+package org.apache.velocity.tools.view;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+
+import org.apache.velocity.tools.ToolContext;
+import org.apache.velocity.tools.Toolbox;
+import org.slf4j.Logger;
+
+/**
+ * <p>Warm-up of a {@link VelocityView} before it serves its first requests:
+ * application tools are instantiated, then the templates listed in a
+ * manifest are rendered against in-process requests, so that templates
+ * are parsed, tools created once and their caches filled, and the
+ * rendering code paths compiled by the JIT.</p>
+ * <p>The manifest is a text file with one template path per line, with an
+ * optional query string giving the request parameters, followed by an
+ * optional number of renderings (1 by default). Blank lines and lines
+ * starting with '#' are ignored:</p>
+ * <pre>
+ * # front page, rendered 200 times
+ * /index.vm 200
+ * /search.vm?q=velocity&amp;page=2 50
+ * </pre>
+ * <p>Warm-up requests are plain GET requests from {@link #USER_AGENT}, sharing
+ * a single session, with no request dispatcher; their output is discarded.
+ * Failing renderings are logged and do not stop the warm-up.</p>
+ *
+ * @since VelocityTools 4.0
+ * @version $Id$
+ */
+public class WarmUp
+{
+    /**
+     * User-Agent header of the warm-up requests.
+     */
+    public static final String USER_AGENT =
+        "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36";
+
+    /**
+     * Request attribute set on warm-up requests, so that templates
+     * can avoid side effects.
+     */
+    public static final String WARM_UP_ATTRIBUTE = WarmUp.class.getName();
+
+    private final VelocityView view;
+    private final ServletContext servletContext;
+    private final Logger log;
+    private HttpSession session = null;
+
+    /**
+     * @param view view to warm up
+     * @param servletContext servlet context of the view
+     */
+    public WarmUp(VelocityView view, ServletContext servletContext)
+    {
+        this.view = view;
+        this.servletContext = servletContext;
+        this.log = view.getLog();
+    }
+
+    /**
+     * Instantiates all the application tools.
+     * @return number of application tools
+     */
+    public int createApplicationTools()
+    {
+        Toolbox toolbox = view.getApplicationToolbox();
+        if (toolbox == null)
+        {
+            return 0;
+        }
+        // application tools are found first
+        ToolContext context = view.createContext(Collections.<String,Object>emptyMap());
+        int count = 0;
+        for (String key : toolbox.getKeys())
+        {
+            try
+            {
+                if (context.get(key) != null)
+                {
+                    ++count;
+                }
+            }
+            catch (RuntimeException re)
+            {
+                log.warn("Warm-up: could not create application tool {}", key, re);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Renders the templates listed in a manifest.
+     * @param path manifest path, in the webapp for paths under /WEB-INF, in the classpath otherwise
+     * @return number of successful renderings
+     * @throws IOException if the manifest could not be read
+     */
+    public int replay(String path) throws IOException
+    {
+        InputStream manifest = ServletUtils.getInputStream(path, servletContext);
+        if (manifest == null)
+        {
+            throw new IOException("Warm-up manifest not found: " + path);
+        }
+        try (Reader reader = new InputStreamReader(manifest, StandardCharsets.UTF_8))
+        {
+            return replay(reader);
+        }
+    }
+
+    /**
+     * Renders the templates listed in a manifest.
+     * @param manifest manifest content
+     * @return number of successful renderings
+     * @throws IOException if the manifest could not be read
+     */
+    public int replay(Reader manifest) throws IOException
+    {
+        int rendered = 0;
+        BufferedReader reader = new BufferedReader(manifest);
+        String line;
+        while ((line = reader.readLine()) != null)
+        {
+            line = line.trim();
+            if (line.length() == 0 || line.startsWith("#"))
+            {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            int times = 1;
+            if (fields.length > 1)
+            {
+                try
+                {
+                    times = Integer.parseInt(fields[1]);
+                }
+                catch (NumberFormatException nfe)
+                {
+                    log.warn("Warm-up: invalid number of renderings in manifest line: {}", line);
+                    continue;
+                }
+            }
+            for (int i = 0; i < times; ++i)
+            {
+                try
+                {
+                    render(fields[0]);
+                    ++rendered;
+                }
+                catch (Exception e)
+                {
+                    log.warn("Warm-up: rendering of {} failed", fields[0], e);
+                    // no need to insist
+                    break;
+                }
+            }
+        }
+        return rendered;
+    }
+
+    /**
+     * Renders a template against an in-process request, discarding the output.
+     * @param uri template path, with an optional query string
+     * @throws IOException if thrown by the rendering
+     */
+    public void render(String uri) throws IOException
+    {
+        HttpServletResponse response = createResponse();
+        view.render(createRequest(uri), response);
+        response.flushBuffer();
+    }
+
+    /**
+     * Creates a warm-up request.
+     * @param uri template path, with an optional query string
+     * @return request
+     */
+    protected HttpServletRequest createRequest(String uri)
+    {
+        return proxy(HttpServletRequest.class, new Request(uri));
+    }
+
+    /**
+     * Creates a warm-up response, discarding its content.
+     * @return response
+     */
+    protected HttpServletResponse createResponse()
+    {
+        return proxy(HttpServletResponse.class, new Response());
+    }
+
+    private static <T> T proxy(Class<T> iface, InvocationHandler handler)
+    {
+        return iface.cast(Proxy.newProxyInstance(WarmUp.class.getClassLoader(), new Class[] { iface }, handler));
+    }
+
+    /**
+     * Empty answer of unhandled calls.
+     */
+    private static Object empty(Method method)
+    {
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class)
+        {
+            return Boolean.FALSE;
+        }
+        if (type == int.class)
+        {
+            return 0;
+        }
+        if (type == long.class)
+        {
+            return 0L;
+        }
+        if (type == java.util.Enumeration.class)
+        {
+            return Collections.emptyEnumeration();
+        }
+        if (type == java.util.Collection.class)
+        {
+            return Collections.emptyList();
+        }
+        if (type == Map.class)
+        {
+            return Collections.emptyMap();
+        }
+        return null;
+    }
+
+    /**
+     * Answers of the warm-up requests.
+     */
+    private class Request implements InvocationHandler
+    {
+        private final String servletPath;
+        private final String queryString;
+        private final Map<String,String[]> parameters = new LinkedHashMap<String,String[]>();
+        private final Map<String,Object> attributes = new HashMap<String,Object>();
+        private boolean withSession = false;
+
+        Request(String uri)
+        {
+            int query = uri.indexOf('?');
+            servletPath = query == -1 ? uri : uri.substring(0, query);
+            queryString = query == -1 ? null : uri.substring(query + 1);
+            if (queryString != null)
+            {
+                for (String pair : queryString.split("&"))
+                {
+                    int eq = pair.indexOf('=');
+                    String name = decode(eq == -1 ? pair : pair.substring(0, eq));
+                    String value = eq == -1 ? "" : decode(pair.substring(eq + 1));
+                    String[] values = parameters.get(name);
+                    if (values == null)
+                    {
+                        values = new String[] { value };
+                    }
+                    else
+                    {
+                        List<String> more = new ArrayList<String>(List.of(values));
+                        more.add(value);
+                        values = more.toArray(new String[more.size()]);
+                    }
+                    parameters.put(name, values);
+                }
+            }
+            attributes.put(WARM_UP_ATTRIBUTE, Boolean.TRUE);
+        }
+
+        private String decode(String value)
+        {
+            return URLDecoder.decode(value, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args)
+        {
+            String name = method.getName();
+            switch (name)
+            {
+                case "getServletPath":
+                    return servletPath;
+                case "getRequestURI":
+                    return servletContext.getContextPath() + servletPath;
+                case "getRequestURL":
+                    return new StringBuffer("http://localhost").append(servletContext.getContextPath()).append(servletPath);
+                case "getContextPath":
+                    return servletContext.getContextPath();
+                case "getQueryString":
+                    return queryString;
+                case "getMethod":
+                    return "GET";
+                case "getScheme":
+                    return "http";
+                case "getProtocol":
+                    return "HTTP/1.1";
+                case "getServerName":
+                case "getRemoteHost":
+                    return "localhost";
+                case "getRemoteAddr":
+                case "getLocalAddr":
+                    return "127.0.0.1";
+                case "getServerPort":
+                case "getLocalPort":
+                    return 80;
+                case "getDispatcherType":
+                    return DispatcherType.REQUEST;
+                case "getServletContext":
+                    return servletContext;
+                case "getCharacterEncoding":
+                    return "UTF-8";
+                case "getLocale":
+                    return Locale.getDefault();
+                case "getLocales":
+                    return Collections.enumeration(Collections.singletonList(Locale.getDefault()));
+                case "getHeader":
+                    return "User-Agent".equalsIgnoreCase((String)args[0]) ? USER_AGENT : null;
+                case "getHeaders":
+                    return "User-Agent".equalsIgnoreCase((String)args[0])
+                        ? Collections.enumeration(Collections.singletonList(USER_AGENT))
+                        : Collections.emptyEnumeration();
+                case "getHeaderNames":
+                    return Collections.enumeration(Collections.singletonList("User-Agent"));
+                case "getDateHeader":
+                    return -1L;
+                case "getIntHeader":
+                    return -1;
+                case "getParameter":
+                {
+                    String[] values = parameters.get((String)args[0]);
+                    return values == null ? null : values[0];
+                }
+                case "getParameterValues":
+                    return parameters.get((String)args[0]);
+                case "getParameterMap":
+                    return Collections.unmodifiableMap(parameters);
+                case "getParameterNames":
+                    return Collections.enumeration(parameters.keySet());
+                case "getAttribute":
+                    return attributes.get((String)args[0]);
+                case "getAttributeNames":
+                    return Collections.enumeration(new ArrayList<String>(attributes.keySet()));
+                case "setAttribute":
+                    if (args[1] == null)
+                    {
+                        attributes.remove((String)args[0]);
+                    }
+                    else
+                    {
+                        attributes.put((String)args[0], args[1]);
+                    }
+                    return null;
+                case "removeAttribute":
+                    attributes.remove((String)args[0]);
+                    return null;
+                case "getSession":
+                    if (!withSession && (args == null || (Boolean)args[0]))
+                    {
+                        // all warm-up requests share the same session
+                        if (session == null)
+                        {
+                            session = proxy(HttpSession.class, new Session());
+                        }
+                        withSession = true;
+                    }
+                    return withSession ? session : null;
+                case "isRequestedSessionIdValid":
+                    return withSession;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return "warm-up request " + servletPath;
+                default:
+                    return empty(method);
+            }
+        }
+    }
+
+    /**
+     * Answers of the warm-up sessions.
+     */
+    private class Session implements InvocationHandler
+    {
+        private final Map<String,Object> attributes = new HashMap<String,Object>();
+        private final long creationTime = System.currentTimeMillis();
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args)
+        {
+            switch (method.getName())
+            {
+                case "getId":
+                    return "warm-up-" + System.identityHashCode(proxy);
+                case "getServletContext":
+                    return servletContext;
+                case "getCreationTime":
+                case "getLastAccessedTime":
+                    return creationTime;
+                case "isNew":
+                    return Boolean.TRUE;
+                case "getAttribute":
+                    return attributes.get((String)args[0]);
+                case "getAttributeNames":
+                    return Collections.enumeration(new ArrayList<String>(attributes.keySet()));
+                case "setAttribute":
+                    if (args[1] == null)
+                    {
+                        attributes.remove((String)args[0]);
+                    }
+                    else
+                    {
+                        attributes.put((String)args[0], args[1]);
+                    }
+                    return null;
+                case "removeAttribute":
+                    attributes.remove((String)args[0]);
+                    return null;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return "warm-up session";
+                default:
+                    return empty(method);
+            }
+        }
+    }
+
+    /**
+     * Answers of the warm-up responses.
+     */
+    private static class Response implements InvocationHandler
+    {
+        private PrintWriter writer = null;
+        private ServletOutputStream stream = null;
+        private String contentType = null;
+        private String characterEncoding = "UTF-8";
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args)
+        {
+            switch (method.getName())
+            {
+                case "getWriter":
+                    if (writer == null)
+                    {
+                        writer = new PrintWriter(Writer.nullWriter());
+                    }
+                    return writer;
+                case "getOutputStream":
+                    if (stream == null)
+                    {
+                        stream = new NullOutputStream();
+                    }
+                    return stream;
+                case "getContentType":
+                    return contentType;
+                case "setContentType":
+                    contentType = (String)args[0];
+                    return null;
+                case "getCharacterEncoding":
+                    return characterEncoding;
+                case "setCharacterEncoding":
+                    if (args[0] != null)
+                    {
+                        characterEncoding = (String)args[0];
+                    }
+                    return null;
+                case "getLocale":
+                    return Locale.getDefault();
+                case "getStatus":
+                    return HttpServletResponse.SC_OK;
+                case "encodeURL":
+                case "encodeRedirectURL":
+                    return args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return "warm-up response";
+                default:
+                    return empty(method);
+            }
+        }
+    }
+
+    /**
+     * Output stream discarding its content.
+     */
+    private static class NullOutputStream extends ServletOutputStream
+    {
+        @Override
+        public void write(int b)
+        {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len)
+        {
+        }
+
+        @Override
+        public boolean isReady()
+        {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener listener)
+        {
+            // warm up requests are never put in async mode
+            throw new IllegalStateException("not in async mode");
+        }
+    }
+}
@@ -23,6 +23,7 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpSession;
 import jakarta.servlet.ServletContext;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 
 import org.slf4j.Logger;
 
@@ -49,11 +50,64 @@ import org.apache.velocity.runtime.parser.node.SetExecutor;
  *
  * <p><code>runtime.introspector.uberspect = org.apache.velocity.util.introspection.UberspectImpl,org.apache.velocity.tools.view.WebappUberspector</code></p>
  *
+ * <p>Attributes are accessed through direct calls to the servlet API interfaces,
+ * without reflection, so that they cost the same as standard properties.</p>
+ *
  * @author <a href="mailto:cbrisson@apache.org">Claude Brisson</a>
  * @version $Id: WebappUberspector.java $  */
 
 public class WebappUberspector extends AbstractChainableUberspector
 {
+    private static final int REQUEST = 0;
+    private static final int SESSION = 1;
+    private static final int APPLICATION = 2;
+
+    private static final Method[] GET_ATTRIBUTE = new Method[]
+    {
+        getInterfaceMethod(HttpServletRequest.class, "getAttribute", String.class),
+        getInterfaceMethod(HttpSession.class, "getAttribute", String.class),
+        getInterfaceMethod(ServletContext.class, "getAttribute", String.class)
+    };
+
+    private static final Method[] SET_ATTRIBUTE = new Method[]
+    {
+        getInterfaceMethod(HttpServletRequest.class, "setAttribute", String.class, Object.class),
+        getInterfaceMethod(HttpSession.class, "setAttribute", String.class, Object.class),
+        getInterfaceMethod(ServletContext.class, "setAttribute", String.class, Object.class)
+    };
+
+    private static Method getInterfaceMethod(Class<?> iface, String name, Class<?>... types)
+    {
+        try
+        {
+            return iface.getMethod(name, types);
+        }
+        catch (NoSuchMethodException nsme)
+        {
+            throw new IllegalStateException("servlet API without " + iface.getName() + "." + name + "()", nsme);
+        }
+    }
+
+    /**
+     * @param clazz target class
+     * @return which servlet API interface the target class implements, or -1
+     */
+    private static int getTarget(Class<?> clazz)
+    {
+        if (HttpServletRequest.class.isAssignableFrom(clazz))
+        {
+            return REQUEST;
+        }
+        if (HttpSession.class.isAssignableFrom(clazz))
+        {
+            return SESSION;
+        }
+        if (ServletContext.class.isAssignableFrom(clazz))
+        {
+            return APPLICATION;
+        }
+        return -1;
+    }
 
     /**
      * Property getter
@@ -77,25 +131,13 @@ public class WebappUberspector extends AbstractChainableUberspector
                 || obj instanceof HttpSession
                 || obj instanceof ServletContext)
             {
-                AbstractExecutor executor = new GetAttributeExecutor(log, introspector, claz, identifier);
+                AbstractExecutor executor = new GetAttributeExecutor(log, claz, identifier);
                 ret = executor.isAlive() ? new VelGetterImpl(executor) : null;
             }
         }
         return ret;
     }
 
-    /**
-     * init method
-     */
-    @Override
-    public void init()
-    {
-        super.init();
-
-        // we need our own introspector since the inner one is hidden by the Uberspect interface
-        introspector = new Introspector(log);
-    }
-
     /**
      * Property setter
      * @param obj target object
@@ -119,7 +161,7 @@ public class WebappUberspector extends AbstractChainableUberspector
                 || obj instanceof HttpSession
                 || obj instanceof ServletContext)
             {
-                SetExecutor executor = new SetAttributeExecutor(log, introspector, claz, arg, identifier);
+                SetExecutor executor = new SetAttributeExecutor(log, claz, arg, identifier);
                 ret = executor.isAlive() ? new VelSetterImpl(executor) : null;
             }
         }
@@ -132,43 +174,43 @@ public class WebappUberspector extends AbstractChainableUberspector
      */
     public class GetAttributeExecutor extends AbstractExecutor
     {
-        private final Introspector introspector;
-
-        // This is still threadsafe because this object is only read except in the C'tor.
-        private Object [] params;
+        private final String property;
+        private int target = -1;
 
         /**
          * @param log logger
-         * @param introspector introspector instance
+         * @param introspector introspector instance, not used anymore
          * @param clazz class name
          * @param property property name
+         * @deprecated use {@link #GetAttributeExecutor(Logger, Class, String)}
          */
+        @Deprecated
         public GetAttributeExecutor(final Logger log, final Introspector introspector,
                 final Class clazz, final String property)
+        {
+            this(log, clazz, property);
+        }
+
+        /**
+         * @param log logger
+         * @param clazz class name
+         * @param property property name
+         * @since VelocityTools 4.0
+         */
+        public GetAttributeExecutor(final Logger log, final Class clazz, final String property)
         {
             this.log = log;
-            this.introspector = introspector;
-            this.params = new Object[] { property };
+            this.property = property;
 
             discover(clazz);
         }
 
         protected void discover(final Class clazz)
         {
-            try
-            {
-                setMethod(introspector.getMethod(clazz, "getAttribute", params));
-            }
-            /**
-             * pass through application level runtime exceptions
-             */
-            catch( RuntimeException e )
-            {
-                throw e;
-            }
-            catch(Exception e)
+            target = getTarget(clazz);
+            if (target != -1)
             {
-                log.error("While looking for getAttribute('{}') method:", params[0], e);
+                setMethod(GET_ATTRIBUTE[target]);
             }
         }
 
@@ -182,7 +224,25 @@ public class WebappUberspector extends AbstractChainableUberspector
         public Object execute(final Object o)
             throws IllegalAccessException, InvocationTargetException
         {
-            return isAlive() ? getMethod().invoke(o, params) : null;
+            try
+            {
+                switch (target)
+                {
+                    case REQUEST:
+                        return ((HttpServletRequest)o).getAttribute(property);
+                    case SESSION:
+                        return ((HttpSession)o).getAttribute(property);
+                    case APPLICATION:
+                        return ((ServletContext)o).getAttribute(property);
+                    default:
+                        return null;
+                }
+            }
+            catch (RuntimeException re)
+            {
+                // as Method.invoke() would have done
+                throw new InvocationTargetException(re);
+            }
         }
     }
 
@@ -191,21 +251,34 @@ public class WebappUberspector extends AbstractChainableUberspector
      */
     public class SetAttributeExecutor extends SetExecutor
     {
-        private final Introspector introspector;
         private final String property;
+        private int target = -1;
 
         /**
          * @param log logger
-         * @param introspector introspector instance
+         * @param introspector introspector instance, not used anymore
          * @param clazz target class
          * @param arg value to set
          * @param property property name
+         * @deprecated use {@link #SetAttributeExecutor(Logger, Class, Object, String)}
          */
+        @Deprecated
         public SetAttributeExecutor(final Logger log, final Introspector introspector,
                 final Class clazz, final Object arg, final String property)
+        {
+            this(log, clazz, arg, property);
+        }
+
+        /**
+         * @param log logger
+         * @param clazz target class
+         * @param arg value to set
+         * @param property property name
+         * @since VelocityTools 4.0
+         */
+        public SetAttributeExecutor(final Logger log, final Class clazz, final Object arg, final String property)
         {
             this.log = log;
-            this.introspector = introspector;
             this.property = property;
 
             discover(clazz, arg);
@@ -217,22 +290,10 @@ public class WebappUberspector extends AbstractChainableUberspector
          */
         protected void discover(final Class clazz, final Object arg)
         {
-            Object [] params = new Object[] { property, arg };
-
-            try
+            target = getTarget(clazz);
+            if (target != -1)
             {
-                setMethod(introspector.getMethod(clazz, "setAttribute", params));
-            }
-            /**
-             * pass through application level runtime exceptions
-             */
-            catch( RuntimeException e )
-            {
-                throw e;
-            }
-            catch(Exception e)
-            {
-                log.error("While looking for put('{}') method:", params[0], e);
+                setMethod(SET_ATTRIBUTE[target]);
             }
         }
 
@@ -246,14 +307,28 @@ public class WebappUberspector extends AbstractChainableUberspector
         public Object execute(final Object o, final Object value)
             throws IllegalAccessException,  InvocationTargetException
         {
-            Object [] params;
-
-            if (isAlive())
+            try
             {
-                params = new Object [] { property, value };
-                return getMethod().invoke(o, params);
+                switch (target)
+                {
+                    case REQUEST:
+                        ((HttpServletRequest)o).setAttribute(property, value);
+                        break;
+                    case SESSION:
+                        ((HttpSession)o).setAttribute(property, value);
+                        break;
+                    case APPLICATION:
+                        ((ServletContext)o).setAttribute(property, value);
+                        break;
+                    default:
+                        break;
+                }
+            }
+            catch (RuntimeException re)
+            {
+                // as Method.invoke() would have done
+                throw new InvocationTargetException(re);
             }
-
             return null;
         }
     }
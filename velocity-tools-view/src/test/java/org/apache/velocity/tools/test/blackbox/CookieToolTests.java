@@ -21,6 +21,7 @@ package org.apache.velocity.tools.test.blackbox;
 
 import java.lang.reflect.Proxy;
 import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -104,6 +105,61 @@ public class CookieToolTests extends BaseToolTests
         assertEquals("foo", all.get(1).getName());
     }
 
+    public @Test void testGet_DuplicateNames() throws Exception
+    {
+        Map jar = new LinkedHashMap();
+        jar.put("first", new Cookie("dup", "one"));
+        jar.put("second", new Cookie("dup", "two"));
+        jar.put("other", new Cookie("single", "three"));
+        CookieTool cookies = newCookieTool(jar);
+        // the first cookie of a given name wins
+        assertEquals("one", cookies.get("dup").getValue());
+        assertEquals("three", cookies.get("single").getValue());
+        assertNull(cookies.get("nosuchcookie"));
+        assertSame(cookies.get("dup"), cookies.getAll().get(0));
+    }
+
+    public @Test void testLazyIndexing() throws Exception
+    {
+        Map jar = new LinkedHashMap();
+        jar.put("a", "b");
+        jar.put("foo", "bar");
+        final RequestAdaptor requestAdaptor = new RequestAdaptor(jar);
+        final int[] reads = { 0 };
+        InvocationHandler counting = new InvocationHandler()
+        {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+                if ("getCookies".equals(method.getName()))
+                {
+                    ++reads[0];
+                }
+                return requestAdaptor.invoke(proxy, method, args);
+            }
+        };
+        CookieTool cookies = newCookieTool(counting, new ResponseAdaptor(jar));
+        assertEquals(0, reads[0]);
+        assertEquals("b", cookies.get("a").getValue());
+        assertEquals("bar", cookies.get("foo").getValue());
+        assertSame(cookies.get("a"), cookies.get("a"));
+        assertEquals(2, cookies.getAll().size());
+        assertEquals("[a=b, foo=bar]", cookies.toString());
+        // request cookies are read once
+        assertEquals(1, reads[0]);
+    }
+
+    public @Test void testGetAll_Mutable() throws Exception
+    {
+        CookieTool cookies = newCookieTool("a", "b");
+        List<Cookie> all = cookies.getAll();
+        all.add(cookies.create("c", "d"));
+        all.remove(0);
+        assertSame(all, cookies.getAll());
+        assertEquals("d", cookies.get("c").getValue());
+        assertNull(cookies.get("a"));
+        assertEquals("[c=d]", cookies.toString());
+    }
+
     public @Test void testToString() throws Exception
     {
         CookieTool cookies = newCookieTool("a", "b");
@@ -25,6 +25,8 @@ import java.io.InputStream;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * <p>Helper class for LinkToolTests class</p>
@@ -35,6 +37,7 @@ import java.net.URL;
 public class ServletContextAdaptor implements InvocationHandler
 {
     private String _contextPath;
+    private Map<String,Object> _attributes = new HashMap<String,Object>();
 
     public ServletContextAdaptor()
     {
@@ -76,6 +79,20 @@ public class ServletContextAdaptor implements InvocationHandler
         {
             return _contextPath;
         }
+        else if ("getAttribute".equals(methodName))
+        {
+            return _attributes.get((String)args[0]);
+        }
+        else if ("setAttribute".equals(methodName))
+        {
+            _attributes.put((String)args[0], args[1]);
+            return null;
+        }
+        else if ("removeAttribute".equals(methodName))
+        {
+            _attributes.remove((String)args[0]);
+            return null;
+        }
         else if ("getResource".equals(methodName))
         {
             return getResource((String)args[0]);
@@ -0,0 +1,119 @@
+package org.apache.velocity.tools.test.blackbox;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.http.HttpServletRequest;
+
+import org.apache.velocity.tools.view.UiDependencyTool;
+import org.apache.velocity.tools.view.ViewContext;
+import org.junit.Test;
+
+/**
+ * <p>UiDependencyTool tests.</p>
+ *
+ * @version $Id$
+ */
+public class UiDependencyToolTests extends BaseToolTests
+{
+    private ServletContext newServletContext()
+    {
+        return (ServletContext)Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class[] { ServletContext.class },
+            new ServletContextAdaptor());
+    }
+
+    private UiDependencyTool newUiDependencyTool(ServletContext app, String contextPath)
+    {
+        HttpServletRequest request = (HttpServletRequest)Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class[] { HttpServletRequest.class },
+            new RequestAdaptor(contextPath, null));
+        Map<String,Object> params = new HashMap<String,Object>();
+        params.put(ViewContext.SERVLET_CONTEXT_KEY, app);
+        params.put(ViewContext.REQUEST, request);
+        params.put(UiDependencyTool.SOURCE_FILE_KEY, "ui-test.xml");
+        UiDependencyTool tool = new UiDependencyTool();
+        tool.configure(params);
+        return tool;
+    }
+
+    public @Test void testGroupDependencies() throws Exception
+    {
+        ServletContext app = newServletContext();
+        UiDependencyTool tool = newUiDependencyTool(app, "/app");
+        Map<String,List<String>> deps = tool.getGroupDependencies("profile");
+        assertEquals(Arrays.asList("globals.css"), deps.get("style"));
+        assertEquals(Arrays.asList("jquery.js", "widgets.js", "profile.js"), deps.get("script"));
+        assertNull(tool.getGroupDependencies("nosuchgroup"));
+        try
+        {
+            tool.on("broken");
+            fail("expected a missing group error");
+        }
+        catch (NullPointerException npe)
+        {
+            assertEquals("No group named 'missing'", npe.getMessage());
+        }
+    }
+
+    public @Test void testSharedAttributes() throws Exception
+    {
+        ServletContext app = newServletContext();
+        newUiDependencyTool(app, "/app");
+        // groups and custom types are still published under their public keys
+        Map groups = (Map)app.getAttribute(UiDependencyTool.GROUPS_KEY_SPACE + "ui-test.xml");
+        assertNotNull(groups);
+        assertTrue(groups.containsKey("profile"));
+        List types = (List)app.getAttribute(UiDependencyTool.TYPES_KEY_SPACE + "ui-test.xml");
+        assertNotNull(types);
+    }
+
+    public @Test void testPrint() throws Exception
+    {
+        ServletContext app = newServletContext();
+        UiDependencyTool tool = newUiDependencyTool(app, "/app");
+        assertSame(tool, tool.on("widgets"));
+        assertSame(tool, tool.on("profile"));
+        assertEquals("<link rel=\"stylesheet\" href=\"/app/styles/globals.css\"/>|" +
+                     "<script type=\"text/javascript\" src=\"/app/js/jquery.js\"></script>|" +
+                     "<script type=\"text/javascript\" src=\"/app/js/widgets.js\"></script>|" +
+                     "<script type=\"text/javascript\" src=\"/app/js/profile.js\"></script>",
+                     tool.printAll("|"));
+
+        // the compiled file is shared, and formatted files depend on the context path
+        UiDependencyTool other = newUiDependencyTool(app, "/other");
+        other.on("jquery");
+        assertEquals("<script type=\"text/javascript\" src=\"/other/js/jquery.js\"></script>\n",
+                     other.print("script"));
+
+        // custom formats stay local to the tool instance
+        other.setFormat("script", "{file}");
+        assertEquals("jquery.js\n", other.print("script"));
+        tool = newUiDependencyTool(app, "/app");
+        tool.on("jquery");
+        assertEquals("<script type=\"text/javascript\" src=\"/app/js/jquery.js\"></script>\n",
+                     tool.print("script"));
+    }
+}
@@ -0,0 +1,106 @@
+package org.apache.velocity.tools.view;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.runtime.resource.loader.StringResourceLoader;
+import org.apache.velocity.runtime.resource.util.StringResourceRepository;
+import org.junit.Test;
+
+/**
+ * Tests {@link IncludeTool} resolution and its cache.
+ */
+public class IncludeToolTest
+{
+    private static VelocityEngine createEngine(boolean caching)
+    {
+        VelocityEngine engine = new VelocityEngine();
+        engine.setProperty("resource.loaders", "string");
+        engine.setProperty("resource.loader.string.class", StringResourceLoader.class.getName());
+        engine.setProperty("resource.loader.string.repository.static", "false");
+        engine.setProperty("resource.loader.string.cache", String.valueOf(caching));
+        engine.setProperty("resource.loader.string.modification_check_interval", "0");
+        engine.init();
+        StringResourceRepository repository = (StringResourceRepository)engine.getApplicationAttribute(StringResourceLoader.REPOSITORY_NAME_DEFAULT);
+        repository.putStringResource("header.vm.fr", "ent\u00eate");
+        repository.putStringResource("header.vm.en", "header");
+        return engine;
+    }
+
+    private static IncludeTool createTool(VelocityEngine engine)
+    {
+        HttpServletRequest request = createNiceMock(HttpServletRequest.class);
+        HttpServletResponse response = createNiceMock(HttpServletResponse.class);
+        ServletContext application = createNiceMock(ServletContext.class);
+        replay(request, response, application);
+        ViewToolContext context = new ViewToolContext(engine, request, response, application);
+        context.put(IncludeTool.DEFAULT_LANGUAGE_KEY, "en");
+        IncludeTool tool = new IncludeTool();
+        tool.configure(context);
+        return tool;
+    }
+
+    private static void checkResolution(IncludeTool tool)
+    {
+        assertEquals("header.vm.fr", tool.find("header.vm", "fr"));
+        assertEquals("header.vm.en", tool.find("header.vm", "de"));
+        assertEquals("header.vm.en", tool.find("header.vm"));
+        assertEquals("footer.vm", tool.find("footer.vm", "fr"));
+    }
+
+    @Test
+    public void resolvedNamesAreCached()
+    {
+        VelocityEngine engine = createEngine(true);
+        IncludeTool tool = createTool(engine);
+        checkResolution(tool);
+        assertEquals(4, tool.getCacheMisses());
+        assertEquals(0, tool.getCacheHits());
+        assertEquals(4, tool.getCacheSize());
+
+        // another request shares the cache
+        tool = createTool(engine);
+        checkResolution(tool);
+        assertEquals(4, tool.getCacheMisses());
+        assertEquals(4, tool.getCacheHits());
+    }
+
+    @Test
+    public void nothingIsCachedWithoutTemplateCache()
+    {
+        VelocityEngine engine = createEngine(false);
+        IncludeTool tool = createTool(engine);
+        checkResolution(tool);
+        assertEquals(0, tool.getCacheHits());
+        assertEquals(0, tool.getCacheSize());
+
+        StringResourceRepository repository = (StringResourceRepository)engine.getApplicationAttribute(StringResourceLoader.REPOSITORY_NAME_DEFAULT);
+        repository.putStringResource("footer.vm.fr", "pied de page");
+        assertEquals("footer.vm.fr", tool.find("footer.vm", "fr"));
+    }
+}
@@ -0,0 +1,106 @@
+package org.apache.velocity.tools.view;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link Utf8Writer} output against the JDK UTF-8 encoder.
+ */
+public class Utf8WriterTest
+{
+    private static final char[] SAMPLES = { 'a', '<', '\n', '\u00e9', '\u07ff', '\u0800', '\u20ac', '\uffff',
+        '\ud83d', '\ude00', '\ud800', '\udfff' };
+
+    private static String randomString(Random random, int length)
+    {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; ++i)
+        {
+            builder.append(random.nextInt(3) == 0 ? SAMPLES[random.nextInt(SAMPLES.length)] : 'x');
+        }
+        return builder.toString();
+    }
+
+    /** Writes the string in random chunks, with all the write methods. */
+    private static void write(Utf8Writer writer, String str, Random random) throws Exception
+    {
+        int i = 0;
+        while (i < str.length())
+        {
+            int len = Math.min(str.length() - i, random.nextInt(100) + 1);
+            switch (random.nextInt(3))
+            {
+                case 0:
+                    writer.write(str, i, len);
+                    break;
+                case 1:
+                    writer.write(str.toCharArray(), i, len);
+                    break;
+                default:
+                    len = 1;
+                    writer.write(str.charAt(i));
+                    break;
+            }
+            i += len;
+        }
+    }
+
+    @Test
+    public void streamingMatchesJdkEncoding() throws Exception
+    {
+        Random random = new Random(34);
+        for (int n = 0; n < 200; ++n)
+        {
+            String str = randomString(random, random.nextInt(3 * Utf8Writer.BUFFER_SIZE));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Utf8Writer writer = new Utf8Writer(out);
+            write(writer, str, random);
+            writer.close();
+            assertArrayEquals(str, str.getBytes(StandardCharsets.UTF_8), out.toByteArray());
+        }
+    }
+
+    @Test
+    public void bufferingMatchesJdkEncoding() throws Exception
+    {
+        Random random = new Random(43);
+        for (int n = 0; n < 200; ++n)
+        {
+            String str = randomString(random, random.nextInt(3 * Utf8Writer.BUFFER_SIZE));
+            Utf8Writer writer = new Utf8Writer();
+            write(writer, str, random);
+            writer.flush();
+            byte[] expected = str.getBytes(StandardCharsets.UTF_8);
+            assertEquals(expected.length, writer.size());
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writer.writeTo(out);
+            writer.close();
+            assertArrayEquals(str, expected, out.toByteArray());
+        }
+    }
+}
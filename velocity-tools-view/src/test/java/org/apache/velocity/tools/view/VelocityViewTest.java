@@ -25,8 +25,11 @@ import static org.easymock.EasyMock.*;
 import java.io.File;
 import java.io.IOException;
 import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
 import java.net.URL;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import jakarta.servlet.RequestDispatcher;
 import jakarta.servlet.ServletContext;
 import jakarta.servlet.http.HttpServletRequest;
@@ -37,6 +40,7 @@ import org.apache.velocity.context.Context;
 import org.apache.velocity.exception.MethodInvocationException;
 import org.apache.velocity.exception.ParseErrorException;
 import org.apache.velocity.exception.ResourceNotFoundException;
+import org.apache.velocity.tools.metrics.MemoryMetrics;
 import org.easymock.IAnswer;
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -70,17 +74,23 @@ public class VelocityViewTest extends BaseWebappMockTest
 
         expect(config.getServletContext()).andAnswer(eval(servletContext));
         expect(config.findInitParameter(VelocityView.USER_OVERWRITE_KEY)).andAnswer(eval(null));
+        expect(config.findInitParameter(VelocityView.WRITER_BUFFER_MAX_KEY)).andAnswer(eval(null));
         expect(config.findInitParameter(VelocityView.LOAD_DEFAULTS_KEY)).andAnswer(eval("false"));
         expect(servletContext.getInitParameter(VelocityView.PROPERTIES_KEY)).andAnswer(eval(null));
         expect(servletContext.getResourceAsStream(VelocityView.USER_PROPERTIES_PATH))
             .andAnswer(eval(getClass().getResourceAsStream("/WEB-INF/velocity.properties")));
         String root = new File(getClass().getResource("/").getFile()).getAbsolutePath();
         expect(config.getInitParameter(VelocityView.PROPERTIES_KEY)).andAnswer(eval(null));
+        expect(config.findInitParameter(VelocityView.METRICS_KEY)).andAnswer(eval(null));
+        expect(config.findInitParameter(VelocityView.CONFIGURATION_SNAPSHOT_KEY)).andAnswer(eval(null));
         expect(config.findInitParameter(VelocityView.CLEAN_CONFIGURATION_KEY)).andAnswer(eval(null));
         expect(servletContext.getInitParameter(VelocityView.TOOLS_KEY)).andAnswer(eval(null));
         expect(config.getInitParameter(VelocityView.TOOLS_KEY)).andAnswer(eval(null));
         expect(servletContext.getAttribute(ServletUtils.CONFIGURATION_KEY)).andAnswer(eval((String)null));
         expect(servletContext.getResource(VelocityView.USER_TOOLS_PATH)).andAnswer(eval(null));
+        expect(config.findInitParameter(VelocityView.WARM_UP_KEY)).andAnswer(eval(null));
+        servletContext.setAttribute(VelocityView.READY_KEY, Boolean.TRUE);
+        expectLastCall();
         expect(request.getAttribute(RequestDispatcher.INCLUDE_SERVLET_PATH)).andAnswer(eval("/charset-test.vm"));
         expect(request.getAttribute(RequestDispatcher.INCLUDE_PATH_INFO)).andAnswer(eval((String)null));
 
@@ -98,4 +108,41 @@ public class VelocityViewTest extends BaseWebappMockTest
         verify(config, servletContext, request, response, context);
     }
 
+    /**
+     * Test that metrics are registered in JMX until the view is destroyed,
+     * and that same-name webapps do not replace each other's metrics.
+     */
+    @Test
+    public void testMetricsUnregistered() throws Exception
+    {
+        VelocityView first = createMetricsView();
+        VelocityView second = createMetricsView();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName firstName = new ObjectName("org.apache.velocity.tools:type=Metrics,name=" + ObjectName.quote("metrics-test"));
+        ObjectName secondName = new ObjectName("org.apache.velocity.tools:type=Metrics,name=" + ObjectName.quote("metrics-test#2"));
+        assertTrue(server.isRegistered(firstName));
+        assertTrue(server.isRegistered(secondName));
+
+        first.destroy();
+        assertFalse(first.isReady());
+        assertFalse(server.isRegistered(firstName));
+        assertTrue(server.isRegistered(secondName));
+        second.destroy();
+        assertFalse(server.isRegistered(secondName));
+    }
+
+    private VelocityView createMetricsView()
+    {
+        JeeConfig config = createNiceMock(JeeConfig.class);
+        ServletContext servletContext = createNiceMock(ServletContext.class);
+        expect(config.getServletContext()).andStubReturn(servletContext);
+        expect(config.findInitParameter(VelocityView.LOAD_DEFAULTS_KEY)).andStubReturn("false");
+        expect(config.findInitParameter(VelocityView.METRICS_KEY)).andStubReturn(MemoryMetrics.class.getName());
+        expect(servletContext.getServletContextName()).andStubReturn("metrics-test");
+        expect(servletContext.getResourceAsStream(VelocityView.USER_PROPERTIES_PATH))
+            .andStubAnswer(() -> getClass().getResourceAsStream("/WEB-INF/velocity.properties"));
+        replay(config, servletContext);
+        return new VelocityView(config);
+    }
+
 }
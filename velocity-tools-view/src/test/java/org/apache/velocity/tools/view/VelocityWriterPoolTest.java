@@ -0,0 +1,171 @@
+package org.apache.velocity.tools.view;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import org.apache.velocity.io.VelocityWriter;
+import org.junit.Test;
+
+/**
+ * Tests {@link VelocityWriterPool} reuse, buffer size adaptation and statistics.
+ */
+public class VelocityWriterPoolTest
+{
+    private static String render(VelocityWriterPool pool, String template, int size) throws Exception
+    {
+        StringWriter out = new StringWriter();
+        VelocityWriterPool.PooledWriter pooled = pool.get(template, out);
+        VelocityWriter writer = pooled.getWriter();
+        // write by small chunks, like a template does
+        char[] chunk = new char[100];
+        Arrays.fill(chunk, 'x');
+        for (int i = 0; i < size; i += chunk.length)
+        {
+            writer.write(chunk, 0, Math.min(chunk.length, size - i));
+        }
+        writer.flush();
+        pool.put(pooled);
+        return out.toString();
+    }
+
+    @Test
+    public void writersAreReused() throws Exception
+    {
+        VelocityWriterPool pool = new VelocityWriterPool();
+        VelocityWriterPool.PooledWriter first = pool.get("a.vm", new StringWriter());
+        VelocityWriterPool.PooledWriter second = pool.get("a.vm", new StringWriter());
+        assertNotSame(first, second);
+        assertEquals(2, pool.getPeakInUse());
+        pool.put(first);
+        pool.put(second);
+        assertEquals(2, pool.getIdle());
+        assertEquals(0, pool.getInUse());
+        assertSame(second, pool.get("a.vm", new StringWriter()));
+        assertEquals(1, pool.getHits());
+        assertEquals(2, pool.getMisses());
+    }
+
+    @Test
+    public void peakUseDecays() throws Exception
+    {
+        VelocityWriterPool.PooledWriter[] writers = new VelocityWriterPool.PooledWriter[100];
+        VelocityWriterPool pool = new VelocityWriterPool(VelocityWriterPool.DEFAULT_MAX_BUFFER_SIZE, 0);
+        for (int i = 0; i < writers.length; ++i)
+        {
+            writers[i] = pool.get("a.vm", new StringWriter());
+        }
+        assertEquals(100, pool.getPeakInUse());
+        for (VelocityWriterPool.PooledWriter writer : writers)
+        {
+            pool.put(writer);
+        }
+        // the peak followed the use down, and idle writers were trimmed
+        assertEquals(0, pool.getPeakInUse());
+        assertEquals(VelocityWriterPool.MIN_IDLE, pool.getIdle());
+
+        // without decay, all of them are kept
+        pool = new VelocityWriterPool();
+        for (int i = 0; i < writers.length; ++i)
+        {
+            writers[i] = pool.get("a.vm", new StringWriter());
+        }
+        for (VelocityWriterPool.PooledWriter writer : writers)
+        {
+            pool.put(writer);
+        }
+        assertEquals(100, pool.getIdle());
+    }
+
+    private static long spike(VelocityWriterPool pool, int count) throws Exception
+    {
+        VelocityWriterPool.PooledWriter[] writers = new VelocityWriterPool.PooledWriter[count];
+        for (int i = 0; i < writers.length; ++i)
+        {
+            writers[i] = pool.get("big.vm", new StringWriter());
+        }
+        long maxIdleChars = 0;
+        for (VelocityWriterPool.PooledWriter writer : writers)
+        {
+            pool.put(writer);
+            maxIdleChars = Math.max(maxIdleChars, pool.getIdleChars());
+        }
+        return maxIdleChars;
+    }
+
+    @Test
+    public void idleMemoryIsBounded() throws Exception
+    {
+        int bufferSize = VelocityWriterPool.DEFAULT_MAX_BUFFER_SIZE;
+
+        // without decay, a spike keeps at most MAX_IDLE_CHARS of buffers
+        VelocityWriterPool pool = new VelocityWriterPool();
+        render(pool, "big.vm", 20000);
+        assertEquals(bufferSize, pool.getBufferSize("big.vm"));
+        assertTrue(spike(pool, 500) <= VelocityWriterPool.MAX_IDLE_CHARS);
+        assertTrue(pool.getIdleChars() > VelocityWriterPool.MAX_IDLE_CHARS - bufferSize);
+        // the small writer of the first rendering, and the big ones which fit
+        assertEquals(1 + (VelocityWriterPool.MAX_IDLE_CHARS - VelocityWriterPool.MIN_BUFFER_SIZE) / bufferSize, pool.getIdle());
+
+        // with decay, the memory of the spike is released down to the floor
+        pool = new VelocityWriterPool(VelocityWriterPool.DEFAULT_MAX_BUFFER_SIZE, 0);
+        render(pool, "big.vm", 20000);
+        assertTrue(spike(pool, 500) <= VelocityWriterPool.MAX_IDLE_CHARS);
+        assertEquals(VelocityWriterPool.MIN_IDLE, pool.getIdle());
+        // biggest buffers are dropped first, so the small writer is still there
+        long floor = (long)(VelocityWriterPool.MIN_IDLE - 1) * bufferSize + VelocityWriterPool.MIN_BUFFER_SIZE;
+        assertEquals(floor, pool.getIdleChars());
+
+        // borrowed writers are not counted
+        VelocityWriterPool.PooledWriter borrowed = pool.get("big.vm", new StringWriter());
+        assertEquals(floor - borrowed.getBufferSize(), pool.getIdleChars());
+    }
+
+    @Test
+    public void bufferSizeFollowsOutputSize() throws Exception
+    {
+        VelocityWriterPool pool = new VelocityWriterPool(32 * 1024);
+        assertEquals(VelocityWriterPool.MIN_BUFFER_SIZE, pool.getBufferSize("big.vm"));
+
+        // first rendering: 20000 chars through a 4K buffer
+        assertEquals(20000, render(pool, "big.vm", 20000).length());
+        assertEquals(5, pool.getFlushes());
+        assertEquals(32 * 1024, pool.getBufferSize("big.vm"));
+
+        // next one goes in a single chunk
+        assertEquals(20000, render(pool, "big.vm", 20000).length());
+        assertEquals(6, pool.getFlushes());
+
+        // small templates are not affected, and the maximum is enforced
+        assertEquals(VelocityWriterPool.MIN_BUFFER_SIZE, pool.getBufferSize("small.vm"));
+        render(pool, "huge.vm", 1000000);
+        assertEquals(32 * 1024, pool.getBufferSize("huge.vm"));
+
+        VelocityWriterPool fixed = new VelocityWriterPool(VelocityWriterPool.MIN_BUFFER_SIZE);
+        render(fixed, "big.vm", 20000);
+        assertEquals(VelocityWriterPool.MIN_BUFFER_SIZE, fixed.getBufferSize("big.vm"));
+    }
+}
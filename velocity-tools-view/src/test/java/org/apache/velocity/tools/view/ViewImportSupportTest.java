@@ -0,0 +1,138 @@
+package org.apache.velocity.tools.view;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import jakarta.servlet.RequestDispatcher;
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link ViewImportSupport} streaming of local URLs.
+ */
+public class ViewImportSupportTest
+{
+    private static String createContent()
+    {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 20000; ++i)
+        {
+            builder.append(i % 7 == 0 ? '\u00e9' : i % 11 == 0 ? '\u20ac' : (char)('a' + i % 26));
+        }
+        return builder.toString();
+    }
+
+    private static ViewImportSupport createSupport(final String content, final boolean bytes, final int status)
+    {
+        HttpServletRequest request = createNiceMock(HttpServletRequest.class);
+        expect(request.getServletPath()).andReturn("/index.vm").anyTimes();
+        expect(request.getParameterMap()).andReturn(Collections.<String, String[]>emptyMap()).anyTimes();
+        HttpServletResponse response = createNiceMock(HttpServletResponse.class);
+        expect(response.getCharacterEncoding()).andReturn("UTF-8").anyTimes();
+        ServletContext application = createNiceMock(ServletContext.class);
+        expect(application.getRequestDispatcher(anyObject(String.class))).andReturn(new RequestDispatcher()
+            {
+                @Override
+                public void forward(ServletRequest req, ServletResponse resp)
+                {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public void include(ServletRequest req, ServletResponse resp) throws IOException
+                {
+                    ((HttpServletResponse)resp).setStatus(status);
+                    if (bytes)
+                    {
+                        // odd chunks, to split multibyte sequences
+                        ServletOutputStream out = resp.getOutputStream();
+                        byte[] encoded = content.getBytes(StandardCharsets.UTF_8);
+                        for (int off = 0; off < encoded.length; off += 1001)
+                        {
+                            out.write(encoded, off, Math.min(1001, encoded.length - off));
+                        }
+                    }
+                    else
+                    {
+                        resp.getWriter().write(content);
+                    }
+                }
+            }).anyTimes();
+        replay(request, response, application);
+
+        ViewImportSupport support = new ViewImportSupport();
+        support.setRequest(request);
+        support.setResponse(response);
+        support.setServletContext(application);
+        return support;
+    }
+
+    @Test
+    public void streamsCharacters() throws Exception
+    {
+        String content = createContent();
+        StringWriter out = new StringWriter();
+        createSupport(content, false, 200).acquire("fragment.vm", out);
+        assertEquals(content, out.toString());
+        assertEquals(content, createSupport(content, false, 200).acquireString("fragment.vm"));
+    }
+
+    @Test
+    public void streamsBytes() throws Exception
+    {
+        String content = createContent();
+        StringWriter out = new StringWriter();
+        createSupport(content, true, 200).acquire("fragment.vm", out);
+        assertEquals(content, out.toString());
+        assertEquals(content, createSupport(content, true, 200).acquireString("fragment.vm"));
+    }
+
+    @Test
+    public void discardsErrorPages() throws Exception
+    {
+        StringWriter out = new StringWriter();
+        try
+        {
+            createSupport("not found", true, 404).acquire("fragment.vm", out);
+            fail("invalid status should be reported");
+        }
+        catch (IOException ioe)
+        {
+            assertEquals("", out.toString());
+        }
+    }
+}
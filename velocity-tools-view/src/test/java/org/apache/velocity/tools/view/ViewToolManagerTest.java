@@ -18,17 +18,34 @@
  */
 package org.apache.velocity.tools.view;
 
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
 import jakarta.servlet.ServletContext;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpSession;
+import jakarta.servlet.http.HttpSessionBindingEvent;
+import jakarta.servlet.http.HttpSessionBindingListener;
 
+import org.apache.velocity.app.VelocityEngine;
 import org.apache.velocity.tools.Scope;
+import org.apache.velocity.tools.Toolbox;
 import org.apache.velocity.tools.config.FactoryConfiguration;
+import org.apache.velocity.tools.config.ToolConfiguration;
 import org.apache.velocity.tools.config.ToolboxConfiguration;
 import org.junit.Test;
 
+import static org.easymock.EasyMock.anyBoolean;
 import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -68,4 +85,111 @@ public class ViewToolManagerTest
         assertFalse("session-toolbox createSession=\"false\" must be honored",
                     manager.getCreateSession());
     }
+
+    /** Session backed by a map, notifying binding listeners on removal. */
+    private static HttpSession createSession(final String id, final Map<String,Object> attributes)
+    {
+        return (HttpSession)Proxy.newProxyInstance(HttpSession.class.getClassLoader(),
+            new Class[] { HttpSession.class }, (proxy, method, args) ->
+            {
+                switch (method.getName())
+                {
+                    case "getId":
+                        return id;
+                    case "getAttribute":
+                        return attributes.get((String)args[0]);
+                    case "setAttribute":
+                        attributes.put((String)args[0], args[1]);
+                        return null;
+                    case "removeAttribute":
+                        Object value = attributes.remove((String)args[0]);
+                        if (value instanceof HttpSessionBindingListener)
+                        {
+                            ((HttpSessionBindingListener)value).valueUnbound(
+                                new HttpSessionBindingEvent((HttpSession)proxy, (String)args[0], value));
+                        }
+                        return null;
+                    default:
+                        return null;
+                }
+            });
+    }
+
+    private static void configureLocalSessionTools(ViewToolManager manager)
+    {
+        FactoryConfiguration config = new FactoryConfiguration();
+        ToolboxConfiguration session = new ToolboxConfiguration();
+        session.setScope(Scope.SESSION);
+        session.setProperty(ViewToolManager.LOCAL_SESSION_TOOLS_PROPERTY, "true");
+        ToolConfiguration tool = new ToolConfiguration();
+        tool.setClassname("org.apache.velocity.tools.generic.CollectionTool");
+        session.addTool(tool);
+        config.addToolbox(session);
+        manager.configure(config);
+    }
+
+    @Test
+    public void localSessionToolsStayOutOfTheSession()
+    {
+        ServletContext app = createNiceMock(ServletContext.class);
+        replay(app);
+        ViewToolManager manager = new ViewToolManager(app, false, false);
+        configureLocalSessionTools(manager);
+        assertTrue(manager.getLocalSessionTools());
+
+        Map<String,Object> attributes = new HashMap<String,Object>();
+        HttpSession httpSession = createSession("s1", attributes);
+        HttpServletRequest request = createNiceMock(HttpServletRequest.class);
+        expect(request.getSession(anyBoolean())).andReturn(httpSession).anyTimes();
+        replay(request);
+
+        manager.publishToolboxes(request);
+        Toolbox toolbox = manager.getSessionToolbox(httpSession);
+        assertNotNull(toolbox);
+        manager.publishToolboxes(request);
+        assertSame(toolbox, manager.getSessionToolbox(httpSession));
+
+        // only a marker is stored in the session
+        assertNull(attributes.get(manager.getToolboxKey()));
+        assertEquals(1, attributes.size());
+
+        manager.setVelocityEngine(new VelocityEngine());
+        ViewToolContext context = manager.createContext(request, null);
+        assertTrue(context.getToolClassMap().containsKey("collection"));
+
+        // ending the session evicts the toolbox
+        httpSession.removeAttribute(attributes.keySet().iterator().next());
+        assertNull(manager.getSessionToolbox(httpSession));
+    }
+
+    @Test
+    public void evictedLocalSessionToolboxIsStillUsed()
+    {
+        ServletContext app = createNiceMock(ServletContext.class);
+        replay(app);
+        final Map<String,Object> attributes = new HashMap<String,Object>();
+        final HttpSession httpSession = createSession("s2", attributes);
+        ViewToolManager manager = new ViewToolManager(app, false, false)
+        {
+            @Override
+            public void publishToolboxes(HttpServletRequest request)
+            {
+                super.publishToolboxes(request);
+                // the session ends right after publication
+                for (String key : new ArrayList<String>(attributes.keySet()))
+                {
+                    httpSession.removeAttribute(key);
+                }
+            }
+        };
+        configureLocalSessionTools(manager);
+        manager.setVelocityEngine(new VelocityEngine());
+
+        HttpServletRequest request = createNiceMock(HttpServletRequest.class);
+        expect(request.getSession(anyBoolean())).andReturn(httpSession).anyTimes();
+        replay(request);
+
+        ViewToolContext context = manager.createContext(request, null);
+        assertTrue(context.getToolClassMap().containsKey("collection"));
+    }
 }
@@ -0,0 +1,88 @@
+package org.apache.velocity.tools.view;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.http.HttpServletRequest;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link WarmUp} and the warm-up of {@link VelocityView}.
+ */
+public class WarmUpTest
+{
+    private static VelocityView createView(String warmUp, ServletContext servletContext)
+    {
+        JeeConfig config = createNiceMock(JeeConfig.class);
+        expect(config.getServletContext()).andStubReturn(servletContext);
+        expect(config.findInitParameter(VelocityView.LOAD_DEFAULTS_KEY)).andStubReturn("true");
+        expect(config.findInitParameter(VelocityView.WARM_UP_KEY)).andStubReturn(warmUp);
+        expect(servletContext.getContextPath()).andStubReturn("");
+        expect(servletContext.getResourceAsStream(VelocityView.USER_PROPERTIES_PATH))
+            .andStubAnswer(() -> WarmUpTest.class.getResourceAsStream(VelocityView.USER_PROPERTIES_PATH));
+        replay(config, servletContext);
+        return new VelocityView(config);
+    }
+
+    @Test
+    public void warmUpAtInit()
+    {
+        ServletContext servletContext = createNiceMock(ServletContext.class);
+        servletContext.setAttribute(VelocityView.READY_KEY, Boolean.TRUE);
+        expectLastCall().once();
+        VelocityView view = createView("/warmup.txt", servletContext);
+        assertTrue(view.isReady());
+        verify(servletContext);
+    }
+
+    @Test
+    public void replayManifest() throws Exception
+    {
+        ServletContext servletContext = createNiceMock(ServletContext.class);
+        VelocityView view = createView(null, servletContext);
+        WarmUp warmUp = new WarmUp(view, servletContext);
+        assertTrue(warmUp.createApplicationTools() > 0);
+        // failing renderings are skipped, as well as invalid lines
+        assertEquals(3, warmUp.replay(new StringReader("# comment\n\n/warmup-test.vm?name=x 2\n/missing.vm 5\n/warmup-test.vm x\n/warmup-test.vm\n")));
+    }
+
+    @Test
+    public void request()
+    {
+        ServletContext servletContext = createNiceMock(ServletContext.class);
+        VelocityView view = createView(null, servletContext);
+        WarmUp warmUp = new WarmUp(view, servletContext);
+        HttpServletRequest request = warmUp.createRequest("/page.vm?a=1&b=x%20y&a=2");
+        assertEquals("/page.vm", ServletUtils.getPath(request));
+        assertArrayEquals(new String[] { "1", "2" }, request.getParameterValues("a"));
+        assertEquals("x y", request.getParameter("b"));
+        assertEquals(WarmUp.USER_AGENT, request.getHeader("user-agent"));
+        assertEquals(Boolean.TRUE, request.getAttribute(WarmUp.WARM_UP_ATTRIBUTE));
+        assertNull(request.getSession(false));
+        // all warm-up requests share the same session
+        assertSame(request.getSession(), warmUp.createRequest("/other.vm").getSession(true));
+    }
+}
@@ -0,0 +1,122 @@
+package org.apache.velocity.tools.view;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpSession;
+
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.VelocityEngine;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tests {@link WebappUberspector} attribute access.
+ */
+public class WebappUberspectorTest
+{
+    /** Servlet API object whose attributes are backed by a map. */
+    private static <T> T createTarget(Class<T> iface, final Map<String,Object> attributes)
+    {
+        return iface.cast(Proxy.newProxyInstance(iface.getClassLoader(), new Class[] { iface },
+            (proxy, method, args) ->
+            {
+                switch (method.getName())
+                {
+                    case "getAttribute":
+                        return attributes.get((String)args[0]);
+                    case "setAttribute":
+                        attributes.put((String)args[0], args[1]);
+                        return null;
+                    default:
+                        return null;
+                }
+            }));
+    }
+
+    @Test
+    public void attributesAreProperties()
+    {
+        VelocityEngine engine = new VelocityEngine();
+        engine.setProperty("introspector.uberspect.class",
+            "org.apache.velocity.util.introspection.UberspectImpl," + WebappUberspector.class.getName());
+        engine.init();
+
+        Map<String,Object> requestAttributes = new HashMap<String,Object>();
+        Map<String,Object> sessionAttributes = new HashMap<String,Object>();
+        Map<String,Object> applicationAttributes = new HashMap<String,Object>();
+        requestAttributes.put("foo", "bar");
+        VelocityContext context = new VelocityContext();
+        context.put("request", createTarget(HttpServletRequest.class, requestAttributes));
+        context.put("session", createTarget(HttpSession.class, sessionAttributes));
+        context.put("application", createTarget(ServletContext.class, applicationAttributes));
+
+        StringWriter out = new StringWriter();
+        engine.evaluate(context, out, "test",
+            "#set($session.a = 1)#set($application.b = 'c')#foreach($i in [1..3])$request.foo#end $session.a$application.b");
+        assertEquals("barbarbar 1c", out.toString());
+        assertEquals(1, sessionAttributes.get("a"));
+        assertEquals("c", applicationAttributes.get("b"));
+    }
+
+    @Test
+    public void exceptionsAreWrapped() throws Exception
+    {
+        // an invalidated session
+        HttpSession session = (HttpSession)Proxy.newProxyInstance(HttpSession.class.getClassLoader(),
+            new Class[] { HttpSession.class },
+            (proxy, method, args) ->
+            {
+                throw new IllegalStateException("invalidated");
+            });
+        WebappUberspector uberspector = new WebappUberspector();
+        Logger log = LoggerFactory.getLogger(WebappUberspectorTest.class);
+        try
+        {
+            uberspector.new GetAttributeExecutor(log, session.getClass(), "a").execute(session);
+            fail("expected an InvocationTargetException");
+        }
+        catch (InvocationTargetException ite)
+        {
+            assertTrue(ite.getCause() instanceof IllegalStateException);
+        }
+        try
+        {
+            uberspector.new SetAttributeExecutor(log, session.getClass(), "b", "a").execute(session, "b");
+            fail("expected an InvocationTargetException");
+        }
+        catch (InvocationTargetException ite)
+        {
+            assertTrue(ite.getCause() instanceof IllegalStateException);
+        }
+    }
+}